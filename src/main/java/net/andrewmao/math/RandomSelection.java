@@ -2,8 +2,10 @@ package net.andrewmao.math;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class RandomSelection {
@@ -23,6 +25,9 @@ public class RandomSelection {
 		if( k > n ) k = n;
 		else if( k < 0 ) k = 0;
 		
+		// For a small sample, only keep track of the swapped elements
+		if( k < n / 8 ) return randNKSparse(n, k, rnd);
+		
 		int i, sw, temp;
 		int[] arr = new int[n];
 	
@@ -41,6 +46,26 @@ public class RandomSelection {
 		return Arrays.copyOf(arr, k);
 	}
 	
+	/**
+	 * Same selection as randNK, but using O(k) memory instead of O(n).
+	 */
+	static int[] randNKSparse(int n, int k, Random rnd) {
+		Map<Integer, Integer> swapped = new HashMap<Integer, Integer>(2 * k);
+		int[] arr = new int[k];
+		
+		for(int i = 0; i < k; i++) {
+			int sw = i + rnd.nextInt(n - i);
+			
+			Integer atSw = swapped.get(sw);
+			Integer atI = swapped.get(i);
+			
+			arr[i] = atSw == null ? sw : atSw;
+			swapped.put(sw, atI == null ? i : atI);
+		}
+		
+		return arr;
+	}
+	
 	/**
 	 * The random stream selection algorithm	
 	 * @param <T>
@@ -0,0 +1,193 @@
+package net.andrewmao.math.lp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ilog.concert.IloConstraint;
+import ilog.concert.IloException;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloObjective;
+import ilog.concert.IloObjectiveSense;
+import ilog.cplex.IloCplex;
+
+/**
+ * A {@link LinearSolver} backed by CPLEX. Needs the CPLEX jar and native library at runtime,
+ * which are only loaded when this class is used.
+ *
+ * @author mao
+ *
+ */
+public class CplexSolver implements LinearSolver {
+
+	final IloCplex cp;
+	final List<IloNumVar> vars = new ArrayList<IloNumVar>();
+	final List<IloConstraint> constraints = new ArrayList<IloConstraint>();
+	IloObjective objective;
+
+	public CplexSolver() {
+		try {
+			cp = new IloCplex();
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+
+		// Turn comments on or off
+		cp.setOut(null);
+	}
+
+	@Override
+	public void clear() {
+		try {
+			cp.clearModel();
+			if( cp.getNMIPStarts() > 0 ) cp.deleteMIPStarts(0, cp.getNMIPStarts());
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+		vars.clear();
+		constraints.clear();
+		objective = null;
+	}
+
+	@Override
+	public int addVariable(double lower, double upper) {
+		try {
+			vars.add(cp.numVar(lower, upper));
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+		return vars.size() - 1;
+	}
+
+	@Override
+	public int addBinaryVariable() {
+		try {
+			vars.add(cp.boolVar());
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+		return vars.size() - 1;
+	}
+
+	@Override
+	public int addConstraint(LinearExpression expr, Relation relation, double rhs) {
+		try {
+			IloConstraint c = constraint(expr, relation, rhs);
+			cp.add(c);
+			constraints.add(c);
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+		return constraints.size() - 1;
+	}
+
+	@Override
+	public int addIndicator(int binary, int value, LinearExpression expr, Relation relation, double rhs) {
+		try {
+			IloConstraint c = cp.ifThen(cp.eq(vars.get(binary), value), constraint(expr, relation, rhs));
+			cp.add(c);
+			constraints.add(c);
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+		return constraints.size() - 1;
+	}
+
+	@Override
+	public void removeConstraint(int constraint) {
+		try {
+			cp.remove(constraints.get(constraint));
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+		constraints.set(constraint, null);
+	}
+
+	@Override
+	public void removeVariable(int var) {
+		try {
+			cp.delete(vars.get(var));
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+		vars.set(var, null);
+	}
+
+	@Override
+	public void setStart(int[] vars, double[] values) {
+		IloNumVar[] start = new IloNumVar[vars.length];
+		for( int k = 0; k < vars.length; k++ ) start[k] = this.vars.get(vars[k]);
+		try {
+			// Only the latest start is kept
+			if( cp.getNMIPStarts() > 0 ) cp.deleteMIPStarts(0, cp.getNMIPStarts());
+			cp.addMIPStart(start, values.clone());
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void setObjective(LinearExpression expr, boolean maximize) {
+		try {
+			// A model keeps one objective across solves
+			if( objective != null ) cp.remove(objective);
+			objective = cp.addObjective(maximize ? IloObjectiveSense.Maximize : IloObjectiveSense.Minimize, convert(expr));
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public double solve() {
+		try {
+			if( !cp.solve() ) throw new IllegalStateException("No solution: " + cp.getStatus());
+			return cp.getObjValue();
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public boolean isOptimal() {
+		try {
+			return cp.getStatus() == IloCplex.Status.Optimal;
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public double getValue(int var) {
+		try {
+			return cp.getValue(vars.get(var));
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public double getValue(LinearExpression expr) {
+		try {
+			return cp.getValue(convert(expr));
+		} catch(IloException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	IloConstraint constraint(LinearExpression expr, Relation relation, double rhs) throws IloException {
+		IloLinearNumExpr e = convert(expr);
+		switch( relation ) {
+		case LE: return cp.le(e, rhs);
+		case GE: return cp.ge(e, rhs);
+		default: return cp.eq(e, rhs);
+		}
+	}
+
+	IloLinearNumExpr convert(LinearExpression expr) throws IloException {
+		IloLinearNumExpr e = cp.linearNumExpr(expr.getConstant());
+		for( int k = 0; k < expr.size(); k++ )
+			e.addTerm(expr.getCoefficient(k), vars.get(expr.getVariable(k)));
+		return e;
+	}
+
+}
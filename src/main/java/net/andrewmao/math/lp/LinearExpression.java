@@ -0,0 +1,143 @@
+package net.andrewmao.math.lp;
+
+import java.util.Arrays;
+
+/**
+ * An immutable linear expression over the variables of a {@link LinearSolver},
+ * which are referred to by index. Terms are kept sorted by variable, with each variable once.
+ *
+ * @author mao
+ *
+ */
+public final class LinearExpression {
+
+	public static final LinearExpression ZERO = new LinearExpression(new int[0], new double[0], 0);
+
+	final int[] vars;
+	final double[] coefs;
+	final double constant;
+
+	LinearExpression(int[] vars, double[] coefs, double constant) {
+		this.vars = vars;
+		this.coefs = coefs;
+		this.constant = constant;
+	}
+
+	public static LinearExpression variable(int var) {
+		return new LinearExpression(new int[] { var }, new double[] { 1 }, 0);
+	}
+
+	public static LinearExpression constant(double value) {
+		return new LinearExpression(new int[0], new double[0], value);
+	}
+
+	/**
+	 * @param coefs
+	 * @param vars
+	 * @return the sum of coefs[k] * vars[k]
+	 */
+	public static LinearExpression scalarProduct(int[] coefs, int[] vars) {
+		double[] values = new double[coefs.length];
+		for( int k = 0; k < coefs.length; k++ ) values[k] = coefs[k];
+		return of(vars.clone(), values, 0);
+	}
+
+	public static LinearExpression sum(LinearExpression... exprs) {
+		int size = 0;
+		double constant = 0;
+		for( LinearExpression e : exprs ) {
+			size += e.vars.length;
+			constant += e.constant;
+		}
+
+		int[] vars = new int[size];
+		double[] coefs = new double[size];
+		int k = 0;
+		for( LinearExpression e : exprs ) {
+			System.arraycopy(e.vars, 0, vars, k, e.vars.length);
+			System.arraycopy(e.coefs, 0, coefs, k, e.coefs.length);
+			k += e.vars.length;
+		}
+		return of(vars, coefs, constant);
+	}
+
+	public LinearExpression plus(LinearExpression other) {
+		return sum(this, other);
+	}
+
+	public LinearExpression minus(LinearExpression other) {
+		return sum(this, other.times(-1));
+	}
+
+	public LinearExpression times(double factor) {
+		double[] scaled = new double[coefs.length];
+		for( int k = 0; k < coefs.length; k++ ) scaled[k] = coefs[k] * factor;
+		return new LinearExpression(vars, scaled, constant * factor);
+	}
+
+	/**
+	 * Sorts terms by variable and adds up the coefficients of each.
+	 */
+	static LinearExpression of(int[] vars, double[] coefs, double constant) {
+		long[] keys = new long[vars.length];
+		for( int k = 0; k < vars.length; k++ ) keys[k] = ((long) vars[k] << 32) | k;
+		Arrays.sort(keys);
+
+		int[] sortedVars = new int[vars.length];
+		double[] sortedCoefs = new double[vars.length];
+		int size = 0;
+		for( long key : keys ) {
+			int var = (int) (key >>> 32);
+			double coef = coefs[(int) key];
+			if( size > 0 && sortedVars[size - 1] == var ) sortedCoefs[size - 1] += coef;
+			else {
+				sortedVars[size] = var;
+				sortedCoefs[size++] = coef;
+			}
+		}
+		return new LinearExpression(Arrays.copyOf(sortedVars, size), Arrays.copyOf(sortedCoefs, size), constant);
+	}
+
+	/**
+	 * @return the number of terms
+	 */
+	public int size() {
+		return vars.length;
+	}
+
+	public int getVariable(int term) {
+		return vars[term];
+	}
+
+	public double getCoefficient(int term) {
+		return coefs[term];
+	}
+
+	public double getConstant() {
+		return constant;
+	}
+
+	/**
+	 * @param values the value of each variable
+	 * @return
+	 */
+	public double evaluate(double[] values) {
+		double total = constant;
+		for( int k = 0; k < vars.length; k++ ) total += coefs[k] * values[vars[k]];
+		return total;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for( int k = 0; k < vars.length; k++ ) {
+			if( k > 0 ) sb.append(" + ");
+			sb.append(coefs[k]).append(" x").append(vars[k]);
+		}
+		if( constant != 0 || vars.length == 0 ) {
+			if( vars.length > 0 ) sb.append(" + ");
+			sb.append(constant);
+		}
+		return sb.toString();
+	}
+
+}
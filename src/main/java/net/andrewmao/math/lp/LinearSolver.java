@@ -0,0 +1,84 @@
+package net.andrewmao.math.lp;
+
+/**
+ * A linear or mixed integer program, built up and then solved.
+ * Variables are referred to by the index returned when they are added.
+ *
+ * An instance holds one model and is not thread-safe, so each thread solving models needs its own.
+ *
+ * @author mao
+ *
+ */
+public interface LinearSolver {
+
+	public enum Relation { LE, GE, EQ }
+
+	/**
+	 * Removes all variables and constraints.
+	 */
+	public abstract void clear();
+
+	/**
+	 * @param lower may be negative infinity
+	 * @param upper may be positive infinity
+	 * @return the index of a new continuous variable
+	 */
+	public abstract int addVariable(double lower, double upper);
+
+	/**
+	 * @return the index of a new variable that is 0 or 1
+	 */
+	public abstract int addBinaryVariable();
+
+	/**
+	 * Adds the constraint expr (relation) rhs.
+	 * @return the index of the constraint, for {@link #removeConstraint(int)}
+	 */
+	public abstract int addConstraint(LinearExpression expr, Relation relation, double rhs);
+
+	/**
+	 * Adds a constraint that only has to hold when a binary variable has the given value.
+	 * Solvers without native indicator constraints may need the variables of the expression to be bounded.
+	 * @return the index of the constraint, numbered together with the other constraints
+	 */
+	public abstract int addIndicator(int binary, int value, LinearExpression expr, Relation relation, double rhs);
+
+	/**
+	 * Removes a constraint from the model. The indices of other constraints don't change.
+	 */
+	public abstract void removeConstraint(int constraint);
+
+	/**
+	 * Removes a variable from the model, once no constraint refers to it any more.
+	 * The indices of other variables don't change.
+	 */
+	public abstract void removeVariable(int var);
+
+	/**
+	 * Gives values for some variables, such as those of a previous solution, to start the next solve from.
+	 * A start that is infeasible for the current model is ignored.
+	 */
+	public abstract void setStart(int[] vars, double[] values);
+
+	public abstract void setObjective(LinearExpression expr, boolean maximize);
+
+	/**
+	 * @return the value of the objective in the solution found, which is optimal unless {@link #isOptimal()} says otherwise
+	 * @throws IllegalStateException if the model is infeasible or unbounded
+	 */
+	public abstract double solve();
+
+	/**
+	 * @return whether the last solve proved its solution optimal, rather than stopping at a limit with the best one found
+	 */
+	public abstract boolean isOptimal();
+
+	/**
+	 * @param var
+	 * @return the value of a variable in the last solution
+	 */
+	public abstract double getValue(int var);
+
+	public abstract double getValue(LinearExpression expr);
+
+}
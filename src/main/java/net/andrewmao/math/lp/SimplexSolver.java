@@ -0,0 +1,625 @@
+package net.andrewmao.math.lp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A pure Java {@link LinearSolver}: the bounded primal simplex method on a dense tableau
+ * for linear programs, and depth-first branch and bound on its relaxations for integer variables.
+ *
+ * Variable bounds are kept out of the tableau; a nonbasic variable sits at either bound.
+ * Indicator constraints are written with a big M taken from the bounds of their variables.
+ * Variables fixed by their bounds, including removed ones, are left out of the tableau.
+ *
+ * A start set by {@link #setStart(int[], double[])} is completed into a first incumbent by a search
+ * of at most {@link #START_NODES} nodes with the given variables fixed, so that a model that changed
+ * a little since its last solve can prune with a solution near the old one from the beginning.
+ *
+ * Meant for the small models of the positional rules, not as a general replacement for a commercial solver.
+ * The search stops after {@link #MAX_NODES} nodes, or as many as set by {@link #setMaxNodes(int)},
+ * with the best solution found by then, and {@link #isOptimal()} false.
+ *
+ * @author mao
+ *
+ */
+public class SimplexSolver implements LinearSolver {
+
+	static final double EPSILON = 1e-9;
+	static final double INTEGER_TOLERANCE = 1e-6;
+	// Degenerate pivots before switching to Bland's rule
+	static final int MAX_DEGENERATE = 50;
+	static final int MAX_NODES = 1 << 20;
+	static final int START_NODES = 1 << 12;
+
+	int numVars;
+	double[] lower = new double[16];
+	double[] upper = new double[16];
+	boolean[] integer = new boolean[16];
+
+	// By index; removed constraints are null
+	final List<Row> rows = new ArrayList<Row>();
+
+	int[] startVars;
+	double[] startValues;
+
+	LinearExpression objective = LinearExpression.ZERO;
+	boolean maximize;
+
+	int maxNodes = MAX_NODES;
+
+	double[] values;
+	int nodes;
+	boolean optimal;
+	// Whether the last branch and bound searched every node it had left
+	boolean exhausted;
+
+	static class Row {
+		final LinearExpression expr;
+		final Relation relation;
+		final double rhs;
+		// For an indicator, the binary variable and the value at which the row holds; otherwise -1
+		final int binary;
+		final int value;
+
+		Row(LinearExpression expr, Relation relation, double rhs) {
+			this(expr, relation, rhs, -1, 0);
+		}
+
+		Row(LinearExpression expr, Relation relation, double rhs, int binary, int value) {
+			this.expr = expr;
+			this.relation = relation;
+			this.rhs = rhs;
+			this.binary = binary;
+			this.value = value;
+		}
+	}
+
+	@Override
+	public void clear() {
+		numVars = 0;
+		rows.clear();
+		startVars = null;
+		startValues = null;
+		objective = LinearExpression.ZERO;
+		maximize = false;
+		values = null;
+		optimal = false;
+	}
+
+	@Override
+	public int addVariable(double lower, double upper) {
+		return addVariable(lower, upper, false);
+	}
+
+	@Override
+	public int addBinaryVariable() {
+		return addVariable(0, 1, true);
+	}
+
+	int addVariable(double lb, double ub, boolean isInteger) {
+		if( lb > ub ) throw new IllegalArgumentException("Lower bound " + lb + " is above upper bound " + ub);
+		if( numVars == lower.length ) {
+			lower = Arrays.copyOf(lower, 2 * numVars);
+			upper = Arrays.copyOf(upper, 2 * numVars);
+			integer = Arrays.copyOf(integer, 2 * numVars);
+		}
+		lower[numVars] = lb;
+		upper[numVars] = ub;
+		integer[numVars] = isInteger;
+		return numVars++;
+	}
+
+	@Override
+	public int addConstraint(LinearExpression expr, Relation relation, double rhs) {
+		rows.add(new Row(expr, relation, rhs - expr.constant));
+		return rows.size() - 1;
+	}
+
+	@Override
+	public int addIndicator(int binary, int value, LinearExpression expr, Relation relation, double rhs) {
+		if( !integer[binary] || lower[binary] < 0 || upper[binary] > 1 )
+			throw new IllegalArgumentException("Variable " + binary + " is not binary");
+		rows.add(new Row(expr, relation, rhs - expr.constant, binary, value));
+		return rows.size() - 1;
+	}
+
+	@Override
+	public void removeConstraint(int constraint) {
+		rows.set(constraint, null);
+	}
+
+	@Override
+	public void removeVariable(int var) {
+		// Fixed at 0, which leaves it out of the tableau
+		lower[var] = upper[var] = 0;
+		integer[var] = false;
+	}
+
+	@Override
+	public void setStart(int[] vars, double[] values) {
+		if( vars.length != values.length )
+			throw new IllegalArgumentException(vars.length + " variables but " + values.length + " values");
+		startVars = vars.clone();
+		startValues = values.clone();
+	}
+
+	@Override
+	public void setObjective(LinearExpression expr, boolean maximize) {
+		this.objective = expr;
+		this.maximize = maximize;
+	}
+
+	@Override
+	public double getValue(int var) {
+		return values[var];
+	}
+
+	@Override
+	public double getValue(LinearExpression expr) {
+		return expr.evaluate(values);
+	}
+
+	/**
+	 * @return the number of branch and bound nodes in the last solve
+	 */
+	public int getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Limits the number of branch and bound nodes searched for each solve.
+	 * @param maxNodes
+	 */
+	public void setMaxNodes(int maxNodes) {
+		if( maxNodes < 1 ) throw new IllegalArgumentException("Need at least one node");
+		this.maxNodes = maxNodes;
+	}
+
+	@Override
+	public boolean isOptimal() {
+		return optimal;
+	}
+
+	@Override
+	public double solve() {
+		List<Row> all = new ArrayList<Row>(rows.size());
+		for( Row row : rows ) {
+			if( row == null ) continue;
+			if( row.binary < 0 ) all.add(row);
+			else addBigM(row, all);
+		}
+
+		double[] cost = new double[numVars];
+		double sign = maximize ? -1 : 1;
+		for( int k = 0; k < objective.size(); k++ )
+			cost[objective.vars[k]] += sign * objective.coefs[k];
+
+		nodes = 0;
+		double[] start = null;
+		if( startVars != null && mostFractional(null, -1) >= 0 ) {
+			double[] lb = Arrays.copyOf(lower, numVars);
+			double[] ub = Arrays.copyOf(upper, numVars);
+			boolean valid = true;
+			for( int k = 0; k < startVars.length; k++ ) {
+				int j = startVars[k];
+				double v = integer[j] ? Math.rint(startValues[k]) : startValues[k];
+				if( v < lower[j] - INTEGER_TOLERANCE || v > upper[j] + INTEGER_TOLERANCE ) valid = false;
+				lb[j] = ub[j] = Math.max(lower[j], Math.min(upper[j], v));
+			}
+			if( valid ) start = branchAndBound(all, cost, lb, ub, null, Math.min(START_NODES, maxNodes));
+		}
+		startVars = null;
+		startValues = null;
+
+		values = branchAndBound(all, cost, Arrays.copyOf(lower, numVars), Arrays.copyOf(upper, numVars), start, maxNodes);
+		optimal = exhausted;
+		if( values == null ) {
+			if( !exhausted ) throw new IllegalStateException("No solution found in " + maxNodes + " nodes");
+			throw new IllegalStateException("Model is infeasible");
+		}
+		return objective.evaluate(values);
+	}
+
+	/**
+	 * Writes an indicator as expr - rhs >= -M (1 - z) or similar, where z is 1 when the constraint is on.
+	 */
+	void addBigM(Row row, List<Row> all) {
+		// off is 1 - z, as an expression in the binary
+		LinearExpression off = row.value == 1 ?
+				LinearExpression.constant(1).minus(LinearExpression.variable(row.binary)) :
+				LinearExpression.variable(row.binary);
+
+		if( row.relation != Relation.LE ) {
+			// expr >= rhs - M off, with M = rhs - min(expr)
+			double m = row.rhs - bound(row.expr, false);
+			all.add(new Row(row.expr.plus(off.times(m)), Relation.GE, row.rhs - off.constant * m));
+		}
+		if( row.relation != Relation.GE ) {
+			// expr <= rhs + M off, with M = max(expr) - rhs
+			double m = bound(row.expr, true) - row.rhs;
+			all.add(new Row(row.expr.minus(off.times(m)), Relation.LE, row.rhs + off.constant * m));
+		}
+	}
+
+	double bound(LinearExpression expr, boolean max) {
+		double total = 0;
+		for( int k = 0; k < expr.size(); k++ ) {
+			double c = expr.coefs[k];
+			int v = expr.vars[k];
+			total += (c > 0) == max ? c * upper[v] : c * lower[v];
+		}
+		if( Double.isInfinite(total) || Double.isNaN(total) )
+			throw new IllegalArgumentException("Indicator constraint needs bounded variables: " + expr);
+		return total;
+	}
+
+	/**
+	 * @param incumbent a feasible solution to prune with from the start, or null
+	 * @return the best solution found within the bounds, or null if there is none
+	 */
+	double[] branchAndBound(List<Row> all, double[] cost, double[] lb, double[] ub, double[] incumbent, int maxNodes) {
+		double[] best = incumbent;
+		double bestCost = Double.POSITIVE_INFINITY;
+		if( incumbent != null ) {
+			bestCost = 0;
+			for( int j = 0; j < numVars; j++ ) bestCost += cost[j] * incumbent[j];
+		}
+
+		Deque<double[][]> stack = new ArrayDeque<double[][]>();
+		stack.push(new double[][] { lb, ub });
+
+		int limit = nodes + maxNodes;
+		while( !stack.isEmpty() && nodes < limit ) {
+			double[][] node = stack.pop();
+			nodes++;
+
+			double[] x = new Tableau(all, cost, node[0], node[1]).solve();
+			if( x == null ) continue;
+
+			double value = 0;
+			for( int j = 0; j < numVars; j++ ) value += cost[j] * x[j];
+			if( value >= bestCost - EPSILON * (1 + Math.abs(bestCost)) ) continue;
+
+			// Branch on the most fractional integer variable
+			int branch = mostFractional(x, INTEGER_TOLERANCE);
+
+			if( branch < 0 ) {
+				// Fix the integers exactly, so that big M constraints hold without their tolerance
+				double[] fixedLower = node[0].clone();
+				double[] fixedUpper = node[1].clone();
+				for( int j = 0; j < numVars; j++ )
+					if( integer[j] ) fixedLower[j] = fixedUpper[j] = Math.rint(x[j]);
+				double[] fixed = new Tableau(all, cost, fixedLower, fixedUpper).solve();
+
+				if( fixed != null ) {
+					value = 0;
+					for( int j = 0; j < numVars; j++ ) value += cost[j] * fixed[j];
+					if( value < bestCost ) {
+						best = fixed;
+						bestCost = value;
+					}
+					continue;
+				}
+
+				// Only nearly integral; branch on what is left
+				branch = mostFractional(x, 0);
+				if( branch < 0 ) continue;
+			}
+
+			double[][] down = { node[0], node[1].clone() };
+			down[1][branch] = Math.floor(x[branch]);
+			double[][] up = { node[0].clone(), node[1] };
+			up[0][branch] = Math.ceil(x[branch]);
+
+			// Search the side nearer the relaxation first
+			if( x[branch] - Math.floor(x[branch]) < 0.5 ) {
+				stack.push(up);
+				stack.push(down);
+			}
+			else {
+				stack.push(down);
+				stack.push(up);
+			}
+		}
+		exhausted = stack.isEmpty();
+		return best;
+	}
+
+	/**
+	 * @return the integer variable furthest from integral in x, -1 if none is further than the tolerance,
+	 * or with a null x, any integer variable
+	 */
+	int mostFractional(double[] x, double tolerance) {
+		int branch = -1;
+		double fraction = tolerance;
+		for( int j = 0; j < numVars; j++ ) {
+			if( !integer[j] ) continue;
+			if( x == null ) return j;
+			double f = Math.abs(x[j] - Math.rint(x[j]));
+			if( f > fraction ) {
+				fraction = f;
+				branch = j;
+			}
+		}
+		return branch;
+	}
+
+	/**
+	 * A linear program min c x, subject to the rows and lower <= x <= upper, in the form
+	 * min c' y, A y + slack + artificial = b, 0 <= y <= u, that the simplex method works on.
+	 */
+	static class Tableau {
+		final int n;
+		final int m;
+		// Original variable j is offset[j] + sign[j] y[col[j]], minus y[neg[j]] if it is free,
+		// or just offset[j] with col[j] = -1 if its bounds fix it
+		final double[] offset;
+		final double[] sign;
+		final int[] col;
+		final int[] neg;
+
+		final int numCols;
+		final int firstArtificial;
+		final double[][] t;
+		final double[] beta;
+		final int[] basis;
+		final double[] colUpper;
+		final boolean[] atUpper;
+		final double[] colCost;
+		final double[] d;
+
+		Tableau(List<Row> rows, double[] cost, double[] lower, double[] upper) {
+			n = cost.length;
+			m = rows.size();
+
+			offset = new double[n];
+			sign = new double[n];
+			col = new int[n];
+			neg = new int[n];
+			int numY = 0;
+			List<Double> yUpper = new ArrayList<Double>();
+			for( int j = 0; j < n; j++ ) {
+				neg[j] = -1;
+				if( lower[j] == upper[j] ) {
+					offset[j] = lower[j];
+					col[j] = -1;
+					continue;
+				}
+				else if( !Double.isInfinite(lower[j]) ) {
+					offset[j] = lower[j];
+					sign[j] = 1;
+					yUpper.add(upper[j] - lower[j]);
+				}
+				else if( !Double.isInfinite(upper[j]) ) {
+					offset[j] = upper[j];
+					sign[j] = -1;
+					yUpper.add(Double.POSITIVE_INFINITY);
+				}
+				else {
+					sign[j] = 1;
+					yUpper.add(Double.POSITIVE_INFINITY);
+				}
+				col[j] = numY++;
+				if( Double.isInfinite(lower[j]) && Double.isInfinite(upper[j]) ) {
+					neg[j] = numY++;
+					yUpper.add(Double.POSITIVE_INFINITY);
+				}
+			}
+
+			int numSlack = 0;
+			for( Row row : rows ) if( row.relation != Relation.EQ ) numSlack++;
+
+			firstArtificial = numY + numSlack;
+			numCols = firstArtificial + m;
+			t = new double[m][numCols];
+			beta = new double[m];
+			basis = new int[m];
+			colUpper = new double[numCols];
+			atUpper = new boolean[numCols];
+			colCost = new double[numCols];
+			d = new double[numCols];
+
+			for( int k = 0; k < numY; k++ ) colUpper[k] = yUpper.get(k);
+			for( int k = numY; k < numCols; k++ ) colUpper[k] = Double.POSITIVE_INFINITY;
+
+			for( int j = 0; j < n; j++ ) {
+				if( col[j] < 0 ) continue;
+				colCost[col[j]] += sign[j] * cost[j];
+				if( neg[j] >= 0 ) colCost[neg[j]] -= cost[j];
+			}
+
+			int slack = numY;
+			for( int i = 0; i < m; i++ ) {
+				Row row = rows.get(i);
+				double[] r = t[i];
+				double b = row.rhs;
+				LinearExpression e = row.expr;
+				for( int k = 0; k < e.size(); k++ ) {
+					int j = e.vars[k];
+					double a = e.coefs[k];
+					b -= a * offset[j];
+					if( col[j] >= 0 ) r[col[j]] += a * sign[j];
+					if( neg[j] >= 0 ) r[neg[j]] -= a;
+				}
+				if( row.relation == Relation.LE ) r[slack++] = 1;
+				else if( row.relation == Relation.GE ) r[slack++] = -1;
+
+				if( b < 0 ) {
+					for( int k = 0; k < firstArtificial; k++ ) r[k] = -r[k];
+					b = -b;
+				}
+				r[firstArtificial + i] = 1;
+				basis[i] = firstArtificial + i;
+				beta[i] = b;
+			}
+		}
+
+		/**
+		 * @return the optimal x, or null if infeasible
+		 * @throws IllegalStateException if unbounded
+		 */
+		double[] solve() {
+			// A variable with empty bounds can't be fixed by the simplex method
+			for( int k = 0; k < firstArtificial; k++ )
+				if( colUpper[k] < -EPSILON ) return null;
+
+			// Phase 1: minimize the artificials
+			double[] phase1 = new double[numCols];
+			for( int k = firstArtificial; k < numCols; k++ ) phase1[k] = 1;
+			setCosts(phase1);
+			iterate();
+
+			double infeasibility = 0, scale = 1;
+			for( int i = 0; i < m; i++ ) {
+				if( basis[i] >= firstArtificial ) infeasibility += beta[i];
+				scale = Math.max(scale, Math.abs(beta[i]));
+			}
+			if( infeasibility > 1e-7 * scale ) return null;
+
+			// Drive artificials out of the basis, and keep them at 0
+			for( int i = 0; i < m; i++ ) {
+				if( basis[i] < firstArtificial ) continue;
+				for( int k = 0; k < firstArtificial; k++ ) {
+					if( !isBasic(k) && Math.abs(t[i][k]) > 1e-7 ) {
+						beta[i] = atUpper[k] ? colUpper[k] : 0;
+						pivot(i, k);
+						atUpper[k] = false;
+						break;
+					}
+				}
+			}
+			for( int k = firstArtificial; k < numCols; k++ ) colUpper[k] = 0;
+
+			// Phase 2
+			setCosts(colCost);
+			iterate();
+
+			double[] y = new double[numCols];
+			for( int k = 0; k < numCols; k++ ) if( atUpper[k] ) y[k] = colUpper[k];
+			for( int i = 0; i < m; i++ ) y[basis[i]] = beta[i];
+
+			double[] x = new double[n];
+			for( int j = 0; j < n; j++ ) {
+				x[j] = offset[j];
+				if( col[j] >= 0 ) x[j] += sign[j] * y[col[j]];
+				if( neg[j] >= 0 ) x[j] -= y[neg[j]];
+			}
+			return x;
+		}
+
+		boolean isBasic(int k) {
+			for( int b : basis ) if( b == k ) return true;
+			return false;
+		}
+
+		void setCosts(double[] c) {
+			System.arraycopy(c, 0, d, 0, numCols);
+			for( int i = 0; i < m; i++ ) {
+				double cb = c[basis[i]];
+				if( cb == 0 ) continue;
+				double[] r = t[i];
+				for( int k = 0; k < numCols; k++ ) d[k] -= cb * r[k];
+			}
+		}
+
+		void iterate() {
+			boolean[] basic = new boolean[numCols];
+			for( int b : basis ) basic[b] = true;
+
+			int degenerate = 0;
+			int maxIterations = 50 * (m + numCols) + 1000;
+			for( int iter = 0; iter < maxIterations; iter++ ) {
+				boolean bland = degenerate > MAX_DEGENERATE;
+
+				// Entering variable
+				int enter = -1;
+				double bestScore = EPSILON;
+				for( int k = 0; k < numCols; k++ ) {
+					if( basic[k] || colUpper[k] <= EPSILON ) continue;
+					double score = atUpper[k] ? d[k] : -d[k];
+					if( score > bestScore ) {
+						enter = k;
+						if( bland ) break;
+						bestScore = score;
+					}
+				}
+				if( enter < 0 ) return;
+
+				double dir = atUpper[enter] ? -1 : 1;
+
+				// Ratio test
+				double step = colUpper[enter];
+				int leave = -1;
+				boolean leaveAtUpper = false;
+				for( int i = 0; i < m; i++ ) {
+					double a = t[i][enter] * dir;
+					double limit;
+					boolean toUpper;
+					if( a > EPSILON ) {
+						limit = Math.max(0, beta[i]) / a;
+						toUpper = false;
+					}
+					else if( a < -EPSILON && !Double.isInfinite(colUpper[basis[i]]) ) {
+						limit = Math.max(0, colUpper[basis[i]] - beta[i]) / -a;
+						toUpper = true;
+					}
+					else continue;
+
+					if( limit < step - EPSILON || limit <= step && leave >= 0 && bland && basis[i] < basis[leave] ) {
+						step = limit;
+						leave = i;
+						leaveAtUpper = toUpper;
+					}
+				}
+				if( Double.isInfinite(step) ) throw new IllegalStateException("Model is unbounded");
+
+				degenerate = step < EPSILON ? degenerate + 1 : 0;
+
+				for( int i = 0; i < m; i++ ) beta[i] -= t[i][enter] * dir * step;
+
+				if( leave < 0 ) {
+					// The entering variable moves to its other bound
+					atUpper[enter] = !atUpper[enter];
+					continue;
+				}
+
+				double entered = atUpper[enter] ? colUpper[enter] - step : step;
+				int left = basis[leave];
+				pivot(leave, enter);
+				beta[leave] = entered;
+				atUpper[enter] = false;
+				atUpper[left] = leaveAtUpper;
+				basic[left] = false;
+				basic[enter] = true;
+			}
+			throw new IllegalStateException("Simplex method did not converge");
+		}
+
+		void pivot(int r, int k) {
+			double[] row = t[r];
+			double p = row[k];
+			for( int c = 0; c < numCols; c++ ) row[c] /= p;
+			row[k] = 1;
+
+			for( int i = 0; i < m; i++ ) {
+				if( i == r ) continue;
+				double f = t[i][k];
+				if( f == 0 ) continue;
+				double[] other = t[i];
+				for( int c = 0; c < numCols; c++ ) other[c] -= f * row[c];
+				other[k] = 0;
+			}
+
+			double f = d[k];
+			if( f != 0 ) {
+				for( int c = 0; c < numCols; c++ ) d[c] -= f * row[c];
+				d[k] = 0;
+			}
+			basis[r] = k;
+		}
+	}
+
+}
@@ -1,5 +1,9 @@
 package net.andrewmao.models.discretechoice;
 
+import java.util.Arrays;
+
+import net.andrewmao.socialchoice.rules.PairwiseSketch;
+
 import org.apache.commons.math3.analysis.DifferentiableMultivariateFunction;
 import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.analysis.MultivariateVectorFunction;
@@ -9,17 +13,94 @@ import org.apache.commons.math3.linear.RealVector;
 /**
  * Bradley-Terry negative log likelihood with no prior, and first item fixed to strength 0.
  * 
+ * Only the nonzero win counts are kept, so that the likelihood can also be computed from
+ * a sparse {@link PairwiseSketch} over many items.
+ * 
  * @author mao
  *
  */
 @SuppressWarnings("deprecation")
 public class BTNLogLikelihood implements DifferentiableMultivariateFunction {
 	
-	double[][] wins;
+	final int numItems;
+	
+	// i beats j, count times, for each nonzero count in row order
+	final int[] winners;
+	final int[] losers;
+	final double[] counts;
+	
+	// Entries won by item i are winEntries[winStart[i]], ..., winEntries[winStart[i + 1] - 1], and likewise for losses
+	final int[] winStart;
+	final int[] winEntries;
+	final int[] lossStart;
+	final int[] lossEntries;
 	
 	public BTNLogLikelihood(double[][] wins) {
-		this.wins = wins;		
+		numItems = wins.length;
+		
+		int entries = 0;
+		for( int i = 0; i < wins.length; i++ )
+			for( int j = 0; j < wins.length; j++ )
+				if( i != j && wins[i][j] != 0 ) entries++;
+		
+		winners = new int[entries];
+		losers = new int[entries];
+		counts = new double[entries];
+		
+		int e = 0;
+		for( int i = 0; i < wins.length; i++ ) {
+			for( int j = 0; j < wins.length; j++ ) {
+				if( i == j || wins[i][j] == 0 ) continue;
+				winners[e] = i;
+				losers[e] = j;
+				counts[e++] = wins[i][j];
+			}
+		}
 		
+		winStart = new int[numItems + 1];
+		winEntries = groupBy(winners, winStart);
+		lossStart = new int[numItems + 1];
+		lossEntries = groupBy(losers, lossStart);
+	}
+	
+	public BTNLogLikelihood(PairwiseSketch sketch) {
+		numItems = sketch.getNumCandidates();
+		
+		int entries = sketch.getNumEntries();
+		winners = new int[entries];
+		losers = new int[entries];
+		counts = new double[entries];
+		
+		for( int e = 0; e < entries; e++ ) {
+			winners[e] = sketch.getWinner(e);
+			losers[e] = sketch.getLoser(e);
+			counts[e] = sketch.getEstimate(e);
+		}
+		
+		winStart = new int[numItems + 1];
+		winEntries = groupBy(winners, winStart);
+		lossStart = new int[numItems + 1];
+		lossEntries = groupBy(losers, lossStart);
+	}
+	
+	/**
+	 * Sorts the entries by item, with a counting sort.
+	 * @param items the item of each entry
+	 * @param start filled in with the first sorted entry of each item, and the number of entries at the end
+	 * @return the entries, grouped by item
+	 */
+	static int[] groupBy(int[] items, int[] start) {
+		for( int item : items ) start[item + 1]++;
+		for( int i = 1; i < start.length; i++ ) start[i] += start[i - 1];
+		
+		int[] next = Arrays.copyOf(start, start.length - 1);
+		int[] entries = new int[items.length];
+		for( int e = 0; e < items.length; e++ ) entries[next[items[e]]++] = e;
+		return entries;
+	}
+
+	public int getNumItems() {
+		return numItems;
 	}
 
 	@Override
@@ -27,13 +108,9 @@ public class BTNLogLikelihood implements DifferentiableMultivariateFunction {
 		RealVector theta = new ArrayRealVector(new double[] {0.0}, point);
 		
 		double value = 0;
-		for( int i = 0; i < wins.length; i++ ) {
-			for( int j = 0; j < wins.length; j++ ) {
-				if( i == j || wins[i][j] == 0 ) continue;
-				
-				// i beats j, wins[i][j] times
-				value += wins[i][j] * Math.log(1 + Math.exp(theta.getEntry(j) - theta.getEntry(i))); 
-			}
+		for( int e = 0; e < counts.length; e++ ) {
+			// i beats j, wins[i][j] times
+			value += counts[e] * Math.log(1 + Math.exp(theta.getEntry(losers[e]) - theta.getEntry(winners[e]))); 
 		}
 		
 		return value;				
@@ -48,21 +125,19 @@ public class BTNLogLikelihood implements DifferentiableMultivariateFunction {
 				
 				double value = 0;
 				// add wins
-				for( int j = 0; j < wins.length; j++ ) {
-					// ignore self or no data
-					if( j == k+1 || wins[k+1][j] == 0 ) continue;
+				for( int w = winStart[k+1]; w < winStart[k+2]; w++ ) {
+					int e = winEntries[w];
 					
-					double prob = Math.exp(theta.getEntry(j) - theta.getEntry(k+1));
-					value -= wins[k+1][j]/(1 + prob) * prob;				
+					double prob = Math.exp(theta.getEntry(losers[e]) - theta.getEntry(k+1));
+					value -= counts[e]/(1 + prob) * prob;				
 				}
 				
 				// add losses
-				for( int i = 0; i < wins.length; i++ ) {
-					// ignore self or no data
-					if( i == k+1 || wins[i][k+1] == 0 ) continue;
+				for( int l = lossStart[k+1]; l < lossStart[k+2]; l++ ) {
+					int e = lossEntries[l];
 					
-					double prob = Math.exp(theta.getEntry(k+1) - theta.getEntry(i));
-					value += wins[i][k+1]/(1 + prob) * prob;				
+					double prob = Math.exp(theta.getEntry(k+1) - theta.getEntry(winners[e]));
+					value += counts[e]/(1 + prob) * prob;				
 				}
 				
 				return value;
@@ -80,16 +155,15 @@ public class BTNLogLikelihood implements DifferentiableMultivariateFunction {
 				
 				double[] values = new double[point.length];
 				
-				for( int i = 0; i < wins.length; i++ ) {
-					for( int j = 0; j < wins.length; j++ ) {
-						if( i == j || wins[i][j] == 0 ) continue;
-						
-						double prob = Math.exp(theta.getEntry(j) - theta.getEntry(i));
-						double value = wins[i][j]/(1+prob) * prob;
-						
-						if( i > 0 ) values[i-1] -= value;
-						if( j > 0 ) values[j-1] += value;
-					}
+				for( int e = 0; e < counts.length; e++ ) {
+					int i = winners[e];
+					int j = losers[e];
+					
+					double prob = Math.exp(theta.getEntry(j) - theta.getEntry(i));
+					double value = counts[e]/(1+prob) * prob;
+					
+					if( i > 0 ) values[i-1] -= value;
+					if( j > 0 ) values[j-1] += value;
 				}
 								
 				return values;
@@ -5,7 +5,9 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.andrewmao.models.noise.GumbelNoiseModel;
+import net.andrewmao.socialchoice.rules.PairwiseSketch;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.ProfileStatistics;
 
 import org.apache.commons.math3.exception.MathIllegalStateException;
 import org.apache.commons.math3.linear.ArrayRealVector;
@@ -44,11 +46,24 @@ public class BradleyTerryModel extends PairwiseDiscreteChoiceEstimator<GumbelNoi
 	
 	@Override
 	public double[] getParameters(double[][] wins) {				
-		BTNLogLikelihood nll = new BTNLogLikelihood(wins);
+		return getParameters(new BTNLogLikelihood(wins));
+	}
+	
+	/**
+	 * Estimates strengths from approximate pairwise counts, for more items than fit in a win matrix.
+	 * @param sketch
+	 * @return strength of each candidate id, with the first fixed to 0
+	 */
+	public double[] getParameters(PairwiseSketch sketch) {
+		return getParameters(new BTNLogLikelihood(sketch));
+	}
+	
+	double[] getParameters(BTNLogLikelihood nll) {
+		int numItems = nll.getNumItems();
 		
 		OptimizationData func = new ObjectiveFunction(nll);
 		OptimizationData grad = new ObjectiveFunctionGradient(nll.gradient());		
-		OptimizationData init = new InitialGuess(new double[wins.length - 1]);
+		OptimizationData init = new InitialGuess(new double[numItems - 1]);
 				
 		PointValuePair result = null;
 		// use Polak-Ribiere unless fails to converge
@@ -61,7 +76,7 @@ public class BradleyTerryModel extends PairwiseDiscreteChoiceEstimator<GumbelNoi
 			/* Had problems with returning 0.
 			 * Initialize with some small random numbers...
 			 */
-			double[] start = new double[wins.length - 1];
+			double[] start = new double[numItems - 1];
 			for( int i = 0; i < start.length; i++ )
 				start[i] = 0.1 * Math.random() - 0.5;
 			init = new InitialGuess(start);
@@ -78,11 +93,16 @@ public class BradleyTerryModel extends PairwiseDiscreteChoiceEstimator<GumbelNoi
 
 	@Override
 	public <T> GumbelNoiseModel<T> fitModel(PreferenceProfile<T> profile, boolean useAllPairs) {
-		List<T> ordering = Arrays.asList(profile.getSortedCandidates());
+		return fitModel(profile.getStatistics(), useAllPairs);
+	}
+
+	@Override
+	public <T> GumbelNoiseModel<T> fitModel(ProfileStatistics<T> stats, boolean useAllPairs) {
+		List<T> ordering = Arrays.asList(stats.getSortedCandidates());
 		
 		double[][] wins = useAllPairs ? 
-				super.addAllPairs(profile, ordering) : 
-					super.addAdjacentPairs(profile, ordering);
+				super.addAllPairs(stats, ordering) : 
+					super.addAdjacentPairs(stats, ordering);
 		
 		double[] strParams = getParameters(wins);
 		
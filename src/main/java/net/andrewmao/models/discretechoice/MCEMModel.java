@@ -1,6 +1,5 @@
 package net.andrewmao.models.discretechoice;
 
-import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
@@ -11,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.andrewmao.models.noise.NoiseModel;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
 
 /**
  * Implementation of Azari, Parkes, Xia paper on RUM 
@@ -44,7 +44,7 @@ public abstract class MCEMModel<T, M extends NoiseModel<?>, P> extends RandomUti
 	/*
 	 * Implemented by subclasses
 	 */
-	protected abstract void initialize(List<int[]> rankings, int numItems);	
+	protected abstract void initialize(RankingMultiset<?> rankings);	
 	protected abstract void eStep(int iter);
 	protected abstract void addData(T data);
 	protected abstract void mStep();
@@ -52,7 +52,7 @@ public abstract class MCEMModel<T, M extends NoiseModel<?>, P> extends RandomUti
 	protected abstract P getFinalParameters();	
 		
 	@Override
-	public synchronized P getParameters(List<int[]> rankings, int numItems) {
+	public synchronized P getParameters(RankingMultiset<?> rankings) {
 		/*
 		 * NOT reentrant. Don't call this from multiple threads.
 		 */		
@@ -60,7 +60,7 @@ public abstract class MCEMModel<T, M extends NoiseModel<?>, P> extends RandomUti
 		ecs = new ExecutorCompletionService<T>(EstimatorUtils.threadPool);
 		submittedJobs = new AtomicInteger(0);
 		
-		initialize(rankings, numItems);
+		initialize(rankings);
 		double ll = Double.NEGATIVE_INFINITY;
  
 		for( int i = 0; i < maxIters; i++ ) {
@@ -16,17 +16,13 @@ import org.apache.commons.math3.linear.RealVector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
-import com.google.common.collect.Multiset.Entry;
-import com.google.common.primitives.Ints;
-
 import net.andrewmao.models.noise.MeanVarParams;
 import net.andrewmao.models.noise.NormalNoiseModel;
 import net.andrewmao.probability.MultivariateNormal;
 import net.andrewmao.probability.MultivariateNormal.EX2Result;
 import net.andrewmao.probability.MultivariateNormal.ExpResult;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
 import net.andrewmao.stat.MultivariateMean;
 
 /**
@@ -55,8 +51,8 @@ public class OrderedNormalEM extends RandomUtilityEstimator<NormalNoiseModel<?>,
 	}
 
 	@Override
-	public MeanVarParams getParameters(List<int[]> rankings, int numItems) {
-		int m = numItems;		
+	public MeanVarParams getParameters(RankingMultiset<?> rankings) {
+		int m = rankings.getNumCandidates();		
 		
 		final RealVector mean = new ArrayRealVector(m, 0.0d);
 //		RealVector mean = new ArrayRealVector(new NormalDistribution(0,1).sample(m), false);		
@@ -66,11 +62,6 @@ public class OrderedNormalEM extends RandomUtilityEstimator<NormalNoiseModel<?>,
 		if( floatVariance ) m2Stats = new MultivariateMean(m);
 		double ll = Double.NEGATIVE_INFINITY;
 		MutableDouble currentLL = new MutableDouble();
-		
-		// Pre-compute a single hash of rankings
-		Multiset<List<Integer>> counts = HashMultiset.create();			
-		for( int[] ranking : rankings )
-			counts.add(Ints.asList(ranking));
 				
 		for(int i = 0; i < maxIter; i++ ) {
 			// Need to empty out the previous iteration's means. Nasty bug ;) 
@@ -85,10 +76,10 @@ public class OrderedNormalEM extends RandomUtilityEstimator<NormalNoiseModel<?>,
 			 * E-step: compute conditional expectation
 			 * only need to compute over unique rankings
 			 */															
-			List<Callable<NormalMoments>> tasks = new ArrayList<Callable<NormalMoments>>(counts.entrySet().size());									
-			for( Entry<List<Integer>> e : counts.entrySet() ) {
-				final int[] ranking = Ints.toArray(e.getElement());	
-				final int weight = e.getCount();								
+			List<Callable<NormalMoments>> tasks = new ArrayList<Callable<NormalMoments>>(rankings.getNumRows());									
+			for( int r = 0; r < rankings.getNumRows(); r++ ) {
+				final int[] ranking = rankings.getIndices(r);	
+				final int weight = rankings.getWeight(r);								
 
 				tasks.add(new Callable<NormalMoments>() {
 					@Override
@@ -157,10 +148,8 @@ public class OrderedNormalEM extends RandomUtilityEstimator<NormalNoiseModel<?>,
 			for (Future<NormalMoments> future : EstimatorUtils.threadPool.invokeAll(tasks)) {
 				NormalMoments datum = future.get();
 				
-				for( int j = 0; j < datum.weight; j++ ) {
-					m1Stats.addValue(datum.m1);
-					if( floatVariance ) m2Stats.addValue(datum.m2);
-				}				
+				m1Stats.addValue(datum.m1, datum.weight);
+				if( floatVariance ) m2Stats.addValue(datum.m2, datum.weight);
 				currentLL.add(datum.weight * Math.log(datum.cdf));
 			}
 		} catch (InterruptedException | ExecutionException e) {
@@ -285,10 +274,10 @@ public class OrderedNormalEM extends RandomUtilityEstimator<NormalNoiseModel<?>,
 
 	@Override
 	public <T> NormalNoiseModel<T> fitModelOrdinal(PreferenceProfile<T> profile) {
-		List<T> ordering = Arrays.asList(profile.getSortedCandidates());
-		List<int[]> rankings = profile.getIndices(ordering);		
+		RankingMultiset<T> rankings = RankingMultiset.of(profile);
+		List<T> ordering = Arrays.asList(rankings.getSortedCandidates());
 				
-		MeanVarParams params = getParameters(rankings, ordering.size());								
+		MeanVarParams params = getParameters(rankings);								
 		NormalNoiseModel<T> nn = new NormalNoiseModel<T>(ordering, params);								
 		nn.setFittedLikelihood(params.fittedLikelihood);
 		
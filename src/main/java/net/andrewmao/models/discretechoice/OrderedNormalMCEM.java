@@ -8,16 +8,12 @@ import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
-import com.google.common.collect.Multiset.Entry;
-import com.google.common.primitives.Ints;
-
 import net.andrewmao.models.noise.MeanVarParams;
 import net.andrewmao.models.noise.NormalLogLikelihood;
 import net.andrewmao.models.noise.NormalNoiseModel;
 import net.andrewmao.probability.MultivariateNormal;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
 import net.andrewmao.stat.MultivariateMean;
 
 /**
@@ -43,9 +39,7 @@ public class OrderedNormalMCEM extends MCEMModel<NormalMoments, NormalNoiseModel
 	NormalLogLikelihood ll;	
 	volatile double lastLL;
 	
-	List<int[]> rankings;
-	int numItems;	
-	Multiset<List<Integer>> counts;
+	RankingMultiset<?> counts;
 	
 	/**
 	 * Created an ordered normal model using MCEM. A fixed variance is set to 1.
@@ -72,9 +66,9 @@ public class OrderedNormalMCEM extends MCEMModel<NormalMoments, NormalNoiseModel
 	}
 	
 	@Override
-	protected void initialize(List<int[]> rankings, int m) {
-		this.rankings = rankings;
-		this.numItems = m;
+	protected void initialize(RankingMultiset<?> rankings) {
+		int m = rankings.getNumCandidates();
+		this.counts = rankings;
 		
 		m1Stats = new MultivariateMean(m);				
 		delta = new ArrayRealVector(start);
@@ -91,10 +85,6 @@ public class OrderedNormalMCEM extends MCEMModel<NormalMoments, NormalNoiseModel
 				
 		ll = new NormalLogLikelihood(delta, variance, 
 				EstimatorUtils.threadPool, MultivariateNormal.DEFAULT_INSTANCE);
-				
-		counts = HashMultiset.create();			
-		for( int[] ranking : rankings )
-			counts.add(Ints.asList(ranking));
 	}
 
 	@Override
@@ -108,9 +98,9 @@ public class OrderedNormalMCEM extends MCEMModel<NormalMoments, NormalNoiseModel
 		m1Stats.clear();
 		if( floatVariance ) m2Stats.clear();	
 		
-		for( Entry<List<Integer>> e : counts.entrySet() ) {
-			int[] ranking = Ints.toArray(e.getElement());
-			int weight = e.getCount();
+		for( int r = 0; r < counts.getNumRows(); r++ ) {
+			int[] ranking = counts.getIndices(r);
+			int weight = counts.getWeight(r);
 			
 			super.addJob(new NormalGibbsSampler(delta, variance, ranking, samples, floatVariance, weight));							
 		}
@@ -118,10 +108,8 @@ public class OrderedNormalMCEM extends MCEMModel<NormalMoments, NormalNoiseModel
 
 	@Override
 	protected void addData(NormalMoments data) {
-		for( int i = 0; i < data.weight; i++ ) {
-			m1Stats.addValue(data.m1);
-			if( floatVariance ) m2Stats.addValue(data.m2);	
-		}
+		m1Stats.addValue(data.m1, data.weight);
+		if( floatVariance ) m2Stats.addValue(data.m2, data.weight);
 	}
 	
 	@Override
@@ -173,14 +161,14 @@ public class OrderedNormalMCEM extends MCEMModel<NormalMoments, NormalNoiseModel
 
 	@Override
 	public <T> NormalNoiseModel<T> fitModelOrdinal(PreferenceProfile<T> profile) {		
-		List<T> ordering = Arrays.asList(profile.getSortedCandidates());
-		List<int[]> rankings = profile.getIndices(ordering);
+		RankingMultiset<T> rankings = RankingMultiset.of(profile);
+		List<T> ordering = Arrays.asList(rankings.getSortedCandidates());
 		
 		// Default initialization if setup not called
 		if (this.start == null || this.start.length != ordering.size() )
 			setup(new NormalDistribution().sample(ordering.size()));
 		
-		MeanVarParams params = getParameters(rankings, ordering.size());		
+		MeanVarParams params = getParameters(rankings);		
 		
 		NormalNoiseModel<T> nn = new NormalNoiseModel<T>(ordering, params);
 		nn.setFittedLikelihood(lastLL);
@@ -5,38 +5,32 @@ import java.util.List;
 import net.andrewmao.models.noise.NoiseModel;
 import net.andrewmao.models.noise.OrdinalEstimator;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.ProfileStatistics;
 
 public abstract class PairwiseDiscreteChoiceEstimator<M extends NoiseModel<?>> 
 implements OrdinalEstimator<M> {		
 	
-	protected <T> double[][] addAdjacentPairs(PreferenceProfile<T> profile, List<T> ordering) {
-		int m = ordering.size();		
-		double[][] wins = new double[m][m];
-		
-		for( T[] ranking : profile.getProfile() ) {
-			for( int i = 0; i < ranking.length - 1; i++ ) {
-				int idxWinner = ordering.indexOf(ranking[i]);
-				int idxLoser = ordering.indexOf(ranking[i+1]);
-				
-				wins[idxWinner][idxLoser] += 1;
-			}
-		}
-		
-		return wins;
+	protected <T> double[][] addAdjacentPairs(ProfileStatistics<T> stats, List<T> ordering) {
+		return toOrdering(stats.getSortedCandidates(), stats.getAdjacentMatrix(), ordering);
 	}
 	
-	protected <T> double[][] addAllPairs(PreferenceProfile<T> profile, List<T> ordering) {		
-		int m = ordering.size();		
-		double[][] wins = new double[m][m];
+	protected <T> double[][] addAllPairs(ProfileStatistics<T> stats, List<T> ordering) {		
+		return toOrdering(stats.getSortedCandidates(), stats.getPairwiseMatrix(), ordering);
+	}
+	
+	/**
+	 * Re-index a matrix of candidate ids by the position of each candidate in an ordering.
+	 */
+	static <T> double[][] toOrdering(T[] candidates, long[][] counts, List<T> ordering) {
+		int m = ordering.size();
+		int[] idx = new int[counts.length];
+		for( int c = 0; c < idx.length; c++ ) idx[c] = ordering.indexOf(candidates[c]);
 		
-		for( T[] ranking : profile.getProfile() ) {
-			for( int i = 0; i < ranking.length; i++ ) {
-				for( int j = i+1; j < ranking.length; j++ ) {
-					int idxWinner = ordering.indexOf(ranking[i]);
-					int idxLoser = ordering.indexOf(ranking[j]);
-					
-					wins[idxWinner][idxLoser] += 1;					
-				}
+		double[][] wins = new double[m][m];
+		for( int a = 0; a < counts.length; a++ ) {
+			double[] row = wins[idx[a]];
+			for( int b = 0; b < counts.length; b++ ) {
+				row[idx[b]] += counts[a][b];
 			}
 		}
 		
@@ -48,7 +42,17 @@ implements OrdinalEstimator<M> {
 		return this.fitModel(profile, true);
 	}
 
-	public abstract <T> M fitModel(PreferenceProfile<T> profile, boolean useAllPairs);
+	public <T> M fitModel(PreferenceProfile<T> profile, boolean useAllPairs) {
+		return fitModel(profile.getStatistics(), useAllPairs);
+	}
+	
+	/**
+	 * Fits the model from pairwise counts alone, which may have been merged from several profiles.
+	 * @param stats
+	 * @param useAllPairs
+	 * @return
+	 */
+	public abstract <T> M fitModel(ProfileStatistics<T> stats, boolean useAllPairs);
 	
 	public abstract double[] getParameters(double[][] winMatrix);
 }
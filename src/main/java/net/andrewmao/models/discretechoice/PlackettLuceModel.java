@@ -6,6 +6,8 @@ import java.util.List;
 import net.andrewmao.models.noise.GumbelNoiseModel;
 import net.andrewmao.models.noise.MeanParams;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
+import net.andrewmao.socialchoice.rules.TopKProfile;
 
 import org.apache.commons.math3.analysis.function.Log;
 import org.apache.commons.math3.linear.ArrayRealVector;
@@ -15,7 +17,7 @@ import org.apache.commons.math3.linear.RealVector;
  * PLMM algorithm from 
  * http://sites.stat.psu.edu/~dhunter/code/btmatlab/plackmm.m
  * 
- * TODO add partial orders; only takes care of total orders for now
+ * Partial (top-k) rankings are fit with {@link #getParameters(TopKProfile)}.
  * 
  * @author mao
  *
@@ -41,9 +43,10 @@ public class PlackettLuceModel extends RandomUtilityEstimator<GumbelNoiseModel<?
 	}
 	
 	@Override
-	public MeanParams getParameters(List<int[]> rankings, int numItems) {
-		int m = numItems; // # of items, indexed by i
-		int n = rankings.size(); // # of contests, indexed by j
+	public MeanParams getParameters(RankingMultiset<?> rankings) {
+		int m = rankings.getNumCandidates(); // # of items, indexed by i
+		int n = rankings.getNumRankings(); // # of contests
+		int u = rankings.getNumRows(); // # of unique contests, indexed by j
 		
 		RealVector diff = null, gamma = new ArrayRealVector(m, 1);		
 		
@@ -52,8 +55,8 @@ public class PlackettLuceModel extends RandomUtilityEstimator<GumbelNoiseModel<?
 		 * easy way: subtract 1 for each time someone placed last
 		 */
 		RealVector w = new ArrayRealVector(m, n);
-		for(int[] ranking : rankings)
-			w.addToEntry(ranking[m-1]-1, -1.0);
+		for( int j = 0; j < u; j++ )
+			w.addToEntry(rankings.candidateAt(j, m-1), -rankings.getWeight(j));
 		
 		int iter = 0;
 		boolean cont = true;
@@ -63,13 +66,11 @@ public class PlackettLuceModel extends RandomUtilityEstimator<GumbelNoiseModel<?
 			if( iter++ > PL_MAX_ITERS && failMM ) 
 				throw new RuntimeException("MM failed to converge...check for MM assumption satisfied, or use LL convergence instead.");
 			
-			double[][] g = new double[n][m];
-			for( int j = 0; j < n; j++ ) {
-				int[] ranking = rankings.get(j);
-				
+			double[][] g = new double[u][m];
+			for( int j = 0; j < u; j++ ) {				
 				double gsum = 0;
 				for( int i = m-1; i >= 0; i-- ) {
-					gsum += gamma.getEntry(ranking[i]-1);					
+					gsum += gamma.getEntry(rankings.candidateAt(j, i));					
 					if( i == m-1 ) continue;
 					g[j][i] = 1/gsum;
 				}				
@@ -81,16 +82,19 @@ public class PlackettLuceModel extends RandomUtilityEstimator<GumbelNoiseModel<?
 			 */
 			
 			double ll = w.dotProduct(gamma.map(new Log()));
-			for( int i = 0; i < g.length; i++ )
-				for( int j = 0; j < g[i].length; j++ )
-					if( g[i][j] > 0 ) ll += Math.log(g[i][j]);
+			for( int j = 0; j < u; j++ ) {
+				double lj = 0;
+				for( int i = 0; i < m; i++ )
+					if( g[j][i] > 0 ) lj += Math.log(g[j][i]);
+				ll += rankings.getWeight(j) * lj;
+			}
 //			System.out.println("Log likelihood: " + ll);			
 			
 			absImpr = ll - lastLL;
 			relImpr = -absImpr / lastLL;
 			lastLL = lastComputedLL = ll;
 			
-			for( int j = 0; j < n; j++ ) {
+			for( int j = 0; j < u; j++ ) {
 				double cumsum = 0;
 				for( int i = 0; i < m; i++ ) {
 					cumsum += g[j][i];
@@ -109,10 +113,10 @@ public class PlackettLuceModel extends RandomUtilityEstimator<GumbelNoiseModel<?
 			 * where r(i,j) is the place of item i in contest j.
 			 */
 			double[] denoms = new double[m];			
-			for( int j = 0; j < rankings.size(); j++ ) {
-				int[] ranking = rankings.get(j);
+			for( int j = 0; j < u; j++ ) {
+				int weight = rankings.getWeight(j);
 				for( int i = 0; i < m; i++ ) {
-					denoms[ranking[i]-1] += g[j][i];
+					denoms[rankings.candidateAt(j, i)] += weight * g[j][i];
 				}				
 			}							
 			
@@ -130,12 +134,128 @@ public class PlackettLuceModel extends RandomUtilityEstimator<GumbelNoiseModel<?
 		return new MeanParams(gamma.mapDivide(scalar).map(new Log()).toArray());
 	}
 
+	/**
+	 * MM over partial rankings, where each voter ranks their top k and the rest are unranked.
+	 * Only the observed choices enter the likelihood: the i-th ranked candidate is chosen
+	 * from itself, the ones ranked below it and all the unranked ones.
+	 * 
+	 * The sum over the remaining candidates at each place is the total of gamma minus the
+	 * gammas ranked above, and the unranked candidates all share the same denominator terms,
+	 * so an iteration takes O(k) per ranking plus O(m), rather than O(m) per ranking.
+	 */
+	public MeanParams getParameters(TopKProfile<?> rankings) {
+		int m = rankings.getNumCandidates(); // # of items
+		int u = rankings.getNumRows(); // # of contests, indexed by j
+		
+		/*
+		 * Number of choices made in each contest; when all m are ranked
+		 * the last place is not a choice.
+		 */
+		int[] stages = new int[u];
+		int[] starts = new int[u + 1];
+		for( int j = 0; j < u; j++ ) {
+			stages[j] = Math.min(rankings.getLength(j), m-1);
+			starts[j+1] = starts[j] + stages[j];
+		}
+		
+		/*
+		 * Numerator w = amount of times each candidate was chosen, 
+		 * i.e. ranked in one of the first stages[j] places
+		 */
+		double[] w = new double[m];
+		for( int j = 0; j < u; j++ ) {
+			int weight = rankings.getWeight(j);
+			for( int i = 0; i < stages[j]; i++ )
+				w[rankings.candidateAt(j, i)] += weight;
+		}
+		
+		double[] gamma = new double[m];
+		Arrays.fill(gamma, 1);
+		// g[starts[j] + i] is the sum of the denominators for places up to i in the jth contest
+		double[] g = new double[starts[u]];
+		
+		int iter = 0;
+		boolean cont = true;
+		double lastLL = Double.NEGATIVE_INFINITY, absImpr, relImpr;
+		
+		do {
+			if( iter++ > PL_MAX_ITERS && failMM ) 
+				throw new RuntimeException("MM failed to converge...check for MM assumption satisfied, or use LL convergence instead.");
+			
+			double total = 0;
+			for( int t = 0; t < m; t++ ) total += gamma[t];
+			
+			double ll = 0;
+			for( int t = 0; t < m; t++ )
+				if( w[t] > 0 ) ll += w[t] * Math.log(gamma[t]);
+			
+			// Every candidate is in the remaining set for all places, except ranked ones after their place
+			double base = 0;
+			double[] denoms = new double[m];
+			for( int j = 0; j < u; j++ ) {
+				int weight = rankings.getWeight(j);
+				double above = 0, cumsum = 0, lj = 0;
+				for( int i = 0; i < stages[j]; i++ ) {
+					double gsum = total - above;
+					cumsum += 1/gsum;
+					lj -= Math.log(gsum);
+					g[starts[j] + i] = cumsum;
+					above += gamma[rankings.candidateAt(j, i)];
+				}
+				ll += weight * lj;
+				base += weight * cumsum;
+				
+				int k = rankings.getLength(j);
+				for( int i = 0; i < k; i++ ) {
+					double g_i = g[starts[j] + Math.min(i, stages[j]-1)];
+					denoms[rankings.candidateAt(j, i)] -= weight * (cumsum - g_i);
+				}
+			}
+			
+			absImpr = ll - lastLL;
+			relImpr = -absImpr / lastLL;
+			lastLL = lastComputedLL = ll;
+			
+			double norm = 0;
+			for( int t = 0; t < m; t++ ) {
+				double newGamma = w[t] / (base + denoms[t]);
+				norm += (newGamma - gamma[t]) * (newGamma - gamma[t]);
+				gamma[t] = newGamma;
+			}
+			
+			cont = ( failMM && Math.sqrt(norm) > param_tolerance) || 
+					(!failMM && iter < PL_MAX_ITERS && (Double.isNaN(relImpr) || relImpr > ll_tolerance) );
+		} while( cont );
+		
+		// Return scaled and with log
+		double[] params = new double[m];
+		for( int t = 0; t < m; t++ ) params[t] = Math.log(gamma[t] / gamma[0]);
+		return new MeanParams(params);
+	}
+	
+	/**
+	 * Fits the model to partial rankings, using only the ranked candidates of each.
+	 */
+	public <T> GumbelNoiseModel<T> fitModel(TopKProfile<T> profile) {
+		List<T> ordering = Arrays.asList(profile.getSortedCandidates());
+		
+		double[] strParams = getParameters(profile).mean;
+		
+		GumbelNoiseModel<T> gnm = new GumbelNoiseModel<T>(ordering, strParams);
+		gnm.setFittedLikelihood(lastComputedLL);
+		return gnm;
+	}
+
+	/**
+	 * Fits the model to the distinct rankings of a profile. A {@link RankingMultiset},
+	 * e.g. one merged from several shards, is used as is.
+	 */
 	@Override
 	public <T> GumbelNoiseModel<T> fitModelOrdinal(PreferenceProfile<T> profile) {
-		List<T> ordering = Arrays.asList(profile.getSortedCandidates());				
-		List<int[]> rankings = profile.getIndices(ordering);		
+		RankingMultiset<T> rankings = RankingMultiset.of(profile);
+		List<T> ordering = Arrays.asList(rankings.getSortedCandidates());				
 		
-		double[] strParams = getParameters(rankings, ordering.size()).mean;
+		double[] strParams = getParameters(rankings).mean;
 		
 		GumbelNoiseModel<T> gnm = new GumbelNoiseModel<T>(ordering, strParams);
 		gnm.setFittedLikelihood(lastComputedLL);
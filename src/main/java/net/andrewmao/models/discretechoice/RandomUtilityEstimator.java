@@ -4,11 +4,23 @@ import java.util.List;
 
 import net.andrewmao.models.noise.NoiseModel;
 import net.andrewmao.models.noise.OrdinalEstimator;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
 
 public abstract class RandomUtilityEstimator<M extends NoiseModel<?>, P> 
 implements OrdinalEstimator<M> {
 	
-	public abstract P getParameters(List<int[]> rankings, int numItems);
+	/**
+	 * Estimate parameters from the distinct rankings and their counts.
+	 * Parameters are indexed by the candidate ids of the multiset.
+	 * 
+	 * @param rankings
+	 * @return
+	 */
+	public abstract P getParameters(RankingMultiset<?> rankings);
+	
+	public P getParameters(List<int[]> rankings, int numItems) {
+		return getParameters(RankingMultiset.fromIndices(rankings, numItems));
+	}
 		
 	public String toString() {
 		return this.getClass().getSimpleName();
@@ -6,6 +6,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import net.andrewmao.models.noise.NormalNoiseModel;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.ProfileStatistics;
 
 import org.apache.commons.math3.exception.MathIllegalStateException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
@@ -114,11 +115,16 @@ public class ThurstoneMostellerModel extends PairwiseDiscreteChoiceEstimator<Nor
 
 	@Override
 	public <T> NormalNoiseModel<T> fitModel(PreferenceProfile<T> profile, boolean useAllPairs) {
-		List<T> ordering = Arrays.asList(profile.getSortedCandidates());
+		return fitModel(profile.getStatistics(), useAllPairs);
+	}
+
+	@Override
+	public <T> NormalNoiseModel<T> fitModel(ProfileStatistics<T> stats, boolean useAllPairs) {
+		List<T> ordering = Arrays.asList(stats.getSortedCandidates());
 		
 		double[][] wins = useAllPairs ? 
-				super.addAllPairs(profile, ordering) : 
-					super.addAdjacentPairs(profile, ordering);
+				super.addAllPairs(stats, ordering) : 
+					super.addAdjacentPairs(stats, ordering);
 		
 		double[] strParams = getParameters(wins);
 		
@@ -12,6 +12,7 @@ import org.apache.commons.math3.optim.univariate.UnivariatePointValuePair;
 
 import net.andrewmao.socialchoice.rules.Kemeny;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
 
 /**
  * Estimator for the Condorcet or Mallows model
@@ -29,11 +30,14 @@ public class CondorcetEstimator implements OrdinalEstimator<CondorcetModel<?>> {
 	}
 	
 	@Override
-	public <T> CondorcetModel<T> fitModelOrdinal(final PreferenceProfile<T> profile) {
+	public <T> CondorcetModel<T> fitModelOrdinal(PreferenceProfile<T> profile) {
+		// Count distinct rankings once, rather than on every evaluation of the likelihood
+		final RankingMultiset<T> counts = RankingMultiset.of(profile);
+		
 		// Find optimal kemeny rankings
 		Kemeny k = new Kemeny();			
 		
-		List<List<T>> bestRankings = k.getAllRankings(profile);
+		List<List<T>> bestRankings = k.getAllRankings(counts);
 //		System.out.println(bestRankings.size() + " rankings found");
 		final List<T> someRanking = bestRankings.get(0);
 		
@@ -46,7 +50,7 @@ public class CondorcetEstimator implements OrdinalEstimator<CondorcetModel<?>> {
 		 */
 		UnivariateFunction logLk = new UnivariateFunction() {
 			@Override public double value(double phi) {					
-				return CondorcetModel.profileLogLikelihood(profile, someRanking, phi);
+				return CondorcetModel.profileLogLikelihood(counts, someRanking, phi);
 			}				
 		};
 		
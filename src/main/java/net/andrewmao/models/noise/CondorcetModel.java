@@ -5,13 +5,13 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
-import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.math3.stat.descriptive.moment.Mean;
 
 
 import net.andrewmao.math.NumericUtils;
 import net.andrewmao.math.RandomSelection;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
 import net.andrewmao.socialchoice.rules.RankingMetric;
 
 /**
@@ -114,6 +114,35 @@ public class CondorcetModel<T> extends NoiseModel<T> {
 		return new PreferenceProfile<T>(profile);
 	}
 
+	/**
+	 * Inserts candidate indices one at a time, as {@link #sampleProfile(int, Random)} does.
+	 */
+	@Override
+	public RankingSampler getSampler(long size, final Random rnd) {
+		final int m = candidates.size();
+		// Cumulative insertion weights for each candidate
+		final double[][] cum = new double[m][];
+		for( int i = 0; i < m; i++ ) {
+			cum[i] = getWeights(i, phi);
+			for( int j = 1; j <= i; j++ ) cum[i][j] += cum[i][j-1];
+		}
+		
+		return new RankingSampler() {
+			@Override
+			public void next(int[] ranking) {
+				for( int i = 0; i < m; i++ ) {
+					double[] c = cum[i];
+					double u = rnd.nextDouble() * c[i];
+					int ins = 0;
+					while( ins < i && c[ins] <= u ) ins++;
+					
+					System.arraycopy(ranking, ins, ranking, ins + 1, i - ins);
+					ranking[ins] = i;
+				}
+			}
+		};
+	}
+
 	@Override
 	public double computeMLMetric(RankingMetric<T> metric) {	
 		if( candidatesMixed != null )
@@ -170,26 +199,44 @@ public class CondorcetModel<T> extends NoiseModel<T> {
 
 	public static <T> double profileLogLikelihood(
 			PreferenceProfile<T> profile, List<T> trueRanking, double phi) {
+		RankingMultiset<T> counts = RankingMultiset.of(profile);
+		int m = trueRanking.size();
+		
+		// Ids of the true ranking, and the position of each id in it
+		int[] trueIds = new int[m];
+		int[] truePos = new int[counts.getNumCandidates()];
+		for( int i = 0; i < m; i++ ) {
+			trueIds[i] = counts.getId(trueRanking.get(i));
+			truePos[trueIds[i]] = i;
+		}
+		
+		double[][] logProbs = new double[m][];
+		for( int i = 1; i < m; i++ ) {
+			logProbs[i] = getInsertionProbs(i, phi);
+			for( int k = 0; k < logProbs[i].length; k++ ) logProbs[i][k] = Math.log(logProbs[i][k]);
+		}
+		
 		double ll = 0;
 
-		for( T[] preference : profile.getProfile() ) {
+		for( int r = 0; r < counts.getNumRows(); r++ ) {
 			/*
 			 * Compute probability as would occur by insertion
 			 * First candidate has insertion probability 1
 			 */
+			double rankingLL = 0;
 			
-			for( int i = 1; i < trueRanking.size(); i++ ) {
-				T alternative = trueRanking.get(i);
-				
-				int insertionIdx = ArrayUtils.indexOf(preference, alternative);
+			for( int i = 1; i < m; i++ ) {
+				int insertionIdx = counts.positionOf(r, trueIds[i]);
 				int diff = 0;
 				// Subtract 1 for everything that comes after i in the true ranking				
 				for( int j = 0; j < insertionIdx; j++ ) {
-					if( trueRanking.indexOf(preference[j]) > i ) diff++;			
+					if( truePos[counts.candidateAt(r, j)] > i ) diff++;			
 				}				
 				
-				ll += Math.log(getInsertionProbs(i, phi)[insertionIdx - diff]);
+				rankingLL += logProbs[i][insertionIdx - diff];
 			}			
+			
+			ll += counts.getWeight(r) * rankingLL;
 		}		
 		
 		return ll;
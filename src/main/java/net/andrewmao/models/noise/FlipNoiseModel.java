@@ -46,6 +46,58 @@ public class FlipNoiseModel<T> extends NoiseModel<T> {
 		return new PreferenceProfile<T>(profile);
 	}
 
+	/**
+	 * Spreads the round(flipFactor * size) flips over the rankings as {@link #sampleProfile(int, Random)} does,
+	 * drawing the number of flips of each ranking as a binomial of the flips and rankings left.
+	 */
+	@Override
+	public RankingSampler getSampler(final long size, final Random rnd) {
+		return new RankingSampler() {
+			long flipsLeft = Math.round(flipFactor * size);
+			long rankingsLeft = size;
+			
+			@Override
+			public void next(int[] ranking) {
+				for( int i = 0; i < ranking.length; i++ ) ranking[i] = i;
+				
+				long flips = rankingsLeft <= 1 ? flipsLeft : binomial(flipsLeft, 1.0 / rankingsLeft, rnd);
+				flipsLeft -= flips;
+				rankingsLeft--;
+				
+				for( long f = 0; f < flips; f++ ) {
+					int idx = rnd.nextInt(ranking.length - 1);
+					int temp = ranking[idx];
+					ranking[idx] = ranking[idx+1];
+					ranking[idx+1] = temp;
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Binomial sample by inversion, taking O(np) steps on average.
+	 * Large means use the normal approximation instead.
+	 */
+	static long binomial(long n, double p, Random rnd) {
+		if( n == 0 ) return 0;
+		double mean = n * p;
+		if( mean > 100 ) {
+			long k = Math.round(mean + Math.sqrt(mean * (1 - p)) * rnd.nextGaussian());
+			return Math.max(0, Math.min(n, k));
+		}
+		
+		double u = rnd.nextDouble();
+		double prob = Math.exp(n * Math.log1p(-p));
+		double odds = p / (1 - p);
+		long k = 0;
+		while( u > prob && k < n ) {
+			u -= prob;
+			prob *= odds * (n - k) / (k + 1);
+			k++;
+		}
+		return k;
+	}
+
 	@Override
 	public double logLikelihood(PreferenceProfile<T> profile) {
 		throw new UnsupportedOperationException();
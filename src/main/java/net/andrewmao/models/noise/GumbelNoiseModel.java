@@ -6,6 +6,7 @@ import java.util.Random;
 
 import net.andrewmao.models.discretechoice.ScoredItems;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
 
 import org.apache.commons.math3.distribution.ExponentialDistribution;
 
@@ -71,6 +72,27 @@ public class GumbelNoiseModel<T> extends RandomUtilityModel<T> {
 		return new PreferenceProfile<T>(profile);
 	}
 		
+	/**
+	 * Draws the same exponentials as {@link #sampleProfile(int, Random)}, from the given generator.
+	 */
+	@Override
+	public RankingSampler getSampler(long size, final Random rnd) {
+		final double[] means = new double[strParams.length];
+		for( int j = 0; j < means.length; j++ ) means[j] = Math.exp(-strParams[j]);
+		
+		return new RankingSampler() {
+			final double[] values = new double[means.length];
+			
+			@Override
+			public void next(int[] ranking) {
+				for( int j = 0; j < values.length; j++ )
+					values[j] = -means[j] * Math.log(1 - rnd.nextDouble());
+				// Lower exponential comes first
+				sortByValues(ranking, values, false);
+			}
+		};
+	}
+	
 	@Override
 	public double marginalProbability(T winner, T loser) {
 		int idxWinner = candidates.indexOf(winner);
@@ -81,18 +103,29 @@ public class GumbelNoiseModel<T> extends RandomUtilityModel<T> {
 
 	@Override	
 	public double logLikelihood(PreferenceProfile<T> profile) {
-		// The gumbel model log likelihood.
+		// The gumbel model log likelihood, computed once per distinct ranking.
+		RankingMultiset<T> counts = RankingMultiset.of(profile);
+		int m = counts.getNumCandidates();
+		
+		double[] gamma = new double[m];
+		double[] expGamma = new double[m];
+		for( int c = 0; c < m; c++ ) {
+			gamma[c] = strMap.get(counts.getCandidate(c)).doubleValue();
+			expGamma[c] = Math.exp(gamma[c]);
+		}
+		
 		double ll = 0;
 		
-		for( T[] preference : profile.getProfile() ) {
-			double gammaSum = 0;
-			for( int i = preference.length - 1; i >= 0; i-- ) {
-				double gamma_i = strMap.get(preference[i]).doubleValue();
-				gammaSum += Math.exp(gamma_i);
-				if( i == preference.length - 1 ) continue;
-				ll += gamma_i;
-				ll -= Math.log(gammaSum);
+		for( int r = 0; r < counts.getNumRows(); r++ ) {
+			double gammaSum = 0, rankingLL = 0;
+			for( int i = m - 1; i >= 0; i-- ) {
+				int c = counts.candidateAt(r, i);
+				gammaSum += expGamma[c];
+				if( i == m - 1 ) continue;
+				rankingLL += gamma[c];
+				rankingLL -= Math.log(gammaSum);
 			}
+			ll += counts.getWeight(r) * rankingLL;
 		}
 		
 		return ll;			
@@ -2,16 +2,25 @@ package net.andrewmao.models.noise;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import net.andrewmao.math.PermutationGenerator;
 import net.andrewmao.math.SmallPermutationGenerator;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
 import net.andrewmao.socialchoice.rules.RankingMetric;
+import net.andrewmao.socialchoice.rules.SharedPool;
+import net.andrewmao.socialchoice.rules.StatisticsAccumulator;
 
 public abstract class NoiseModel<T> {
 
+	// Rankings drawn with each seed when sampling in parallel
+	static final int SAMPLE_CHUNK = 1 << 16;
+
 	protected List<T> candidates;
 	protected Double fittedLikelihood = null;
 	
@@ -41,6 +50,104 @@ public abstract class NoiseModel<T> {
 	 */
 	public abstract PreferenceProfile<T> sampleProfile(int size, Random rnd);
 	
+	/**
+	 * Draw rankings from this model one at a time, without storing them.
+	 * Models that don't override this draw a profile of one ranking each time.
+	 * @param size the number of rankings that will be drawn, for models where it matters
+	 * @param rnd
+	 * @return
+	 */
+	public RankingSampler getSampler(long size, final Random rnd) {
+		final Map<T, Integer> indices = new HashMap<T, Integer>();
+		for( int c = 0; c < candidates.size(); c++ ) indices.put(candidates.get(c), c);
+		
+		return new RankingSampler() {
+			@Override
+			public void next(int[] ranking) {
+				T[] sampled = sampleProfile(1, rnd).getProfile()[0];
+				for( int i = 0; i < ranking.length; i++ ) ranking[i] = indices.get(sampled[i]);
+			}
+		};
+	}
+	
+	/**
+	 * Sample rankings from this model straight into statistics, in constant memory.
+	 * Candidate ids are the indices of the candidates of the model, in the order given.
+	 * @param size
+	 * @param rnd
+	 * @return
+	 */
+	public StatisticsAccumulator<T> sampleStatistics(long size, Random rnd) {
+		StatisticsAccumulator<T> stats = new StatisticsAccumulator<T>(getCandidateArray());
+		sampleInto(stats, getSampler(size, rnd), size);
+		return stats;
+	}
+	
+	/**
+	 * Sample rankings from this model straight into statistics, in parallel.
+	 * The rankings are drawn in chunks, each with its own seed derived from the given one,
+	 * so the result only depends on the seed and not on the number of threads.
+	 * 
+	 * @param size
+	 * @param seed
+	 * @param pool
+	 * @return
+	 */
+	public StatisticsAccumulator<T> sampleStatistics(long size, long seed, ForkJoinPool pool) {
+		T[] cands = getCandidateArray();
+		long chunks = (size + SAMPLE_CHUNK - 1) / SAMPLE_CHUNK;
+		if( chunks == 0 ) return new StatisticsAccumulator<T>(cands);
+		return SharedPool.invoke(pool, new SampleTask(cands, size, seed, 0, chunks));
+	}
+	
+	// The candidates are not necessarily comparable, so they keep the order of the model
+	T[] getCandidateArray() {
+		return candidates.toArray(getProfileArray(1)[0]);
+	}
+	
+	static <T> void sampleInto(StatisticsAccumulator<T> stats, RankingSampler sampler, long size) {
+		int[] ranking = new int[stats.getNumCandidates()];
+		for( long i = 0; i < size; i++ ) {
+			sampler.next(ranking);
+			stats.add(ranking, 1);
+		}
+	}
+	
+	class SampleTask extends RecursiveTask<StatisticsAccumulator<T>> {
+		private static final long serialVersionUID = 1L;
+		
+		final T[] cands;
+		final long size;
+		final long seed;
+		final long fromChunk, toChunk;
+		
+		SampleTask(T[] cands, long size, long seed, long fromChunk, long toChunk) {
+			this.cands = cands;
+			this.size = size;
+			this.seed = seed;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+		}
+		
+		@Override
+		protected StatisticsAccumulator<T> compute() {
+			if( toChunk - fromChunk > 1 ) {
+				long mid = fromChunk + (toChunk - fromChunk) / 2;
+				SampleTask left = new SampleTask(cands, size, seed, fromChunk, mid);
+				left.fork();
+				StatisticsAccumulator<T> stats = new SampleTask(cands, size, seed, mid, toChunk).compute();
+				stats.merge(left.join());
+				return stats;
+			}
+			
+			long rows = Math.min(SAMPLE_CHUNK, size - fromChunk * SAMPLE_CHUNK);
+			Random rnd = new Random(seed ^ (fromChunk * 0x9E3779B97F4A7C15L));
+			StatisticsAccumulator<T> stats = new StatisticsAccumulator<T>(cands);
+			sampleInto(stats, getSampler(rows, rnd), rows);
+			return stats;
+		}
+	}
+	
 	/**
 	 * Compute the goodness of this model by some ranking metric
 	 * @param metric
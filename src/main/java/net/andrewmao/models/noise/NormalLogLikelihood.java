@@ -1,6 +1,7 @@
 package net.andrewmao.models.noise;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -11,19 +12,25 @@ import net.andrewmao.probability.MultivariateNormal;
 import net.andrewmao.probability.MultivariateNormal.CDFResult;
 import net.andrewmao.probability.NormalDist;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
+import net.andrewmao.socialchoice.rules.TopKProfile;
 
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.DiagonalMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 
-import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multiset.Entry;
 import com.google.common.primitives.Ints;
 
 public class NormalLogLikelihood {
 
+	// Points of the grid used to integrate the likelihood of partial rankings
+	static final int TOPK_GRID_POINTS = 2048;
+	// Standard deviations past the extreme means covered by the grid
+	static final double TOPK_GRID_WIDTH = 8;
+
 	RealVector mean;
 	RealVector variance;
 	
@@ -51,8 +58,13 @@ public class NormalLogLikelihood {
 	}
 	
 	public <T> double logLikelihood(PreferenceProfile<T> candidates, List<T> ordering) {
-		List<int[]> indices = candidates.getIndices(ordering);
-		return logLikelihood(indices);
+		RankingMultiset<T> counts = RankingMultiset.of(candidates);
+		
+		// Map candidate ids to 1-based indices of the ordering
+		int[] idx = new int[counts.getNumCandidates()];
+		for( int c = 0; c < idx.length; c++ ) idx[c] = ordering.indexOf(counts.getCandidate(c)) + 1;
+		
+		return rankingsLogLikelihood(counts, idx);
 	}
 
 	/**
@@ -62,22 +74,63 @@ public class NormalLogLikelihood {
 	 * @return
 	 */
 	public double logLikelihood(List<int[]> indices) {
-		Multiset<List<Integer>> counts = HashMultiset.create();
-		
-		for( int[] ranking : indices )
-			counts.add(Ints.asList(ranking));					
-		
-		return logLikelihood(counts);		
+		return logLikelihood(RankingMultiset.fromIndices(indices, mean.getDimension()));		
+	}
+	
+	/**
+	 * Computes log likelihood once for each distinct ranking, 
+	 * where the candidate ids are the indices of the mean and variance.
+	 * 
+	 * @param counts
+	 * @return
+	 */
+	public double logLikelihood(RankingMultiset<?> counts) {
+		return rankingsLogLikelihood(counts, null);
 	}
 	
+	/**
+	 * Computes log likelihood once for each distinct ranking of 1-based indices.
+	 * 
+	 * @param counts
+	 * @return
+	 * @deprecated use {@link #logLikelihood(RankingMultiset)}, which counts rankings without boxing them
+	 */
+	@Deprecated
 	public double logLikelihood(Multiset<List<Integer>> counts) {
+		int u = counts.entrySet().size();
+		int[][] rankings = new int[u][];
+		int[] weights = new int[u];
+		
+		int r = 0;
+		for( Entry<List<Integer>> e : counts.entrySet() ) {
+			rankings[r] = Ints.toArray(e.getElement());
+			weights[r++] = e.getCount();
+		}
+		return weightedLogLikelihood(rankings, weights);
+	}
+	
+	double rankingsLogLikelihood(RankingMultiset<?> counts, int[] idx) {
+		int u = counts.getNumRows();
+		int[][] rankings = new int[u][];
+		int[] weights = new int[u];
+		for( int r = 0; r < u; r++ ) {
+			rankings[r] = counts.getIndices(r);
+			weights[r] = counts.getWeight(r);
+			if( idx != null ) 
+				for( int i = 0; i < rankings[r].length; i++ ) rankings[r][i] = idx[rankings[r][i]-1];
+		}
+		return weightedLogLikelihood(rankings, weights);
+	}
+	
+	double weightedLogLikelihood(int[][] rankings, int[] weights) {
+		int u = rankings.length;
 		double ll = 0;
 		if( exec != null ) {
 			// Run in parallel
-			List<LLResult> tasks = new ArrayList<LLResult>(counts.entrySet().size());		    
+			List<LLResult> tasks = new ArrayList<LLResult>(u);		    
 		    
-			for( Entry<List<Integer>> e : counts.entrySet() )
-				tasks.add(new LLResult(e.getCount(), Ints.toArray(e.getElement())));
+			for( int r = 0; r < u; r++ )
+				tasks.add(new LLResult(weights[r], rankings[r]));
 						
 			try {
 				for (Future<Double> future : exec.invokeAll(tasks)) {
@@ -88,8 +141,8 @@ public class NormalLogLikelihood {
 			}
 		}
 		else {
-			for( Entry<List<Integer>> e : counts.entrySet() )
-				ll += e.getCount() * singleRankingLL(Ints.toArray(e.getElement()));
+			for( int r = 0; r < u; r++ )
+				ll += weights[r] * singleRankingLL(rankings[r]);
 		}
 		return ll;
 	}
@@ -161,6 +214,161 @@ public class NormalLogLikelihood {
 		return mvn.cdf(mu, sigma, lower, upper);
 	}
 
+	/**
+	 * Log likelihood of partial rankings, where the candidate ids are the indices of the mean and variance.
+	 * Rankings that leave out at most one candidate are computed exactly as total orders,
+	 * and shorter ones with {@link #topKProb(int[], int)}.
+	 * 
+	 * @param rankings
+	 * @return
+	 */
+	public double logLikelihood(TopKProfile<?> rankings) {
+		int m = mean.getDimension();
+		if( rankings.getNumCandidates() != m )
+			throw new IllegalArgumentException("Rankings have " + rankings.getNumCandidates() + " candidates, not " + m);
+		
+		TopKGrid grid = null;
+		double ll = 0;
+		for( int r = 0; r < rankings.getNumRows(); r++ ) {
+			int w = rankings.getWeight(r);
+			if( w == 0 ) continue;
+			
+			int[] ranking = rankings.getIndices(r);
+			if( ranking.length >= m - 1 ) {
+				ll += w * singleRankingLL(complete(ranking, m));
+			}
+			else {
+				if( grid == null ) grid = new TopKGrid();
+				ll += w * Math.log(grid.prob(ranking, ranking.length));
+			}
+		}
+		return ll;
+	}
+
+	/**
+	 * Probability that the first k indices of a ranking are the top k in that order,
+	 * with the remaining candidates in any order below them.
+	 * 
+	 * Conditioning on the value of the k-th candidate, the unranked candidates are independent,
+	 * so rather than an (m-1)-dimensional normal cdf this is k nested one-dimensional integrals,
+	 * computed on a grid of {@value #TOPK_GRID_POINTS} points. The cost is O(k) per point,
+	 * plus O(m) per point once for a grid shared between rankings.
+	 * 
+	 * @param ranking 1-based indices, of length at least k
+	 * @param k
+	 * @return
+	 */
+	public double topKProb(int[] ranking, int k) {
+		int m = mean.getDimension();
+		if( k >= m - 1 ) return Math.exp(singleRankingLL(complete(Arrays.copyOf(ranking, k), m)));
+		return new TopKGrid().prob(ranking, k);
+	}
+
+	/**
+	 * Appends the missing index, if any, to a ranking of m - 1 indices.
+	 */
+	static int[] complete(int[] ranking, int m) {
+		if( ranking.length == m ) return ranking;
+		int[] full = Arrays.copyOf(ranking, m);
+		int last = m * (m + 1) / 2;
+		for( int i = 0; i < m - 1; i++ ) last -= ranking[i];
+		full[m - 1] = last;
+		return full;
+	}
+
+	/**
+	 * Integrates over a grid covering all the means, with the log cdf of every candidate precomputed.
+	 */
+	class TopKGrid {
+		final int m;
+		final double[] mu;
+		final double[] sigma;
+		final double[] x;
+		final double dx;
+		// Sum of the log cdfs of all candidates at each point
+		final double[] logAll;
+		final double[] s;
+		final boolean[] ranked;
+		
+		TopKGrid() {
+			m = mean.getDimension();
+			mu = mean.toArray();
+			sigma = new double[m];
+			
+			double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY, maxSigma = 0;
+			for( int c = 0; c < m; c++ ) {
+				sigma[c] = Math.sqrt(variance.getEntry(c));
+				lo = Math.min(lo, mu[c]);
+				hi = Math.max(hi, mu[c]);
+				maxSigma = Math.max(maxSigma, sigma[c]);
+			}
+			lo -= TOPK_GRID_WIDTH * maxSigma;
+			hi += TOPK_GRID_WIDTH * maxSigma;
+			
+			x = new double[TOPK_GRID_POINTS];
+			dx = (hi - lo) / (TOPK_GRID_POINTS - 1);
+			for( int g = 0; g < x.length; g++ ) x[g] = lo + g * dx;
+			
+			logAll = new double[x.length];
+			for( int c = 0; c < m; c++ )
+				for( int g = 0; g < x.length; g++ )
+					logAll[g] += Math.log(NormalDist.cdf(mu[c], sigma[c], x[g]));
+			
+			s = new double[x.length];
+			ranked = new boolean[m];
+		}
+		
+		double prob(int[] ranking, int k) {
+			int last = ranking[k-1] - 1;
+			boolean marked = false;
+			
+			/*
+			 * s(x) = density of the k-th candidate at x, times the probability 
+			 * that all the unranked candidates are below x
+			 */
+			for( int g = 0; g < x.length; g++ ) {
+				double logRest = logAll[g];
+				if( logRest == Double.NEGATIVE_INFINITY ) {
+					// Can't subtract from -inf; sum over the unranked candidates directly
+					if( !marked ) {
+						Arrays.fill(ranked, false);
+						for( int i = 0; i < k; i++ ) ranked[ranking[i]-1] = true;
+						marked = true;
+					}
+					logRest = 0;
+					for( int c = 0; c < m; c++ )
+						if( !ranked[c] ) logRest += Math.log(NormalDist.cdf(mu[c], sigma[c], x[g]));
+				}
+				else {
+					for( int i = 0; i < k; i++ ) {
+						int c = ranking[i] - 1;
+						logRest -= Math.log(NormalDist.cdf(mu[c], sigma[c], x[g]));
+					}
+				}
+				s[g] = NormalDist.density(mu[last], sigma[last], x[g]) * Math.exp(logRest);
+			}
+			
+			/*
+			 * Moving up the ranking, s(x) = density of the i-th candidate at x, 
+			 * times the integral of the previous s below x
+			 */
+			for( int i = k - 2; i >= 0; i-- ) {
+				int c = ranking[i] - 1;
+				double integral = 0, prev = s[0];
+				s[0] = 0;
+				for( int g = 1; g < x.length; g++ ) {
+					integral += 0.5 * dx * (prev + s[g]);
+					prev = s[g];
+					s[g] = NormalDist.density(mu[c], sigma[c], x[g]) * integral;
+				}
+			}
+			
+			double prob = 0;
+			for( int g = 1; g < x.length; g++ ) prob += 0.5 * dx * (s[g-1] + s[g]);
+			return prob;
+		}
+	}
+
 	double bivariateLL(int[] ranking) {
 		double m1 = mean.getEntry(ranking[0]-1);
 		double m2 = mean.getEntry(ranking[1]-1);
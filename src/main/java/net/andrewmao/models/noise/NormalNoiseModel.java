@@ -81,6 +81,20 @@ public class NormalNoiseModel<T> extends RandomUtilityModel<T> {
 		return RandomGeneration.gaussianArray(strParams, sds, rnd);
 	}
 	
+	@Override
+	public RankingSampler getSampler(long size, final Random rnd) {
+		return new RankingSampler() {
+			final double[] values = new double[strParams.length];
+			
+			@Override
+			public void next(int[] ranking) {
+				for( int j = 0; j < values.length; j++ )
+					values[j] = rnd.nextGaussian() * sds[j] + strParams[j];
+				sortByValues(ranking, values, true);
+			}
+		};
+	}
+	
 	public double[] getSigmas() {
 		return sds;
 	}
@@ -77,6 +77,62 @@ public abstract class RandomUtilityModel<T> extends NoiseModel<T> {
 		return new PreferenceProfile<T>(profile);
 	}
 	
+	@Override
+	public RankingSampler getSampler(long size, final Random rnd) {
+		return new RankingSampler() {
+			@Override
+			public void next(int[] ranking) {
+				sortByValues(ranking, sampleUtilities(rnd), true);
+			}
+		};
+	}
+	
+	/**
+	 * Fills in the indices of the values in sorted order, without boxing.
+	 * @param ranking
+	 * @param values
+	 * @param descending whether higher values come first
+	 */
+	static void sortByValues(int[] ranking, double[] values, boolean descending) {
+		for( int i = 0; i < ranking.length; i++ ) ranking[i] = i;
+		quicksort(ranking, values, descending ? -1 : 1, 0, ranking.length - 1);
+	}
+	
+	static void quicksort(int[] idx, double[] values, int sign, int lo, int hi) {
+		while( hi - lo > 16 ) {
+			double pivot = values[idx[(lo + hi) >>> 1]];
+			int i = lo, j = hi;
+			while( i <= j ) {
+				while( sign * Double.compare(values[idx[i]], pivot) < 0 ) i++;
+				while( sign * Double.compare(values[idx[j]], pivot) > 0 ) j--;
+				if( i <= j ) {
+					int tmp = idx[i]; idx[i] = idx[j]; idx[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			// Recurse on the smaller side
+			if( j - lo < hi - i ) {
+				quicksort(idx, values, sign, lo, j);
+				lo = i;
+			}
+			else {
+				quicksort(idx, values, sign, i, hi);
+				hi = j;
+			}
+		}
+		
+		for( int i = lo + 1; i <= hi; i++ ) {
+			int x = idx[i];
+			int j = i - 1;
+			while( j >= lo && sign * Double.compare(values[idx[j]], values[x]) > 0 ) {
+				idx[j + 1] = idx[j];
+				j--;
+			}
+			idx[j + 1] = x;
+		}
+	}
+	
 	// Higher strength parameter comes earlier in the array
 	void sortByStrengths(T[] arr, final double[] strengths) {
 		Arrays.sort(arr, new Comparator<T>() {
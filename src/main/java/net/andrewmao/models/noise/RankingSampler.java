@@ -0,0 +1,19 @@
+package net.andrewmao.models.noise;
+
+/**
+ * Draws rankings from a noise model one at a time, into a reused array,
+ * so that a sample of any size can be processed without building a profile.
+ * 
+ * @see NoiseModel#getSampler(long, java.util.Random)
+ * @author mao
+ *
+ */
+public interface RankingSampler {
+
+	/**
+	 * Fills in the next ranking.
+	 * @param ranking indices into the candidates of the model, most preferred first
+	 */
+	void next(int[] ranking);
+	
+}
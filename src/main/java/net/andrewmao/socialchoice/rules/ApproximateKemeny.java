@@ -0,0 +1,242 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Approximate Kemeny rankings, for too many candidates to search.
+ *
+ * Each restart sorts the candidates by randomized KwikSort on the majority graph: a random pivot,
+ * the candidates beating it by majority above it, those losing below it, and ties on either side
+ * at random. The order is then improved by {@link Kemeny#localSearch(long[][], int[])}, and the
+ * order with the fewest disagreements over all restarts is returned. Restarts run in parallel
+ * on the {@link SharedPool} unless given another pool, and the first one starts from the Borda order instead.
+ *
+ * Each strongly connected component of the majority graph is sorted separately, as in {@link Kemeny}.
+ * The reported lower bound counts the losing side of every pair, which no ranking can avoid.
+ *
+ * @author mao
+ *
+ */
+public class ApproximateKemeny implements VotingRule {
+
+	public static final int DEFAULT_RESTARTS = 16;
+
+	final int restarts;
+	final long seed;
+	final ForkJoinPool pool;
+
+	public ApproximateKemeny() {
+		this(DEFAULT_RESTARTS, 0);
+	}
+
+	/**
+	 * @param restarts the number of orders to try
+	 * @param seed for the random pivots, so that the same profile gives the same ranking
+	 */
+	public ApproximateKemeny(int restarts, long seed) {
+		this(restarts, seed, SharedPool.get());
+	}
+
+	/**
+	 * @param restarts the number of orders to try
+	 * @param seed for the random pivots, so that the same profile gives the same ranking
+	 * @param pool the pool that the restarts run on
+	 */
+	public ApproximateKemeny(int restarts, long seed, ForkJoinPool pool) {
+		if( restarts < 1 ) throw new IllegalArgumentException("Need at least one restart");
+		this.restarts = restarts;
+		this.seed = seed;
+		this.pool = pool;
+	}
+
+	public String toString() { return this.getClass().getSimpleName(); }
+
+	@Override
+	public <T> List<T> getRanking(PreferenceProfile<T> prefs) {
+		return solve(prefs).getRanking();
+	}
+
+	/**
+	 * @param prefs
+	 * @return the best ranking found, with its disagreements and a lower bound on those of any ranking
+	 */
+	public <T> KemenyBranchAndBound.Solution<T> solve(PreferenceProfile<T> prefs) {
+		IntPreferenceProfile<T> ip = prefs.asIntProfile();
+		T[] candidates = ip.getSortedCandidates();
+		long[][] wins = ip.getStatistics().getPairwiseMatrix();
+
+		int[] order = getOrder(wins);
+
+		List<T> ranking = new ArrayList<T>(order.length);
+		for( int c : order ) ranking.add(candidates[c]);
+
+		long lowerBound = 0;
+		for( int a = 0; a < wins.length; a++ )
+			for( int b = a + 1; b < wins.length; b++ )
+				lowerBound += Math.min(wins[a][b], wins[b][a]);
+
+		return new KemenyBranchAndBound.Solution<T>(ranking, Kemeny.disagreements(wins, order), lowerBound);
+	}
+
+	/**
+	 * @param wins wins[a][b] is the number of voters preferring a to b
+	 * @return candidate ids, most preferred first
+	 */
+	public int[] getOrder(long[][] wins) {
+		int[] order = new int[wins.length];
+		int placed = 0;
+		for( int[] ids : Kemeny.getComponents(wins) ) {
+			if( ids.length > 2 ) ids = sortComponent(wins, ids);
+			else if( ids.length == 2 && wins[ids[1]][ids[0]] > wins[ids[0]][ids[1]] ) ids = new int[] { ids[1], ids[0] };
+
+			System.arraycopy(ids, 0, order, placed, ids.length);
+			placed += ids.length;
+		}
+		return order;
+	}
+
+	int[] sortComponent(long[][] wins, int[] ids) {
+		int n = ids.length;
+		long[][] w = new long[n][n];
+		for( int a = 0; a < n; a++ )
+			for( int b = 0; b < n; b++ )
+				w[a][b] = wins[ids[a]][ids[b]];
+		long[][] margin = Kemeny.margins(w);
+
+		List<Restart> tasks = new ArrayList<Restart>(restarts);
+		for( int r = 0; r < restarts; r++ ) tasks.add(new Restart(w, margin, r));
+		SharedPool.invoke(pool, new Restarts(tasks));
+
+		Restart best = null;
+		for( Restart task : tasks ) {
+			long cost = task.join();
+			if( best == null || cost < best.cost ) best = task;
+		}
+
+		int[] result = new int[n];
+		for( int i = 0; i < n; i++ ) result[i] = ids[best.order[i]];
+		return result;
+	}
+
+	/**
+	 * Sorts order[from], ..., order[to - 1] by randomized KwikSort.
+	 * @param margin margin[a][b] is the number of voters preferring a to b minus those preferring b to a
+	 * @param order
+	 * @param buffer scratch space as long as the order
+	 * @param rnd
+	 */
+	static void kwikSort(long[][] margin, int[] order, int[] buffer, int from, int to, Random rnd) {
+		while( to - from > 1 ) {
+			int pivot = order[from + rnd.nextInt(to - from)];
+			long[] row = margin[pivot];
+
+			// Winners fill the buffer from the front and losers from the back
+			int above = from, below = to;
+			for( int i = from; i < to; i++ ) {
+				int c = order[i];
+				if( c == pivot ) continue;
+				long d = row[c];
+				if( d < 0 || d == 0 && rnd.nextBoolean() ) buffer[above++] = c;
+				else buffer[--below] = c;
+			}
+			System.arraycopy(buffer, from, order, from, above - from);
+			order[above] = pivot;
+			System.arraycopy(buffer, below, order, above + 1, to - below);
+
+			// Recurse on the smaller side
+			if( above - from < to - above - 1 ) {
+				kwikSort(margin, order, buffer, from, above, rnd);
+				from = above + 1;
+			}
+			else {
+				kwikSort(margin, order, buffer, above + 1, to, rnd);
+				to = above;
+			}
+		}
+	}
+
+	class Restart extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		final long[][] w;
+		final long[][] margin;
+		final int index;
+
+		int[] order;
+		long cost;
+
+		Restart(long[][] w, long[][] margin, int index) {
+			this.w = w;
+			this.margin = margin;
+			this.index = index;
+		}
+
+		@Override
+		protected Long compute() {
+			int n = w.length;
+			if( index == 0 ) {
+				order = bordaOrder(w);
+			}
+			else {
+				order = new int[n];
+				for( int i = 0; i < n; i++ ) order[i] = i;
+				Random rnd = new Random(seed ^ (index * 0x9E3779B97F4A7C15L));
+				kwikSort(margin, order, new int[n], 0, n, rnd);
+			}
+
+			Kemeny.improve(margin, order);
+			cost = Kemeny.disagreements(w, order);
+			return cost;
+		}
+	}
+
+	static class Restarts extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final List<Restart> tasks;
+
+		Restarts(List<Restart> tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+	/**
+	 * @param w
+	 * @return the candidates in decreasing order of their total pairwise wins
+	 */
+	static int[] bordaOrder(long[][] w) {
+		int n = w.length;
+		final long[] scores = new long[n];
+		Integer[] ids = new Integer[n];
+		for( int a = 0; a < n; a++ ) {
+			for( int b = 0; b < n; b++ ) scores[a] += w[a][b];
+			ids[a] = a;
+		}
+
+		// Higher scores first, then lower ids
+		Arrays.sort(ids, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int c = Long.compare(scores[b], scores[a]);
+				return c != 0 ? c : Integer.compare(a, b);
+			}
+		});
+
+		int[] order = new int[n];
+		for( int i = 0; i < n; i++ ) order[i] = ids[i];
+		return order;
+	}
+
+}
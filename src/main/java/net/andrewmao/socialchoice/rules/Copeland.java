@@ -0,0 +1,45 @@
+package net.andrewmao.socialchoice.rules;
+
+/**
+ * Scores each candidate by the number of others it beats by majority, plus a fraction
+ * of a point for each it ties with.
+ *
+ * @author mao
+ *
+ */
+public class Copeland extends PairwiseVotingRule {
+
+	final double tieScore;
+
+	public Copeland() {
+		this(0.5);
+	}
+
+	/**
+	 * @param tieScore the score of a pairwise tie, between 0 and 1
+	 */
+	public Copeland(double tieScore) {
+		if( tieScore < 0 || tieScore > 1 ) throw new IllegalArgumentException("Tie score must be between 0 and 1");
+		this.tieScore = tieScore;
+	}
+
+	@Override
+	protected double[] getPairwiseScores(long[][] wins) {
+		int m = wins.length;
+		double[] scores = new double[m];
+
+		for( int a = 0; a < m; a++ ) {
+			for( int b = a + 1; b < m; b++ ) {
+				if( wins[a][b] > wins[b][a] ) scores[a] += 1;
+				else if( wins[a][b] < wins[b][a] ) scores[b] += 1;
+				else {
+					scores[a] += tieScore;
+					scores[b] += tieScore;
+				}
+			}
+		}
+
+		return scores;
+	}
+
+}
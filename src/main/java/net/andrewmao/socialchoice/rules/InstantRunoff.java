@@ -0,0 +1,35 @@
+package net.andrewmao.socialchoice.rules;
+
+import net.andrewmao.models.discretechoice.ScoredItems;
+
+/**
+ * Instant-runoff voting. The candidate with the fewest first choices among those left is
+ * eliminated, and its ballots go to their next choices, until one candidate is left.
+ * Candidates are ranked in reverse order of elimination, and ties for the fewest votes
+ * eliminate the candidate with the highest id.
+ *
+ * Ballots are counted from the distinct rankings of the profile; see {@link RunoffTally}.
+ *
+ * @author mao
+ *
+ */
+public class InstantRunoff extends ScoredVotingRule {
+
+	@Override
+	public <T> ScoredItems<T> getScoredRanking(PreferenceProfile<T> profile) {
+		RankingMultiset<T> counts = RankingMultiset.of(profile);
+		RunoffTally tally = new RunoffTally(counts);
+
+		// Each candidate scores the round in which it was eliminated
+		double[] scores = new double[tally.m];
+		for( int round = 0; tally.getNumContinuing() > 1; round++ ) {
+			int c = tally.getLowest();
+			scores[c] = round;
+			tally.transfer(c, 1);
+		}
+		if( tally.m > 0 ) scores[tally.getHighest()] = tally.m - 1;
+
+		return new ScoredItems<T>(counts.getSortedCandidates(), scores);
+	}
+
+}
@@ -0,0 +1,513 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.mutable.MutableInt;
+
+import com.google.common.collect.ArrayTable;
+import com.google.common.collect.Table;
+
+import net.andrewmao.math.RandomSelection;
+
+/**
+ * A preference profile whose candidates are interned to dense integer ids.
+ *
+ * Candidate ids are the indices of the candidates in sorted order. Each ranking is
+ * stored as one row of a flat int array: the first m entries hold the candidate ids
+ * in order of preference, and the next m entries hold the position of each candidate id,
+ * so that lookups in either direction are O(1).
+ *
+ * Rows may carry an integer weight, in which case a row stands for that many identical
+ * rankings (see {@link RankingMultiset}). All counts returned here are weighted.
+ *
+ * Subsets and resamples are views that share the rows of this profile, rather than copies.
+ *
+ * The boxed T[][] array is only built if something asks for it via {@link #getProfile()}.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class IntPreferenceProfile<T> extends PreferenceProfile<T> {
+
+	final T[] candidates;
+	final Map<T, Integer> ids;
+
+	final int m;
+	final int stride;
+
+	int[] data;
+	// Rows of the data in this profile, or null for all of them in order
+	final int[] rows;
+	// null when every row has weight 1
+	int[] weights;
+	int numRows;
+	int numRankings;
+
+	private volatile ProfileStatistics<T> statistics;
+	private volatile RankingMultiset<T> multiset;
+
+	IntPreferenceProfile(T[] candidates, Map<T, Integer> ids, int[] data, int[] rows, int[] weights, int numRows) {
+		super(null);
+		this.candidates = candidates;
+		this.ids = ids;
+		this.m = candidates.length;
+		this.stride = 2 * m;
+		this.data = data;
+		this.rows = rows;
+		this.weights = weights;
+		this.numRows = numRows;
+
+		if( weights == null ) numRankings = numRows;
+		else for( int r = 0; r < numRows; r++ ) numRankings += weights[r];
+	}
+
+	IntPreferenceProfile(T[] candidates, Map<T, Integer> ids, int[] data, int numRows) {
+		this(candidates, ids, data, null, null, numRows);
+	}
+
+	/**
+	 * Interns a boxed preference profile. Every ranking must order the same set of candidates.
+	 * @param profile
+	 * @return
+	 */
+	public static <T> IntPreferenceProfile<T> intern(T[][] profile) {
+		T[] candidates = Arrays.copyOf(profile[0], profile[0].length);
+		Arrays.sort(candidates);
+
+		Map<T, Integer> ids = getIdMap(candidates);
+
+		int m = candidates.length;
+		int[] data = new int[profile.length * 2 * m];
+
+		int off = 0;
+		for( T[] ranking : profile ) {
+			if( ranking.length != m )
+				throw new IllegalArgumentException("All rankings must contain the same " + m + " candidates");
+
+			for( int i = 0; i < m; i++ ) {
+				Integer id = ids.get(ranking[i]);
+				if( id == null )
+					throw new IllegalArgumentException("Unknown candidate " + ranking[i] + " in " + Arrays.toString(ranking));
+
+				data[off + i] = id;
+				data[off + m + id] = i;
+			}
+			off += 2 * m;
+		}
+
+		return new IntPreferenceProfile<T>(candidates, ids, data, profile.length);
+	}
+
+	/**
+	 * Creates a profile directly from rankings of candidate ids, without going through boxed arrays.
+	 *
+	 * @param sortedCandidates the candidates, in sorted order; the index of each is its id
+	 * @param rankings each ranking is an array of candidate ids, most preferred first
+	 * @return
+	 */
+	public static <T> IntPreferenceProfile<T> fromIds(T[] sortedCandidates, int[][] rankings) {
+		int m = sortedCandidates.length;
+		int[] data = new int[rankings.length * 2 * m];
+
+		int off = 0;
+		for( int[] ranking : rankings ) {
+			if( ranking.length != m )
+				throw new IllegalArgumentException("All rankings must contain the same " + m + " candidates");
+
+			System.arraycopy(ranking, 0, data, off, m);
+			for( int i = 0; i < m; i++ ) data[off + m + ranking[i]] = i;
+			off += 2 * m;
+		}
+
+		return new IntPreferenceProfile<T>(sortedCandidates, getIdMap(sortedCandidates), data, rankings.length);
+	}
+
+	static <T> Map<T, Integer> getIdMap(T[] candidates) {
+		Map<T, Integer> ids = new HashMap<T, Integer>(2 * candidates.length);
+		for( int i = 0; i < candidates.length; i++ ) ids.put(candidates[i], i);
+		return ids;
+	}
+
+	@Override
+	public IntPreferenceProfile<T> asIntProfile() {
+		return this;
+	}
+
+	/**
+	 * Builds the boxed array on demand, for callers that still need it.
+	 */
+	@Override
+	public T[][] getProfile() {
+		if( profile == null ) {
+			@SuppressWarnings("unchecked")
+			T[][] arr = (T[][]) Array.newInstance(candidates.getClass().getComponentType(), numRankings, m);
+
+			int k = 0;
+			for( int r = 0; r < numRows; r++ ) {
+				int w = getWeight(r);
+				if( w == 0 ) continue;
+
+				T[] ranking = arr[k];
+				for( int i = 0; i < m; i++ )
+					ranking[i] = candidates[candidateAt(r, i)];
+				// Identical rankings can share the same array
+				for( ; w > 0; w-- ) arr[k++] = ranking;
+			}
+			profile = arr;
+		}
+		return profile;
+	}
+
+	@Override
+	public T[] getSortedCandidates() {
+		return candidates.clone();
+	}
+
+	@Override
+	public int getNumCandidates() {
+		return m;
+	}
+
+	/**
+	 * @return the number of rankings, counting each row as many times as its weight
+	 */
+	@Override
+	public int getNumRankings() {
+		return numRankings;
+	}
+
+	/**
+	 * @return the number of stored rows, which is less than the number of rankings if rows are weighted
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getWeight(int row) {
+		return weights == null ? 1 : weights[row];
+	}
+
+	public T getCandidate(int id) {
+		return candidates[id];
+	}
+
+	/**
+	 * @param item
+	 * @return the id of the candidate, or -1 if it is not in this profile
+	 */
+	public int getId(T item) {
+		Integer id = ids.get(item);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @param row
+	 * @param position
+	 * @return the id of the candidate at the given position of a ranking
+	 */
+	public int candidateAt(int row, int position) {
+		return data[offset(row) + position];
+	}
+
+	/**
+	 * @param row
+	 * @param id
+	 * @return the position of a candidate id in a ranking
+	 */
+	public int positionOf(int row, int id) {
+		return data[offset(row) + m + id];
+	}
+
+	/**
+	 * @param row
+	 * @return a copy of the candidate ids in a ranking, most preferred first
+	 */
+	public int[] getRanking(int row) {
+		int[] ranking = new int[m];
+		for( int i = 0; i < m; i++ ) ranking[i] = candidateAt(row, i);
+		return ranking;
+	}
+
+	final int offset(int row) {
+		return (rows == null ? row : rows[row]) * stride;
+	}
+
+	/**
+	 * @param row
+	 * @return the ranking as 1-based indices into the sorted candidates, the format used by the estimators
+	 */
+	public int[] getIndices(int row) {
+		int[] ranking = getRanking(row);
+		for( int i = 0; i < m; i++ ) ranking[i]++;
+		return ranking;
+	}
+
+	/**
+	 * Weighted rows are repeated in the list, sharing the same array.
+	 */
+	@Override
+	public List<int[]> getIndices(List<T> ordering) {
+		// Map ids to 1-based indices in the ordering once, rather than for every ranking
+		int[] idx = new int[m];
+		for( int c = 0; c < m; c++ ) idx[c] = ordering.indexOf(candidates[c]) + 1;
+
+		List<int[]> rankings = new ArrayList<int[]>(numRankings);
+		for( int r = 0; r < numRows; r++ ) {
+			int[] ranking = new int[m];
+			for( int i = 0; i < m; i++ ) ranking[i] = idx[candidateAt(r, i)];
+			for( int w = getWeight(r); w > 0; w-- ) rankings.add(ranking);
+		}
+
+		return rankings;
+	}
+
+	/**
+	 * Gets the position, pairwise and adjacent counts of this profile, which are computed
+	 * in one pass over the rankings the first time they are needed and then shared.
+	 * @return
+	 */
+	public ProfileStatistics<T> getStatistics() {
+		ProfileStatistics<T> stats = statistics;
+		if( stats == null ) {
+			synchronized(this) {
+				stats = statistics;
+				if( stats == null ) statistics = stats = computeStatistics();
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * Gets the distinct rankings of this profile with their counts, which are computed
+	 * the first time they are needed and then shared, so they must not be modified;
+	 * {@link RankingMultiset#of(PreferenceProfile)} hands out copies. Statistics not computed yet
+	 * are taken from the distinct rankings, so that a profile read for both is only read once.
+	 * @return
+	 */
+	RankingMultiset<T> getMultiset() {
+		RankingMultiset<T> counts = multiset;
+		if( counts == null ) {
+			synchronized(this) {
+				counts = multiset;
+				if( counts == null ) {
+					counts = new RankingMultiset<T>(candidates, RankingMultiset.INITIAL_ROWS);
+					counts.addAll(this);
+					if( statistics == null ) statistics = counts.getStatistics();
+					multiset = counts;
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Drops the cached statistics after the rankings change.
+	 */
+	void invalidateStatistics() {
+		statistics = null;
+		multiset = null;
+	}
+
+	ProfileStatistics<T> computeStatistics() {
+		// With many candidates, the pairwise counts are most of the work
+		boolean parallel = usePairwiseKernel();
+		long[][] positions = new long[m][m];
+		long[][] pairwise = parallel ? PairwiseKernel.count(this) : new long[m][m];
+		long[][] adjacent = new long[m][m];
+		ProfileStatistics<T> stats = new ProfileStatistics<T>(candidates, numRankings, positions, pairwise, adjacent);
+
+		for( int r = 0; r < numRows; r++ ) {
+			int w = getWeight(r);
+			if( w == 0 ) continue;
+
+			int off = offset(r);
+			for( int i = 0; i < m; i++ )
+				positions[data[off + i]][i] += w;
+			for( int i = 0; i < m - 1; i++ )
+				adjacent[data[off + i]][data[off + i + 1]] += w;
+			if( parallel ) continue;
+
+			// Only count the upper triangle from the positions; the rest is implied
+			off += m;
+			for( int a = 0; a < m; a++ ) {
+				int pa = data[off + a];
+				long[] row = pairwise[a];
+				for( int b = a + 1; b < m; b++ )
+					if( pa < data[off + b] ) row[b] += w;
+			}
+		}
+
+		if( !parallel ) stats.fillPairwise();
+		return stats;
+	}
+
+	boolean usePairwiseKernel() {
+		return (long) numRows * m * m >= PairwiseKernel.MIN_PARALLEL_WORK;
+	}
+
+	/**
+	 * @return counts[c][i] is the number of times candidate id c appears in position i.
+	 */
+	public long[][] getPositionMatrix() {
+		return ProfileStatistics.copy(getStatistics().positions);
+	}
+
+	/**
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears above b.
+	 */
+	public long[][] getPairwiseMatrix() {
+		return ProfileStatistics.copy(getStatistics().pairwise);
+	}
+
+	/**
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears directly above b.
+	 */
+	public long[][] getAdjacentMatrix() {
+		return ProfileStatistics.copy(getStatistics().adjacent);
+	}
+
+	@Override
+	public Map<T, int[]> getPositionCounts() {
+		int[][] counts = ProfileStatistics.toInts(getStatistics().positions);
+
+		Map<T, int[]> map = new TreeMap<T, int[]>();
+		for( int c = 0; c < m; c++ ) map.put(candidates[c], counts[c]);
+
+		return map;
+	}
+
+	@Override
+	public Table<T, T, MutableInt> getPairwiseCounts() {
+		long[][] wins = getStatistics().pairwise;
+
+		List<T> keys = Arrays.asList(candidates);
+		Table<T, T, MutableInt> table = ArrayTable.create(keys, keys);
+
+		for( int a = 0; a < m; a++ ) {
+			for( int b = 0; b < m; b++ ) {
+				if( a == b ) continue;
+				table.put(candidates[a], candidates[b], new MutableInt((int) wins[a][b]));
+			}
+		}
+
+		return table;
+	}
+
+	@Override
+	public int getNumCorrect(T first, T second, Comparator<T> comp) {
+		int a = getId(first);
+		int b = getId(second);
+
+		if( a < 0 || b < 0 ) return 0;
+
+		int c = comp.compare(first, second);
+		if( c == 0 ) return a == b ? numRankings : 0;
+
+		int correct = (int) getStatistics().pairwise[a][b];
+		return c < 0 ? correct : numRankings - correct;
+	}
+
+	@Override
+	public IntPreferenceProfile<T> copyRandomSubset(int subsetSize, Random rnd) {
+		if( subsetSize >= numRankings ) return this;
+
+		return subset(RandomSelection.randNK(numRankings, subsetSize, rnd));
+	}
+
+	@Override
+	public IntPreferenceProfile<T> resample(int size, Random rnd) {
+		int[] indices = new int[size];
+		for( int i = 0; i < size; i++ ) indices[i] = rnd.nextInt(numRankings);
+
+		return subset(indices);
+	}
+
+	/**
+	 * Creates a view of some of the rankings in this profile, without copying them.
+	 * Indices may repeat, and count each weighted row as many times as its weight.
+	 *
+	 * @param indices
+	 * @return
+	 */
+	public IntPreferenceProfile<T> subset(int[] indices) {
+		int[] newRows = toRows(indices);
+		if( rows != null )
+			for( int i = 0; i < newRows.length; i++ ) newRows[i] = rows[newRows[i]];
+
+		return new IntPreferenceProfile<T>(candidates, ids, data, newRows, null, newRows.length);
+	}
+
+	/**
+	 * Creates a view of some of the rows of this profile, keeping their weights, without copying them.
+	 * Unlike {@link #subset(int[])}, the indices are of rows rather than of rankings.
+	 *
+	 * @param rowIndices
+	 * @return
+	 */
+	public IntPreferenceProfile<T> selectRows(int[] rowIndices) {
+		int[] newRows = new int[rowIndices.length];
+		int[] newWeights = weights == null ? null : new int[rowIndices.length];
+		for( int i = 0; i < rowIndices.length; i++ ) {
+			int r = rowIndices[i];
+			newRows[i] = rows == null ? r : rows[r];
+			if( newWeights != null ) newWeights[i] = weights[r];
+		}
+		return new IntPreferenceProfile<T>(candidates, ids, data, newRows, newWeights, newRows.length);
+	}
+
+	/**
+	 * Creates a view of the positions fromIdx (inclusive) to toIdx (exclusive) of each ranking,
+	 * without copying them, if every ranking has the same candidates in those positions.
+	 * Otherwise the positions are copied, as a profile of rankings over different candidates.
+	 */
+	@Override
+	public PreferenceProfile<T> slice(int fromIdx, int toIdx) {
+		int[] parentIds = ProfileView.Slice.getParentIds(this, fromIdx, toIdx);
+		if( ProfileView.Slice.sameCandidates(this, fromIdx, toIdx, parentIds) )
+			return new ProfileView.Slice<T>(this, fromIdx, toIdx, parentIds);
+
+		T[][] profile = getProfile();
+		@SuppressWarnings("unchecked")
+		T[][] sliced = (T[][]) Array.newInstance(candidates.getClass().getComponentType(), profile.length, toIdx - fromIdx);
+		for( int i = 0; i < profile.length; i++ )
+			System.arraycopy(profile[i], fromIdx, sliced[i], 0, toIdx - fromIdx);
+		return new PreferenceProfile<T>(sliced);
+	}
+
+	/**
+	 * Converts indices of (weighted) rankings into the indices of the rows that contain them.
+	 * @param indices
+	 * @return
+	 */
+	int[] toRows(int[] indices) {
+		if( numRankings == numRows ) {
+			boolean unweighted = true;
+			for( int r = 0; r < numRows && unweighted; r++ ) unweighted = getWeight(r) == 1;
+			if( unweighted ) return indices.clone();
+		}
+
+		int[] ends = new int[numRows];
+		int total = 0;
+		for( int r = 0; r < numRows; r++ ) ends[r] = (total += getWeight(r));
+
+		int[] result = new int[indices.length];
+		for( int i = 0; i < indices.length; i++ ) {
+			int r = Arrays.binarySearch(ends, 0, numRows, indices[i] + 1);
+			// Find the first row whose end exceeds the index, skipping empty rows
+			if( r < 0 ) r = -r - 1;
+			else while( r > 0 && ends[r-1] == ends[r] ) r--;
+			result[i] = r;
+		}
+		return result;
+	}
+
+}
@@ -1,87 +1,532 @@
 package net.andrewmao.socialchoice.rules;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
 
-import org.apache.commons.lang.ArrayUtils;
+/**
+ * Exact Kemeny rankings, by dynamic programming over subsets of candidates (Held-Karp).
+ *
+ * The cost of a subset S is the fewest disagreements with the profile over pairs involving
+ * the top |S| candidates, when those are exactly S. Placing candidate c just below S \ {c}
+ * disagrees with every voter who prefers some candidate outside S to c, so each subset takes
+ * O(m) work and the whole table O(2^m m). Subsets of each size only depend on smaller ones,
+ * so each layer is filled in parallel. Every optimal ranking is then found by walking back
+ * through the table.
+ *
+ * Before that, the candidates are split into the strongly connected components of the
+ * majority graph. If every candidate of one component beats every candidate of another by
+ * a strict majority, all Kemeny rankings put the first above the second, so each component
+ * is solved on its own, and the optimal rankings are all the ways of joining theirs.
+ * The limit of {@link #MAX_CANDIDATES} applies to each component rather than the whole profile.
+ *
+ * @author mao
+ *
+ */
+public class Kemeny implements VotingRule {
 
-import net.andrewmao.math.PermutationGenerator;
-import net.andrewmao.math.RandomSelection;
-import net.andrewmao.math.SmallPermutationGenerator;
+	/**
+	 * The most candidates in one component of the majority graph; the table takes 8 * 2^m bytes.
+	 */
+	public static final int MAX_CANDIDATES = 25;
+
+	// Subsets filled by one task
+	static final int LAYER_CHUNK = 1 << 14;
+	// Larger components are solved one at a time, with their layers in parallel
+	static final int MAX_PARALLEL_COMPONENT = 16;
+
+	final ForkJoinPool pool;
+
+	/**
+	 * Solves on the {@link SharedPool}.
+	 */
+	public Kemeny() {
+		this(SharedPool.get());
+	}
+
+	/**
+	 * @param pool the pool that the components and the layers of each table are solved on
+	 */
+	public Kemeny(ForkJoinPool pool) {
+		this.pool = pool;
+	}
 
-public class Kemeny implements VotingRule {
-	
 	public String toString() { return this.getClass().getSimpleName(); }
-	
+
 	public <T> List<List<T>> getAllRankings(PreferenceProfile<T> prefs) {
-		T[][] preferences = prefs.profile;
-		 
-		int c = prefs.getNumCandidates();
-		T[] candidates = prefs.getSortedCandidates();		
-		
-		long fewestDisagreements = Long.MAX_VALUE;
-		List<int[]> bestRankings = new ArrayList<int[]>();
-		
-		// Compute pairwise preferences in the preference profile, relative to some arbitrary index
-		int[][] iOverJ = new int[c][c];
-		
-		for( T[] ranking : preferences ) {
-			for( int i = 0; i < c; i++ ) {
-				for( int j = i+1; j < c; j++ ) {
-					// If i is ranked higher than j in this ranking, increment pairwise count								
-					if( ArrayUtils.indexOf(ranking, candidates[i]) < 
-							ArrayUtils.indexOf(ranking, candidates[j]) )
-						iOverJ[i][j]++;
-					else
-						iOverJ[j][i]++;
-				}
-			}
-		}		
-		
-		PermutationGenerator perm = new SmallPermutationGenerator(c);
-		
-		while( perm.hasMore() ) {
-			int[] p = perm.getNext();						
-			
-			long disagreements = 0;
-			
-			// Compute total disagreements for this permutation
-			for( int i = 0; i < c; i++ ) {
-				for( int j = i+1; j < c; j++ ) {
-					if( ArrayUtils.indexOf(p, i) < ArrayUtils.indexOf(p, j) )
-						disagreements += iOverJ[j][i];
-					else
-						disagreements += iOverJ[i][j];
-				}
-			}
-			
-			if( disagreements < fewestDisagreements ) {
-				fewestDisagreements = disagreements;
-				bestRankings.clear();				
-			}
-			
-			if( disagreements == fewestDisagreements ) {
-				// Don't instantiate things unless we have to ... at the end
-				bestRankings.add(p.clone());
-			}			
-		}
-		
+		IntPreferenceProfile<T> ip = prefs.asIntProfile();
+
+		int c = ip.getNumCandidates();
+		T[] candidates = ip.getSortedCandidates();
+
+		// Compute pairwise preferences in the preference profile, relative to the sorted candidate ids
+		long[][] iOverJ = ip.getStatistics().getPairwiseMatrix();
+
+		List<int[]> bestRankings = getOptimalOrders(iOverJ, pool);
+
 		// Instantiate all actual rankings
 		List<List<T>> ret = new ArrayList<List<T>>(bestRankings.size());
 		for( int[] p : bestRankings ) {
 			List<T> thisRanking = new ArrayList<T>(c);
-			for( int i = 0; i < p.length; i++ ) 
+			for( int i = 0; i < p.length; i++ )
 				thisRanking.add(candidates[p[i]]);
 			ret.add(thisRanking);
-		}		
+		}
 		return ret;
 	}
-		
+
 	@Override
 	public <T> List<T> getRanking(PreferenceProfile<T> prefs) {
+		IntPreferenceProfile<T> ip = prefs.asIntProfile();
+		T[] candidates = ip.getSortedCandidates();
+
 		// This returns a random ranking for now, instead of undetermined biases
-		
-		return RandomSelection.selectRandom(getAllRankings(prefs));
+		int[] order = getOptimalOrder(ip.getStatistics().getPairwiseMatrix(), pool, ThreadLocalRandom.current());
+
+		List<T> ranking = new ArrayList<T>(order.length);
+		for( int c : order ) ranking.add(candidates[c]);
+		return ranking;
+	}
+
+	/**
+	 * Solves each component of the majority graph and joins the results.
+	 * @param wins
+	 * @param pool
+	 * @return every order of the candidate ids with the fewest disagreements
+	 */
+	static List<int[]> getOptimalOrders(long[][] wins, ForkJoinPool pool) {
+		SubsetTable[] solved = solveComponents(wins, pool);
+
+		// Every combination of the orders of the components, in topological order
+		List<int[]> orders = new ArrayList<int[]>();
+		orders.add(new int[0]);
+		for( SubsetTable table : solved ) {
+			List<int[]> parts = table.getOptimalOrders();
+			List<int[]> joined = new ArrayList<int[]>(orders.size() * parts.size());
+			for( int[] prefix : orders ) {
+				for( int[] part : parts ) {
+					int[] order = Arrays.copyOf(prefix, prefix.length + part.length);
+					System.arraycopy(part, 0, order, prefix.length, part.length);
+					joined.add(order);
+				}
+			}
+			orders = joined;
+		}
+		return orders;
+	}
+
+	/**
+	 * Solves each component of the majority graph, and walks back one optimal order of each,
+	 * choosing at random among the candidates that can be placed last at each step.
+	 * @param wins
+	 * @param pool
+	 * @param rnd
+	 * @return an order of the candidate ids with the fewest disagreements
+	 */
+	static int[] getOptimalOrder(long[][] wins, ForkJoinPool pool, Random rnd) {
+		int[] order = new int[wins.length];
+		int i = 0;
+		for( SubsetTable table : solveComponents(wins, pool) ) {
+			int[] part = table.getOptimalOrder(rnd);
+			System.arraycopy(part, 0, order, i, part.length);
+			i += part.length;
+		}
+		return order;
+	}
+
+	/**
+	 * @param wins
+	 * @param pool
+	 * @return the filled table of each component of the majority graph, in topological order
+	 */
+	static SubsetTable[] solveComponents(final long[][] wins, ForkJoinPool pool) {
+		int[][] components = getComponents(wins);
+
+		SubsetTable[] solved = new SubsetTable[components.length];
+		List<RecursiveTask<SubsetTable>> tasks = new ArrayList<RecursiveTask<SubsetTable>>();
+
+		for( int k = 0; k < components.length; k++ ) {
+			final int[] ids = components[k];
+			if( ids.length == 1 ) {
+				solved[k] = new SubsetTable(wins, ids).fill(null);
+			}
+			else if( ids.length > MAX_PARALLEL_COMPONENT ) {
+				solved[k] = new SubsetTable(wins, ids).fill(pool);
+			}
+			else {
+				tasks.add(new RecursiveTask<SubsetTable>() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected SubsetTable compute() {
+						return new SubsetTable(wins, ids).fill(null);
+					}
+				});
+			}
+		}
+
+		if( !tasks.isEmpty() ) {
+			final List<RecursiveTask<SubsetTable>> all = tasks;
+			SharedPool.invoke(pool, new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					invokeAll(all);
+				}
+			});
+		}
+
+		int t = 0;
+		for( int k = 0; k < components.length; k++ )
+			if( solved[k] == null ) solved[k] = tasks.get(t++).join();
+
+		return solved;
+	}
+
+	/**
+	 * Finds the strongly connected components of the majority graph with Tarjan's algorithm,
+	 * where a has an edge to b unless b beats a by a strict majority.
+	 * @param wins
+	 * @return the candidate ids of each component, with the components in order from the top
+	 */
+	static int[][] getComponents(long[][] wins) {
+		int m = wins.length;
+		int[] index = new int[m];
+		int[] lowLink = new int[m];
+		Arrays.fill(index, -1);
+		boolean[] onStack = new boolean[m];
+		int[] stack = new int[m];
+		int top = 0;
+		int next = 0;
+
+		// Explicit call stack of (vertex, next neighbor to visit)
+		int[] callVertex = new int[m];
+		int[] callNeighbor = new int[m];
+
+		List<int[]> components = new ArrayList<int[]>();
+
+		for( int root = 0; root < m; root++ ) {
+			if( index[root] >= 0 ) continue;
+
+			int depth = 0;
+			callVertex[0] = root;
+			callNeighbor[0] = 0;
+			index[root] = lowLink[root] = next++;
+			stack[top++] = root;
+			onStack[root] = true;
+
+			while( depth >= 0 ) {
+				int v = callVertex[depth];
+				int b = callNeighbor[depth];
+
+				// Find the next neighbor of v
+				while( b < m && (b == v || wins[b][v] > wins[v][b]) ) b++;
+
+				if( b < m ) {
+					callNeighbor[depth] = b + 1;
+					if( index[b] < 0 ) {
+						index[b] = lowLink[b] = next++;
+						stack[top++] = b;
+						onStack[b] = true;
+						depth++;
+						callVertex[depth] = b;
+						callNeighbor[depth] = 0;
+					}
+					else if( onStack[b] ) {
+						lowLink[v] = Math.min(lowLink[v], index[b]);
+					}
+					continue;
+				}
+
+				// Done with v
+				if( lowLink[v] == index[v] ) {
+					int start = top;
+					do {
+						start--;
+						onStack[stack[start]] = false;
+					} while( stack[start] != v );
+
+					int[] component = Arrays.copyOfRange(stack, start, top);
+					Arrays.sort(component);
+					components.add(component);
+					top = start;
+				}
+				depth--;
+				if( depth >= 0 ) {
+					int parent = callVertex[depth];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+				}
+			}
+		}
+
+		// Tarjan finishes components that nothing else is reachable from first, i.e. from the bottom
+		int[][] result = new int[components.size()][];
+		for( int k = 0; k < result.length; k++ ) result[k] = components.get(result.length - 1 - k);
+		return result;
+	}
+
+	/**
+	 * @param wins wins[a][b] is the number of voters preferring a to b
+	 * @param order candidate ids, most preferred first
+	 * @return the number of pairwise disagreements between the order and the voters
+	 */
+	public static long disagreements(long[][] wins, int[] order) {
+		long total = 0;
+		for( int i = 0; i < order.length; i++ )
+			for( int j = i + 1; j < order.length; j++ )
+				total += wins[order[j]][order[i]];
+		return total;
+	}
+
+	/**
+	 * Improves an order by moving single candidates up or down, until no move reduces the disagreements.
+	 * The change from moving a candidate is accumulated one position at a time, so each candidate
+	 * takes O(m) to try at every position.
+	 * @param wins wins[a][b] is the number of voters preferring a to b
+	 * @param order candidate ids, most preferred first; modified in place
+	 * @return the number of disagreements of the improved order
+	 */
+	public static long localSearch(long[][] wins, int[] order) {
+		improve(margins(wins), order);
+		return disagreements(wins, order);
+	}
+
+	/**
+	 * @param wins
+	 * @return margin[a][b] is the number of voters preferring a to b minus those preferring b to a
+	 */
+	static long[][] margins(long[][] wins) {
+		int m = wins.length;
+		long[][] margin = new long[m][m];
+		for( int a = 0; a < m; a++ )
+			for( int b = 0; b < m; b++ )
+				margin[a][b] = wins[a][b] - wins[b][a];
+		return margin;
+	}
+
+	/**
+	 * The local search of {@link #localSearch(long[][], int[])}, on the margins.
+	 * @return the total reduction in disagreements
+	 */
+	static long improve(long[][] margin, int[] order) {
+		int n = order.length;
+		long reduction = 0;
+		boolean improved = true;
+		while( improved ) {
+			improved = false;
+			for( int i = 0; i < n; i++ ) {
+				int x = order[i];
+				long[] row = margin[x];
+				long delta = 0, bestDelta = 0;
+				int bestPos = i;
+
+				// Moving x above order[j]
+				for( int j = i - 1; j >= 0; j-- ) {
+					delta -= row[order[j]];
+					if( delta < bestDelta ) { bestDelta = delta; bestPos = j; }
+				}
+				// Moving x below order[j]
+				delta = 0;
+				for( int j = i + 1; j < n; j++ ) {
+					delta += row[order[j]];
+					if( delta < bestDelta ) { bestDelta = delta; bestPos = j; }
+				}
+
+				if( bestPos < i ) System.arraycopy(order, bestPos, order, bestPos + 1, i - bestPos);
+				else if( bestPos > i ) System.arraycopy(order, i + 1, order, i, bestPos - i);
+				else continue;
+				order[bestPos] = x;
+				reduction -= bestDelta;
+				improved = true;
+			}
+		}
+		return reduction;
+	}
+
+	/**
+	 * The subset table for some of the candidates, which are numbered 0 to n - 1 in the bits of a subset.
+	 */
+	static class SubsetTable {
+		final int n;
+		final int[] ids;
+		final long[][] binomial;
+
+		// w[a][c] is the number of voters preferring a to c
+		final long[][] w;
+		// Sums of w[a][c] over a in the low and high halves of a subset, and over all a
+		final int lowBits;
+		final long[][] low, high;
+		final long[] total;
+
+		final long[] cost;
+
+		SubsetTable(long[][] wins, int[] ids) {
+			n = ids.length;
+			if( n > MAX_CANDIDATES )
+				throw new IllegalArgumentException("Can't compute exact Kemeny rankings of " + n + " candidates");
+			this.ids = ids;
+
+			w = new long[n][n];
+			for( int a = 0; a < n; a++ )
+				for( int c = 0; c < n; c++ )
+					if( a != c ) w[a][c] = wins[ids[a]][ids[c]];
+
+			lowBits = n / 2;
+			low = new long[n][1 << lowBits];
+			high = new long[n][1 << (n - lowBits)];
+			total = new long[n];
+			for( int c = 0; c < n; c++ ) {
+				for( int s = 1; s < low[c].length; s++ )
+					low[c][s] = low[c][s & (s - 1)] + w[Integer.numberOfTrailingZeros(s)][c];
+				for( int s = 1; s < high[c].length; s++ )
+					high[c][s] = high[c][s & (s - 1)] + w[lowBits + Integer.numberOfTrailingZeros(s)][c];
+				for( int a = 0; a < n; a++ ) total[c] += w[a][c];
+			}
+
+			binomial = new long[n + 1][n + 1];
+			for( int i = 0; i <= n; i++ ) {
+				binomial[i][0] = 1;
+				for( int k = 1; k <= i; k++ ) binomial[i][k] = binomial[i-1][k-1] + binomial[i-1][k];
+			}
+
+			cost = new long[1 << n];
+		}
+
+		/**
+		 * @return the disagreements of the voters preferring a candidate outside s to c, when c is placed last in s
+		 */
+		final long added(int s, int c) {
+			return total[c] - low[c][s & ((1 << lowBits) - 1)] - high[c][s >>> lowBits];
+		}
+
+		void fill(int s) {
+			long best = Long.MAX_VALUE;
+			for( int rest = s; rest != 0; rest &= rest - 1 ) {
+				int c = Integer.numberOfTrailingZeros(rest);
+				long v = cost[s ^ (1 << c)] + added(s, c);
+				if( v < best ) best = v;
+			}
+			cost[s] = best;
+		}
+
+		/**
+		 * Fills the subsets of size k with ranks from, ..., to - 1, in increasing order.
+		 */
+		void fill(int k, long from, long to) {
+			int s = unrank(k, from);
+			for( long i = from; i < to; i++ ) {
+				fill(s);
+				// Next larger subset of the same size
+				int t = s | (s - 1);
+				s = (t + 1) | (((~t & -~t) - 1) >>> (Integer.numberOfTrailingZeros(s) + 1));
+			}
+		}
+
+		/**
+		 * @return the subset of size k with the given rank among all subsets of size k in increasing order
+		 */
+		int unrank(int k, long rank) {
+			int s = 0;
+			for( int b = n - 1; b >= 0 && k > 0; b-- ) {
+				if( rank >= binomial[b][k] ) {
+					s |= 1 << b;
+					rank -= binomial[b][k];
+					k--;
+				}
+			}
+			return s;
+		}
+
+		SubsetTable fill(ForkJoinPool pool) {
+			for( int k = 1; k <= n; k++ ) {
+				long size = binomial[n][k];
+				if( size * k <= LAYER_CHUNK || pool == null ) fill(k, 0, size);
+				else SharedPool.invoke(pool, new LayerTask(k, 0, size));
+			}
+			return this;
+		}
+
+		long getCost() {
+			return cost[(1 << n) - 1];
+		}
+
+		/**
+		 * @return every order of the candidates with the fewest disagreements, as ids
+		 */
+		List<int[]> getOptimalOrders() {
+			List<int[]> orders = new ArrayList<int[]>();
+			addOrders((1 << n) - 1, new int[n], orders);
+			return orders;
+		}
+
+		/**
+		 * @param rnd
+		 * @return one order of the candidates with the fewest disagreements, as ids,
+		 * without listing the others
+		 */
+		int[] getOptimalOrder(Random rnd) {
+			int[] result = new int[n];
+			int s = (1 << n) - 1;
+			for( int k = n; k > 0; k-- ) {
+				// Any candidate on a tight path can go last; pick one uniformly
+				int last = -1, tight = 0;
+				for( int rest = s; rest != 0; rest &= rest - 1 ) {
+					int c = Integer.numberOfTrailingZeros(rest);
+					if( cost[s ^ (1 << c)] + added(s, c) == cost[s] && rnd.nextInt(++tight) == 0 ) last = c;
+				}
+				result[k - 1] = ids[last];
+				s ^= 1 << last;
+			}
+			return result;
+		}
+
+		void addOrders(int s, int[] order, List<int[]> orders) {
+			if( s == 0 ) {
+				int[] result = new int[n];
+				for( int i = 0; i < n; i++ ) result[i] = ids[order[i]];
+				orders.add(result);
+				return;
+			}
+
+			int k = Integer.bitCount(s);
+			for( int rest = s; rest != 0; rest &= rest - 1 ) {
+				int c = Integer.numberOfTrailingZeros(rest);
+				if( cost[s ^ (1 << c)] + added(s, c) == cost[s] ) {
+					order[k - 1] = c;
+					addOrders(s ^ (1 << c), order, orders);
+				}
+			}
+		}
+
+		class LayerTask extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			final int k;
+			final long from, to;
+
+			LayerTask(int k, long from, long to) {
+				this.k = k;
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected void compute() {
+				if( (to - from) * k > LAYER_CHUNK ) {
+					long mid = from + (to - from) / 2;
+					invokeAll(new LayerTask(k, from, mid), new LayerTask(k, mid, to));
+				}
+				else {
+					fill(k, from, to);
+				}
+			}
+		}
 	}
 
 }
@@ -0,0 +1,415 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kemeny rankings by branch and bound, for more candidates than {@link Kemeny} can handle,
+ * within a time limit.
+ *
+ * Rankings are built from the top. A partial ranking is bounded below by its disagreements
+ * plus, for each pair of candidates not yet placed, the voters on the losing side of the pair.
+ * Placing candidate c raises this bound by the margins by which the remaining candidates beat c,
+ * so each child is bounded in O(m). The search starts from the better of the Borda and Copeland
+ * orders after {@link Kemeny#localSearch(long[][], int[])}, tries children in order of their bounds,
+ * and skips a candidate that would be better swapped with the one just placed above it.
+ * The top levels are split into tasks on the {@link SharedPool}, or the pool given.
+ *
+ * If the time runs out, the best ranking found so far is returned, with the smallest bound among
+ * the partial rankings not yet searched as a certified lower bound on the optimum.
+ *
+ * As in {@link Kemeny}, each strongly connected component of the majority graph is searched separately.
+ *
+ * @author mao
+ *
+ */
+public class KemenyBranchAndBound implements VotingRule {
+
+	// Levels of the search tree that are split into tasks
+	static final int SPLIT_DEPTH = 2;
+	// Smaller components are searched in one task
+	static final int MIN_SPLIT_CANDIDATES = 12;
+	// Nodes between checks of the clock
+	static final int CLOCK_INTERVAL = 1 << 10;
+
+	final long timeLimitNanos;
+	final ForkJoinPool pool;
+
+	/**
+	 * Searches until the ranking is certified optimal.
+	 */
+	public KemenyBranchAndBound() {
+		this.timeLimitNanos = Long.MAX_VALUE;
+		this.pool = SharedPool.get();
+	}
+
+	/**
+	 * @param timeLimit
+	 * @param unit
+	 */
+	public KemenyBranchAndBound(long timeLimit, TimeUnit unit) {
+		this(timeLimit, unit, SharedPool.get());
+	}
+
+	/**
+	 * @param timeLimit
+	 * @param unit
+	 * @param pool the pool that the top levels of the search are split over
+	 */
+	public KemenyBranchAndBound(long timeLimit, TimeUnit unit, ForkJoinPool pool) {
+		if( timeLimit <= 0 ) throw new IllegalArgumentException("Time limit must be positive");
+		this.timeLimitNanos = unit.toNanos(timeLimit);
+		this.pool = pool;
+	}
+
+	public String toString() { return this.getClass().getSimpleName(); }
+
+	@Override
+	public <T> List<T> getRanking(PreferenceProfile<T> prefs) {
+		return solve(prefs).getRanking();
+	}
+
+	/**
+	 * @param prefs
+	 * @return the best ranking found within the time limit, and how far from optimal it can be
+	 */
+	public <T> Solution<T> solve(PreferenceProfile<T> prefs) {
+		IntPreferenceProfile<T> ip = prefs.asIntProfile();
+		T[] candidates = ip.getSortedCandidates();
+		long[][] wins = ip.getStatistics().getPairwiseMatrix();
+
+		long deadline = timeLimitNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeLimitNanos;
+
+		int[] order = new int[wins.length];
+		long gap = 0;
+		int placed = 0;
+		for( int[] ids : Kemeny.getComponents(wins) ) {
+			if( ids.length > 1 ) {
+				Search search = new Search(wins, ids, deadline);
+				search.run(pool);
+				ids = search.getBestOrder();
+				gap += search.getBest() - search.getLowerBound();
+			}
+			System.arraycopy(ids, 0, order, placed, ids.length);
+			placed += ids.length;
+		}
+
+		List<T> ranking = new ArrayList<T>(order.length);
+		for( int c : order ) ranking.add(candidates[c]);
+
+		long disagreements = Kemeny.disagreements(wins, order);
+		return new Solution<T>(ranking, disagreements, disagreements - gap);
+	}
+
+	/**
+	 * A ranking and a lower bound on the disagreements of any ranking.
+	 *
+	 * @param <T>
+	 */
+	public static class Solution<T> {
+		final List<T> ranking;
+		final long disagreements;
+		final long lowerBound;
+
+		Solution(List<T> ranking, long disagreements, long lowerBound) {
+			this.ranking = ranking;
+			this.disagreements = disagreements;
+			this.lowerBound = lowerBound;
+		}
+
+		public List<T> getRanking() {
+			return ranking;
+		}
+
+		/**
+		 * @return the number of pairwise disagreements between the ranking and the voters
+		 */
+		public long getDisagreements() {
+			return disagreements;
+		}
+
+		/**
+		 * @return no ranking has fewer disagreements than this
+		 */
+		public long getLowerBound() {
+			return lowerBound;
+		}
+
+		/**
+		 * @return the most disagreements the ranking can have above a Kemeny ranking
+		 */
+		public long getGap() {
+			return disagreements - lowerBound;
+		}
+
+		/**
+		 * @return whether the ranking is certified to be a Kemeny ranking
+		 */
+		public boolean isOptimal() {
+			return disagreements == lowerBound;
+		}
+
+		public String toString() {
+			return ranking + " (" + disagreements + " disagreements, gap " + getGap() + ")";
+		}
+	}
+
+	/**
+	 * The search over one component, whose candidates are numbered 0 to n - 1.
+	 */
+	static class Search {
+		final int n;
+		final int[] ids;
+		final long deadline;
+
+		final long[][] w;
+		// margin[a][b] is the number of voters by which a beats b, or 0 if it doesn't
+		final long[][] margin;
+
+		final AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+		int[] bestOrder;
+		volatile boolean expired;
+
+		long lowerBound;
+
+		Search(long[][] wins, int[] ids, long deadline) {
+			this.n = ids.length;
+			this.ids = ids;
+			this.deadline = deadline;
+
+			w = new long[n][n];
+			margin = new long[n][n];
+			for( int a = 0; a < n; a++ ) {
+				for( int b = 0; b < n; b++ ) {
+					if( a == b ) continue;
+					w[a][b] = wins[ids[a]][ids[b]];
+					margin[a][b] = Math.max(0, wins[ids[a]][ids[b]] - wins[ids[b]][ids[a]]);
+				}
+			}
+		}
+
+		void run(ForkJoinPool pool) {
+			int[] borda = heuristicOrder(false);
+			offer(borda, Kemeny.localSearch(w, borda));
+			int[] copeland = heuristicOrder(true);
+			offer(copeland, Kemeny.localSearch(w, copeland));
+
+			// The bound of the empty ranking counts the losing side of every pair
+			long bound = 0;
+			int[] order = new int[n];
+			long[] beaten = new long[n];
+			for( int a = 0; a < n; a++ ) {
+				order[a] = a;
+				for( int b = 0; b < n; b++ ) {
+					if( a == b ) continue;
+					beaten[b] += margin[a][b];
+					if( a < b ) bound += Math.min(w[a][b], w[b][a]);
+				}
+			}
+
+			int splitDepth = n < MIN_SPLIT_CANDIDATES ? 0 : SPLIT_DEPTH;
+			long unresolved = SharedPool.invoke(pool, new SearchTask(order, beaten, 0, bound, splitDepth));
+			lowerBound = Math.min(unresolved, best.get());
+		}
+
+		/**
+		 * @param copeland by the number of pairwise wins rather than the total votes
+		 * @return the candidates, best first
+		 */
+		int[] heuristicOrder(boolean copeland) {
+			final long[] score = new long[n];
+			for( int a = 0; a < n; a++ ) {
+				for( int b = 0; b < n; b++ ) {
+					if( a == b ) continue;
+					if( !copeland ) score[a] += w[a][b];
+					else if( w[a][b] > w[b][a] ) score[a] += 2;
+					else if( w[a][b] == w[b][a] ) score[a] += 1;
+				}
+			}
+
+			Integer[] sorted = new Integer[n];
+			for( int a = 0; a < n; a++ ) sorted[a] = a;
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Long.compare(score[b], score[a]);
+				}
+			});
+
+			int[] order = new int[n];
+			for( int i = 0; i < n; i++ ) order[i] = sorted[i];
+			return order;
+		}
+
+		synchronized void offer(int[] order, long cost) {
+			if( bestOrder != null && cost >= best.get() ) return;
+			bestOrder = order.clone();
+			best.set(cost);
+		}
+
+		long getBest() {
+			return best.get();
+		}
+
+		synchronized int[] getBestOrder() {
+			int[] result = new int[n];
+			for( int i = 0; i < n; i++ ) result[i] = ids[bestOrder[i]];
+			return result;
+		}
+
+		long getLowerBound() {
+			return lowerBound;
+		}
+
+		/**
+		 * Searches the completions of a partial ranking.
+		 * Returns the smallest bound of the partial rankings left unsearched when time ran out,
+		 * or Long.MAX_VALUE if none were.
+		 */
+		class SearchTask extends RecursiveTask<Long> {
+			private static final long serialVersionUID = 1L;
+
+			// The first depth candidates are placed, and the rest follow in any order
+			final int[] order;
+			// beaten[c] is the total margin by which the candidates not placed beat c
+			final long[] beaten;
+			final int depth;
+			final long bound;
+			final int splitDepth;
+
+			// Scratch space for the children at each depth
+			int[][] children;
+			long[][] childBounds;
+			int nodes;
+
+			SearchTask(int[] order, long[] beaten, int depth, long bound, int splitDepth) {
+				this.order = order;
+				this.beaten = beaten;
+				this.depth = depth;
+				this.bound = bound;
+				this.splitDepth = splitDepth;
+			}
+
+			@Override
+			protected Long compute() {
+				if( depth < splitDepth ) return split();
+
+				children = new int[n][n];
+				childBounds = new long[n][n];
+				return search(depth, bound);
+			}
+
+			long split() {
+				int[] kids = new int[n];
+				long[] kidBounds = new long[n];
+				int count = expand(depth, bound, kids, kidBounds);
+				if( count < 0 ) return bound;
+
+				List<SearchTask> tasks = new ArrayList<SearchTask>(count);
+				for( int k = 0; k < count; k++ ) {
+					int[] childOrder = order.clone();
+					long[] childBeaten = beaten.clone();
+					place(childOrder, childBeaten, indexOf(childOrder, kids[k], depth));
+					tasks.add(new SearchTask(childOrder, childBeaten, depth + 1, kidBounds[k], splitDepth));
+				}
+				invokeAll(tasks);
+
+				long unresolved = Long.MAX_VALUE;
+				for( SearchTask task : tasks ) unresolved = Math.min(unresolved, task.join());
+				return unresolved;
+			}
+
+			/**
+			 * Finds the children of the current node worth searching, in increasing order of their bounds.
+			 * @return the number of children, or -1 if the time has run out
+			 */
+			int expand(int d, long b, int[] kids, long[] kidBounds) {
+				if( ++nodes >= CLOCK_INTERVAL ) {
+					nodes = 0;
+					if( System.nanoTime() > deadline ) expired = true;
+				}
+				if( expired ) return -1;
+
+				long incumbent = best.get();
+				int count = 0;
+				int above = d > 0 ? order[d - 1] : -1;
+				for( int i = d; i < n; i++ ) {
+					int c = order[i];
+					long childBound = b + beaten[c];
+					if( childBound >= incumbent ) continue;
+					// Swapping c with the candidate above would be at least as good
+					if( above >= 0 && (w[c][above] > w[above][c] || w[c][above] == w[above][c] && c < above) ) continue;
+
+					// Insertion sort by bound
+					int k = count++;
+					while( k > 0 && kidBounds[k - 1] > childBound ) {
+						kids[k] = kids[k - 1];
+						kidBounds[k] = kidBounds[k - 1];
+						k--;
+					}
+					kids[k] = c;
+					kidBounds[k] = childBound;
+				}
+				return count;
+			}
+
+			long search(int d, long b) {
+				if( d >= n - 1 ) {
+					// The last candidate adds nothing to the bound
+					offer(order, b);
+					return Long.MAX_VALUE;
+				}
+
+				int[] kids = children[d];
+				long[] kidBounds = childBounds[d];
+				int count = expand(d, b, kids, kidBounds);
+				if( count < 0 ) return b;
+
+				long unresolved = Long.MAX_VALUE;
+				for( int k = 0; k < count; k++ ) {
+					if( kidBounds[k] >= best.get() ) break;
+					if( expired ) {
+						unresolved = Math.min(unresolved, kidBounds[k]);
+						break;
+					}
+
+					int i = indexOf(order, kids[k], d);
+					int c = order[i];
+					order[i] = order[d];
+					order[d] = c;
+					for( int j = d + 1; j < n; j++ ) beaten[order[j]] -= margin[c][order[j]];
+
+					unresolved = Math.min(unresolved, search(d + 1, kidBounds[k]));
+
+					for( int j = d + 1; j < n; j++ ) beaten[order[j]] += margin[c][order[j]];
+					order[d] = order[i];
+					order[i] = c;
+				}
+				return unresolved;
+			}
+
+			/**
+			 * Places order[i] at position depth, in a copy for a child task.
+			 */
+			void place(int[] childOrder, long[] childBeaten, int i) {
+				int c = childOrder[i];
+				childOrder[i] = childOrder[depth];
+				childOrder[depth] = c;
+				for( int j = depth + 1; j < n; j++ ) childBeaten[childOrder[j]] -= margin[c][childOrder[j]];
+			}
+
+			int indexOf(int[] array, int c, int from) {
+				for( int i = from; i < array.length; i++ )
+					if( array[i] == c ) return i;
+				throw new IllegalStateException();
+			}
+		}
+	}
+
+}
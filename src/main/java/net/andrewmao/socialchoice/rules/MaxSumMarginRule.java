@@ -1,33 +1,41 @@
 package net.andrewmao.socialchoice.rules;
 
 import java.util.Arrays;
-import ilog.concert.IloException;
-import ilog.concert.IloIntExpr;
-import ilog.concert.IloLinearNumExpr;
-import ilog.concert.IloNumExpr;
-import ilog.concert.IloObjectiveSense;
+
+import net.andrewmao.math.lp.LinearExpression;
 
 public class MaxSumMarginRule<T> extends OptimizedPositionalRule<T> {
 	
 	@Override
-	public void optimize(PreferenceProfileList<T> preferences, double normalization)
-			throws IloException {		
+	public void optimize(PreferenceProfileList<T> preferences, double normalization) {		
 		super.optimize(preferences, normalization);
 		
-		// TODO broken if the prefs from first to last are inconsistent
-		
-		IloNumExpr[] diffs = new IloIntExpr[preferences.size()];
-		
-		for( int p = 0; p < preferences.size(); p++ ) {			
-			IloLinearNumExpr[] totals = super.profileTotals.get(p);
-			diffs[p] = cp.diff(totals[0], totals[totals.length - 1]);				
-		}
-		
-		cp.addObjective(IloObjectiveSense.Maximize, cp.sum(diffs));		
-		cp.solve();
-		
-		scores = cp.getValues(posScores);
 		System.out.println(this.getClass().getSimpleName() + ": " + Arrays.toString(scores));
 	}
 
+	@Override
+	protected void addProfile(PreferenceProfile<T> profile, Block block) {
+		// TODO broken if the prefs from first to last are inconsistent
+		LinearExpression[] totals = block.getTotals();
+		block.objective = totals[0].minus(totals[totals.length - 1]);
+	}
+
+	@Override
+	protected boolean isMaximize() {
+		return true;
+	}
+
+	@Override
+	protected boolean isLinear() {
+		return true;
+	}
+
+	@Override
+	protected double[] getPositionWeights(int[][] counts) {
+		double[] weights = new double[counts.length];
+		for( int k = 0; k < counts.length; k++ )
+			weights[k] = counts[0][k] - counts[counts.length - 1][k];
+		return weights;
+	}
+
 }
@@ -1,38 +1,49 @@
 package net.andrewmao.socialchoice.rules;
 
 import java.util.Arrays;
-import ilog.concert.IloException;
-import ilog.concert.IloIntExpr;
-import ilog.concert.IloNumExpr;
-import ilog.concert.IloObjectiveSense;
+
+import net.andrewmao.math.lp.LinearExpression;
 
 public class MaxWeightedMarginRule<T> extends OptimizedPositionalRule<T> {
 	
 	@Override
-	public void optimize(PreferenceProfileList<T> preferences, double normalization)
-			throws IloException {		
+	public void optimize(PreferenceProfileList<T> preferences, double normalization) {		
 		super.optimize(preferences, normalization);
 		
+		System.out.println(this.getClass().getSimpleName() + ": " + Arrays.toString(scores));
+	}
+
+	@Override
+	protected void addProfile(PreferenceProfile<T> profile, Block block) {
 		int adjacentSpaces = numCandidates - 1;
 
-		IloNumExpr[] diffs = new IloIntExpr[preferences.size()];
-		
-		for( int p = 0; p < preferences.size(); p++ ) {	
-			IloNumExpr[] totals = super.profileTotals.get(p);
-			IloNumExpr[] subDiffs = new IloNumExpr[adjacentSpaces];
-
-			for( int i = 0; i < adjacentSpaces; i++ )
-				subDiffs[i] = cp.prod(adjacentSpaces - i, cp.diff(totals[i], totals[i+1]));
-			
-			diffs[p] = cp.sum(subDiffs);
-		}		
-		
-		cp.addObjective(IloObjectiveSense.Maximize, cp.sum(diffs));
-		
-		cp.solve();
+		LinearExpression[] totals = block.getTotals();
+		LinearExpression[] subDiffs = new LinearExpression[adjacentSpaces];
+
+		for( int i = 0; i < adjacentSpaces; i++ )
+			subDiffs[i] = totals[i].minus(totals[i+1]).times(adjacentSpaces - i);
 		
-		scores = cp.getValues(posScores);
-		System.out.println(this.getClass().getSimpleName() + ": " + Arrays.toString(scores));
+		block.objective = LinearExpression.sum(subDiffs);
+	}
+
+	@Override
+	protected boolean isMaximize() {
+		return true;
+	}
+
+	@Override
+	protected boolean isLinear() {
+		return true;
+	}
+
+	@Override
+	protected double[] getPositionWeights(int[][] counts) {
+		int adjacentSpaces = counts.length - 1;
+		double[] weights = new double[counts.length];
+		for( int i = 0; i < adjacentSpaces; i++ )
+			for( int k = 0; k < counts.length; k++ )
+				weights[k] += (counts[i][k] - counts[i+1][k]) * (adjacentSpaces - i);
+		return weights;
 	}
 
 }
@@ -1,41 +1,37 @@
 package net.andrewmao.socialchoice.rules;
 
 import java.util.Arrays;
-import ilog.concert.IloException;
-import ilog.concert.IloLinearNumExpr;
-import ilog.concert.IloNumVar;
-import ilog.concert.IloObjectiveSense;
+
+import net.andrewmao.math.lp.LinearExpression;
+import net.andrewmao.math.lp.LinearSolver.Relation;
 
 public class MaximinMarginRule<T> extends OptimizedPositionalRule<T> {
 	
 	@Override
-	public void optimize(PreferenceProfileList<T> preferences, double normalization)
-			throws IloException {		
+	public void optimize(PreferenceProfileList<T> preferences, double normalization) {		
 		super.optimize(preferences, normalization);
 		
+		System.out.println(this.getClass().getSimpleName() + ": " + Arrays.toString(scores));
+	}
+
+	@Override
+	protected void addProfile(PreferenceProfile<T> profile, Block block) {
 		/* TODO this currently is broken if the preference profile has no way
 		 *  of being consistent with the ground truth. See the implementation in min mistakes.
 		 */
+		LinearExpression[] totals = block.getTotals();
 		
-		IloNumVar[] minMargins = new IloNumVar[preferences.size()];
-				
-		for( int p = 0; p < preferences.size(); p++ ) {
-			IloLinearNumExpr[] totals = super.profileTotals.get(p);
-			
-			IloNumVar min = cp.numVar(0, Double.POSITIVE_INFINITY); 
-			for( int i = 0; i < numCandidates - 1; i++ ) {
-				cp.addLe(min, cp.diff(totals[i], totals[i+1]));
-			}
-			
-			minMargins[p] = min;
-		}		
-		
-		cp.addObjective(IloObjectiveSense.Maximize, cp.sum(minMargins));
+		int min = addVariable(0, Double.POSITIVE_INFINITY); 
+		for( int i = 0; i < numCandidates - 1; i++ ) {
+			addConstraint(LinearExpression.variable(min).minus(totals[i].minus(totals[i+1])), Relation.LE, 0);
+		}
 		
-		cp.solve();
-		
-		scores = cp.getValues(posScores);
-		System.out.println(this.getClass().getSimpleName() + ": " + Arrays.toString(scores));
+		block.objective = LinearExpression.variable(min);
+	}
+
+	@Override
+	protected boolean isMaximize() {
+		return true;
 	}
 
 }
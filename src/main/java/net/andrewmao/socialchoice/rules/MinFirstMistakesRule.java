@@ -1,70 +1,39 @@
 package net.andrewmao.socialchoice.rules;
 
-import ilog.concert.IloConstraint;
-import ilog.concert.IloException;
-import ilog.concert.IloIntExpr;
-import ilog.concert.IloIntVar;
-import ilog.concert.IloLinearNumExpr;
-import ilog.concert.IloNumExpr;
-import ilog.concert.IloNumVar;
-import ilog.concert.IloObjectiveSense;
+import net.andrewmao.math.lp.LinearExpression;
+import net.andrewmao.math.lp.LinearSolver.Relation;
 
 public class MinFirstMistakesRule<T> extends OptimizedPositionalRule<T> {
 	
 	@Override
-	public void optimize(PreferenceProfileList<T> preferences, double normalization)
-			throws IloException {		
-		super.optimize(preferences, normalization);		
+	protected void addProfile(PreferenceProfile<T> profile, Block block) {		
 		// Want the first total to be higher than all the others
-
-		IloIntExpr[] flipArr = new IloIntExpr[preferences.size()];		
-		IloNumExpr[] minMarginsNorm = new IloNumExpr[preferences.size()];
-		
-		int p = 0;
-		for( PreferenceProfile<T> profile : preferences ) {					
-			IloLinearNumExpr[] totals = profileTotals.get(p);
-						
-			T[] choices = profile.getSortedCandidates();
+		LinearExpression[] totals = block.getTotals();
 			
-			IloIntVar[] flips = new IloIntVar[numCandidates - 1];
+		LinearExpression flips = LinearExpression.ZERO;
 			
-			double currentMaxPossibleMargin = normalization * profile.getNumRankings();
-			IloNumVar currentMinMargin = cp.numVar(0, Double.POSITIVE_INFINITY);
+		double currentMaxPossibleMargin = profile.getNumRankings();
+		int currentMinMargin = addVariable(0, Double.POSITIVE_INFINITY);
 			
-			for( int i = 1; i < numCandidates; i++ ) {
-				IloConstraint mistake = cp.le(totals[0], totals[i]);
-				
-				IloIntVar flip = cp.boolVar(choices[0] + ">" + choices[i]);
-				IloConstraint flipGe1 = cp.ge(flip, 1);
-				cp.add(cp.ifThen(mistake, flipGe1));
+		for( int i = 1; i < numCandidates; i++ ) {
+			LinearExpression flip = addFlip(block, 0, i, MinFlipMistakesRule.SEPARATION);
 				
-				IloNumExpr margin = cp.diff(totals[0], totals[i]);
-				IloNumExpr condConstr = 
-					cp.sum( cp.prod(flip, currentMaxPossibleMargin), margin);
-				cp.addLe(currentMinMargin, condConstr);
+			LinearExpression margin = totals[0].minus(totals[i]);
+			LinearExpression condConstr = 
+				flip.times(currentMaxPossibleMargin).plus(margin);
+			addConstraint(LinearExpression.variable(currentMinMargin).minus(condConstr), Relation.LE, 0);
 				
-				flips[i-1] = flip;
-			}
-			
-			flipArr[p] = cp.sum(flips);
+			flips = flips.plus(flip);
+		}
 			
-			minMarginsNorm[p] =	cp.prod(currentMinMargin, 
-					-1.0 / currentMaxPossibleMargin / preferences.size() );
+		block.objective = flips;
 			
-			p++;
-		}
-		
-		cp.addObjective(IloObjectiveSense.Minimize, cp.sum(cp.sum(flipArr), cp.sum(minMarginsNorm)));
-		
-		cp.solve();
-		
-		scores = cp.getValues(posScores);
+		block.tieBreak = LinearExpression.variable(currentMinMargin).times( 
+				-1.0 / currentMaxPossibleMargin );
 //		System.out.print(this + ": ");
 //		for( double d : scores)
 //			System.out.printf("%.04f ", d);
 //		System.out.println();
-		
-//		System.out.println("Objective: " + cp.getObjValue());
 	}
 
 }
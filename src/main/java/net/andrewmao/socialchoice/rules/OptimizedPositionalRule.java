@@ -1,12 +1,36 @@
 package net.andrewmao.socialchoice.rules;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import ilog.concert.IloException;
-import ilog.concert.IloLinearNumExpr;
-import ilog.concert.IloNumVar;
-import ilog.cplex.IloCplex;
+import net.andrewmao.math.lp.LinearExpression;
+import net.andrewmao.math.lp.LinearSolver;
+import net.andrewmao.math.lp.LinearSolver.Relation;
+import net.andrewmao.math.lp.SimplexSolver;
 
+import com.google.common.primitives.Ints;
+
+/**
+ * A positional rule whose scores are chosen by a linear or mixed integer program over some profiles.
+ * Models are solved by a {@link LinearSolver}, the pure Java {@link SimplexSolver} by default.
+ * Each rule holds its own solver, so rules can be optimized on separate threads.
+ *
+ * A model is the position scores with their constraints, anything a rule shares between profiles,
+ * and one {@link Block} of variables and constraints for each distinct matrix of position counts,
+ * weighted by the number of profiles that have it. Models are built with scores summing to 1
+ * and scaled to the normalization afterward, so the normalization never changes a model.
+ * In incremental mode, see {@link #setIncremental(boolean)}, a rule keeps its model between optimizations,
+ * only removing the blocks of counts that left the list and adding blocks for the new ones,
+ * and starts the solver from the previous scores.
+ *
+ * Rules whose objective is linear in the scores, with no other variables, don't need a model:
+ * the scores are a simplex whose vertices score the first k positions 1 / k each, so the best vertex
+ * is found from the position counts alone, weighed in parallel across profiles.
+ * Giving a rule a solver makes it build and solve the linear program instead.
+ *
+ * @param <T>
+ */
 public abstract class OptimizedPositionalRule<T> extends PositionalVotingRule {
 
 	protected double[] scores;
@@ -14,23 +38,93 @@ public abstract class OptimizedPositionalRule<T> extends PositionalVotingRule {
 	protected PreferenceProfileList<T> preferences;
 	protected double normalization;
 	
-	IloCplex cp;
+	LinearSolver solver;
+	boolean incremental;
+	ForkJoinPool pool = SharedPool.get();
 	
 	int numCandidates;
-	IloNumVar[] posScores;
+	int[] posScores;
 	
 	List<Map<T, int[]>> profileCounts;		
-	List<IloLinearNumExpr[]> profileTotals;	
 	
-	protected OptimizedPositionalRule() {
-		try {
-			cp = new IloCplex();
-		} catch(IloException e) {
-			throw new RuntimeException(e);
+	// Profiles for each task when weighing positions
+	static final int PROFILES_PER_TASK = 64;
+	boolean closedForm;
+	
+	// Blocks of the model by their position counts; the block being built, or null for shared parts
+	Map<List<Integer>, Block> blocks = new LinkedHashMap<List<Integer>, Block>();
+	Block current;
+	// Scores summing to 1 from the last solve
+	double[] unitScores;
+	boolean optimal;
+
+	/**
+	 * The variables and constraints of profiles with the same position counts, and their terms in the objective.
+	 * Tie-breaking terms of all profiles are averaged, so together they weigh as much as one term of the objective.
+	 */
+	protected class Block {
+		final int[][] counts;
+		final LinearExpression[] totals;
+		int weight;
+
+		final List<Integer> variables = new ArrayList<Integer>();
+		final List<Integer> constraints = new ArrayList<Integer>();
+
+		protected LinearExpression objective = LinearExpression.ZERO;
+		protected LinearExpression tieBreak = LinearExpression.ZERO;
+
+		Block(Map<T, int[]> counts) {
+			// This map induces the ordering on the T. Its comparator is important!
+			this.counts = counts.values().toArray(new int[numCandidates][]);
+
+			totals = new LinearExpression[numCandidates];
+			for( int i = 0; i < numCandidates; i++ )
+				totals[i] = LinearExpression.scalarProduct(this.counts[i], posScores);
+		}
+
+		/**
+		 * @return the total score of each candidate, in the order of the sorted candidates, for scores summing to 1
+		 */
+		protected LinearExpression[] getTotals() {
+			return totals;
 		}
-				
-		// Turn comments on or off
-		cp.setOut(null);
+	}
+	
+	protected OptimizedPositionalRule() {
+		this(new SimplexSolver());
+		closedForm = true;
+	}
+
+	protected OptimizedPositionalRule(LinearSolver solver) {
+		this.solver = solver;
+	}
+
+	/**
+	 * Uses a different solver for the next optimization, such as {@link net.andrewmao.math.lp.CplexSolver}.
+	 * @param solver
+	 */
+	public void setSolver(LinearSolver solver) {
+		this.solver = solver;
+		posScores = null;
+		closedForm = false;
+	}
+
+	/**
+	 * Keeps the model between optimizations over the same candidates, such as the folds of a cross-validation,
+	 * where most profiles are in consecutive lists. Profiles are matched by their position counts.
+	 * @param incremental
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+		if( !incremental ) posScores = null;
+	}
+	
+	/**
+	 * Weighs the profiles on a different pool than the {@link SharedPool}, when no solver is given.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
 	}
 	
 	protected int getNumPairs() { return numCandidates * (numCandidates-1) / 2; }
@@ -41,62 +135,279 @@ public abstract class OptimizedPositionalRule<T> extends PositionalVotingRule {
 	}
 	
 	
-	public double[][] getTotalScores() throws IloException {
-		double[][] allScores = new double[profileTotals.size()][];
+	public double[][] getTotalScores() {
+		double[][] allScores = new double[profileCounts.size()][];
 		
 		int i = 0;
-		for( IloLinearNumExpr[] totals : profileTotals ) {
-			allScores[i] = new double[totals.length];
-			for( int j = 0; j < totals.length; j++ )
-				allScores[i][j] = cp.getValue(totals[j]);
+		for( Map<T, int[]> counts : profileCounts ) {
+			allScores[i] = new double[counts.size()];
+			int j = 0;
+			for( int[] count : counts.values() ) {
+				for( int k = 0; k < count.length; k++ )
+					allScores[i][j] += count[k] * scores[k];
+				j++;
+			}
 			i++;
 		}
 		
 		return allScores;
 	}
 
-	public void optimize(PreferenceProfileList<T> preferences, double normalization) throws 
-	IloException {
+	public void optimize(PreferenceProfileList<T> preferences, double normalization) {
 		this.preferences = preferences;
 		this.normalization = normalization;
 		
+		int m = preferences.getCandidates().length;
+		if( closedForm && isLinear() ) {
+			solveVertices(m);
+			return;
+		}
+		
+		if( !incremental || posScores == null || m != numCandidates ) buildModel(m);
+		
+		// Keep the blocks of counts still in the list, and merge profiles with the same counts
+		Map<List<Integer>, Block> previous = blocks;
+		blocks = new LinkedHashMap<List<Integer>, Block>();
 		profileCounts = new ArrayList<Map<T, int[]>>(preferences.size());		
-		profileTotals = new ArrayList<IloLinearNumExpr[]>(preferences.size());
 		
-		numCandidates = preferences.getCandidates().length;
+		for( PreferenceProfile<T> profile : preferences ) {
+			Map<T, int[]> counts = profile.getPositionCounts();
+			
+			int[] flat = new int[numCandidates * numCandidates];
+			int i = 0;
+			for( int[] count : counts.values() ) {
+				System.arraycopy(count, 0, flat, i, numCandidates);
+				i += numCandidates;
+			}
+			List<Integer> key = Ints.asList(flat);
+			
+			Block block = blocks.get(key);
+			if( block == null ) {
+				block = previous.remove(key);
+				if( block == null ) {
+					current = block = new Block(counts);
+					addProfile(profile, block);
+					current = null;
+				}
+				block.weight = 0;
+				blocks.put(key, block);
+			}
+			block.weight++;
+			
+			// Save each of the variables we created
+			profileCounts.add(counts);			
+		}
+		for( Block unused : previous.values() ) removeBlock(unused);
+		
+		if( unitScores != null ) solver.setStart(posScores, unitScores);
+		solver.setObjective(getObjective(), isMaximize());
+		solver.solve();
+		optimal = solver.isOptimal();
 		
-		cp.clearModel();
+		unitScores = new double[numCandidates];
+		scores = new double[numCandidates];
+		for( int i = 0; i < numCandidates; i++ ) {
+			unitScores[i] = solver.getValue(posScores[i]);
+			scores[i] = unitScores[i] * normalization;
+		}
+	}
+
+	/**
+	 * Picks the best of the vertices of the scores, where the first k positions score 1 / k.
+	 */
+	void solveVertices(int m) {
+		numCandidates = m;
+		profileCounts = new ArrayList<Map<T, int[]>>(Collections.<Map<T, int[]>>nCopies(preferences.size(), null));
+		double[] weights = SharedPool.invoke(pool, new Weigher(0, preferences.size()));
 		
-		posScores = cp.numVarArray(numCandidates, 0, Double.POSITIVE_INFINITY);
+		int bestK = 0;
+		double best = 0, prefix = 0;
+		for( int k = 1; k <= m; k++ ) {
+			prefix += weights[k - 1];
+			double value = prefix / k;
+			if( k == 1 || (isMaximize() ? value > best : value < best) ) {
+				best = value;
+				bestK = k;
+			}
+		}
+		
+		unitScores = new double[m];
+		scores = new double[m];
+		for( int i = 0; i < bestK; i++ ) {
+			unitScores[i] = 1.0 / bestK;
+			scores[i] = normalization / bestK;
+		}
+		optimal = true;
+	}
+
+	/**
+	 * @return whether the scores of the last optimization are optimal, rather than the best
+	 * the solver found before stopping at a limit, such as the node limit of {@link SimplexSolver}
+	 */
+	public boolean isOptimal() {
+		return optimal;
+	}
+
+	/**
+	 * Sums the position weights over a range of profiles, saving their counts.
+	 */
+	class Weigher extends RecursiveTask<double[]> {
+		private static final long serialVersionUID = 1L;
+
+		final int from;
+		final int to;
+
+		Weigher(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected double[] compute() {
+			if( to - from > PROFILES_PER_TASK ) {
+				int mid = (from + to) >>> 1;
+				Weigher left = new Weigher(from, mid);
+				left.fork();
+				double[] weights = new Weigher(mid, to).compute();
+				double[] other = left.join();
+				for( int k = 0; k < numCandidates; k++ ) weights[k] += other[k];
+				return weights;
+			}
+
+			double[] weights = new double[numCandidates];
+			for( int p = from; p < to; p++ ) {
+				// This map induces the ordering on the T. Its comparator is important!
+				Map<T, int[]> counts = preferences.get(p).getPositionCounts();
+				profileCounts.set(p, counts);
+
+				double[] w = getPositionWeights(counts.values().toArray(new int[numCandidates][]));
+				for( int k = 0; k < numCandidates; k++ ) weights[k] += w[k];
+			}
+			return weights;
+		}
+	}
+
+	/**
+	 * Starts a model with the position scores, their constraints, and the shared parts of the rule.
+	 */
+	void buildModel(int m) {
+		numCandidates = m;
+		blocks.clear();
+		unitScores = null;
+		
+		solver.clear();
+		
+		// The normalization makes this bound redundant, but indicator constraints need bounded scores
+		posScores = new int[numCandidates];
+		LinearExpression sum = LinearExpression.ZERO;
+		for( int i = 0; i < numCandidates; i++ ) {
+			posScores[i] = solver.addVariable(0, 1);
+			sum = sum.plus(LinearExpression.variable(posScores[i]));
+		}
 		
 		// Add normalization constraint
-		cp.addEq(cp.sum(posScores), normalization);
+		solver.addConstraint(sum, Relation.EQ, 1);
 
 		// Add monotonicity constraint
 		for( int i = 0; i < posScores.length - 1; i++ ) {
-			cp.addGe(posScores[i], posScores[i+1]);
+			solver.addConstraint(LinearExpression.variable(posScores[i]).minus(LinearExpression.variable(posScores[i+1])), 
+					Relation.GE, 0);
 		}		
 		
-		for( PreferenceProfile<T> profile : preferences ) {
-			// Count the number of times each preference appears in each position			
+		current = null;
+		addSharedConstraints();
+	}
 
-			// This map induces the ordering on the T. Its comparator is important!
-			Map<T, int[]> counts = profile.getPositionCounts();
-			
-			IloLinearNumExpr[] totals = new IloLinearNumExpr[numCandidates];
-			
-			int i = 0;
-			for( Map.Entry<T, int[]> e : counts.entrySet() ) {			
-				int[] count = e.getValue();
-				totals[i++] = cp.scalProd(count, posScores);
+	void removeBlock(Block block) {
+		for( int c : block.constraints ) solver.removeConstraint(c);
+		for( int v : block.variables ) solver.removeVariable(v);
+	}
 
-//				T t = e.getKey();
-//				System.out.printf("%s: %s\n", t, Arrays.toString(count));
-			}
-			
-			// Save each of the variables we created
-			profileCounts.add(counts);			
-			profileTotals.add(totals);
+	/**
+	 * Adds the variables and constraints that all profiles share, once for each model.
+	 */
+	protected void addSharedConstraints() {}
+
+	/**
+	 * Adds the variables and constraints for one profile with the methods of this class,
+	 * and sets the terms of the block in the objective. Other profiles with the same counts share the block.
+	 */
+	protected abstract void addProfile(PreferenceProfile<T> profile, Block block);
+
+	protected boolean isMaximize() {
+		return false;
+	}
+
+	/**
+	 * @return true if the objective is linear in the scores and needs no other variables,
+	 * so that {@link #getPositionWeights(int[][])} gives it without a model
+	 */
+	protected boolean isLinear() {
+		return false;
+	}
+
+	/**
+	 * For a linear rule, the coefficient of each position score in the objective of one profile.
+	 * @param counts the number of times each candidate, in sorted order, is in each position
+	 */
+	protected double[] getPositionWeights(int[][] counts) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " is not linear");
+	}
+
+	/**
+	 * @return the sum of the objectives of the profiles, plus their average tie-breaking term
+	 */
+	protected LinearExpression getObjective() {
+		LinearExpression objective = LinearExpression.ZERO;
+		LinearExpression tieBreak = LinearExpression.ZERO;
+		for( Block block : blocks.values() ) {
+			objective = objective.plus(block.objective.times(block.weight));
+			tieBreak = tieBreak.plus(block.tieBreak.times(block.weight));
+		}
+		return objective.plus(tieBreak.times(1.0 / preferences.size()));
+	}
+
+	/**
+	 * Adds a binary that is 0 only if the total of candidate i beats that of candidate j by the separation.
+	 * A margin is smallest and largest at vertices of the scores, where the first k positions score 1 / k,
+	 * so a pair with the same outcome at every vertex gets the constant 0 or 1 instead of a variable.
+	 * @return the flip, as an expression
+	 */
+	protected LinearExpression addFlip(Block block, int i, int j, double separation) {
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		int diff = 0;
+		for( int k = 0; k < numCandidates; k++ ) {
+			diff += block.counts[i][k] - block.counts[j][k];
+			double margin = (double) diff / (k + 1);
+			min = Math.min(min, margin);
+			max = Math.max(max, margin);
 		}
+		if( min >= separation ) return LinearExpression.ZERO;
+		if( max < separation ) return LinearExpression.constant(1);
+
+		int flip = addBinaryVariable();
+		addIndicator(flip, 0, block.totals[i].minus(block.totals[j]), Relation.GE, separation);
+		return LinearExpression.variable(flip);
+	}
+
+	protected int addVariable(double lower, double upper) {
+		return record(solver.addVariable(lower, upper), true);
+	}
+
+	protected int addBinaryVariable() {
+		return record(solver.addBinaryVariable(), true);
+	}
+
+	protected void addConstraint(LinearExpression expr, Relation relation, double rhs) {
+		record(solver.addConstraint(expr, relation, rhs), false);
+	}
+
+	protected void addIndicator(int binary, int value, LinearExpression expr, Relation relation, double rhs) {
+		record(solver.addIndicator(binary, value, expr, relation, rhs), false);
+	}
+
+	int record(int index, boolean variable) {
+		if( current != null ) (variable ? current.variables : current.constraints).add(index);
+		return index;
 	}
 }
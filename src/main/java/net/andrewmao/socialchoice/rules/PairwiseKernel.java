@@ -0,0 +1,182 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts pairwise wins for profiles with many candidates, where the m x m matrix
+ * doesn't fit in cache and the simple loop over voters misses on nearly every update.
+ *
+ * The upper triangle of the matrix is split into square tiles of {@link #TILE} candidates,
+ * each stored as a flat int array. Positions of a batch of voters are copied into one array,
+ * and each tile is updated for the whole batch while it is in cache. The inner loop is
+ * branch-free so that it can be vectorized by the JIT.
+ *
+ * Voters are split over the fork-join pool, one range per worker, each counting into its
+ * own tiles, which are added up at the end.
+ *
+ * @author mao
+ *
+ */
+public class PairwiseKernel {
+
+	static final int TILE = 64;
+	// Size of the positions of a batch of voters, in ints; about the size of L2 cache
+	static final int BATCH_INTS = 1 << 16;
+
+	/**
+	 * Profiles with fewer rankings times candidates squared than this are counted on one thread.
+	 */
+	public static final long MIN_PARALLEL_WORK = 1L << 22;
+
+	final IntPreferenceProfile<?> profile;
+	final int m;
+	// Number of tiles along each side
+	final int numTiles;
+	final int batchRows;
+
+	PairwiseKernel(IntPreferenceProfile<?> profile) {
+		this.profile = profile;
+		this.m = profile.m;
+		this.numTiles = (m + TILE - 1) / TILE;
+		this.batchRows = Math.max(1, BATCH_INTS / Math.max(m, 1));
+	}
+
+	/**
+	 * Counts the pairwise wins of a profile in parallel on the {@link SharedPool}.
+	 * @param profile
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears above b.
+	 */
+	public static long[][] count(IntPreferenceProfile<?> profile) {
+		return count(profile, SharedPool.get());
+	}
+
+	/**
+	 * Counts the pairwise wins of a profile in parallel.
+	 * @param profile
+	 * @param pool
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears above b.
+	 */
+	public static long[][] count(IntPreferenceProfile<?> profile, ForkJoinPool pool) {
+		PairwiseKernel kernel = new PairwiseKernel(profile);
+
+		int parts = (long) profile.numRows * profile.m * profile.m < MIN_PARALLEL_WORK ? 1 : pool.getParallelism();
+		int leafRows = Math.max(1, (profile.numRows + parts - 1) / parts);
+
+		int[][] tiles = SharedPool.invoke(pool, kernel.new Counter(0, profile.numRows, leafRows));
+		return kernel.toMatrix(tiles, profile.numRankings);
+	}
+
+	int tileIndex(int i, int j) {
+		// Tiles (i, j) with i <= j, row by row
+		return i * numTiles - i * (i - 1) / 2 + (j - i);
+	}
+
+	int[][] newTiles() {
+		return new int[numTiles * (numTiles + 1) / 2][TILE * TILE];
+	}
+
+	/**
+	 * Counts the rows from, ..., to - 1 into the tiles.
+	 */
+	void count(int[][] tiles, int from, int to) {
+		int[] pos = new int[batchRows * m];
+		int[] weights = new int[batchRows];
+		boolean direct = profile.data != null;
+
+		for( int start = from; start < to; start += batchRows ) {
+			int rows = Math.min(batchRows, to - start);
+
+			// Gather the positions of the batch
+			int n = 0;
+			for( int r = start; r < start + rows; r++ ) {
+				int w = profile.getWeight(r);
+				if( w == 0 ) continue;
+				weights[n] = w;
+				if( direct ) {
+					System.arraycopy(profile.data, profile.offset(r) + m, pos, n * m, m);
+				}
+				else {
+					for( int c = 0; c < m; c++ ) pos[n * m + c] = profile.positionOf(r, c);
+				}
+				n++;
+			}
+
+			for( int i = 0; i < numTiles; i++ ) {
+				int a0 = i * TILE;
+				int a1 = Math.min(m, a0 + TILE);
+
+				for( int j = i; j < numTiles; j++ ) {
+					int b0 = j * TILE;
+					int b1 = Math.min(m, b0 + TILE);
+					int[] tile = tiles[tileIndex(i, j)];
+
+					for( int v = 0; v < n; v++ ) {
+						int base = v * m;
+						int w = weights[v];
+
+						for( int a = a0; a < a1; a++ ) {
+							int pa = pos[base + a];
+							int off = (a - a0) * TILE - b0;
+							// Adds w when a is above b: pa - pb is negative, so the shift gives all ones
+							for( int b = (i == j ? a + 1 : b0); b < b1; b++ )
+								tile[off + b] += w & ((pa - pos[base + b]) >> 31);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	long[][] toMatrix(int[][] tiles, int numRankings) {
+		long[][] wins = new long[m][m];
+
+		for( int a = 0; a < m; a++ ) {
+			int i = a / TILE;
+			for( int b = a + 1; b < m; b++ ) {
+				int j = b / TILE;
+				int c = tiles[tileIndex(i, j)][(a - i * TILE) * TILE + (b - j * TILE)];
+				wins[a][b] = c;
+				wins[b][a] = numRankings - c;
+			}
+		}
+
+		return wins;
+	}
+
+	class Counter extends RecursiveTask<int[][]> {
+		private static final long serialVersionUID = 1L;
+
+		final int from;
+		final int to;
+		final int leafRows;
+
+		Counter(int from, int to, int leafRows) {
+			this.from = from;
+			this.to = to;
+			this.leafRows = leafRows;
+		}
+
+		@Override
+		protected int[][] compute() {
+			if( to - from > leafRows ) {
+				int mid = from + (to - from) / 2;
+				Counter left = new Counter(from, mid, leafRows);
+				left.fork();
+				int[][] tiles = new Counter(mid, to, leafRows).compute();
+				int[][] other = left.join();
+				for( int t = 0; t < tiles.length; t++ ) {
+					int[] tile = tiles[t];
+					int[] add = other[t];
+					for( int k = 0; k < tile.length; k++ ) tile[k] += add[k];
+				}
+				return tiles;
+			}
+
+			int[][] tiles = newTiles();
+			count(tiles, from, to);
+			return tiles;
+		}
+	}
+
+}
@@ -0,0 +1,302 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate pairwise counts for candidate sets too large for an m x m matrix.
+ *
+ * Each ranking is broken into randomly chosen pairs of positions, and only the pairs drawn
+ * are counted, in a sparse hash table keyed by (winner, loser). Every pair of candidates is
+ * drawn with probability 1/P per draw, where P = m(m-1)/2, so scaling the counts by
+ * P / (pairs per ranking) gives unbiased estimates of the full pairwise counts.
+ *
+ * Memory is bounded by the number of distinct pairs drawn. A sketch made with
+ * {@link #forBudget(int, int, Random)} also keeps that number under a budget, without knowing
+ * in advance how many rankings will come: whenever a ranking takes it over, every count drawn
+ * so far is thinned to half, as if it had been drawn at half the rate, and later rankings are
+ * drawn at that rate. The counts of a pair are approximately Poisson, which gives the error
+ * estimates of {@link #getStandardError(int, int)}.
+ *
+ * Candidates are ids 0 to m - 1, as in {@link IntPreferenceProfile}.
+ *
+ * @author mao
+ *
+ */
+public class PairwiseSketch {
+
+	static final int INITIAL_ENTRIES = 16;
+
+	final int m;
+	final int maxEntries;
+	final Random rnd;
+	// Expected pairs drawn per ranking, which may be fractional
+	double pairsPerRanking;
+	// Scale from counts to estimated counts
+	double scale;
+
+	long numRankings;
+
+	// Open addressing table of entry + 1, with 0 for an empty slot
+	int[] slots;
+	long[] keys;
+	int[] counts;
+	int numEntries;
+
+	/**
+	 * @param m number of candidates
+	 * @param pairsPerRanking number of pairs of positions drawn from each ranking
+	 * @param rnd
+	 */
+	public PairwiseSketch(int m, int pairsPerRanking, Random rnd) {
+		this(m, pairsPerRanking, Integer.MAX_VALUE, rnd);
+	}
+
+	PairwiseSketch(int m, double pairsPerRanking, int maxEntries, Random rnd) {
+		if( m < 2 ) throw new IllegalArgumentException("Need at least two candidates");
+		if( pairsPerRanking < 1 ) throw new IllegalArgumentException("Need at least one pair per ranking");
+		if( maxEntries < 1 ) throw new IllegalArgumentException("Need room for at least one pair");
+
+		this.m = m;
+		this.maxEntries = maxEntries;
+		this.rnd = rnd;
+		this.pairsPerRanking = pairsPerRanking;
+		this.scale = (double) m * (m - 1) / 2 / pairsPerRanking;
+
+		keys = new long[INITIAL_ENTRIES];
+		counts = new int[INITIAL_ENTRIES];
+		slots = new int[2 * INITIAL_ENTRIES];
+	}
+
+	/**
+	 * Creates a sketch that stores at most maxEntries pairs after each ranking, however many
+	 * rankings are added. It starts by drawing as many pairs per ranking as fit, and halves
+	 * the rate each time the budget is reached, down to less than one pair per ranking.
+	 * @param m
+	 * @param maxEntries
+	 * @param rnd
+	 * @return
+	 */
+	public static PairwiseSketch forBudget(int m, int maxEntries, Random rnd) {
+		double pairs = (double) m * (m - 1) / 2;
+		return new PairwiseSketch(m, Math.max(1, Math.min(maxEntries, pairs)), maxEntries, rnd);
+	}
+
+	/**
+	 * Counts random pairs of every ranking of a profile.
+	 * @param profile
+	 */
+	public void addAll(IntPreferenceProfile<?> profile) {
+		if( profile.m != m )
+			throw new IllegalArgumentException("Profile has " + profile.m + " candidates, not " + m);
+
+		for( int r = 0; r < profile.numRows; r++ ) {
+			int w = profile.getWeight(r);
+			if( w == 0 ) continue;
+
+			for( int k = numDraws(); k > 0; k-- ) {
+				int i = rnd.nextInt(m);
+				int j = rnd.nextInt(m - 1);
+				if( j >= i ) j++;
+				if( i < j ) add(profile.candidateAt(r, i), profile.candidateAt(r, j), w);
+				else add(profile.candidateAt(r, j), profile.candidateAt(r, i), w);
+			}
+			numRankings += w;
+			while( numEntries > maxEntries ) thin();
+		}
+	}
+
+	/**
+	 * Counts random pairs of one ranking.
+	 * @param ranking candidate ids, most preferred first
+	 */
+	public void add(int[] ranking) {
+		if( ranking.length != m )
+			throw new IllegalArgumentException("Ranking has " + ranking.length + " candidates, not " + m);
+
+		for( int k = numDraws(); k > 0; k-- ) {
+			int i = rnd.nextInt(m);
+			int j = rnd.nextInt(m - 1);
+			if( j >= i ) j++;
+			add(ranking[Math.min(i, j)], ranking[Math.max(i, j)], 1);
+		}
+		numRankings++;
+		while( numEntries > maxEntries ) thin();
+	}
+
+	/**
+	 * @return the number of pairs to draw from the next ranking, which is pairsPerRanking on average
+	 */
+	int numDraws() {
+		int draws = (int) pairsPerRanking;
+		if( rnd.nextDouble() < pairsPerRanking - draws ) draws++;
+		return draws;
+	}
+
+	/**
+	 * Halves the rate of drawing, keeping each count drawn so far with probability 1/2,
+	 * and drops the pairs left with no count.
+	 */
+	void thin() {
+		pairsPerRanking /= 2;
+		scale *= 2;
+
+		int kept = 0;
+		for( int e = 0; e < numEntries; e++ ) {
+			int count = half(counts[e], rnd);
+			if( count == 0 ) continue;
+			keys[kept] = keys[e];
+			counts[kept++] = count;
+		}
+		Arrays.fill(counts, kept, numEntries, 0);
+		numEntries = kept;
+
+		Arrays.fill(slots, 0);
+		for( int e = 0; e < numEntries; e++ ) insert(e);
+	}
+
+	/**
+	 * @return a binomial(count, 1/2) sample, from one random bit per count
+	 */
+	static int half(int count, Random rnd) {
+		int kept = 0;
+		for( ; count >= 32; count -= 32 ) kept += Integer.bitCount(rnd.nextInt());
+		if( count > 0 ) kept += Integer.bitCount(rnd.nextInt() & ((1 << count) - 1));
+		return kept;
+	}
+
+	void add(int winner, int loser, int w) {
+		long key = (long) winner * m + loser;
+		int e = find(key);
+		if( e < 0 ) {
+			if( numEntries == keys.length ) grow();
+			e = numEntries++;
+			keys[e] = key;
+			insert(e);
+		}
+		counts[e] += w;
+	}
+
+	int find(long key) {
+		int mask = slots.length - 1;
+		for( int s = mix(key) & mask; slots[s] != 0; s = (s + 1) & mask ) {
+			int e = slots[s] - 1;
+			if( keys[e] == key ) return e;
+		}
+		return -1;
+	}
+
+	void insert(int e) {
+		int mask = slots.length - 1;
+		int s = mix(keys[e]) & mask;
+		while( slots[s] != 0 ) s = (s + 1) & mask;
+		slots[s] = e + 1;
+	}
+
+	void grow() {
+		int size = 2 * keys.length;
+		keys = Arrays.copyOf(keys, size);
+		counts = Arrays.copyOf(counts, size);
+
+		slots = new int[2 * size];
+		for( int e = 0; e < numEntries; e++ ) insert(e);
+	}
+
+	static int mix(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+
+	public int getNumCandidates() {
+		return m;
+	}
+
+	public long getNumRankings() {
+		return numRankings;
+	}
+
+	/**
+	 * @return the expected number of pairs drawn from each ranking, which falls as a budgeted sketch fills up
+	 */
+	public double getPairsPerRanking() {
+		return pairsPerRanking;
+	}
+
+	/**
+	 * @return the number of distinct (winner, loser) pairs stored
+	 */
+	public int getNumEntries() {
+		return numEntries;
+	}
+
+	/**
+	 * @param e an entry, from 0 to {@link #getNumEntries()} - 1
+	 * @return the winner of the pair
+	 */
+	public int getWinner(int e) {
+		return (int) (keys[e] / m);
+	}
+
+	/**
+	 * @param e an entry, from 0 to {@link #getNumEntries()} - 1
+	 * @return the loser of the pair
+	 */
+	public int getLoser(int e) {
+		return (int) (keys[e] % m);
+	}
+
+	/**
+	 * @param e an entry, from 0 to {@link #getNumEntries()} - 1
+	 * @return the estimated number of rankings with the winner above the loser
+	 */
+	public double getEstimate(int e) {
+		return counts[e] * scale;
+	}
+
+	/**
+	 * @return the estimated number of rankings in which candidate id a appears above b
+	 */
+	public double getWins(int a, int b) {
+		if( a == b ) return 0;
+		int e = find((long) a * m + b);
+		return e < 0 ? 0 : counts[e] * scale;
+	}
+
+	/**
+	 * @return the estimated number of rankings with a above b, minus the number with b above a
+	 */
+	public double getMargin(int a, int b) {
+		return getWins(a, b) - getWins(b, a);
+	}
+
+	/**
+	 * @return the approximate standard error of {@link #getMargin(int, int)}, from the number of times the pair was drawn
+	 */
+	public double getStandardError(int a, int b) {
+		return Math.sqrt(getWins(a, b) + getWins(b, a)) * Math.sqrt(scale);
+	}
+
+	/**
+	 * Whether a majority prefers a to b, with the margin at least z standard errors from zero.
+	 * @param a
+	 * @param b
+	 * @param z e.g. 1.96 for 95% confidence
+	 * @return
+	 */
+	public boolean isMajority(int a, int b, double z) {
+		double margin = getMargin(a, b);
+		return margin > 0 && margin >= z * getStandardError(a, b);
+	}
+
+	/**
+	 * Estimates the full pairwise matrix, for candidate sets that are small enough to hold one.
+	 * @return wins[a][b] is the estimated number of rankings in which candidate id a appears above b.
+	 */
+	public double[][] getWinMatrix() {
+		double[][] wins = new double[m][m];
+		for( int e = 0; e < numEntries; e++ )
+			wins[getWinner(e)][getLoser(e)] = getEstimate(e);
+		return wins;
+	}
+
+}
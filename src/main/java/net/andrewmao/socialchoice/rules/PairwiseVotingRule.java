@@ -0,0 +1,34 @@
+package net.andrewmao.socialchoice.rules;
+
+import net.andrewmao.models.discretechoice.ScoredItems;
+
+/**
+ * A rule that scores candidates from the pairwise matrix alone. The matrix is counted once
+ * per profile and shared, so running several of these on a profile costs little more than one.
+ *
+ * @author mao
+ *
+ */
+public abstract class PairwiseVotingRule extends ScoredVotingRule {
+
+	/**
+	 * @param wins wins[a][b] is the number of rankings with candidate id a above b. Do not modify.
+	 * @return the score of each candidate id, higher first
+	 */
+	protected abstract double[] getPairwiseScores(long[][] wins);
+
+	@Override
+	public <T> ScoredItems<T> getScoredRanking(PreferenceProfile<T> preferences) {
+		return getScoredRanking(preferences.getStatistics());
+	}
+
+	/**
+	 * Scores candidates from pairwise counts alone, which may have been merged from several profiles.
+	 * @param stats
+	 * @return
+	 */
+	public <T> ScoredItems<T> getScoredRanking(ProfileStatistics<T> stats) {
+		return new ScoredItems<T>(stats.getSortedCandidates(), getPairwiseScores(stats.getPairwiseMatrix()));
+	}
+
+}
@@ -12,17 +12,28 @@ public abstract class PositionalVotingRule extends ScoredVotingRule {
 	
 	@Override
 	public <T> ScoredItems<T> getScoredRanking(PreferenceProfile<T> preferences) {				
-		double[] pos = getPositionalScores(preferences.getNumCandidates());
+		return getScoredRanking(preferences.getStatistics());
+	}
+	
+	/**
+	 * Scores candidates from position counts alone, which may have been merged from several profiles.
+	 * @param stats
+	 * @return
+	 */
+	public <T> ScoredItems<T> getScoredRanking(ProfileStatistics<T> stats) {
+		double[] pos = getPositionalScores(stats.getNumCandidates());
 		
-		ScoredItems<T> scored = new ScoredItems<T>(preferences.getSortedCandidates());		
+		// Score each candidate from the number of times it appears in each position
+		long[][] counts = stats.getPositionMatrix();
+		double[] totals = new double[counts.length];
 		
-		for( T[] pref : preferences.profile ) {
-			for( int i = 0; i < pref.length; i++ ) {
-				scored.get(pref[i]).add(pos[i]);
+		for( int c = 0; c < counts.length; c++ ) {
+			for( int i = 0; i < counts.length; i++ ) {
+				totals[c] += counts[c][i] * pos[i];
 			}
 		}
 		
-		return scored;
+		return new ScoredItems<T>(stats.getSortedCandidates(), totals);
 	}
 	
 	public <T> ScoredItems<T> getNormalizedScores(PreferenceProfile<T> preferences) {
@@ -0,0 +1,560 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Streaming reader for the PrefLib ordinal formats: .soc (strict complete orders),
+ * .soi (strict incomplete orders) and .toc (orders with ties, written as {a,b}).
+ *
+ * Both the current format, with "# KEY: value" metadata and "count: ranking" lines,
+ * and the older format, with numeric header lines and "count,ranking" lines, are read.
+ *
+ * Rankings are parsed straight out of a byte buffer, without building a String per line,
+ * and each line is handed over once with its multiplicity rather than expanded into copies.
+ * Alternatives are numbered 1 to m as in the file, and are the candidates of the profiles read.
+ * Blank lines are skipped, and every format error is an IOException naming the line.
+ *
+ * @author mao
+ *
+ */
+public class PrefLibReader implements Closeable {
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	static final int INITIAL_BUFFER_BYTES = 1 << 16;
+
+	/**
+	 * Receives the rankings of a file, one line at a time. The arrays are reused between calls.
+	 */
+	public interface Handler {
+		/**
+		 * @param order alternative numbers (1 to m), most preferred first
+		 * @param ties tie group of each position; equal for alternatives tied with each other,
+		 * and equal to the position for a strict order
+		 * @param length number of alternatives ranked on this line
+		 * @param count number of voters with this ranking
+		 * @throws IOException if the ranking is not of the kind being read
+		 */
+		void ranking(int[] order, int[] ties, int length, int count) throws IOException;
+	}
+
+	final ReadableByteChannel channel;
+
+	byte[] bytes = new byte[INITIAL_BUFFER_BYTES];
+	ByteBuffer buf = ByteBuffer.wrap(bytes);
+	// Unread bytes are pos until limit, and no newline comes before scanFrom
+	int pos, limit, scanFrom;
+	boolean eof;
+
+	int lineStart, lineEnd;
+	long lineNumber;
+
+	String dataType;
+	int numAlternatives = -1;
+	String[] alternativeNames;
+	int numVoters = -1;
+	int numUniqueOrders = -1;
+
+	// Scratch space for one line
+	int[] order, ties;
+	int rankingLength;
+	// Line number on which each alternative was last seen, for checking duplicates
+	long[] seen;
+
+	public PrefLibReader(ReadableByteChannel channel) throws IOException {
+		this(channel, null);
+	}
+
+	PrefLibReader(ReadableByteChannel channel, String dataType) throws IOException {
+		this.channel = channel;
+		this.dataType = dataType;
+		readHeader();
+
+		if( numAlternatives < 0 )
+			throw new IOException("Missing number of alternatives after line " + lineNumber);
+		order = new int[numAlternatives];
+		ties = new int[numAlternatives];
+		seen = new long[numAlternatives];
+	}
+
+	/**
+	 * Opens a file, using its extension as the data type if the file doesn't state one.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static PrefLibReader open(File file) throws IOException {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			return new PrefLibReader(in.getChannel(), dot < 0 ? null : name.substring(dot + 1).toLowerCase());
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads a file into a profile with one weighted row per line of the file.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static IntPreferenceProfile<Integer> readProfile(File file) throws IOException {
+		PrefLibReader reader = open(file);
+		try {
+			return reader.readProfile();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads a file into a multiset, merging lines with the same ranking.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static RankingMultiset<Integer> readMultiset(File file) throws IOException {
+		PrefLibReader reader = open(file);
+		try {
+			return reader.readMultiset();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads a file of partial rankings, such as a .soi file.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static TopKProfile<Integer> readTopKProfile(File file) throws IOException {
+		PrefLibReader reader = open(file);
+		try {
+			return reader.readTopKProfile();
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * @return the data type from the file or its extension, such as "soc", or null if unknown
+	 */
+	public String getDataType() {
+		return dataType;
+	}
+
+	public int getNumAlternatives() {
+		return numAlternatives;
+	}
+
+	/**
+	 * @return the name of each alternative, with alternative i at index i - 1
+	 */
+	public String[] getAlternativeNames() {
+		return alternativeNames;
+	}
+
+	/**
+	 * @return the number of voters stated in the header, or -1 if not given
+	 */
+	public int getNumVoters() {
+		return numVoters;
+	}
+
+	/**
+	 * @return the number of unique orders stated in the header, or -1 if not given
+	 */
+	public int getNumUniqueOrders() {
+		return numUniqueOrders;
+	}
+
+	Integer[] getCandidates() {
+		Integer[] candidates = new Integer[numAlternatives];
+		for( int i = 0; i < numAlternatives; i++ ) candidates[i] = i + 1;
+		return candidates;
+	}
+
+	/**
+	 * Reads the rest of the rankings into a profile, keeping the multiplicity of each line as a row weight.
+	 * Every ranking must be a strict order of all the alternatives.
+	 * @return
+	 * @throws IOException
+	 */
+	public IntPreferenceProfile<Integer> readProfile() throws IOException {
+		final int m = numAlternatives;
+		final int stride = 2 * m;
+
+		class Rows implements Handler {
+			int[] data = new int[stride * (numUniqueOrders > 0 ? numUniqueOrders : 16)];
+			int[] weights = new int[data.length / Math.max(stride, 1)];
+			int numRows;
+
+			@Override
+			public void ranking(int[] order, int[] ties, int length, int count) throws IOException {
+				checkComplete(ties, length);
+				if( count == 0 ) return;
+
+				if( numRows == weights.length ) {
+					int size = Math.max(2 * numRows, 16);
+					data = Arrays.copyOf(data, stride * size);
+					weights = Arrays.copyOf(weights, size);
+				}
+
+				int off = numRows * stride;
+				for( int i = 0; i < m; i++ ) {
+					int id = order[i] - 1;
+					data[off + i] = id;
+					data[off + m + id] = i;
+				}
+				weights[numRows++] = count;
+			}
+		}
+
+		Rows rows = new Rows();
+		read(rows);
+
+		Integer[] candidates = getCandidates();
+		return new IntPreferenceProfile<Integer>(candidates, IntPreferenceProfile.getIdMap(candidates),
+				rows.data, null, rows.weights, rows.numRows);
+	}
+
+	/**
+	 * Reads the rest of the rankings into a multiset.
+	 * Every ranking must be a strict order of all the alternatives.
+	 * @return
+	 * @throws IOException
+	 */
+	public RankingMultiset<Integer> readMultiset() throws IOException {
+		final RankingMultiset<Integer> counts = new RankingMultiset<Integer>(getCandidates(),
+				numUniqueOrders > 0 ? numUniqueOrders : RankingMultiset.INITIAL_ROWS);
+		final int[] ranking = new int[numAlternatives];
+
+		read(new Handler() {
+			@Override
+			public void ranking(int[] order, int[] ties, int length, int count) throws IOException {
+				checkComplete(ties, length);
+				if( count == 0 ) return;
+
+				for( int i = 0; i < length; i++ ) ranking[i] = order[i] - 1;
+				counts.add(ranking, 0, count);
+			}
+		});
+
+		return counts;
+	}
+
+	/**
+	 * Reads the rest of the rankings as partial rankings, e.g. from a .soi file, keeping only
+	 * the ranked alternatives. Every ranking must be a strict order of its top alternatives.
+	 * @return
+	 * @throws IOException
+	 */
+	public TopKProfile<Integer> readTopKProfile() throws IOException {
+		final TopKProfile<Integer> profile = new TopKProfile<Integer>(getCandidates());
+		final int[] ranking = new int[numAlternatives];
+
+		read(new Handler() {
+			@Override
+			public void ranking(int[] order, int[] ties, int length, int count) throws IOException {
+				checkStrict(ties, length);
+				if( count == 0 || length == 0 ) return;
+
+				for( int i = 0; i < length; i++ ) ranking[i] = order[i] - 1;
+				profile.add(ranking, length, count);
+			}
+		});
+
+		return profile;
+	}
+
+	void checkComplete(int[] ties, int length) throws IOException {
+		if( length != numAlternatives ) throw error("Ranked " + length + " of " + numAlternatives + " alternatives");
+		checkStrict(ties, length);
+	}
+
+	void checkStrict(int[] ties, int length) throws IOException {
+		for( int i = 0; i < length; i++ )
+			if( ties[i] != i ) throw error("Tied alternatives");
+	}
+
+	/**
+	 * Passes each of the remaining rankings to a handler.
+	 * @param handler
+	 * @return the number of lines read
+	 * @throws IOException
+	 */
+	public int read(Handler handler) throws IOException {
+		int lines = 0;
+		while( nextLine() ) {
+			if( isBlank() || bytes[lineStart] == '#' ) continue;
+			int count = parseRanking();
+			handler.ranking(order, ties, rankingLength, count);
+			lines++;
+		}
+		return lines;
+	}
+
+	/**
+	 * Parses "count: a,b,{c,d},e" or "count,a,b,{c,d},e" into order and ties.
+	 * @return the count
+	 */
+	int parseRanking() throws IOException {
+		int i = skipSpaces(lineStart);
+		int start = i;
+		while( i < lineEnd && isDigit(bytes[i]) ) i++;
+		if( i == start ) throw error("Expected a count");
+		int count = parseInt(start, i, "count");
+
+		i = skipSpaces(i);
+		if( i == lineEnd || (bytes[i] != ':' && bytes[i] != ',') ) throw error("Expected ':' after the count");
+		i++;
+
+		int length = 0;
+		int group = -1;
+		boolean inTie = false;
+
+		while( true ) {
+			i = skipSpaces(i);
+			if( i == lineEnd ) break;
+
+			if( bytes[i] == '{' ) {
+				if( inTie ) throw error("Nested '{'");
+				inTie = true;
+				group = length;
+				i = skipSpaces(i + 1);
+				// Empty tie groups are allowed by some writers
+				if( i < lineEnd && bytes[i] == '}' ) {
+					inTie = false;
+					i = afterItem(i + 1);
+					continue;
+				}
+			}
+
+			start = i;
+			while( i < lineEnd && isDigit(bytes[i]) ) i++;
+			if( i == start ) throw error("Expected an alternative");
+			int alt = parseInt(start, i, "alternative");
+			if( alt < 1 || alt > numAlternatives ) throw error("Unknown alternative " + alt);
+			if( seen[alt - 1] == lineNumber ) throw error("Alternative " + alt + " ranked twice");
+			seen[alt - 1] = lineNumber;
+
+			order[length] = alt;
+			ties[length] = inTie ? group : length;
+			length++;
+
+			i = skipSpaces(i);
+			if( inTie && i < lineEnd && bytes[i] == '}' ) {
+				inTie = false;
+				i = afterItem(i + 1);
+			}
+			else if( i < lineEnd ) {
+				if( bytes[i] != ',' ) throw error("Expected ','");
+				i++;
+			}
+		}
+
+		if( inTie ) throw error("Missing '}'");
+		rankingLength = length;
+		return count;
+	}
+
+	/**
+	 * @return the number in the digits from start until end
+	 * @throws IOException if it doesn't fit in an int
+	 */
+	int parseInt(int start, int end, String what) throws IOException {
+		// Nine digits always fit
+		if( end - start < 10 ) {
+			int x = 0;
+			for( int i = start; i < end; i++ ) x = 10 * x + (bytes[i] - '0');
+			return x;
+		}
+		try {
+			return Integer.parseInt(new String(bytes, start, end - start, UTF8));
+		} catch (NumberFormatException e) {
+			throw error("Bad " + what);
+		}
+	}
+
+	int afterItem(int i) throws IOException {
+		i = skipSpaces(i);
+		if( i < lineEnd ) {
+			if( bytes[i] != ',' ) throw error("Expected ','");
+			i++;
+		}
+		return i;
+	}
+
+	int skipSpaces(int i) {
+		while( i < lineEnd && (bytes[i] == ' ' || bytes[i] == '\t') ) i++;
+		return i;
+	}
+
+	boolean isBlank() {
+		return skipSpaces(lineStart) == lineEnd;
+	}
+
+	static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	IOException error(String message) {
+		return new IOException(message + " on line " + lineNumber + ": " + lineString());
+	}
+
+	String lineString() {
+		return new String(bytes, lineStart, lineEnd - lineStart, UTF8).trim();
+	}
+
+	/**
+	 * Reads metadata lines, or the numeric header of the older format,
+	 * and stops before the first ranking.
+	 */
+	void readHeader() throws IOException {
+		while( nextLine() ) {
+			if( isBlank() ) continue;
+
+			if( bytes[lineStart] == '#' ) {
+				String line = lineString().substring(1);
+				int colon = line.indexOf(':');
+				if( colon < 0 ) continue;
+				setMetadata(line.substring(0, colon).trim().toUpperCase(), line.substring(colon + 1).trim());
+				continue;
+			}
+
+			if( numAlternatives < 0 ) {
+				readOldHeader();
+				return;
+			}
+
+			// The first ranking; leave it to be read again
+			pos = scanFrom = lineStart;
+			lineNumber--;
+			return;
+		}
+	}
+
+	void setMetadata(String key, String value) throws IOException {
+		try {
+			if( key.equals("DATA TYPE") ) {
+				dataType = value.toLowerCase();
+			}
+			else if( key.equals("NUMBER ALTERNATIVES") ) {
+				numAlternatives = Integer.parseInt(value);
+				if( numAlternatives < 1 ) throw error("Need at least one alternative");
+				alternativeNames = new String[numAlternatives];
+			}
+			else if( key.equals("NUMBER VOTERS") ) {
+				numVoters = Integer.parseInt(value);
+			}
+			else if( key.equals("NUMBER UNIQUE ORDERS") ) {
+				numUniqueOrders = Integer.parseInt(value);
+			}
+			else if( key.startsWith("ALTERNATIVE NAME ") ) {
+				int alt = Integer.parseInt(key.substring("ALTERNATIVE NAME ".length()).trim());
+				if( alternativeNames == null || alt < 1 || alt > numAlternatives )
+					throw error("Unknown alternative " + alt);
+				alternativeNames[alt - 1] = value;
+			}
+		} catch (NumberFormatException e) {
+			throw error("Bad number in metadata");
+		}
+	}
+
+	/**
+	 * The older format: the number of alternatives, a line "i,name" for each,
+	 * then "voters,sum of counts,unique orders".
+	 */
+	void readOldHeader() throws IOException {
+		try {
+			numAlternatives = Integer.parseInt(lineString());
+			if( numAlternatives < 1 ) throw error("Need at least one alternative");
+			alternativeNames = new String[numAlternatives];
+
+			for( int i = 0; i < numAlternatives; i++ ) {
+				if( !nextLine() ) throw error("Missing alternative names");
+				String line = lineString();
+				int comma = line.indexOf(',');
+				if( comma < 0 ) throw error("Expected 'number,name'");
+				int alt = Integer.parseInt(line.substring(0, comma).trim());
+				if( alt < 1 || alt > numAlternatives ) throw error("Unknown alternative " + alt);
+				alternativeNames[alt - 1] = line.substring(comma + 1).trim();
+			}
+
+			if( !nextLine() ) throw error("Missing number of voters");
+			String[] sizes = lineString().split(",");
+			numVoters = Integer.parseInt(sizes[0].trim());
+			if( sizes.length > 2 ) numUniqueOrders = Integer.parseInt(sizes[2].trim());
+		} catch (NumberFormatException e) {
+			throw error("Bad number in header");
+		}
+	}
+
+	/**
+	 * Finds the next line in the buffer, reading more of the channel as needed.
+	 * @return false at the end of the input
+	 */
+	boolean nextLine() throws IOException {
+		while( true ) {
+			for( int i = scanFrom; i < limit; i++ ) {
+				if( bytes[i] == '\n' ) {
+					setLine(pos, i);
+					pos = scanFrom = i + 1;
+					return true;
+				}
+			}
+			scanFrom = limit;
+
+			if( eof ) {
+				if( pos == limit ) return false;
+				setLine(pos, limit);
+				pos = limit;
+				return true;
+			}
+			fill();
+		}
+	}
+
+	void setLine(int start, int end) {
+		if( end > start && bytes[end - 1] == '\r' ) end--;
+		lineStart = start;
+		lineEnd = end;
+		lineNumber++;
+	}
+
+	void fill() throws IOException {
+		if( pos > 0 ) {
+			System.arraycopy(bytes, pos, bytes, 0, limit - pos);
+			limit -= pos;
+			scanFrom -= pos;
+			pos = 0;
+		}
+		// A line longer than the buffer
+		if( limit == bytes.length ) {
+			bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+			buf = ByteBuffer.wrap(bytes);
+		}
+
+		buf.limit(bytes.length).position(limit);
+		int n = channel.read(buf);
+		if( n < 0 ) eof = true;
+		else limit += n;
+	}
+
+}
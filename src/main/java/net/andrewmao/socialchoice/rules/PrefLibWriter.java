@@ -0,0 +1,154 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes rankings in the current PrefLib format, one "count: ranking" line per distinct ranking.
+ *
+ * The header states the number of voters and unique orders, so they have to be known
+ * before any rankings are written; {@link #write(File, PreferenceProfile)} counts them
+ * with a {@link RankingMultiset}. Lines are encoded straight into a byte buffer.
+ *
+ * @author mao
+ *
+ */
+public class PrefLibWriter implements Closeable {
+
+	static final int BUFFER_BYTES = 1 << 16;
+
+	final WritableByteChannel channel;
+	final int numAlternatives;
+	final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+	// Digits of a number, in reverse
+	final byte[] digits = new byte[10];
+
+	/**
+	 * Writes the header of a .soc file.
+	 *
+	 * @param channel
+	 * @param alternativeNames name of each alternative, with alternative i at index i - 1
+	 * @param numVoters
+	 * @param numUniqueOrders
+	 * @throws IOException
+	 */
+	public PrefLibWriter(WritableByteChannel channel, String[] alternativeNames,
+			int numVoters, int numUniqueOrders) throws IOException {
+		this(channel, null, "soc", alternativeNames, numVoters, numUniqueOrders);
+	}
+
+	PrefLibWriter(WritableByteChannel channel, String fileName, String dataType, String[] alternativeNames,
+			int numVoters, int numUniqueOrders) throws IOException {
+		this.channel = channel;
+		this.numAlternatives = alternativeNames.length;
+
+		StringBuilder sb = new StringBuilder();
+		if( fileName != null ) sb.append("# FILE NAME: ").append(fileName).append('\n');
+		sb.append("# DATA TYPE: ").append(dataType).append('\n');
+		sb.append("# NUMBER ALTERNATIVES: ").append(numAlternatives).append('\n');
+		sb.append("# NUMBER VOTERS: ").append(numVoters).append('\n');
+		sb.append("# NUMBER UNIQUE ORDERS: ").append(numUniqueOrders).append('\n');
+		for( int i = 0; i < numAlternatives; i++ )
+			sb.append("# ALTERNATIVE NAME ").append(i + 1).append(": ").append(alternativeNames[i]).append('\n');
+
+		byte[] header = sb.toString().getBytes(PrefLibReader.UTF8);
+		for( int off = 0; off < header.length; ) {
+			int len = Math.min(header.length - off, buf.remaining());
+			buf.put(header, off, len);
+			off += len;
+			if( !buf.hasRemaining() ) flush();
+		}
+	}
+
+	/**
+	 * Writes a profile as a .soc file, with the string form of each candidate as its name.
+	 * PrefLib numbers alternatives 1 to m, so alternative i is the i-th candidate in sorted order;
+	 * the names in the header only give that mapping back if the candidates' strings are distinct.
+	 *
+	 * @param file
+	 * @param profile
+	 * @return the candidate of each alternative, with alternative i at index i - 1
+	 * @throws IOException
+	 */
+	public static <T> T[] write(File file, PreferenceProfile<T> profile) throws IOException {
+		RankingMultiset<T> counts = RankingMultiset.of(profile);
+
+		String[] names = new String[counts.m];
+		for( int i = 0; i < names.length; i++ ) names[i] = String.valueOf(counts.candidates[i]);
+
+		// Rankings that were counted and then taken out again are not written
+		int numUnique = 0;
+		for( int r = 0; r < counts.numRows; r++ )
+			if( counts.getWeight(r) > 0 ) numUnique++;
+
+		// The stream is closed even if the header can't be written
+		try( FileOutputStream out = new FileOutputStream(file);
+				PrefLibWriter writer = new PrefLibWriter(out.getChannel(), file.getName(), "soc", names,
+						counts.getNumRankings(), numUnique) ) {
+			int[] ranking = new int[counts.m];
+			for( int r = 0; r < counts.numRows; r++ ) {
+				if( counts.getWeight(r) == 0 ) continue;
+				for( int i = 0; i < ranking.length; i++ ) ranking[i] = counts.candidateAt(r, i) + 1;
+				writer.write(ranking, ranking.length, counts.getWeight(r));
+			}
+		}
+		return counts.candidates.clone();
+	}
+
+	/**
+	 * Writes one line.
+	 *
+	 * @param order alternative numbers (1 to m), most preferred first
+	 * @param length number of alternatives to write
+	 * @param count number of voters with this ranking, at least 1
+	 * @throws IOException
+	 */
+	public void write(int[] order, int length, int count) throws IOException {
+		if( count < 1 ) throw new IllegalArgumentException("Count must be positive, not " + count);
+		for( int i = 0; i < length; i++ ) {
+			if( order[i] < 1 || order[i] > numAlternatives )
+				throw new IllegalArgumentException("Unknown alternative " + order[i]);
+		}
+
+		putInt(count);
+		buf.put((byte) ':');
+		buf.put((byte) ' ');
+		for( int i = 0; i < length; i++ ) {
+			if( i > 0 ) buf.put((byte) ',');
+			putInt(order[i]);
+		}
+		buf.put((byte) '\n');
+	}
+
+	void putInt(int x) throws IOException {
+		// Room for the digits and the separator after them
+		if( buf.remaining() < digits.length + 2 ) flush();
+
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + x % 10);
+			x /= 10;
+		} while( x > 0 );
+		while( n > 0 ) buf.put(digits[--n]);
+	}
+
+	void flush() throws IOException {
+		buf.flip();
+		while( buf.hasRemaining() ) channel.write(buf);
+		buf.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+}
@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.mutable.MutableInt;
@@ -21,6 +22,11 @@ public class PreferenceProfile<T> {
 	
 	T[][] profile;
 	String data;
+	
+	private volatile IntPreferenceProfile<T> interned;
+	// Set if the rankings do not all have the same candidates, so they can't be interned
+	private volatile boolean mixed;
+	private volatile ProfileStatistics<T> mixedStatistics;
 
 	public PreferenceProfile(T[][] profile) {
 		this.profile = profile;
@@ -29,17 +35,47 @@ public class PreferenceProfile<T> {
 	public T[][] getProfile() {
 		return profile;
 	}
+	
+	/**
+	 * Get a copy of this profile with candidates interned to integer ids.
+	 * It is built once on first use, so the rankings should not be modified afterward.
+	 * @return
+	 */
+	public IntPreferenceProfile<T> asIntProfile() {
+		IntPreferenceProfile<T> ip = interned;
+		if( ip == null ) interned = ip = IntPreferenceProfile.intern(profile);
+		return ip;
+	}
+
+	/**
+	 * The methods below go through the interned profile when they can. If the rankings don't all
+	 * have the same candidates, they count ranking by ranking instead, over every candidate that appears.
+	 * @return the interned profile, or null if the rankings can't be interned
+	 */
+	IntPreferenceProfile<T> tryIntern() {
+		IntPreferenceProfile<T> ip = interned;
+		if( ip != null || mixed ) return ip;
+
+		try {
+			return asIntProfile();
+		}
+		catch( IllegalArgumentException e ) {
+			mixed = true;
+			return null;
+		}
+	}
 
 	public List<T> getSortedOrdering() {
 		return Arrays.asList(getSortedCandidates());		
 	}
 
 	public T[] getSortedCandidates() {
-		T[] candidates = Arrays.copyOf(profile[0], profile[0].length);
-		
-		Arrays.sort(candidates);
-		
-		return candidates;
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.getSortedCandidates();
+
+		TreeSet<T> candidates = new TreeSet<T>();
+		for( T[] ranking : profile ) candidates.addAll(Arrays.asList(ranking));
+		return candidates.toArray(Arrays.copyOf(profile[0], 0));
 	}
 	
 	public void setData(String data) {
@@ -64,6 +100,9 @@ public class PreferenceProfile<T> {
 	 * @return
 	 */
 	public List<int[]> getIndices(List<T> ordering) {
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.getIndices(ordering);
+
 		List<int[]> rankings = new ArrayList<int[]>();
 		
 		for( T[] preference : profile) {
@@ -76,15 +115,56 @@ public class PreferenceProfile<T> {
 		return rankings;
 	}
 
+	/**
+	 * Gets the counts that the rules and estimators are computed from.
+	 * They are computed in one pass over the rankings and shared by every caller.
+	 *
+	 * If the rankings don't all have the same candidates, each ranking counts only the candidates
+	 * it has: each in the position it appears in, and each pair that appears together.
+	 * @return
+	 */
+	public ProfileStatistics<T> getStatistics() {
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.getStatistics();
+
+		ProfileStatistics<T> stats = mixedStatistics;
+		if( stats == null ) mixedStatistics = stats = countMixed();
+		return stats;
+	}
+
+	ProfileStatistics<T> countMixed() {
+		T[] candidates = getSortedCandidates();
+		Map<T, Integer> ids = IntPreferenceProfile.getIdMap(candidates);
+		ProfileStatistics<T> stats = new ProfileStatistics<T>(candidates, profile.length);
+
+		for( T[] ranking : profile ) {
+			int[] r = new int[ranking.length];
+			for( int i = 0; i < r.length; i++ ) r[i] = ids.get(ranking[i]);
+
+			for( int i = 0; i < r.length; i++ ) {
+				stats.positions[r[i]][i]++;
+				if( i > 0 ) stats.adjacent[r[i - 1]][r[i]]++;
+				for( int j = i + 1; j < r.length; j++ ) stats.pairwise[r[i]][r[j]]++;
+			}
+		}
+		return stats;
+	}
+
 	/**
 	 * Returns the number of times each candidate has appeared in a particular place,
 	 * with an array in the same order as the initial data.
 	 * @return
 	 */
 	public Map<T, int[]> getPositionCounts() {
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.getPositionCounts();
+
+		int length = 0;
+		for( T[] ranking : profile ) length = Math.max(length, ranking.length);
+
 		Map<T, int[]> counts = new TreeMap<T, int[]>();
 		
-		for( T t : profile[0] ) counts.put(t, new int[profile[0].length]);
+		for( T t : getSortedCandidates() ) counts.put(t, new int[length]);
 
 		for( T[] ranking : profile ) {
 			for( int i = 0; i < ranking.length; i++ )
@@ -100,6 +180,9 @@ public class PreferenceProfile<T> {
 	 * @return
 	 */
 	public Table<T, T, MutableInt> getPairwiseCounts() {
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.getPairwiseCounts();
+
 		List<T> keys = Arrays.asList(getSortedCandidates());
 		
 		Table<T, T, MutableInt> table = ArrayTable.create(keys, keys);
@@ -131,6 +214,9 @@ public class PreferenceProfile<T> {
 	 * @return
 	 */
 	public int getNumCorrect(T first, T second, Comparator<T> comp) {
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.getNumCorrect(first, second, comp);
+
 		int correct = 0;
 		
 		for( T[] ranking : profile ) {
@@ -154,25 +240,54 @@ public class PreferenceProfile<T> {
 	}
 
 	/**
-	 * reduces the preference profile to a smaller subsample
+	 * reduces the preference profile to a smaller subsample, which shares its rankings with this profile
 	 * @param subsetSize
 	 */
 	public PreferenceProfile<T> copyRandomSubset(int subsetSize, Random rnd) {
-		if( subsetSize < profile.length )
-			return new PreferenceProfile<T>(RandomSelection.selectKRandom(profile, subsetSize, rnd));
-		else return this;
+		if( subsetSize >= getNumRankings() ) return this;
+
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.copyRandomSubset(subsetSize, rnd);
+		return new PreferenceProfile<T>(RandomSelection.selectKRandom(profile, subsetSize, rnd));
+	}
+	
+	/**
+	 * Samples rankings with replacement, e.g. for a bootstrap. 
+	 * The sample shares its rankings with this profile.
+	 * @param size
+	 * @param rnd
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public PreferenceProfile<T> resample(int size, Random rnd) {
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.resample(size, rnd);
+
+		T[][] sample = (T[][]) Array.newInstance(profile.getClass().getComponentType(), size);
+		for( int i = 0; i < size; i++ ) sample[i] = profile[rnd.nextInt(profile.length)];
+		return new PreferenceProfile<T>(sample);
 	}
 
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		for( T[] ranking : profile ) {
+		for( T[] ranking : getProfile() ) {
 			sb.append(Arrays.toString(ranking));
 			sb.append("\n");
 		}
 		return sb.toString();
 	}
 
+	/**
+	 * Restricts each ranking to the positions from fromIdx (inclusive) to toIdx (exclusive).
+	 * The result is a view of this profile, or a copy if its rankings don't all have the same candidates.
+	 * @param fromIdx
+	 * @param toIdx
+	 * @return
+	 */
 	public PreferenceProfile<T> slice(int fromIdx, int toIdx) {
+		IntPreferenceProfile<T> ip = tryIntern();
+		if( ip != null ) return ip.slice(fromIdx, toIdx);
+
 		int newSize = toIdx - fromIdx;
 		@SuppressWarnings("unchecked")
 		T[][] newProfile = (T[][]) Array.newInstance(profile[0][0].getClass(), profile.length, newSize);
@@ -9,13 +9,10 @@ public class PreferenceUtils {
 	 * @return
 	 */
 	public static <T> T getConstantWinner(PreferenceProfile<T> prefs) {		
-		T winner = prefs.profile[0][0];
+		IntPreferenceProfile<T> ip = prefs.asIntProfile();
+		int winner = getConstantAt(ip, 0);
 		
-		for( int i = 1; i < prefs.profile.length; i++ ) {
-			if( !winner.equals(prefs.profile[i][0]) ) return null;
-		}
-		
-		return winner;
+		return winner < 0 ? null : ip.getCandidate(winner);
 	}
 
 	/**
@@ -23,15 +20,29 @@ public class PreferenceUtils {
 	 * @return
 	 */
 	public static <T> T getConstantLoser(PreferenceProfile<T> prefs) {
-		int c = prefs.getNumCandidates();
+		IntPreferenceProfile<T> ip = prefs.asIntProfile();
+		int c = ip.getNumCandidates();
 		
-		T loser = prefs.profile[0][c-1];
+		int loser = getConstantAt(ip, c-1);
+		
+		return loser < 0 ? null : ip.getCandidate(loser);		
+	}
+	
+	/**
+	 * @return the candidate id at a position in every ranking, or -1 if there is none.
+	 * Rows are weighted, so rows of weight 0 hold no rankings and are skipped.
+	 */
+	static int getConstantAt(IntPreferenceProfile<?> ip, int position) {
+		int id = -1;
 		
-		for( int i = 1; i < prefs.profile.length; i++ ) {
-			if( !loser.equals(prefs.profile[i][c-1]) ) return null;
+		for( int r = 0; r < ip.getNumRows(); r++ ) {
+			if( ip.getWeight(r) == 0 ) continue;
+			int c = ip.candidateAt(r, position);
+			if( id < 0 ) id = c;
+			else if( id != c ) return -1;
 		}
 		
-		return loser;		
+		return id;
 	}
 	
 	/**
@@ -47,12 +58,13 @@ public class PreferenceUtils {
 		if( removeWinner ) newSize--;
 		if( removeLoser ) newSize--;
 		
+		T[][] profile = prefs.getProfile();
 		@SuppressWarnings("unchecked")
-		T[][] newProfile = (T[][]) Array.newInstance(prefs.profile[0][0].getClass(), prefs.profile.length, newSize);
+		T[][] newProfile = (T[][]) Array.newInstance(profile[0][0].getClass(), profile.length, newSize);
 		int startIdx = removeWinner ? 1 : 0;		
 		
-		for( int i = 0; i < prefs.profile.length; i++ )
-			System.arraycopy(prefs.profile[i], startIdx, newProfile[i], 0, newSize);		
+		for( int i = 0; i < profile.length; i++ )
+			System.arraycopy(profile[i], startIdx, newProfile[i], 0, newSize);		
 		
 		return new PreferenceProfile<T>(newProfile);
 	}
@@ -0,0 +1,204 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Indexes the rows of a profile by attributes such as region, cohort or device,
+ * so that statistics of a segment can be computed without filtering and copying the profile.
+ *
+ * Each (attribute, value) pair has a {@link RowBitmap} of the rows that have it. A query
+ * combines bitmaps with {@link RowBitmap#and(RowBitmap)} and friends, and then either
+ * takes a view of the selected rows with {@link #select(RowBitmap)}, e.g. to fit a model,
+ * or counts their statistics with {@link #getStatistics(RowBitmap)}. Statistics of recent
+ * queries are cached, since dashboards ask for the same segments over and over.
+ *
+ * Rows are rows of the profile, so a weighted row is selected with all of its rankings.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class ProfileIndex<T> {
+
+	static final int CACHED_QUERIES = 64;
+
+	final IntPreferenceProfile<T> profile;
+	final Map<String, Map<String, RowBitmap>> attributes = new HashMap<String, Map<String, RowBitmap>>();
+
+	final Map<Query, ProfileStatistics<T>> cache =
+			new LinkedHashMap<Query, ProfileStatistics<T>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Query, ProfileStatistics<T>> eldest) {
+			return size() > CACHED_QUERIES;
+		}
+	};
+
+	public ProfileIndex(PreferenceProfile<T> profile) {
+		this.profile = profile.asIntProfile();
+	}
+
+	/**
+	 * Indexes the concatenation of several profiles, with the data string of each
+	 * (see {@link PreferenceProfile#getData()}) as the value of an attribute of its rows.
+	 * Profiles without data are not tagged.
+	 *
+	 * @param profiles
+	 * @param attribute
+	 * @return
+	 */
+	public static <T> ProfileIndex<T> of(PreferenceProfileList<T> profiles, String attribute) {
+		ProfileIndex<T> index = new ProfileIndex<T>(profiles.concatenate());
+
+		int row = 0;
+		for( PreferenceProfile<T> part : profiles ) {
+			int rows = part.asIntProfile().getNumRows();
+			String value = part.getData();
+			for( int r = 0; r < rows; r++, row++ )
+				if( value != null ) index.tag(row, attribute, value);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the indexed profile
+	 */
+	public IntPreferenceProfile<T> getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Sets the value of an attribute for a row. Tagging rows in increasing order is fastest.
+	 * A row may have several values of the same attribute.
+	 *
+	 * @param row
+	 * @param attribute
+	 * @param value
+	 */
+	public synchronized void tag(int row, String attribute, String value) {
+		if( row < 0 || row >= profile.getNumRows() )
+			throw new IllegalArgumentException("Row " + row + " is not in the profile");
+
+		Map<String, RowBitmap> values = attributes.get(attribute);
+		if( values == null ) attributes.put(attribute, values = new TreeMap<String, RowBitmap>());
+
+		RowBitmap rows = values.get(value);
+		if( rows == null ) values.put(value, rows = new RowBitmap());
+
+		rows.add(row);
+	}
+
+	/**
+	 * @param attribute
+	 * @param value
+	 * @return a copy of the rows with the given value of the attribute, which is not changed by later tags
+	 */
+	public synchronized RowBitmap get(String attribute, String value) {
+		Map<String, RowBitmap> values = attributes.get(attribute);
+		RowBitmap rows = values == null ? null : values.get(value);
+		return rows == null ? new RowBitmap() : rows.copy();
+	}
+
+	/**
+	 * @return every row of the profile
+	 */
+	public RowBitmap all() {
+		return RowBitmap.range(0, profile.getNumRows());
+	}
+
+	public synchronized Set<String> getAttributes() {
+		return Collections.unmodifiableSet(attributes.keySet());
+	}
+
+	/**
+	 * @param attribute
+	 * @return the values of an attribute, in sorted order
+	 */
+	public synchronized Set<String> getValues(String attribute) {
+		Map<String, RowBitmap> values = attributes.get(attribute);
+		return values == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(values.keySet());
+	}
+
+	/**
+	 * @param rows
+	 * @return a view of the selected rows, which shares the rankings of the profile
+	 */
+	public IntPreferenceProfile<T> select(RowBitmap rows) {
+		return profile.selectRows(rows.toArray());
+	}
+
+	/**
+	 * Counts the statistics of the selected rows, or returns them from the cache.
+	 * @param rows
+	 * @return
+	 */
+	public ProfileStatistics<T> getStatistics(RowBitmap rows) {
+		Query query = new Query(rows.toArray());
+		synchronized(this) {
+			ProfileStatistics<T> stats = cache.get(query);
+			if( stats != null ) return stats;
+		}
+
+		ProfileStatistics<T> stats = profile.selectRows(query.rows).getStatistics();
+
+		synchronized(this) {
+			cache.put(query, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * The rows of a query when it was asked, as the key of its cached statistics.
+	 * Bitmaps can change after they are passed in, and hash by going over their rows.
+	 */
+	static class Query {
+		final int[] rows;
+		final int hash;
+
+		Query(int[] rows) {
+			this.rows = rows;
+			this.hash = Arrays.hashCode(rows);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if( !(o instanceof Query) ) return false;
+			Query other = (Query) o;
+			return hash == other.hash && Arrays.equals(rows, other.rows);
+		}
+	}
+
+	/**
+	 * Splits the selected rows by the value of an attribute.
+	 * @param attribute
+	 * @param rows
+	 * @return the statistics of the selected rows with each value
+	 */
+	public Map<String, ProfileStatistics<T>> groupBy(String attribute, RowBitmap rows) {
+		Map<String, RowBitmap> values;
+		synchronized(this) {
+			values = attributes.get(attribute);
+			values = values == null ? new TreeMap<String, RowBitmap>() : new TreeMap<String, RowBitmap>(values);
+		}
+
+		Map<String, ProfileStatistics<T>> result = new TreeMap<String, ProfileStatistics<T>>();
+		for( Map.Entry<String, RowBitmap> e : values.entrySet() ) {
+			RowBitmap selected = e.getValue().and(rows);
+			if( !selected.isEmpty() ) result.put(e.getKey(), getStatistics(selected));
+		}
+		return result;
+	}
+
+}
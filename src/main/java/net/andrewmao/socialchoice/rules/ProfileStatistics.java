@@ -0,0 +1,165 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Ints;
+
+/**
+ * The sufficient statistics that the rules and pairwise estimators use, all counted in one pass
+ * over the rankings of a profile. Matrices are indexed by candidate id, as in {@link IntPreferenceProfile}.
+ *
+ * A profile computes these once, on first use, and shares them with every caller;
+ * see {@link IntPreferenceProfile#getStatistics()}. The arrays must not be modified.
+ *
+ * Statistics of different sets of rankings over the same candidates can be merged, and are
+ * serializable, so that shards of a profile can be counted separately and then combined.
+ * Counts are longs, so that they can be taken over stores of any number of rankings.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class ProfileStatistics<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	final T[] candidates;
+	final int m;
+	final long numRankings;
+
+	// positions[c][i] is the number of times candidate c appears in position i
+	final long[][] positions;
+	// pairwise[a][b] is the number of rankings with a above b
+	final long[][] pairwise;
+	// adjacent[a][b] is the number of rankings with a directly above b
+	final long[][] adjacent;
+
+	ProfileStatistics(T[] candidates, long numRankings, long[][] positions, long[][] pairwise, long[][] adjacent) {
+		this.candidates = candidates;
+		this.m = candidates.length;
+		this.numRankings = numRankings;
+		this.positions = positions;
+		this.pairwise = pairwise;
+		this.adjacent = adjacent;
+	}
+
+	ProfileStatistics(T[] candidates, long numRankings) {
+		this(candidates, numRankings, new long[candidates.length][candidates.length],
+				new long[candidates.length][candidates.length], new long[candidates.length][candidates.length]);
+	}
+
+	/**
+	 * @return the candidates, in sorted order for those of a profile; the index of each is its id. Do not modify.
+	 */
+	public T[] getSortedCandidates() {
+		return candidates;
+	}
+
+	public int getNumCandidates() {
+		return m;
+	}
+
+	public long getNumRankings() {
+		return numRankings;
+	}
+
+	/**
+	 * @return counts[c][i] is the number of times candidate id c appears in position i. Do not modify.
+	 */
+	public long[][] getPositionMatrix() {
+		return positions;
+	}
+
+	/**
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears above b. Do not modify.
+	 */
+	public long[][] getPairwiseMatrix() {
+		return pairwise;
+	}
+
+	/**
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears directly above b. Do not modify.
+	 */
+	public long[][] getAdjacentMatrix() {
+		return adjacent;
+	}
+
+	/**
+	 * Counts one ranking. Only the upper triangle of the pairwise matrix is counted;
+	 * call {@link #fillPairwise()} when done.
+	 *
+	 * @param ranking candidate ids, most preferred first
+	 * @param pos position of each candidate id
+	 * @param w number of copies of the ranking
+	 */
+	void add(int[] ranking, int[] pos, int w) {
+		addPositions(ranking, w);
+
+		for( int a = 0; a < m; a++ ) {
+			int pa = pos[a];
+			long[] row = pairwise[a];
+			for( int b = a + 1; b < m; b++ )
+				if( pa < pos[b] ) row[b] += w;
+		}
+	}
+
+	/**
+	 * Counts the positions and adjacent pairs of one ranking, but not the pairwise wins.
+	 */
+	void addPositions(int[] ranking, int w) {
+		for( int i = 0; i < m; i++ ) positions[ranking[i]][i] += w;
+		for( int i = 0; i < m - 1; i++ ) adjacent[ranking[i]][ranking[i + 1]] += w;
+	}
+
+	/**
+	 * Fills in the lower triangle of the pairwise matrix from the upper one.
+	 */
+	void fillPairwise() {
+		for( int a = 0; a < m; a++ )
+			for( int b = a + 1; b < m; b++ )
+				pairwise[b][a] = numRankings - pairwise[a][b];
+	}
+
+	/**
+	 * Combines the statistics of two sets of rankings over the same candidates.
+	 * Neither is modified, and merging is associative and commutative.
+	 * @param other
+	 * @return the statistics of the rankings of both together
+	 */
+	public ProfileStatistics<T> merge(ProfileStatistics<T> other) {
+		if( !Arrays.equals(candidates, other.candidates) )
+			throw new IllegalArgumentException("Statistics have different candidates");
+
+		ProfileStatistics<T> sum = new ProfileStatistics<T>(candidates, LongMath.checkedAdd(numRankings, other.numRankings));
+		for( int a = 0; a < m; a++ ) {
+			for( int b = 0; b < m; b++ ) {
+				sum.positions[a][b] = positions[a][b] + other.positions[a][b];
+				sum.pairwise[a][b] = pairwise[a][b] + other.pairwise[a][b];
+				sum.adjacent[a][b] = adjacent[a][b] + other.adjacent[a][b];
+			}
+		}
+		return sum;
+	}
+
+	static long[][] copy(long[][] matrix) {
+		long[][] result = new long[matrix.length][];
+		for( int a = 0; a < matrix.length; a++ ) result[a] = matrix[a].clone();
+		return result;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if a count is too large for an int
+	 */
+	static int[][] toInts(long[][] counts) {
+		int[][] result = new int[counts.length][];
+		for( int a = 0; a < counts.length; a++ ) {
+			result[a] = new int[counts[a].length];
+			for( int b = 0; b < counts[a].length; b++ )
+				result[a][b] = Ints.checkedCast(counts[a][b]);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,652 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.lang.mutable.MutableInt;
+
+import com.google.common.collect.ArrayTable;
+import com.google.common.collect.Table;
+import com.google.common.primitives.Ints;
+
+/**
+ * Rankings stored on disk in a fixed-width binary layout and read through memory-mapped buffers,
+ * for profiles that are too big to hold on the heap.
+ *
+ * The file is a header (candidates and sizes) followed by blocks of {@link #blockRows} rankings.
+ * Within a block, the data is stored by column: first the candidate id in position 0 for every
+ * ranking, then position 1, and so on. Ids take one byte with up to 256 candidates and two bytes
+ * otherwise. The last block is padded to full size.
+ *
+ * Statistics are computed in parallel over ranges of rankings, and {@link #getProfile(long, long)}
+ * gives a view that any rule or estimator can use without loading the rankings.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class ProfileStore<T> implements Closeable {
+
+	static final int MAGIC = 0x50524f46; // "PROF"
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 32;
+
+	public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+	// Size of mapped segments, and of ranges processed by a single thread
+	static final long MAX_SEGMENT_BYTES = 1L << 30;
+	static final long MIN_SPLIT_ROWS = 1L << 16;
+
+	// Kinds of counts
+	static final int POSITION = 0;
+	static final int PAIRWISE = 1;
+	static final int ADJACENT = 2;
+	static final int NUM_KINDS = 3;
+
+	final T[] candidates;
+	final int m;
+	final int width;
+	final int blockRows;
+	final long numRankings;
+
+	final int blockBytes;
+	final long blocksPerSegment;
+
+	final RandomAccessFile file;
+	final MappedByteBuffer[] segments;
+
+	ForkJoinPool pool = SharedPool.get();
+	private volatile ProfileStatistics<T> statistics;
+
+	ProfileStore(RandomAccessFile file, T[] candidates, int width, int blockRows, long numRankings, long dataStart) throws IOException {
+		this.file = file;
+		this.candidates = candidates;
+		this.m = candidates.length;
+		this.width = width;
+		this.blockRows = blockRows;
+		this.numRankings = numRankings;
+
+		blockBytes = blockRows * m * width;
+		blocksPerSegment = Math.max(1, MAX_SEGMENT_BYTES / blockBytes);
+
+		long numBlocks = (numRankings + blockRows - 1) / blockRows;
+		int numSegments = (int) ((numBlocks + blocksPerSegment - 1) / blocksPerSegment);
+
+		FileChannel channel = file.getChannel();
+		segments = new MappedByteBuffer[numSegments];
+		for( int s = 0; s < numSegments; s++ ) {
+			long blocks = Math.min(blocksPerSegment, numBlocks - s * blocksPerSegment);
+			segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+					dataStart + s * blocksPerSegment * blockBytes, blocks * blockBytes);
+		}
+	}
+
+	/**
+	 * Starts a new store.
+	 *
+	 * @param file
+	 * @param sortedCandidates the candidates, in sorted order; the index of each is its id. They are saved with Java serialization.
+	 * @return a writer, which must be closed to finish the file
+	 * @throws IOException
+	 */
+	public static <T> Writer<T> create(File file, T[] sortedCandidates) throws IOException {
+		return new Writer<T>(file, sortedCandidates, DEFAULT_BLOCK_ROWS);
+	}
+
+	/**
+	 * Saves a profile to a new store.
+	 * @param file
+	 * @param profile
+	 * @throws IOException
+	 */
+	public static <T> void write(File file, PreferenceProfile<T> profile) throws IOException {
+		IntPreferenceProfile<T> ip = profile.asIntProfile();
+		Writer<T> writer = create(file, ip.getSortedCandidates());
+		try {
+			writer.addAll(ip);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Opens an existing store for reading.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static <T> ProfileStore<T> open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			raf.getChannel().read(header, 0);
+			header.flip();
+
+			if( header.remaining() < HEADER_BYTES || header.getInt() != MAGIC )
+				throw new IOException(file + " is not a profile store");
+			int version = header.getInt();
+			if( version != VERSION )
+				throw new IOException("Unsupported profile store version " + version);
+
+			header.getInt(); // number of candidates, also given by the array
+			int width = header.getInt();
+			int blockRows = header.getInt();
+			long numRankings = header.getLong();
+			int candidateBytes = header.getInt();
+
+			byte[] bytes = new byte[candidateBytes];
+			raf.seek(HEADER_BYTES);
+			raf.readFully(bytes);
+
+			@SuppressWarnings("unchecked")
+			T[] candidates = (T[]) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+
+			return new ProfileStore<T>(raf, candidates, width, blockRows, numRankings, dataStart(candidateBytes));
+		}
+		catch( ClassNotFoundException e ) {
+			raf.close();
+			throw new IOException(e);
+		}
+		catch( IOException e ) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	static long dataStart(int candidateBytes) {
+		// Align the blocks to 8 bytes
+		return (HEADER_BYTES + candidateBytes + 7) & ~7L;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Computes statistics and counts rankings on a different pool than the {@link SharedPool}.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public long getNumRankings() {
+		return numRankings;
+	}
+
+	public int getNumCandidates() {
+		return m;
+	}
+
+	public T[] getSortedCandidates() {
+		return candidates.clone();
+	}
+
+	/**
+	 * @param row
+	 * @param position
+	 * @return the id of the candidate at the given position of a ranking
+	 */
+	public int candidateAt(long row, int position) {
+		long block = row / blockRows;
+		ByteBuffer segment = segments[(int) (block / blocksPerSegment)];
+		int idx = (int) (block % blocksPerSegment) * blockBytes + (position * blockRows + (int) (row % blockRows)) * width;
+		return width == 1 ? segment.get(idx) & 0xff : segment.getShort(idx) & 0xffff;
+	}
+
+	/**
+	 * Reads a ranking of candidate ids into an array.
+	 * @param row
+	 * @param ranking
+	 */
+	public void getRanking(long row, int[] ranking) {
+		long block = row / blockRows;
+		ByteBuffer segment = segments[(int) (block / blocksPerSegment)];
+		int idx = (int) (block % blocksPerSegment) * blockBytes + (int) (row % blockRows) * width;
+		int columnBytes = blockRows * width;
+
+		if( width == 1 )
+			for( int i = 0; i < m; i++, idx += columnBytes ) ranking[i] = segment.get(idx) & 0xff;
+		else
+			for( int i = 0; i < m; i++, idx += columnBytes ) ranking[i] = segment.getShort(idx) & 0xffff;
+	}
+
+	/**
+	 * @return a cursor over all rankings in the store
+	 */
+	public Cursor cursor() {
+		return new Cursor(0, numRankings);
+	}
+
+	/**
+	 * Gets a view of some of the rankings in the store, which reads them from the file as needed.
+	 * @param fromRow inclusive
+	 * @param toRow exclusive
+	 * @return
+	 */
+	public IntPreferenceProfile<T> getProfile(long fromRow, long toRow) {
+		if( fromRow < 0 || toRow > numRankings || fromRow > toRow )
+			throw new IllegalArgumentException("Invalid rows " + fromRow + " to " + toRow);
+		if( toRow - fromRow > Integer.MAX_VALUE )
+			throw new IllegalArgumentException("Too many rankings for a single profile; use a smaller range");
+
+		return new View<T>(this, fromRow, (int) (toRow - fromRow));
+	}
+
+	/**
+	 * @return a view of all rankings in the store
+	 */
+	public IntPreferenceProfile<T> getProfile() {
+		return getProfile(0, numRankings);
+	}
+
+	/**
+	 * Gets the position, pairwise and adjacent counts of all the rankings, which are computed
+	 * in parallel the first time they are needed.
+	 * @return
+	 */
+	public ProfileStatistics<T> getStatistics() {
+		ProfileStatistics<T> stats = statistics;
+		if( stats == null ) {
+			synchronized(this) {
+				stats = statistics;
+				if( stats == null ) statistics = stats = getStatistics(0, numRankings);
+			}
+		}
+		return stats;
+	}
+
+	ProfileStatistics<T> getStatistics(long from, long to) {
+		long[][][] counts = SharedPool.invoke(pool, new Counter(from, to));
+		return new ProfileStatistics<T>(candidates, to - from, counts[POSITION], counts[PAIRWISE], counts[ADJACENT]);
+	}
+
+	/**
+	 * @return counts[c][i] is the number of times candidate id c appears in position i.
+	 */
+	public long[][] getPositionMatrix() {
+		return ProfileStatistics.copy(getStatistics().positions);
+	}
+
+	/**
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears above b.
+	 */
+	public long[][] getPairwiseMatrix() {
+		return ProfileStatistics.copy(getStatistics().pairwise);
+	}
+
+	/**
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears directly above b.
+	 */
+	public long[][] getAdjacentMatrix() {
+		return ProfileStatistics.copy(getStatistics().adjacent);
+	}
+
+	/**
+	 * Same as {@link PreferenceProfile#getPositionCounts()}.
+	 * @throws IllegalArgumentException if a count is too large for an int
+	 */
+	public Map<T, int[]> getPositionCounts() {
+		int[][] counts = ProfileStatistics.toInts(getStatistics().positions);
+
+		Map<T, int[]> map = new TreeMap<T, int[]>();
+		for( int c = 0; c < m; c++ ) map.put(candidates[c], counts[c]);
+
+		return map;
+	}
+
+	/**
+	 * Same as {@link PreferenceProfile#getPairwiseCounts()}.
+	 * @throws IllegalArgumentException if a count is too large for an int
+	 */
+	public Table<T, T, MutableInt> getPairwiseCounts() {
+		long[][] wins = getStatistics().pairwise;
+
+		Table<T, T, MutableInt> table = ArrayTable.create(Arrays.asList(candidates), Arrays.asList(candidates));
+
+		for( int a = 0; a < m; a++ ) {
+			for( int b = 0; b < m; b++ ) {
+				if( a == b ) continue;
+				table.put(candidates[a], candidates[b], new MutableInt(Ints.checkedCast(wins[a][b])));
+			}
+		}
+
+		return table;
+	}
+
+	/**
+	 * Counts the distinct rankings in the store in parallel, which is the input for the estimators.
+	 * @return
+	 */
+	public RankingMultiset<T> countRankings() {
+		return SharedPool.invoke(pool, new MultisetCounter(0, numRankings));
+	}
+
+	/**
+	 * Splits a range of rows at a block boundary, or returns -1 if it is too small to split.
+	 */
+	long split(long from, long to) {
+		if( to - from < 2 * MIN_SPLIT_ROWS ) return -1;
+		long mid = (from + (to - from) / 2) / blockRows * blockRows;
+		return mid > from && mid < to ? mid : -1;
+	}
+
+	/**
+	 * Sequential access to a range of rankings, which can be split into parts
+	 * to process in parallel.
+	 */
+	public class Cursor {
+		long row;
+		long end;
+
+		Cursor(long from, long to) {
+			this.row = from;
+			this.end = to;
+		}
+
+		/**
+		 * Reads the next ranking of candidate ids.
+		 * @param ranking array of size m to fill
+		 * @return false if there are no more rankings
+		 */
+		public boolean next(int[] ranking) {
+			if( row >= end ) return false;
+			getRanking(row++, ranking);
+			return true;
+		}
+
+		public long remaining() {
+			return end - row;
+		}
+
+		/**
+		 * Splits off the first half of the remaining rankings, leaving this cursor with the second half.
+		 * @return the first half, or null if the range is too small to split
+		 */
+		public Cursor trySplit() {
+			long mid = split(row, end);
+			if( mid < 0 ) return null;
+
+			Cursor prefix = new Cursor(row, mid);
+			row = mid;
+			return prefix;
+		}
+	}
+
+	/**
+	 * Counts positions, pairwise and adjacent wins in one pass over a range of rows.
+	 */
+	class Counter extends RecursiveTask<long[][][]> {
+		private static final long serialVersionUID = 1L;
+
+		final long from;
+		final long to;
+
+		Counter(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected long[][][] compute() {
+			long mid = split(from, to);
+			if( mid >= 0 ) {
+				Counter left = new Counter(from, mid);
+				left.fork();
+				long[][][] counts = new Counter(mid, to).compute();
+				long[][][] other = left.join();
+				for( int k = 0; k < NUM_KINDS; k++ )
+					for( int a = 0; a < m; a++ )
+						for( int b = 0; b < m; b++ )
+							counts[k][a][b] += other[k][a][b];
+				return counts;
+			}
+
+			ProfileStatistics<T> stats = new ProfileStatistics<T>(candidates, to - from);
+			int[] ranking = new int[m];
+			int[] pos = new int[m];
+
+			for( long row = from; row < to; row++ ) {
+				getRanking(row, ranking);
+				for( int i = 0; i < m; i++ ) pos[ranking[i]] = i;
+				stats.add(ranking, pos, 1);
+			}
+			stats.fillPairwise();
+
+			long[][][] result = new long[NUM_KINDS][][];
+			result[POSITION] = stats.positions;
+			result[PAIRWISE] = stats.pairwise;
+			result[ADJACENT] = stats.adjacent;
+			return result;
+		}
+	}
+
+	class MultisetCounter extends RecursiveTask<RankingMultiset<T>> {
+		private static final long serialVersionUID = 1L;
+
+		final long from;
+		final long to;
+
+		MultisetCounter(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected RankingMultiset<T> compute() {
+			long mid = split(from, to);
+			if( mid >= 0 ) {
+				MultisetCounter left = new MultisetCounter(from, mid);
+				left.fork();
+				RankingMultiset<T> counts = new MultisetCounter(mid, to).compute();
+				counts.addAll(left.join());
+				return counts;
+			}
+
+			RankingMultiset<T> counts = new RankingMultiset<T>(candidates);
+			int[] ranking = new int[m];
+			for( long row = from; row < to; row++ ) {
+				getRanking(row, ranking);
+				counts.add(ranking, 0, 1);
+			}
+			return counts;
+		}
+	}
+
+	/**
+	 * A range of the store as a profile.
+	 */
+	static class View<T> extends ProfileView<T> {
+		final ProfileStore<T> store;
+		final long fromRow;
+
+		View(ProfileStore<T> store, long fromRow, int numRows) {
+			super(store.candidates, getIdMap(store.candidates), numRows, numRows);
+			this.store = store;
+			this.fromRow = fromRow;
+		}
+
+		@Override
+		public int candidateAt(int row, int position) {
+			return store.candidateAt(fromRow + row, position);
+		}
+
+		@Override
+		public int positionOf(int row, int id) {
+			for( int i = 0; i < m; i++ )
+				if( store.candidateAt(fromRow + row, i) == id ) return i;
+			return -1;
+		}
+
+		@Override
+		public int[] getRanking(int row) {
+			int[] ranking = new int[m];
+			store.getRanking(fromRow + row, ranking);
+			return ranking;
+		}
+
+		@Override
+		public int getWeight(int row) {
+			return 1;
+		}
+
+		@Override
+		ProfileStatistics<T> computeStatistics() {
+			return store.getStatistics(fromRow, fromRow + numRows);
+		}
+	}
+
+	/**
+	 * Appends rankings to a new store.
+	 */
+	public static class Writer<T> implements Closeable {
+		final RandomAccessFile file;
+		final FileChannel channel;
+		final Map<T, Integer> ids;
+		final int m;
+		final int width;
+		final int blockRows;
+		final long dataStart;
+
+		final ByteBuffer block;
+		final boolean[] seen;
+		int rowsInBlock;
+		long numRankings;
+
+		Writer(File f, T[] sortedCandidates, int blockRows) throws IOException {
+			m = sortedCandidates.length;
+			width = m <= 256 ? 1 : 2;
+			if( m > 65536 )
+				throw new IllegalArgumentException("Too many candidates: " + m);
+
+			// Keep blocks small enough to map
+			this.blockRows = (int) Math.max(1, Math.min(blockRows, MAX_SEGMENT_BYTES / (m * width)));
+			this.ids = IntPreferenceProfile.getIdMap(sortedCandidates);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream os = new ObjectOutputStream(bytes);
+			os.writeObject(sortedCandidates);
+			os.close();
+			byte[] candidateBytes = bytes.toByteArray();
+			dataStart = dataStart(candidateBytes.length);
+
+			file = new RandomAccessFile(f, "rw");
+			file.setLength(0);
+			channel = file.getChannel();
+
+			ByteBuffer header = ByteBuffer.allocate((int) dataStart);
+			header.putInt(MAGIC).putInt(VERSION).putInt(m).putInt(width).putInt(this.blockRows);
+			header.putLong(0).putInt(candidateBytes.length).put(candidateBytes);
+			header.rewind();
+			while( header.hasRemaining() ) channel.write(header);
+
+			block = ByteBuffer.allocate(this.blockRows * m * width);
+			seen = new boolean[m];
+		}
+
+		/**
+		 * @param ranking candidate ids, most preferred first
+		 * @throws IOException
+		 */
+		public void add(int[] ranking) throws IOException {
+			if( ranking.length != m )
+				throw new IllegalArgumentException("All rankings must contain the same " + m + " candidates");
+
+			Arrays.fill(seen, false);
+			for( int id : ranking ) {
+				if( id < 0 || id >= m || seen[id] )
+					throw new IllegalArgumentException("Not a ranking of " + m + " candidate ids: " + Arrays.toString(ranking));
+				seen[id] = true;
+			}
+
+			put(ranking);
+		}
+
+		public void add(T[] ranking) throws IOException {
+			int[] idRanking = new int[ranking.length];
+			for( int i = 0; i < ranking.length; i++ ) {
+				Integer id = ids.get(ranking[i]);
+				if( id == null )
+					throw new IllegalArgumentException("Unknown candidate " + ranking[i] + " in " + Arrays.toString(ranking));
+				idRanking[i] = id;
+			}
+			add(idRanking);
+		}
+
+		/**
+		 * Adds every ranking of a profile over the same candidates, repeating weighted rows.
+		 * @param profile
+		 * @throws IOException
+		 */
+		public void addAll(PreferenceProfile<T> profile) throws IOException {
+			IntPreferenceProfile<T> ip = profile.asIntProfile();
+			if( ip.m != m || !ids.keySet().containsAll(Arrays.asList(ip.candidates)) )
+				throw new IllegalArgumentException("Profile has different candidates");
+
+			// Map the profile's ids in case its candidates are a different array
+			int[] map = new int[m];
+			for( int c = 0; c < m; c++ ) map[c] = ids.get(ip.candidates[c]);
+
+			int[] ranking = new int[m];
+			for( int r = 0; r < ip.getNumRows(); r++ ) {
+				for( int i = 0; i < m; i++ ) ranking[i] = map[ip.candidateAt(r, i)];
+				for( int w = ip.getWeight(r); w > 0; w-- ) put(ranking);
+			}
+		}
+
+		void put(int[] ranking) throws IOException {
+			int columnBytes = blockRows * width;
+			int idx = rowsInBlock * width;
+
+			if( width == 1 )
+				for( int i = 0; i < m; i++, idx += columnBytes ) block.put(idx, (byte) ranking[i]);
+			else
+				for( int i = 0; i < m; i++, idx += columnBytes ) block.putShort(idx, (short) ranking[i]);
+
+			numRankings++;
+			if( ++rowsInBlock == blockRows ) flush();
+		}
+
+		void flush() throws IOException {
+			block.clear();
+			while( block.hasRemaining() ) channel.write(block);
+			rowsInBlock = 0;
+		}
+
+		public long getNumRankings() {
+			return numRankings;
+		}
+
+		/**
+		 * Writes the last block and the number of rankings.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				if( rowsInBlock > 0 ) flush();
+
+				ByteBuffer count = ByteBuffer.allocate(8);
+				count.putLong(numRankings).flip();
+				channel.write(count, 20);
+			} finally {
+				file.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profiles that are views of other profiles, sharing their storage instead of copying rankings.
+ * Views are built by {@link IntPreferenceProfile#subset(int[])}, {@link IntPreferenceProfile#selectRows(int[])},
+ * {@link IntPreferenceProfile#slice(int, int)} and {@link PreferenceProfileList#concatenate()}.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+abstract class ProfileView<T> extends IntPreferenceProfile<T> {
+
+	ProfileView(T[] candidates, Map<T, Integer> ids, int numRows, int numRankings) {
+		super(candidates, ids, null, null, null, numRows);
+		this.numRankings = numRankings;
+	}
+
+	@Override
+	public abstract int candidateAt(int row, int position);
+
+	@Override
+	public abstract int positionOf(int row, int id);
+
+	@Override
+	public abstract int getWeight(int row);
+
+	@Override
+	public IntPreferenceProfile<T> subset(int[] indices) {
+		return new Rows<T>(this, toRows(indices));
+	}
+
+	@Override
+	ProfileStatistics<T> computeStatistics() {
+		boolean parallel = usePairwiseKernel();
+		ProfileStatistics<T> stats = new ProfileStatistics<T>(candidates, numRankings, new long[m][m],
+				parallel ? PairwiseKernel.count(this) : new long[m][m], new long[m][m]);
+		int[] ranking = new int[m];
+		int[] pos = new int[m];
+
+		for( int r = 0; r < numRows; r++ ) {
+			int w = getWeight(r);
+			if( w == 0 ) continue;
+
+			for( int i = 0; i < m; i++ ) pos[ranking[i] = candidateAt(r, i)] = i;
+			if( parallel ) stats.addPositions(ranking, w);
+			else stats.add(ranking, pos, w);
+		}
+
+		if( !parallel ) stats.fillPairwise();
+		return stats;
+	}
+
+	@Override
+	public IntPreferenceProfile<T> selectRows(int[] rowIndices) {
+		int[] newWeights = new int[rowIndices.length];
+		for( int i = 0; i < rowIndices.length; i++ ) newWeights[i] = getWeight(rowIndices[i]);
+		return new Rows<T>(this, rowIndices.clone(), newWeights);
+	}
+
+	/**
+	 * Some rows of another profile, possibly repeated.
+	 */
+	static class Rows<T> extends ProfileView<T> {
+		final IntPreferenceProfile<T> parent;
+		final int[] parentRows;
+		// null when every row has weight 1
+		final int[] rowWeights;
+
+		Rows(IntPreferenceProfile<T> parent, int[] parentRows) {
+			this(parent, parentRows, null);
+		}
+
+		Rows(IntPreferenceProfile<T> parent, int[] parentRows, int[] rowWeights) {
+			super(parent.candidates, parent.ids, parentRows.length, sum(rowWeights, parentRows.length));
+			this.parent = parent;
+			this.parentRows = parentRows;
+			this.rowWeights = rowWeights;
+		}
+
+		static int sum(int[] weights, int numRows) {
+			if( weights == null ) return numRows;
+			int total = 0;
+			for( int w : weights ) total += w;
+			return total;
+		}
+
+		@Override
+		public int candidateAt(int row, int position) {
+			return parent.candidateAt(parentRows[row], position);
+		}
+
+		@Override
+		public int positionOf(int row, int id) {
+			return parent.positionOf(parentRows[row], id);
+		}
+
+		@Override
+		public int getWeight(int row) {
+			return rowWeights == null ? 1 : rowWeights[row];
+		}
+
+		@Override
+		public IntPreferenceProfile<T> subset(int[] indices) {
+			// Point directly at the parent, rather than stacking views
+			int[] rows = rowWeights == null ? indices : toRows(indices);
+			int[] newRows = new int[rows.length];
+			for( int i = 0; i < rows.length; i++ ) newRows[i] = parentRows[rows[i]];
+			return new Rows<T>(parent, newRows);
+		}
+
+		@Override
+		public IntPreferenceProfile<T> selectRows(int[] rowIndices) {
+			int[] newRows = new int[rowIndices.length];
+			int[] newWeights = new int[rowIndices.length];
+			for( int i = 0; i < rowIndices.length; i++ ) {
+				newRows[i] = parentRows[rowIndices[i]];
+				newWeights[i] = getWeight(rowIndices[i]);
+			}
+			return new Rows<T>(parent, newRows, newWeights);
+		}
+	}
+
+	/**
+	 * A range of positions of every ranking of another profile.
+	 */
+	static class Slice<T> extends ProfileView<T> {
+		final IntPreferenceProfile<T> parent;
+		final int fromIdx;
+		// Maps ids of this view to ids of the parent, and vice versa
+		final int[] parentIds;
+		final int[] localIds;
+
+		Slice(IntPreferenceProfile<T> parent, int fromIdx, int toIdx, int[] parentIds, T[] candidates) {
+			super(candidates, getIdMap(candidates), parent.numRows, parent.numRankings);
+			this.parent = parent;
+			this.fromIdx = fromIdx;
+			this.parentIds = parentIds;
+
+			localIds = new int[parent.m];
+			Arrays.fill(localIds, -1);
+			for( int c = 0; c < m; c++ ) localIds[parentIds[c]] = c;
+		}
+
+		/**
+		 * @param parentIds from {@link #getParentIds(IntPreferenceProfile, int, int)}, for which
+		 * {@link #sameCandidates(IntPreferenceProfile, int, int, int[])} holds
+		 */
+		Slice(IntPreferenceProfile<T> parent, int fromIdx, int toIdx, int[] parentIds) {
+			this(parent, fromIdx, toIdx, parentIds, getCandidates(parent, parentIds));
+		}
+
+		/**
+		 * @return whether every ranking has the given candidates in positions fromIdx to toIdx
+		 */
+		static boolean sameCandidates(IntPreferenceProfile<?> parent, int fromIdx, int toIdx, int[] parentIds) {
+			boolean[] inSlice = new boolean[parent.m];
+			for( int c : parentIds ) inSlice[c] = true;
+
+			for( int r = 0; r < parent.numRows; r++ )
+				for( int i = fromIdx; i < toIdx; i++ )
+					if( !inSlice[parent.candidateAt(r, i)] ) return false;
+			return true;
+		}
+
+		static int[] getParentIds(IntPreferenceProfile<?> parent, int fromIdx, int toIdx) {
+			if( fromIdx < 0 || toIdx > parent.m || fromIdx >= toIdx )
+				throw new IllegalArgumentException("Invalid positions " + fromIdx + " to " + toIdx);
+			if( parent.numRows == 0 )
+				throw new IllegalArgumentException("Cannot slice an empty profile");
+
+			// Parent ids are in sorted order already, so sorting them gives the new ids
+			int[] parentIds = new int[toIdx - fromIdx];
+			for( int i = fromIdx; i < toIdx; i++ ) parentIds[i - fromIdx] = parent.candidateAt(0, i);
+			Arrays.sort(parentIds);
+			return parentIds;
+		}
+
+		static <T> T[] getCandidates(IntPreferenceProfile<T> parent, int[] parentIds) {
+			T[] candidates = Arrays.copyOf(parent.candidates, parentIds.length);
+			for( int c = 0; c < parentIds.length; c++ ) candidates[c] = parent.candidates[parentIds[c]];
+			return candidates;
+		}
+
+		@Override
+		public int candidateAt(int row, int position) {
+			return localIds[parent.candidateAt(row, fromIdx + position)];
+		}
+
+		@Override
+		public int positionOf(int row, int id) {
+			return parent.positionOf(row, parentIds[id]) - fromIdx;
+		}
+
+		@Override
+		public int getWeight(int row) {
+			return parent.getWeight(row);
+		}
+	}
+
+	/**
+	 * The rankings of several profiles over the same candidates, one after the other.
+	 */
+	static class Concat<T> extends ProfileView<T> {
+		final IntPreferenceProfile<T>[] parts;
+		// Index of the first row after each part
+		final int[] ends;
+
+		Concat(IntPreferenceProfile<T>[] parts) {
+			super(parts[0].candidates, parts[0].ids, totalRows(parts), totalRankings(parts));
+			this.parts = parts;
+
+			ends = new int[parts.length];
+			int total = 0;
+			for( int p = 0; p < parts.length; p++ ) {
+				if( !Arrays.equals(candidates, parts[p].candidates) )
+					throw new IllegalArgumentException("Profiles have different candidates");
+				ends[p] = (total += parts[p].numRows);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		static <T> Concat<T> of(List<? extends PreferenceProfile<T>> profiles) {
+			IntPreferenceProfile<T>[] parts = new IntPreferenceProfile[profiles.size()];
+			for( int p = 0; p < parts.length; p++ ) parts[p] = profiles.get(p).asIntProfile();
+			return new Concat<T>(parts);
+		}
+
+		static int totalRows(IntPreferenceProfile<?>[] parts) {
+			int total = 0;
+			for( IntPreferenceProfile<?> part : parts ) total += part.numRows;
+			return total;
+		}
+
+		static int totalRankings(IntPreferenceProfile<?>[] parts) {
+			int total = 0;
+			for( IntPreferenceProfile<?> part : parts ) total += part.numRankings;
+			return total;
+		}
+
+		int partOf(int row) {
+			int p = Arrays.binarySearch(ends, row + 1);
+			if( p < 0 ) return -p - 1;
+			// Skip over empty parts
+			while( p > 0 && ends[p-1] == ends[p] ) p--;
+			return p;
+		}
+
+		@Override
+		public int candidateAt(int row, int position) {
+			int p = partOf(row);
+			return parts[p].candidateAt(p == 0 ? row : row - ends[p-1], position);
+		}
+
+		@Override
+		public int positionOf(int row, int id) {
+			int p = partOf(row);
+			return parts[p].positionOf(p == 0 ? row : row - ends[p-1], id);
+		}
+
+		@Override
+		public int getWeight(int row) {
+			int p = partOf(row);
+			return parts[p].getWeight(p == 0 ? row : row - ends[p-1]);
+		}
+
+		/*
+		 * Counts add up over the parts, and each part keeps its own
+		 */
+		@Override
+		ProfileStatistics<T> computeStatistics() {
+			ProfileStatistics<T> stats = new ProfileStatistics<T>(candidates, 0);
+			for( IntPreferenceProfile<T> part : parts ) stats = stats.merge(part.getStatistics());
+			return stats;
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Ranked Pairs, or Tideman's method. Majorities are locked in from the largest margin down,
+ * skipping any that would make a cycle with those already locked, and each candidate is
+ * scored by the number of others it is locked above. Majorities with the same margin are
+ * taken in order of candidate id, so that the result does not depend on the order of the profile.
+ *
+ * Cycles are found from the transitive closure of the locked majorities, kept as one bitset per
+ * candidate and extended as each majority is locked.
+ *
+ * @author mao
+ *
+ */
+public class RankedPairs extends PairwiseVotingRule {
+
+	@Override
+	protected double[] getPairwiseScores(long[][] wins) {
+		int m = wins.length;
+		long[][] above = getLockedClosure(wins);
+
+		double[] scores = new double[m];
+		for( int a = 0; a < m; a++ )
+			for( long word : above[a] ) scores[a] += Long.bitCount(word);
+
+		return scores;
+	}
+
+	/**
+	 * @param wins wins[a][b] is the number of rankings with candidate id a above b
+	 * @return bit b of above[a] is set if a is locked above b, directly or through others
+	 */
+	static long[][] getLockedClosure(long[][] wins) {
+		int m = wins.length;
+		// Ids are packed into 16 bits each
+		if( m > 1 << 16 ) throw new IllegalArgumentException("Too many candidates: " + m);
+		int words = (m + 63) >>> 6;
+
+		// Each majority as its margin and pair of ids, packed so that sorting gives the locking order.
+		// m(m - 1) overflows an int above 46341 candidates, but the number of pairs fits.
+		long[] pairs = new long[Ints.checkedCast((long) m * (m - 1) / 2)];
+		int n = 0;
+		long largest = 0;
+		for( int a = 0; a < m; a++ ) {
+			for( int b = a + 1; b < m; b++ ) {
+				long margin = Math.abs(wins[a][b] - wins[b][a]);
+				if( margin == 0 ) continue;
+				largest = Math.max(largest, margin);
+				pairs[n++] = ((long) a << 16) | b;
+			}
+		}
+
+		// Margins too large for the top half are replaced by their rank among the distinct margins
+		long[] margins = null;
+		int distinct = 0;
+		if( largest > Integer.MAX_VALUE ) {
+			margins = new long[n];
+			for( int p = 0; p < n; p++ ) margins[p] = margin(wins, pairs[p]);
+			Arrays.sort(margins);
+			for( int p = 0; p < n; p++ )
+				if( p == 0 || margins[p] != margins[p - 1] ) margins[distinct++] = margins[p];
+		}
+		for( int p = 0; p < n; p++ ) {
+			long margin = margin(wins, pairs[p]);
+			if( margins != null ) margin = Arrays.binarySearch(margins, 0, distinct, margin);
+			pairs[p] |= (Integer.MAX_VALUE - margin) << 32;
+		}
+		Arrays.sort(pairs, 0, n);
+
+		long[][] above = new long[m][words];
+		for( int p = 0; p < n; p++ ) {
+			int a = (int) (pairs[p] >>> 16) & 0xFFFF;
+			int b = (int) pairs[p] & 0xFFFF;
+			int winner = wins[a][b] > wins[b][a] ? a : b;
+			int loser = winner == a ? b : a;
+
+			// Skip the majority if the loser is already above the winner
+			if( (above[loser][winner >>> 6] & (1L << winner)) != 0 ) continue;
+
+			// Everything at or above the winner is now above the loser and everything below it
+			long[] below = above[loser];
+			for( int c = 0; c < m; c++ ) {
+				if( c != winner && (above[c][winner >>> 6] & (1L << winner)) == 0 ) continue;
+				long[] row = above[c];
+				for( int w = 0; w < words; w++ ) row[w] |= below[w];
+				row[loser >>> 6] |= 1L << loser;
+			}
+		}
+
+		return above;
+	}
+
+	static long margin(long[][] wins, long pair) {
+		int a = (int) (pair >>> 16) & 0xFFFF;
+		int b = (int) pair & 0xFFFF;
+		return Math.abs(wins[a][b] - wins[b][a]);
+	}
+
+}
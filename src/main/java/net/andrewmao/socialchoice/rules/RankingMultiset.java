@@ -0,0 +1,311 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A profile that stores each distinct ranking once, along with the number of times it occurs.
+ *
+ * With a small number of candidates, a profile of millions of voters usually has at most
+ * a few hundred distinct rankings, so the estimators and rules can do one pass over the
+ * distinct rankings instead of over every voter.
+ *
+ * Rankings are keyed by a single long: for up to {@value #MAX_CODED_CANDIDATES} candidates
+ * this is the Lehmer code of the permutation, which is exact. For more candidates it is a
+ * hash of the ranking, and the rows are compared on collisions.
+ *
+ * Multisets can be merged and serialized, so that shards of a profile can be counted separately
+ * and combined before fitting a model.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class RankingMultiset<T> extends IntPreferenceProfile<T> implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final int MAX_CODED_CANDIDATES = 20;
+
+	static final int INITIAL_ROWS = 16;
+
+	final boolean exact;
+
+	// Open addressing table of row + 1, with 0 for an empty slot
+	int[] slots;
+	long[] codes;
+
+	RankingMultiset(T[] sortedCandidates, int expectedRows) {
+		super(sortedCandidates, getIdMap(sortedCandidates),
+				new int[2 * sortedCandidates.length * expectedRows], null, new int[expectedRows], 0);
+
+		exact = m <= MAX_CODED_CANDIDATES;
+		codes = new long[expectedRows];
+		slots = new int[tableSize(expectedRows)];
+	}
+
+	/**
+	 * Creates an empty multiset over the given candidates.
+	 * @param sortedCandidates the candidates, in sorted order; the index of each is its id
+	 */
+	public RankingMultiset(T[] sortedCandidates) {
+		this(sortedCandidates, INITIAL_ROWS);
+	}
+
+	/**
+	 * Counts the distinct rankings of a profile. A profile that is already a multiset is returned
+	 * itself, not a copy, so changing the result changes it; use {@link #copy()} for one to change.
+	 * Otherwise the rankings are only counted once per profile, and each call returns a copy
+	 * of those counts, which can be changed without affecting the profile.
+	 * @param profile
+	 * @return
+	 */
+	public static <T> RankingMultiset<T> of(PreferenceProfile<T> profile) {
+		if( profile instanceof RankingMultiset ) return (RankingMultiset<T>) profile;
+
+		return profile.asIntProfile().getMultiset().copy();
+	}
+
+	/**
+	 * @return a multiset with the same counts, which can be changed without affecting this one
+	 */
+	public RankingMultiset<T> copy() {
+		RankingMultiset<T> copy = new RankingMultiset<T>(candidates, codes.length);
+		System.arraycopy(data, 0, copy.data, 0, numRows * stride);
+		System.arraycopy(weights, 0, copy.weights, 0, numRows);
+		System.arraycopy(codes, 0, copy.codes, 0, numRows);
+		System.arraycopy(slots, 0, copy.slots, 0, slots.length);
+		copy.numRows = numRows;
+		copy.numRankings = numRankings;
+		return copy;
+	}
+
+	/**
+	 * Counts rankings given as 1-based indices, the format used by the estimators.
+	 * The candidates of the result are the integers 1 to numItems.
+	 *
+	 * @param indices
+	 * @param numItems
+	 * @return
+	 */
+	public static RankingMultiset<Integer> fromIndices(List<int[]> indices, int numItems) {
+		Integer[] candidates = new Integer[numItems];
+		for( int i = 0; i < numItems; i++ ) candidates[i] = i + 1;
+
+		RankingMultiset<Integer> counts = new RankingMultiset<Integer>(candidates, INITIAL_ROWS);
+
+		int[] ranking = new int[numItems];
+		for( int[] idx : indices ) {
+			if( idx.length != numItems )
+				throw new IllegalArgumentException("All rankings must contain the same " + numItems + " candidates");
+			for( int i = 0; i < numItems; i++ ) ranking[i] = idx[i] - 1;
+			counts.add(ranking, 1);
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Adds every ranking of another profile over the same candidates.
+	 * @param other
+	 */
+	public void addAll(IntPreferenceProfile<T> other) {
+		if( !Arrays.equals(candidates, other.candidates) )
+			throw new IllegalArgumentException("Profiles have different candidates");
+
+		int[] ranking = new int[m];
+		for( int r = 0; r < other.numRows; r++ ) {
+			for( int i = 0; i < m; i++ ) ranking[i] = other.candidateAt(r, i);
+			add(ranking, 0, other.getWeight(r));
+		}
+	}
+
+	/**
+	 * Combines two multisets over the same candidates. Neither is modified.
+	 * @param other
+	 * @return a multiset with the rankings of both
+	 */
+	public RankingMultiset<T> merge(RankingMultiset<T> other) {
+		RankingMultiset<T> sum = new RankingMultiset<T>(candidates, Math.max(numRows + other.numRows, INITIAL_ROWS));
+		sum.addAll(this);
+		sum.addAll(other);
+		return sum;
+	}
+
+	/**
+	 * Adds a number of copies of a ranking.
+	 *
+	 * @param ranking candidate ids, most preferred first
+	 * @param count
+	 * @return the row of the ranking
+	 */
+	public int add(int[] ranking, int count) {
+		if( !isRanking(ranking) )
+			throw new IllegalArgumentException("Not a ranking of " + m + " candidate ids: " + Arrays.toString(ranking));
+
+		return add(ranking, 0, count);
+	}
+
+	/**
+	 * @param ranking candidate ids, most preferred first
+	 * @return the number of times the ranking occurs
+	 */
+	public int count(int[] ranking) {
+		if( !isRanking(ranking) ) return 0;
+		int r = find(ranking, 0, encode(ranking, 0, m, exact));
+		return r < 0 ? 0 : weights[r];
+	}
+
+	boolean isRanking(int[] ranking) {
+		if( ranking.length != m ) return false;
+
+		boolean[] seen = new boolean[m];
+		for( int id : ranking ) {
+			if( id < 0 || id >= m || seen[id] ) return false;
+			seen[id] = true;
+		}
+		return true;
+	}
+
+	public int getNumUniqueRankings() {
+		return numRows;
+	}
+
+	int add(int[] src, int from, int count) {
+		if( count < 0 ) throw new IllegalArgumentException("Negative count " + count);
+
+		long code = encode(src, from, m, exact);
+		int r = find(src, from, code);
+
+		if( r < 0 ) {
+			if( numRows == codes.length ) grow();
+
+			r = numRows++;
+			int off = r * stride;
+			System.arraycopy(src, from, data, off, m);
+			for( int i = 0; i < m; i++ ) data[off + m + data[off + i]] = i;
+
+			codes[r] = code;
+			insert(r);
+		}
+
+		weights[r] += count;
+		numRankings += count;
+		profile = null;
+		invalidateStatistics();
+
+		return r;
+	}
+
+	int find(int[] src, int from, long code) {
+		int mask = slots.length - 1;
+		for( int s = mix(code) & mask; slots[s] != 0; s = (s + 1) & mask ) {
+			int r = slots[s] - 1;
+			if( codes[r] == code && (exact || sameRanking(r, src, from)) ) return r;
+		}
+		return -1;
+	}
+
+	void insert(int row) {
+		int mask = slots.length - 1;
+		int s = mix(codes[row]) & mask;
+		while( slots[s] != 0 ) s = (s + 1) & mask;
+		slots[s] = row + 1;
+	}
+
+	boolean sameRanking(int row, int[] src, int from) {
+		int off = row * stride;
+		for( int i = 0; i < m; i++ )
+			if( data[off + i] != src[from + i] ) return false;
+		return true;
+	}
+
+	void grow() {
+		int rows = 2 * codes.length;
+		data = Arrays.copyOf(data, rows * stride);
+		weights = Arrays.copyOf(weights, rows);
+		codes = Arrays.copyOf(codes, rows);
+
+		slots = new int[tableSize(rows)];
+		for( int r = 0; r < numRows; r++ ) insert(r);
+	}
+
+	/**
+	 * Encodes a ranking of ids. For up to {@value #MAX_CODED_CANDIDATES} candidates, this is the
+	 * Lehmer code, i.e. the index of the permutation in lexicographic order; otherwise it is a hash.
+	 *
+	 * @param ranking
+	 * @param from
+	 * @param m
+	 * @param exact
+	 * @return
+	 */
+	static long encode(int[] ranking, int from, int m, boolean exact) {
+		long code = 0;
+
+		if( exact ) {
+			// Each digit is the number of smaller ids that haven't been used yet
+			int used = 0;
+			for( int i = 0; i < m; i++ ) {
+				int id = ranking[from + i];
+				code = code * (m - i) + Integer.bitCount(~used & ((1 << id) - 1));
+				used |= 1 << id;
+			}
+		}
+		else {
+			for( int i = 0; i < m; i++ )
+				code = (code + ranking[from + i]) * 0x9E3779B97F4A7C15L;
+		}
+
+		return code;
+	}
+
+	static int mix(long code) {
+		code ^= code >>> 33;
+		code *= 0xff51afd7ed558ccdL;
+		code ^= code >>> 33;
+		return (int) code;
+	}
+
+	static int tableSize(int rows) {
+		// Keep the load factor at most 1/2
+		return Integer.highestOneBit(Math.max(rows, 2) * 2 - 1) * 2;
+	}
+
+	Object writeReplace() {
+		return new SerializedForm<T>(this);
+	}
+
+	/**
+	 * Only the candidates, distinct rankings and counts are written; the table is rebuilt on reading.
+	 */
+	static class SerializedForm<T> implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final T[] candidates;
+		// Candidate ids of each distinct ranking, one after the other
+		final int[] rankings;
+		final int[] counts;
+
+		SerializedForm(RankingMultiset<T> multiset) {
+			int m = multiset.m;
+			candidates = multiset.candidates;
+			rankings = new int[multiset.numRows * m];
+			counts = Arrays.copyOf(multiset.weights, multiset.numRows);
+			for( int r = 0; r < multiset.numRows; r++ )
+				System.arraycopy(multiset.data, r * multiset.stride, rankings, r * m, m);
+		}
+
+		Object readResolve() {
+			RankingMultiset<T> multiset = new RankingMultiset<T>(candidates, Math.max(counts.length, INITIAL_ROWS));
+			int[] ranking = new int[candidates.length];
+			for( int r = 0; r < counts.length; r++ ) {
+				System.arraycopy(rankings, r * ranking.length, ranking, 0, ranking.length);
+				multiset.add(ranking, counts[r]);
+			}
+			return multiset;
+		}
+	}
+
+}
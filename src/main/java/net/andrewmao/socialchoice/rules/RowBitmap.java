@@ -0,0 +1,391 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of row numbers, for indexing the rankings of a profile by attribute.
+ *
+ * Rows are split into chunks of 2^16 by their high bits. A chunk with few rows stores
+ * their low bits as a sorted char array, and a dense chunk stores a 2^16-bit bitmap,
+ * so a set takes about 2 bytes per row when sparse and 1 bit per possible row when dense.
+ * Intersections and unions work chunk by chunk, and only touch the chunks both sides have.
+ *
+ * Adding rows in increasing order is fastest. Sets are not thread-safe while being built.
+ *
+ * @author mao
+ *
+ */
+public class RowBitmap {
+
+	// Chunks with more rows than this are stored as bitmaps
+	static final int MAX_ARRAY = 4096;
+	static final int BITMAP_WORDS = 1 << 10;
+
+	// High 16 bits of the rows in each chunk, in increasing order
+	char[] keys;
+	// Each chunk is either a sorted array of the low bits or a bitmap
+	char[][] arrays;
+	long[][] bitmaps;
+	int[] cards;
+	int numChunks;
+
+	public RowBitmap() {
+		this(4);
+	}
+
+	RowBitmap(int chunks) {
+		keys = new char[chunks];
+		arrays = new char[chunks][];
+		bitmaps = new long[chunks][];
+		cards = new int[chunks];
+	}
+
+	/**
+	 * @param from
+	 * @param to
+	 * @return the rows from, ..., to - 1
+	 */
+	public static RowBitmap range(int from, int to) {
+		RowBitmap result = new RowBitmap();
+		for( int row = from; row < to; row++ ) result.add(row);
+		return result;
+	}
+
+	/**
+	 * @param rows
+	 * @return the set of the given rows, which need not be sorted
+	 */
+	public static RowBitmap of(int... rows) {
+		RowBitmap result = new RowBitmap();
+		for( int row : rows ) result.add(row);
+		return result;
+	}
+
+	/**
+	 * Adds a row, if not already present.
+	 * @param row a non-negative row number
+	 */
+	public void add(int row) {
+		if( row < 0 ) throw new IllegalArgumentException("Negative row " + row);
+
+		char key = (char) (row >>> 16);
+		char low = (char) row;
+
+		int c = findChunk(key);
+		if( c < 0 ) {
+			c = -c - 1;
+			insertChunk(c, key, new char[4], null, 0);
+		}
+
+		if( bitmaps[c] != null ) {
+			long[] bits = bitmaps[c];
+			long old = bits[low >>> 6];
+			bits[low >>> 6] = old | (1L << low);
+			if( bits[low >>> 6] != old ) cards[c]++;
+			return;
+		}
+
+		char[] array = arrays[c];
+		int n = cards[c];
+		// Appending in order is the common case
+		int i = n > 0 && array[n - 1] < low ? -n - 1 : Arrays.binarySearch(array, 0, n, low);
+		if( i >= 0 ) return;
+		i = -i - 1;
+
+		if( n == MAX_ARRAY ) {
+			bitmaps[c] = toBitmap(array, n);
+			arrays[c] = null;
+			bitmaps[c][low >>> 6] |= 1L << low;
+			cards[c]++;
+			return;
+		}
+
+		if( n == array.length ) arrays[c] = array = Arrays.copyOf(array, Math.min(2 * n, MAX_ARRAY));
+		System.arraycopy(array, i, array, i + 1, n - i);
+		array[i] = low;
+		cards[c]++;
+	}
+
+	public boolean contains(int row) {
+		if( row < 0 ) return false;
+		int c = findChunk((char) (row >>> 16));
+		if( c < 0 ) return false;
+
+		char low = (char) row;
+		if( bitmaps[c] != null ) return (bitmaps[c][low >>> 6] & (1L << low)) != 0;
+		return Arrays.binarySearch(arrays[c], 0, cards[c], low) >= 0;
+	}
+
+	/**
+	 * @return the number of rows in the set
+	 */
+	public int getCardinality() {
+		int card = 0;
+		for( int c = 0; c < numChunks; c++ ) card += cards[c];
+		return card;
+	}
+
+	public boolean isEmpty() {
+		return numChunks == 0;
+	}
+
+	/**
+	 * @return the rows in the set, in increasing order
+	 */
+	public int[] toArray() {
+		int[] rows = new int[getCardinality()];
+		int k = 0;
+		for( int c = 0; c < numChunks; c++ ) {
+			int high = keys[c] << 16;
+			if( bitmaps[c] != null ) {
+				long[] bits = bitmaps[c];
+				for( int w = 0; w < BITMAP_WORDS; w++ ) {
+					for( long word = bits[w]; word != 0; word &= word - 1 )
+						rows[k++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+				}
+			}
+			else {
+				char[] array = arrays[c];
+				for( int i = 0; i < cards[c]; i++ ) rows[k++] = high | array[i];
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * @param other
+	 * @return the rows in both sets; neither is modified
+	 */
+	public RowBitmap and(RowBitmap other) {
+		RowBitmap result = new RowBitmap(Math.min(numChunks, other.numChunks) + 1);
+
+		for( int i = 0, j = 0; i < numChunks && j < other.numChunks; ) {
+			if( keys[i] < other.keys[j] ) i++;
+			else if( keys[i] > other.keys[j] ) j++;
+			else {
+				if( bitmaps[i] != null && other.bitmaps[j] != null ) {
+					long[] bits = new long[BITMAP_WORDS];
+					long[] a = bitmaps[i], b = other.bitmaps[j];
+					for( int w = 0; w < BITMAP_WORDS; w++ ) bits[w] = a[w] & b[w];
+					result.appendBitmap(keys[i], bits);
+				}
+				else if( bitmaps[i] != null ) {
+					result.appendArray(keys[i], filter(other.arrays[j], other.cards[j], bitmaps[i], true));
+				}
+				else if( other.bitmaps[j] != null ) {
+					result.appendArray(keys[i], filter(arrays[i], cards[i], other.bitmaps[j], true));
+				}
+				else {
+					result.appendArray(keys[i], intersect(arrays[i], cards[i], other.arrays[j], other.cards[j]));
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param other
+	 * @return the rows in either set; neither is modified
+	 */
+	public RowBitmap or(RowBitmap other) {
+		RowBitmap result = new RowBitmap(numChunks + other.numChunks + 1);
+
+		int i = 0, j = 0;
+		while( i < numChunks || j < other.numChunks ) {
+			if( j == other.numChunks || (i < numChunks && keys[i] < other.keys[j]) ) {
+				result.appendCopy(this, i++);
+			}
+			else if( i == numChunks || keys[i] > other.keys[j] ) {
+				result.appendCopy(other, j++);
+			}
+			else {
+				if( bitmaps[i] == null && other.bitmaps[j] == null && cards[i] + other.cards[j] <= MAX_ARRAY ) {
+					result.appendArray(keys[i], union(arrays[i], cards[i], other.arrays[j], other.cards[j]));
+				}
+				else {
+					long[] bits = toBitmap(this, i);
+					long[] add = toBitmap(other, j);
+					for( int w = 0; w < BITMAP_WORDS; w++ ) bits[w] |= add[w];
+					result.appendBitmap(keys[i], bits);
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param other
+	 * @return the rows in this set but not the other; neither is modified
+	 */
+	public RowBitmap andNot(RowBitmap other) {
+		RowBitmap result = new RowBitmap(numChunks + 1);
+
+		for( int i = 0, j = 0; i < numChunks; i++ ) {
+			while( j < other.numChunks && other.keys[j] < keys[i] ) j++;
+			if( j == other.numChunks || other.keys[j] != keys[i] ) {
+				result.appendCopy(this, i);
+				continue;
+			}
+
+			if( bitmaps[i] == null ) {
+				long[] remove = toBitmap(other, j);
+				result.appendArray(keys[i], filter(arrays[i], cards[i], remove, false));
+			}
+			else {
+				long[] bits = bitmaps[i].clone();
+				long[] remove = toBitmap(other, j);
+				for( int w = 0; w < BITMAP_WORDS; w++ ) bits[w] &= ~remove[w];
+				result.appendBitmap(keys[i], bits);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return a set of the same rows, which can be modified independently of this one
+	 */
+	public RowBitmap copy() {
+		RowBitmap result = new RowBitmap(numChunks + 1);
+		for( int c = 0; c < numChunks; c++ ) result.appendCopy(this, c);
+		return result;
+	}
+
+	int findChunk(char key) {
+		// Adding in order hits the last chunk
+		if( numChunks > 0 && keys[numChunks - 1] == key ) return numChunks - 1;
+		return Arrays.binarySearch(keys, 0, numChunks, key);
+	}
+
+	void insertChunk(int c, char key, char[] array, long[] bits, int card) {
+		if( numChunks == keys.length ) {
+			int size = Math.max(2 * numChunks, 4);
+			keys = Arrays.copyOf(keys, size);
+			arrays = Arrays.copyOf(arrays, size);
+			bitmaps = Arrays.copyOf(bitmaps, size);
+			cards = Arrays.copyOf(cards, size);
+		}
+		int n = numChunks - c;
+		System.arraycopy(keys, c, keys, c + 1, n);
+		System.arraycopy(arrays, c, arrays, c + 1, n);
+		System.arraycopy(bitmaps, c, bitmaps, c + 1, n);
+		System.arraycopy(cards, c, cards, c + 1, n);
+
+		keys[c] = key;
+		arrays[c] = array;
+		bitmaps[c] = bits;
+		cards[c] = card;
+		numChunks++;
+	}
+
+	/**
+	 * Appends a chunk with a key larger than all others, skipping empty ones.
+	 */
+	void appendArray(char key, char[] array) {
+		if( array.length > 0 ) insertChunk(numChunks, key, array, null, array.length);
+	}
+
+	void appendBitmap(char key, long[] bits) {
+		int card = 0;
+		for( long word : bits ) card += Long.bitCount(word);
+		if( card == 0 ) return;
+
+		if( card <= MAX_ARRAY ) insertChunk(numChunks, key, toArray(bits, card), null, card);
+		else insertChunk(numChunks, key, null, bits, card);
+	}
+
+	void appendCopy(RowBitmap from, int c) {
+		if( from.bitmaps[c] != null ) insertChunk(numChunks, from.keys[c], null, from.bitmaps[c].clone(), from.cards[c]);
+		else insertChunk(numChunks, from.keys[c], Arrays.copyOf(from.arrays[c], from.cards[c]), null, from.cards[c]);
+	}
+
+	static long[] toBitmap(char[] array, int n) {
+		long[] bits = new long[BITMAP_WORDS];
+		for( int i = 0; i < n; i++ ) bits[array[i] >>> 6] |= 1L << array[i];
+		return bits;
+	}
+
+	/**
+	 * @return a bitmap of chunk c, which may be modified
+	 */
+	static long[] toBitmap(RowBitmap from, int c) {
+		return from.bitmaps[c] != null ? from.bitmaps[c].clone() : toBitmap(from.arrays[c], from.cards[c]);
+	}
+
+	static char[] toArray(long[] bits, int card) {
+		char[] array = new char[card];
+		int k = 0;
+		for( int w = 0; w < BITMAP_WORDS; w++ ) {
+			for( long word = bits[w]; word != 0; word &= word - 1 )
+				array[k++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+		}
+		return array;
+	}
+
+	/**
+	 * @return the entries of the array that are (or are not) in the bitmap
+	 */
+	static char[] filter(char[] array, int n, long[] bits, boolean keep) {
+		char[] result = new char[n];
+		int k = 0;
+		for( int i = 0; i < n; i++ ) {
+			char low = array[i];
+			if( ((bits[low >>> 6] & (1L << low)) != 0) == keep ) result[k++] = low;
+		}
+		return Arrays.copyOf(result, k);
+	}
+
+	static char[] intersect(char[] a, int na, char[] b, int nb) {
+		char[] result = new char[Math.min(na, nb)];
+		int k = 0;
+		for( int i = 0, j = 0; i < na && j < nb; ) {
+			if( a[i] < b[j] ) i++;
+			else if( a[i] > b[j] ) j++;
+			else {
+				result[k++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, k);
+	}
+
+	static char[] union(char[] a, int na, char[] b, int nb) {
+		char[] result = new char[na + nb];
+		int k = 0, i = 0, j = 0;
+		while( i < na && j < nb ) {
+			if( a[i] < b[j] ) result[k++] = a[i++];
+			else if( a[i] > b[j] ) result[k++] = b[j++];
+			else {
+				result[k++] = a[i++];
+				j++;
+			}
+		}
+		while( i < na ) result[k++] = a[i++];
+		while( j < nb ) result[k++] = b[j++];
+		return Arrays.copyOf(result, k);
+	}
+
+	@Override
+	public int hashCode() {
+		int h = 1;
+		for( int row : toArray() ) h = 31 * h + row;
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if( this == o ) return true;
+		if( !(o instanceof RowBitmap) ) return false;
+		return Arrays.equals(toArray(), ((RowBitmap) o).toArray());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+}
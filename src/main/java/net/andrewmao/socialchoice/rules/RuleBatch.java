@@ -0,0 +1,143 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.andrewmao.models.discretechoice.ScoredItems;
+
+/**
+ * Runs several rules on one profile.
+ *
+ * The profile is read once for everything the rules share: its distinct rankings, and the
+ * position and pairwise counts computed from them. Both are kept with the profile, so that
+ * rules reading {@link PreferenceProfile#getStatistics()} or {@link RankingMultiset#of(PreferenceProfile)}
+ * don't scan it again. The rules then run in parallel, and each is timed. Rules that split their
+ * own work into tasks on the same pool run those tasks from the rule's worker with
+ * {@link SharedPool#invoke(ForkJoinPool, java.util.concurrent.ForkJoinTask)}, so that they don't
+ * block the workers running the batch.
+ *
+ * @author mao
+ *
+ */
+public class RuleBatch {
+
+	final List<VotingRule> rules;
+
+	public RuleBatch(VotingRule... rules) {
+		this(Arrays.asList(rules));
+	}
+
+	public RuleBatch(List<? extends VotingRule> rules) {
+		if( rules.isEmpty() ) throw new IllegalArgumentException("Need at least one rule");
+		this.rules = Collections.unmodifiableList(new ArrayList<VotingRule>(rules));
+	}
+
+	public List<VotingRule> getRules() {
+		return rules;
+	}
+
+	/**
+	 * Runs the rules on the {@link SharedPool}.
+	 * @param profile
+	 * @return the result of each rule, in the order of the rules
+	 */
+	public <T> List<Result<T>> run(PreferenceProfile<T> profile) {
+		return run(profile, SharedPool.get());
+	}
+
+	/**
+	 * @param profile
+	 * @param pool the pool that the rules run on; rules with their own pools still use those
+	 * @return the result of each rule, in the order of the rules
+	 */
+	public <T> List<Result<T>> run(PreferenceProfile<T> profile, ForkJoinPool pool) {
+		// One scan for the distinct rankings, which also gives the statistics
+		profile.asIntProfile().getMultiset();
+		profile.getStatistics();
+
+		List<Result<T>> results = new ArrayList<Result<T>>(rules.size());
+		for( VotingRule rule : rules ) results.add(new Result<T>(rule, profile));
+
+		SharedPool.invoke(pool, new Runs<T>(results));
+
+		return results;
+	}
+
+	/**
+	 * The ranking of one rule and the time it took.
+	 */
+	public static class Result<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final VotingRule rule;
+		final PreferenceProfile<T> profile;
+
+		List<T> ranking;
+		ScoredItems<T> scores;
+		long nanos;
+
+		Result(VotingRule rule, PreferenceProfile<T> profile) {
+			this.rule = rule;
+			this.profile = profile;
+		}
+
+		@Override
+		protected void compute() {
+			long start = System.nanoTime();
+			if( rule instanceof ScoredVotingRule ) {
+				scores = ((ScoredVotingRule) rule).getScoredRanking(profile);
+				ranking = scores.getRanking();
+			}
+			else {
+				ranking = rule.getRanking(profile);
+			}
+			nanos = System.nanoTime() - start;
+		}
+
+		public VotingRule getRule() {
+			return rule;
+		}
+
+		public List<T> getRanking() {
+			return ranking;
+		}
+
+		/**
+		 * @return the scores of the candidates, or null if the rule doesn't score them
+		 */
+		public ScoredItems<T> getScores() {
+			return scores;
+		}
+
+		/**
+		 * @return how long the rule took, not counting the shared scan of the profile
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		public String toString() {
+			return rule + ": " + ranking + " (" + nanos / 1000000 + " ms)";
+		}
+	}
+
+	static class Runs<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final List<Result<T>> tasks;
+
+		Runs(List<Result<T>> tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+
+/**
+ * Running tallies for the elimination rules. Identical ballots are counted once, as a group
+ * with a weight, and each group sits in the bucket of its top continuing candidate. Removing
+ * a candidate moves only the groups in its bucket to their next continuing choices, so each
+ * group is moved at most once per candidate over a whole count.
+ *
+ * Tallies are weighted, so that surplus votes can be transferred as fractions of ballots.
+ *
+ * @author mao
+ *
+ */
+class RunoffTally {
+
+	final int m;
+	final int numGroups;
+
+	// Ballots of each group back to back, and the position of the top continuing choice of each
+	final int[] ballots;
+	final int[] next;
+	final double[] weights;
+
+	final boolean[] continuing;
+	final double[] tallies;
+	final int[][] buckets;
+	final int[] sizes;
+	int numContinuing;
+
+	RunoffTally(RankingMultiset<?> counts) {
+		m = counts.m;
+		numGroups = counts.getNumRows();
+
+		ballots = new int[numGroups * m];
+		next = new int[numGroups];
+		weights = new double[numGroups];
+
+		continuing = new boolean[m];
+		Arrays.fill(continuing, true);
+		numContinuing = m;
+		tallies = new double[m];
+		buckets = new int[m][4];
+		sizes = new int[m];
+
+		for( int g = 0; g < numGroups; g++ ) {
+			for( int i = 0; i < m; i++ ) ballots[g * m + i] = counts.candidateAt(g, i);
+			weights[g] = counts.getWeight(g);
+			if( m > 0 ) add(g, ballots[g * m]);
+		}
+	}
+
+	void add(int group, int c) {
+		int[] bucket = buckets[c];
+		if( sizes[c] == bucket.length ) buckets[c] = bucket = Arrays.copyOf(bucket, 2 * bucket.length);
+		bucket[sizes[c]++] = group;
+		tallies[c] += weights[group];
+	}
+
+	double getTally(int c) {
+		return tallies[c];
+	}
+
+	boolean isContinuing(int c) {
+		return continuing[c];
+	}
+
+	int getNumContinuing() {
+		return numContinuing;
+	}
+
+	/**
+	 * @return the continuing candidate with the most votes, ties going to the lowest id
+	 */
+	int getHighest() {
+		int best = -1;
+		for( int c = 0; c < m; c++ )
+			if( continuing[c] && (best < 0 || tallies[c] > tallies[best]) ) best = c;
+		return best;
+	}
+
+	/**
+	 * @return the continuing candidate with the fewest votes, ties going to the highest id
+	 */
+	int getLowest() {
+		int worst = -1;
+		for( int c = 0; c < m; c++ )
+			if( continuing[c] && (worst < 0 || tallies[c] <= tallies[worst]) ) worst = c;
+		return worst;
+	}
+
+	/**
+	 * Removes a continuing candidate, and moves each group in its bucket to its next continuing choice.
+	 * Groups with no continuing choices left are exhausted and drop out of the count.
+	 *
+	 * @param c
+	 * @param factor the fraction of each ballot to transfer: 1 for an elimination, and
+	 * the surplus over the votes of the candidate for an election
+	 */
+	void transfer(int c, double factor) {
+		if( !continuing[c] ) throw new IllegalStateException("Candidate " + c + " was already removed");
+		continuing[c] = false;
+		numContinuing--;
+
+		int[] bucket = buckets[c];
+		int size = sizes[c];
+		buckets[c] = null;
+		sizes[c] = 0;
+		tallies[c] = 0;
+
+		for( int i = 0; i < size; i++ ) {
+			int g = bucket[i];
+			weights[g] *= factor;
+			if( weights[g] == 0 ) continue;
+
+			int base = g * m;
+			int p = next[g] + 1;
+			while( p < m && !continuing[ballots[base + p]] ) p++;
+			if( p == m ) continue;
+
+			next[g] = p;
+			add(g, ballots[base + p]);
+		}
+	}
+
+}
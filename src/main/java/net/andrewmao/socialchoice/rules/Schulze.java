@@ -0,0 +1,150 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The Schulze method. The strength of a path in the majority graph is its weakest majority,
+ * and a beats b if the strongest path from a to b is stronger than the strongest from b to a.
+ * Each candidate is scored by the number of others it beats, which orders the candidates
+ * since the relation is transitive.
+ *
+ * Strongest paths are found by Floyd-Warshall over square blocks of the matrix. For each block
+ * of intermediate candidates, the diagonal block is done first, then the blocks in its row and
+ * column in parallel, then all the others in parallel, on the {@link SharedPool} or the pool given.
+ *
+ * @author mao
+ *
+ */
+public class Schulze extends PairwiseVotingRule {
+
+	static final int BLOCK = 32;
+
+	final ForkJoinPool pool;
+
+	public Schulze() {
+		this(SharedPool.get());
+	}
+
+	/**
+	 * @param pool the pool that the blocks of the paths are widened on
+	 */
+	public Schulze(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	protected double[] getPairwiseScores(long[][] wins) {
+		long[][] paths = getStrongestPaths(wins, pool);
+
+		int m = wins.length;
+		double[] scores = new double[m];
+		for( int a = 0; a < m; a++ )
+			for( int b = 0; b < m; b++ )
+				if( a != b && paths[a][b] > paths[b][a] ) scores[a] += 1;
+
+		return scores;
+	}
+
+	/**
+	 * @param wins wins[a][b] is the number of rankings with candidate id a above b
+	 * @return paths[a][b] is the strength of the strongest path from a to b, counting each majority by its winning votes
+	 */
+	public static long[][] getStrongestPaths(long[][] wins) {
+		return getStrongestPaths(wins, SharedPool.get());
+	}
+
+	/**
+	 * @param wins wins[a][b] is the number of rankings with candidate id a above b
+	 * @param pool
+	 * @return paths[a][b] is the strength of the strongest path from a to b, counting each majority by its winning votes
+	 */
+	public static long[][] getStrongestPaths(long[][] wins, ForkJoinPool pool) {
+		int m = wins.length;
+		long[][] paths = new long[m][m];
+		for( int a = 0; a < m; a++ )
+			for( int b = 0; b < m; b++ )
+				if( a != b && wins[a][b] > wins[b][a] ) paths[a][b] = wins[a][b];
+
+		if( m <= BLOCK ) relax(paths, 0, m, 0, m, 0, m);
+		else SharedPool.invoke(pool, new StrongestPaths(paths));
+
+		return paths;
+	}
+
+	/**
+	 * Widens paths from rows [i0, i1) to columns [j0, j1) through intermediates [k0, k1).
+	 */
+	static void relax(long[][] paths, int i0, int i1, int j0, int j1, int k0, int k1) {
+		for( int k = k0; k < k1; k++ ) {
+			long[] pk = paths[k];
+			for( int i = i0; i < i1; i++ ) {
+				long[] pi = paths[i];
+				long pik = pi[k];
+				if( pik == 0 ) continue;
+				for( int j = j0; j < j1; j++ ) {
+					long w = pik < pk[j] ? pik : pk[j];
+					if( w > pi[j] ) pi[j] = w;
+				}
+			}
+		}
+	}
+
+	static class StrongestPaths extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final long[][] paths;
+		final int blocks;
+
+		StrongestPaths(long[][] paths) {
+			this.paths = paths;
+			this.blocks = (paths.length + BLOCK - 1) / BLOCK;
+		}
+
+		@Override
+		protected void compute() {
+			for( int k = 0; k < blocks; k++ ) {
+				new Block(paths, k, k, k).compute();
+
+				// Blocks sharing a row or column with the diagonal depend only on it
+				List<Block> cross = new ArrayList<Block>(2 * blocks);
+				for( int b = 0; b < blocks; b++ ) {
+					if( b == k ) continue;
+					cross.add(new Block(paths, k, b, k));
+					cross.add(new Block(paths, b, k, k));
+				}
+				invokeAll(cross);
+
+				List<Block> rest = new ArrayList<Block>((blocks - 1) * (blocks - 1));
+				for( int i = 0; i < blocks; i++ )
+					for( int j = 0; j < blocks; j++ )
+						if( i != k && j != k ) rest.add(new Block(paths, i, j, k));
+				invokeAll(rest);
+			}
+		}
+	}
+
+	static class Block extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final long[][] paths;
+		final int i, j, k;
+
+		Block(long[][] paths, int i, int j, int k) {
+			this.paths = paths;
+			this.i = i;
+			this.j = j;
+			this.k = k;
+		}
+
+		@Override
+		protected void compute() {
+			int m = paths.length;
+			relax(paths, i * BLOCK, Math.min(m, (i + 1) * BLOCK), j * BLOCK, Math.min(m, (j + 1) * BLOCK),
+					k * BLOCK, Math.min(m, (k + 1) * BLOCK));
+		}
+	}
+
+}
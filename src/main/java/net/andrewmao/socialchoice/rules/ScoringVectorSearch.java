@@ -0,0 +1,434 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+/**
+ * Searches for the scores of a positional rule with the fewest flip mistakes over some profiles, without a solver.
+ *
+ * Scores are monotone and sum to 1, as in {@link OptimizedPositionalRule}, so they are the mixtures
+ * of the m vertices where the first k positions score 1 / k. Small m can be searched exhaustively
+ * over the vertices or a grid; larger m by random samples and a coordinate search on the mixture weights.
+ *
+ * Candidate vectors are evaluated in batches: the totals of a batch in one profile are a single product
+ * of its position counts with the matrix of vectors, and batches are split across profiles and vectors
+ * on the {@link SharedPool}, or the pool given. Profiles with the same counts are evaluated once.
+ * Values match the objectives of {@link MinFirstMistakesRule} and the {@link MinFlipMistakesRule} variants:
+ * the flips, plus an average margin term that breaks ties between scores with the same flips.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class ScoringVectorSearch<T> {
+
+	public enum Objective {
+		/** As {@link MinFlipMistakesRule.Vanilla} */
+		FLIPS,
+		/** As {@link MinFlipMistakesRule.MaxSumMinMargin} */
+		SUM_MIN_MARGIN,
+		/** As {@link MinFlipMistakesRule.MaxOverallMinMargin} */
+		OVERALL_MIN_MARGIN,
+		/** As {@link MinFlipMistakesRule.MaxMinFirstLastMargin} */
+		MIN_FIRST_LAST_MARGIN,
+		/** As {@link MinFirstMistakesRule} */
+		FIRST_FLIPS
+	}
+
+	// Vectors in each product, and distinct profiles in each task
+	static final int BATCH = 256;
+	static final int BLOCKS_PER_TASK = 16;
+
+	// Smallest move of the coordinate search
+	static final double MIN_STEP = 1e-4;
+
+	final Objective objective;
+	double separation = MinFlipMistakesRule.SEPARATION;
+	ForkJoinPool pool = SharedPool.get();
+	final int m;
+	final int numProfiles;
+
+	// Distinct position counts, how many profiles have each, and the largest margin for each
+	final long[][][] counts;
+	final int[] weights;
+	final double[] maxMargin;
+
+	public ScoringVectorSearch(PreferenceProfileList<T> preferences, Objective objective) {
+		this.objective = objective;
+		m = preferences.getCandidates().length;
+		numProfiles = preferences.size();
+
+		Map<List<Long>, Integer> index = new HashMap<List<Long>, Integer>();
+		List<long[][]> distinct = new ArrayList<long[][]>();
+		List<Integer> repeats = new ArrayList<Integer>();
+
+		for( PreferenceProfile<T> profile : preferences ) {
+			long[][] c = profile.getStatistics().getPositionMatrix();
+			long[] flat = new long[m * m];
+			for( int i = 0; i < m; i++ ) System.arraycopy(c[i], 0, flat, i * m, m);
+
+			List<Long> key = Longs.asList(flat);
+			Integer b = index.get(key);
+			if( b == null ) {
+				index.put(key, distinct.size());
+				distinct.add(c);
+				repeats.add(1);
+			}
+			else repeats.set(b, repeats.get(b) + 1);
+		}
+
+		counts = distinct.toArray(new long[distinct.size()][][]);
+		weights = Ints.toArray(repeats);
+		maxMargin = new double[counts.length];
+		for( int b = 0; b < counts.length; b++ ) {
+			long numRankings = 0;
+			for( int k = 0; k < m; k++ ) numRankings += counts[b][0][k];
+			maxMargin[b] = objective == Objective.FIRST_FLIPS ? numRankings : numRankings / (m - 1.0);
+		}
+	}
+
+	/**
+	 * Changes how much higher the total of a candidate must be for a pair not to count as flipped,
+	 * {@link MinFlipMistakesRule#SEPARATION} by default. A little less allows for the tolerance of a solver.
+	 * @param separation
+	 */
+	public void setSeparation(double separation) {
+		this.separation = separation;
+	}
+
+	/**
+	 * Evaluates batches on a different pool than the {@link SharedPool}.
+	 * @param pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * The value of some scores, summing to 1.
+	 */
+	public static class Evaluation {
+		final double[] scores;
+		final int flips;
+		final double marginTerm;
+
+		Evaluation(double[] scores, int flips, double marginTerm) {
+			this.scores = scores;
+			this.flips = flips;
+			this.marginTerm = marginTerm;
+		}
+
+		public double[] getScores() {
+			return scores.clone();
+		}
+
+		/**
+		 * @return the number of pairs counted as flipped, over all profiles
+		 */
+		public int getFlips() {
+			return flips;
+		}
+
+		/**
+		 * @return the tie-breaking term of the objective, between -1 and 0
+		 */
+		public double getMarginTerm() {
+			return marginTerm;
+		}
+
+		/**
+		 * @return the objective of the matching rule at these scores, which it minimizes
+		 */
+		public double getValue() {
+			return flips + marginTerm;
+		}
+
+		public String toString() {
+			return Arrays.toString(scores) + ": " + flips + " flips, " + marginTerm;
+		}
+	}
+
+	public Evaluation evaluate(double[] scores) {
+		return evaluate(Arrays.asList(scores))[0];
+	}
+
+	/**
+	 * @param vectors scores for the m positions, each summing to 1
+	 * @return the evaluation of each vector
+	 */
+	public Evaluation[] evaluate(List<double[]> vectors) {
+		int n = vectors.size();
+
+		// One column for each vector
+		double[][] columns = new double[m][n];
+		for( int v = 0; v < n; v++ ) {
+			double[] s = vectors.get(v);
+			if( s.length != m ) throw new IllegalArgumentException("Need " + m + " scores, got " + s.length);
+			for( int k = 0; k < m; k++ ) columns[k][v] = s[k];
+		}
+
+		Partial partial = SharedPool.invoke(pool, new Evaluator(columns, 0, n, 0, counts.length));
+
+		Evaluation[] result = new Evaluation[n];
+		for( int v = 0; v < n; v++ ) {
+			double term = hasMargins() ? -partial.margins[v] / numProfiles : 0;
+			result[v] = new Evaluation(vectors.get(v).clone(), partial.flips[v], term);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the best of the m vertices
+	 */
+	public Evaluation vertices() {
+		List<double[]> vectors = new ArrayList<double[]>(m);
+		for( int k = 1; k <= m; k++ ) vectors.add(vertex(k));
+		return best(evaluate(vectors));
+	}
+
+	/**
+	 * @param steps
+	 * @return the best scores that are all multiples of 1 / steps
+	 */
+	public Evaluation grid(int steps) {
+		List<double[]> vectors = new ArrayList<double[]>();
+		addGrid(new int[m], 0, steps, steps, steps, vectors);
+		return best(evaluate(vectors));
+	}
+
+	void addGrid(int[] parts, int k, int left, int max, int steps, List<double[]> vectors) {
+		if( k == m - 1 ) {
+			if( left > max ) return;
+			parts[k] = left;
+			double[] s = new double[m];
+			for( int i = 0; i < m; i++ ) s[i] = (double) parts[i] / steps;
+			vectors.add(s);
+			return;
+		}
+		// Nonincreasing parts, with enough room for the rest
+		for( int p = Math.min(left, max); p * (m - k) >= left; p-- ) {
+			parts[k] = p;
+			addGrid(parts, k + 1, left - p, p, steps, vectors);
+		}
+	}
+
+	/**
+	 * @return the best of scores sampled uniformly from all monotone scores summing to 1
+	 */
+	public Evaluation randomSearch(int samples, long seed) {
+		Random rnd = new Random(seed);
+		List<double[]> vectors = new ArrayList<double[]>(samples);
+		double[] mixture = new double[m];
+		for( int t = 0; t < samples; t++ ) {
+			// Uniform mixture weights make uniform scores, since scores are linear in them
+			double sum = 0;
+			for( int k = 0; k < m; k++ ) sum += mixture[k] = -Math.log(1 - rnd.nextDouble());
+			for( int k = 0; k < m; k++ ) mixture[k] /= sum;
+			vectors.add(fromMixture(mixture));
+		}
+		return best(evaluate(vectors));
+	}
+
+	/**
+	 * Moves weight between pairs of vertices in the mixture of the scores, taking the best improving move
+	 * of each batch, and halving the move when none improves.
+	 * @param start
+	 * @param step the first amount of weight to move
+	 * @return scores that no move of at least {@link #MIN_STEP} improves
+	 */
+	public Evaluation coordinateSearch(Evaluation start, double step) {
+		Evaluation best = start;
+		double[] mixture = toMixture(start.scores);
+
+		while( step >= MIN_STEP ) {
+			List<double[]> moves = new ArrayList<double[]>(m * (m - 1));
+			for( int a = 0; a < m; a++ ) {
+				if( mixture[a] <= 0 ) continue;
+				double delta = Math.min(step, mixture[a]);
+				for( int b = 0; b < m; b++ ) {
+					if( b == a ) continue;
+					double[] moved = mixture.clone();
+					moved[a] -= delta;
+					moved[b] += delta;
+					moves.add(fromMixture(moved));
+				}
+			}
+
+			Evaluation next = moves.isEmpty() ? null : best(evaluate(moves));
+			if( next != null && next.getValue() < best.getValue() ) {
+				best = next;
+				mixture = toMixture(next.scores);
+			}
+			else step /= 2;
+		}
+		return best;
+	}
+
+	/**
+	 * Starts a coordinate search from the best of the vertices and some random samples.
+	 */
+	public Evaluation search(int samples, long seed) {
+		Evaluation start = vertices();
+		Evaluation sampled = randomSearch(samples, seed);
+		if( sampled.getValue() < start.getValue() ) start = sampled;
+		return coordinateSearch(start, 0.25);
+	}
+
+	double[] vertex(int k) {
+		double[] s = new double[m];
+		for( int i = 0; i < k; i++ ) s[i] = 1.0 / k;
+		return s;
+	}
+
+	/**
+	 * @param mixture the weight of the vertex of each k = 1 .. m, summing to 1
+	 */
+	double[] fromMixture(double[] mixture) {
+		double[] s = new double[m];
+		double level = 0;
+		for( int i = m - 1; i >= 0; i-- ) {
+			level += mixture[i] / (i + 1);
+			s[i] = level;
+		}
+		return s;
+	}
+
+	double[] toMixture(double[] s) {
+		double[] mixture = new double[m];
+		for( int i = 0; i < m; i++ )
+			mixture[i] = Math.max(0, (i + 1) * (s[i] - (i + 1 < m ? s[i + 1] : 0)));
+		return mixture;
+	}
+
+	static Evaluation best(Evaluation[] evaluations) {
+		Evaluation best = evaluations[0];
+		for( Evaluation e : evaluations )
+			if( e.getValue() < best.getValue() ) best = e;
+		return best;
+	}
+
+	boolean hasMargins() {
+		return objective != Objective.FLIPS;
+	}
+
+	boolean isOverall() {
+		return objective == Objective.OVERALL_MIN_MARGIN || objective == Objective.MIN_FIRST_LAST_MARGIN;
+	}
+
+	/**
+	 * Flips and aggregated margins of a range of vectors, over some profiles.
+	 */
+	static class Partial {
+		final int[] flips;
+		final double[] margins;
+
+		Partial(int n, double margin) {
+			flips = new int[n];
+			margins = new double[n];
+			Arrays.fill(margins, margin);
+		}
+	}
+
+	class Evaluator extends RecursiveTask<Partial> {
+		private static final long serialVersionUID = 1L;
+
+		final double[][] columns;
+		final int from;
+		final int to;
+		final int firstBlock;
+		final int lastBlock;
+
+		Evaluator(double[][] columns, int from, int to, int firstBlock, int lastBlock) {
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+			this.firstBlock = firstBlock;
+			this.lastBlock = lastBlock;
+		}
+
+		@Override
+		protected Partial compute() {
+			if( lastBlock - firstBlock > BLOCKS_PER_TASK ) {
+				int mid = (firstBlock + lastBlock) >>> 1;
+				Evaluator left = new Evaluator(columns, from, to, firstBlock, mid);
+				left.fork();
+				Partial result = new Evaluator(columns, from, to, mid, lastBlock).compute();
+				Partial other = left.join();
+				for( int v = 0; v < result.flips.length; v++ ) {
+					result.flips[v] += other.flips[v];
+					result.margins[v] = isOverall() ?
+							Math.min(result.margins[v], other.margins[v]) : result.margins[v] + other.margins[v];
+				}
+				return result;
+			}
+			if( to - from > BATCH ) {
+				int mid = (from + to) >>> 1;
+				Evaluator left = new Evaluator(columns, from, mid, firstBlock, lastBlock);
+				left.fork();
+				Partial right = new Evaluator(columns, mid, to, firstBlock, lastBlock).compute();
+				Partial result = left.join();
+
+				Partial joined = new Partial(to - from, 0);
+				System.arraycopy(result.flips, 0, joined.flips, 0, mid - from);
+				System.arraycopy(right.flips, 0, joined.flips, mid - from, to - mid);
+				System.arraycopy(result.margins, 0, joined.margins, 0, mid - from);
+				System.arraycopy(right.margins, 0, joined.margins, mid - from, to - mid);
+				return joined;
+			}
+
+			int n = to - from;
+			Partial result = new Partial(n, isOverall() ? Double.POSITIVE_INFINITY : 0);
+			double[][] totals = new double[m][n];
+			boolean firstOnly = objective == Objective.FIRST_FLIPS;
+
+			for( int b = firstBlock; b < lastBlock; b++ ) {
+				// Totals of each candidate for each vector, as the product of the counts and the vectors
+				long[][] c = counts[b];
+				for( int i = 0; i < m; i++ ) {
+					double[] row = totals[i];
+					Arrays.fill(row, 0);
+					for( int k = 0; k < m; k++ ) {
+						long count = c[i][k];
+						if( count == 0 ) continue;
+						double[] column = columns[k];
+						for( int v = 0; v < n; v++ ) row[v] += count * column[from + v];
+					}
+				}
+
+				double max = maxMargin[b];
+				for( int v = 0; v < n; v++ ) {
+					int flips = 0;
+					double min = Double.POSITIVE_INFINITY;
+					for( int i = 0; i < (firstOnly ? 1 : m); i++ ) {
+						for( int j = i + 1; j < m; j++ ) {
+							double margin = totals[i][v] - totals[j][v];
+							boolean flip = margin < separation;
+							if( flip ) flips++;
+
+							// Margins of flipped pairs are relaxed by the largest margin, as in the rules
+							if( objective != Objective.MIN_FIRST_LAST_MARGIN || i == 0 && j == m - 1 )
+								min = Math.min(min, flip ? margin + max : margin);
+						}
+					}
+
+					result.flips[v] += weights[b] * flips;
+					if( !hasMargins() ) continue;
+					double normalized = Math.max(0, min) / max;
+					if( isOverall() ) result.margins[v] = Math.min(result.margins[v], normalized);
+					else result.margins[v] += weights[b] * normalized;
+				}
+			}
+			return result;
+		}
+	}
+
+}
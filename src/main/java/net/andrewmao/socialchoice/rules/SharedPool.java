@@ -0,0 +1,39 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The fork-join pool that the rules and profiles of this package run on, unless given another.
+ * It has one thread per processor, and is started the first time it is used.
+ *
+ * @author mao
+ *
+ */
+public class SharedPool {
+
+	static final ForkJoinPool pool = new ForkJoinPool();
+
+	private SharedPool() {}
+
+	/**
+	 * @return the pool used by default for parallel work in this package
+	 */
+	public static ForkJoinPool get() {
+		return pool;
+	}
+
+	/**
+	 * Runs a task on a pool and waits for its result. Called from a worker of that pool, as when
+	 * a rule runs in a {@link RuleBatch}, the task runs in the calling thread and forks its
+	 * subtasks to the pool, rather than blocking the worker on a new submission.
+	 * @param pool
+	 * @param task
+	 * @return the result of the task
+	 */
+	public static <V> V invoke(ForkJoinPool pool, ForkJoinTask<V> task) {
+		if( ForkJoinTask.getPool() == pool ) return task.invoke();
+		return pool.invoke(task);
+	}
+
+}
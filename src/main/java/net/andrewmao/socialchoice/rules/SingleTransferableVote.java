@@ -0,0 +1,78 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.List;
+
+import net.andrewmao.models.discretechoice.ScoredItems;
+
+/**
+ * The single transferable vote, for several seats. A candidate whose votes reach the Droop
+ * quota is elected, and the surplus over the quota is passed on as the same fraction of each
+ * of its ballots. When no one reaches the quota, the candidate with the fewest votes is
+ * eliminated and its ballots are passed on whole. Once the seats left equal the candidates
+ * left, they are all elected.
+ *
+ * The elected candidates are ranked first, in the order they were elected, then those left
+ * when the seats were filled by their votes, then the rest in reverse order of elimination.
+ * Ties are broken by candidate id, as in {@link InstantRunoff}.
+ *
+ * @author mao
+ *
+ */
+public class SingleTransferableVote extends ScoredVotingRule {
+
+	final int seats;
+
+	public SingleTransferableVote(int seats) {
+		if( seats < 1 ) throw new IllegalArgumentException("Need at least one seat");
+		this.seats = seats;
+	}
+
+	public String toString() { return this.getClass().getSimpleName() + "(" + seats + ")"; }
+
+	/**
+	 * @param profile
+	 * @return the elected candidates, in the order they were elected
+	 */
+	public <T> List<T> getWinners(PreferenceProfile<T> profile) {
+		List<T> ranking = getRanking(profile);
+		return ranking.subList(0, Math.min(seats, ranking.size()));
+	}
+
+	@Override
+	public <T> ScoredItems<T> getScoredRanking(PreferenceProfile<T> profile) {
+		RankingMultiset<T> counts = RankingMultiset.of(profile);
+		RunoffTally tally = new RunoffTally(counts);
+
+		double quota = Math.floor(counts.getNumRankings() / (seats + 1.0)) + 1;
+
+		// Elected candidates take scores from the top, eliminated ones from the bottom
+		double[] scores = new double[tally.m];
+		int top = tally.m - 1, bottom = 0;
+		int elected = 0;
+
+		while( elected < seats && tally.getNumContinuing() > seats - elected ) {
+			int c = tally.getHighest();
+			double votes = tally.getTally(c);
+			if( votes >= quota ) {
+				scores[c] = top--;
+				elected++;
+				tally.transfer(c, (votes - quota) / votes);
+			}
+			else {
+				c = tally.getLowest();
+				scores[c] = bottom++;
+				tally.transfer(c, 1);
+			}
+		}
+
+		// The rest are either all elected, or left over once the seats are filled
+		while( tally.getNumContinuing() > 0 ) {
+			int c = tally.getHighest();
+			scores[c] = top--;
+			tally.transfer(c, 0);
+		}
+
+		return new ScoredItems<T>(counts.getSortedCandidates(), scores);
+	}
+
+}
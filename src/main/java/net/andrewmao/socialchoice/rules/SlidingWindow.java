@@ -0,0 +1,237 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.andrewmao.models.discretechoice.ScoredItems;
+
+import com.google.common.base.Ticker;
+import com.google.common.primitives.Ints;
+
+/**
+ * The statistics of the most recent rankings of a stream, over the last N rankings, the last
+ * T of time, or both. Position and pairwise counts are updated as each ranking arrives and as
+ * old ones expire, so results of the positional and pairwise rules can be read at any time
+ * in O(m^2), however large the window.
+ *
+ * The rankings in the window are kept as candidate ids in a ring buffer, so that they can be
+ * uncounted when they expire. Any number of threads may add rankings and read results.
+ * The buffer is one array, which holds at most {@link #MAX_BUFFER} / m rankings; a window of only
+ * time grows with the traffic up to that, and then drops its oldest rankings early.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class SlidingWindow<T> {
+
+	static final int INITIAL_CAPACITY = 1 << 10;
+	// Largest array that VMs will allocate
+	static final int MAX_BUFFER = Integer.MAX_VALUE - 8;
+
+	final T[] candidates;
+	final Map<T, Integer> ids;
+	final int m;
+
+	final int maxRankings;
+	final long maxAgeNanos;
+	final Ticker ticker;
+
+	final StatisticsAccumulator<T> counts;
+
+	// Rankings in the window, oldest first from head, and the time each arrived
+	int[] buffer;
+	long[] times;
+	int head, size;
+	final int[] oldest;
+
+	long version;
+	ProfileStatistics<T> snapshot;
+	long snapshotVersion = -1;
+
+	/**
+	 * A window of the last rankings.
+	 * @param sortedCandidates the candidates, in sorted order; the index of each is its id
+	 * @param maxRankings
+	 */
+	public SlidingWindow(T[] sortedCandidates, int maxRankings) {
+		this(sortedCandidates, maxRankings, Long.MAX_VALUE, Ticker.systemTicker());
+	}
+
+	/**
+	 * A window of the rankings from the last period of time. Memory grows with the number of rankings
+	 * in the period, up to {@link #getMaxRankings()}.
+	 * @param sortedCandidates the candidates, in sorted order; the index of each is its id
+	 * @param maxAge
+	 * @param unit
+	 */
+	public SlidingWindow(T[] sortedCandidates, long maxAge, TimeUnit unit) {
+		this(sortedCandidates, Integer.MAX_VALUE, unit.toNanos(maxAge), Ticker.systemTicker());
+	}
+
+	/**
+	 * @param sortedCandidates the candidates, in sorted order; the index of each is its id
+	 * @param maxRankings the most rankings to keep, or Integer.MAX_VALUE for as many as the buffer holds
+	 * @param maxAgeNanos how long to keep each ranking, or Long.MAX_VALUE for no limit
+	 * @param ticker the clock for the age of rankings
+	 */
+	public SlidingWindow(T[] sortedCandidates, int maxRankings, long maxAgeNanos, Ticker ticker) {
+		if( maxRankings < 1 ) throw new IllegalArgumentException("Window must hold at least one ranking");
+		if( maxAgeNanos <= 0 ) throw new IllegalArgumentException("Window must have a positive length of time");
+
+		this.candidates = sortedCandidates;
+		this.ids = IntPreferenceProfile.getIdMap(sortedCandidates);
+		this.m = sortedCandidates.length;
+
+		int limit = MAX_BUFFER / Math.max(m, 1);
+		if( maxRankings != Integer.MAX_VALUE && maxRankings > limit )
+			throw new IllegalArgumentException("A window of " + m + " candidates holds at most " + limit + " rankings");
+		this.maxRankings = Math.min(maxRankings, limit);
+		this.maxAgeNanos = maxAgeNanos;
+		this.ticker = ticker;
+
+		counts = new StatisticsAccumulator<T>(sortedCandidates);
+
+		int capacity = Math.min(this.maxRankings, INITIAL_CAPACITY);
+		buffer = new int[Ints.checkedCast((long) capacity * m)];
+		times = new long[capacity];
+		oldest = new int[m];
+	}
+
+	/**
+	 * @param ranking the candidates, most preferred first
+	 */
+	public void add(List<T> ranking) {
+		int[] idRanking = new int[ranking.size()];
+		for( int i = 0; i < idRanking.length; i++ ) idRanking[i] = getId(ranking.get(i));
+		add(idRanking);
+	}
+
+	/**
+	 * @param ranking the candidates, most preferred first
+	 */
+	public void add(T[] ranking) {
+		int[] idRanking = new int[ranking.length];
+		for( int i = 0; i < idRanking.length; i++ ) idRanking[i] = getId(ranking[i]);
+		add(idRanking);
+	}
+
+	/**
+	 * @param ranking candidate ids, most preferred first
+	 */
+	public void add(int[] ranking) {
+		checkRanking(ranking);
+
+		synchronized(this) {
+			long now = ticker.read();
+			expire(now);
+			if( size == maxRankings ) removeOldest();
+			if( size == times.length ) grow();
+
+			int slot = (head + size) % times.length;
+			System.arraycopy(ranking, 0, buffer, slot * m, m);
+			times[slot] = now;
+			size++;
+
+			counts.add(ranking, 1);
+			version++;
+		}
+	}
+
+	/**
+	 * @return the most rankings the window keeps, which for a window of only time is the most the buffer holds
+	 */
+	public int getMaxRankings() {
+		return maxRankings;
+	}
+
+	/**
+	 * @return the number of rankings in the window now
+	 */
+	public synchronized int getNumRankings() {
+		expire(ticker.read());
+		return size;
+	}
+
+	/**
+	 * @return the statistics of the rankings in the window now, which are shared until the window changes
+	 */
+	public synchronized ProfileStatistics<T> getStatistics() {
+		expire(ticker.read());
+		if( snapshotVersion != version ) {
+			snapshot = counts.getStatistics();
+			snapshotVersion = version;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @param rule such as {@link Borda} or {@link Plurality}
+	 * @return the scores of the rule over the rankings in the window now
+	 */
+	public ScoredItems<T> getScoredRanking(PositionalVotingRule rule) {
+		return rule.getScoredRanking(getStatistics());
+	}
+
+	/**
+	 * @param rule such as {@link Maximin}
+	 * @return the scores of the rule over the rankings in the window now
+	 */
+	public ScoredItems<T> getScoredRanking(PairwiseVotingRule rule) {
+		return rule.getScoredRanking(getStatistics());
+	}
+
+	/**
+	 * Drops the rankings older than the length of the window.
+	 */
+	void expire(long now) {
+		if( maxAgeNanos == Long.MAX_VALUE ) return;
+		while( size > 0 && now - times[head] > maxAgeNanos ) removeOldest();
+	}
+
+	void removeOldest() {
+		System.arraycopy(buffer, head * m, oldest, 0, m);
+		counts.remove(oldest, 1);
+		head = (head + 1) % times.length;
+		size--;
+		version++;
+	}
+
+	/**
+	 * Doubles the ring buffer, moving the rankings to the start.
+	 */
+	void grow() {
+		int capacity = (int) Math.min((long) maxRankings, 2L * times.length);
+		int[] newBuffer = new int[Ints.checkedCast((long) capacity * m)];
+		long[] newTimes = new long[capacity];
+		for( int i = 0; i < size; i++ ) {
+			int slot = (head + i) % times.length;
+			System.arraycopy(buffer, slot * m, newBuffer, i * m, m);
+			newTimes[i] = times[slot];
+		}
+		buffer = newBuffer;
+		times = newTimes;
+		head = 0;
+	}
+
+	int getId(T candidate) {
+		Integer id = ids.get(candidate);
+		if( id == null ) throw new IllegalArgumentException("Unknown candidate " + candidate);
+		return id;
+	}
+
+	void checkRanking(int[] ranking) {
+		if( ranking.length != m )
+			throw new IllegalArgumentException("Ranking must contain all " + m + " candidates");
+
+		boolean[] seen = new boolean[m];
+		for( int c : ranking ) {
+			if( c < 0 || c >= m || seen[c] )
+				throw new IllegalArgumentException("Not a ranking: " + Arrays.toString(ranking));
+			seen[c] = true;
+		}
+	}
+
+}
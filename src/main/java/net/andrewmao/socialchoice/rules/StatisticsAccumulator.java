@@ -0,0 +1,144 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+
+/**
+ * Counts the statistics of {@link ProfileStatistics} from a stream of rankings, without storing them,
+ * so memory is O(m^2) however many rankings are added. Counts are longs, so the stream can have
+ * more rankings than a profile holds.
+ *
+ * Accumulators of different parts of a stream can be counted on separate threads and merged.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class StatisticsAccumulator<T> {
+
+	final T[] candidates;
+	final int m;
+
+	long numRankings;
+	final long[][] positions;
+	// Only the upper triangle is counted as rankings are added
+	final long[][] pairwise;
+	final long[][] adjacent;
+
+	final int[] pos;
+
+	/**
+	 * @param candidates the candidates, usually in sorted order; the index of each is its id
+	 */
+	public StatisticsAccumulator(T[] candidates) {
+		this.candidates = candidates;
+		this.m = candidates.length;
+
+		positions = new long[m][m];
+		pairwise = new long[m][m];
+		adjacent = new long[m][m];
+		pos = new int[m];
+	}
+
+	/**
+	 * Counts copies of a ranking.
+	 * @param ranking candidate ids, most preferred first
+	 * @param count
+	 */
+	public void add(int[] ranking, long count) {
+		for( int i = 0; i < m; i++ ) {
+			int c = ranking[i];
+			pos[c] = i;
+			positions[c][i] += count;
+		}
+		for( int i = 0; i < m - 1; i++ ) adjacent[ranking[i]][ranking[i + 1]] += count;
+
+		for( int a = 0; a < m; a++ ) {
+			int pa = pos[a];
+			long[] row = pairwise[a];
+			for( int b = a + 1; b < m; b++ )
+				if( pa < pos[b] ) row[b] += count;
+		}
+		numRankings += count;
+	}
+
+	/**
+	 * Uncounts copies of a ranking that were added before, as when it leaves a window of the stream.
+	 * @param ranking candidate ids, most preferred first
+	 * @param count
+	 */
+	public void remove(int[] ranking, long count) {
+		add(ranking, -count);
+	}
+
+	/**
+	 * Adds the counts of another accumulator over the same candidates to this one.
+	 * @param other
+	 */
+	public void merge(StatisticsAccumulator<T> other) {
+		if( !Arrays.equals(candidates, other.candidates) )
+			throw new IllegalArgumentException("Accumulators have different candidates");
+
+		for( int a = 0; a < m; a++ ) {
+			for( int b = 0; b < m; b++ ) {
+				positions[a][b] += other.positions[a][b];
+				pairwise[a][b] += other.pairwise[a][b];
+				adjacent[a][b] += other.adjacent[a][b];
+			}
+		}
+		numRankings += other.numRankings;
+	}
+
+	/**
+	 * @return the candidates, in the order given; the index of each is its id
+	 */
+	public T[] getSortedCandidates() {
+		return candidates.clone();
+	}
+
+	public int getNumCandidates() {
+		return m;
+	}
+
+	public long getNumRankings() {
+		return numRankings;
+	}
+
+	/**
+	 * @return counts[c][i] is the number of times candidate id c appears in position i
+	 */
+	public long[][] getPositionMatrix() {
+		return copy(positions);
+	}
+
+	/**
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears above b
+	 */
+	public long[][] getPairwiseMatrix() {
+		long[][] wins = copy(pairwise);
+		for( int a = 0; a < m; a++ )
+			for( int b = a + 1; b < m; b++ )
+				wins[b][a] = numRankings - wins[a][b];
+		return wins;
+	}
+
+	/**
+	 * @return wins[a][b] is the number of rankings in which candidate id a appears directly above b
+	 */
+	public long[][] getAdjacentMatrix() {
+		return copy(adjacent);
+	}
+
+	/**
+	 * @return the counts so far, for the rules and estimators
+	 */
+	public ProfileStatistics<T> getStatistics() {
+		return new ProfileStatistics<T>(candidates, numRankings, copy(positions), getPairwiseMatrix(), copy(adjacent));
+	}
+
+	static long[][] copy(long[][] matrix) {
+		long[][] result = new long[matrix.length][];
+		for( int a = 0; a < matrix.length; a++ ) result[a] = matrix[a].clone();
+		return result;
+	}
+
+}
@@ -0,0 +1,297 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A profile of partial rankings, where each voter ranks only their top k candidates
+ * and the rest are unranked below them. k may differ between rankings.
+ *
+ * Rankings are stored back to back in one flat array of candidate ids, with the start of
+ * each row in a separate array, so a top-3 of 50 candidates takes 3 ints rather than 100.
+ * Candidate ids are the indices of the candidates in sorted order, as in {@link IntPreferenceProfile}.
+ *
+ * Rows may carry an integer weight, in which case a row stands for that many identical
+ * rankings. All counts returned here are weighted.
+ *
+ * The rules of this package that score from statistics take the top-k counts of
+ * {@link #getStatistics()}; the others need total orders, from {@link #toProfile()}.
+ *
+ * @author mao
+ *
+ * @param <T>
+ */
+public class TopKProfile<T> {
+
+	static final int INITIAL_ROWS = 16;
+
+	final T[] candidates;
+	final Map<T, Integer> ids;
+	final int m;
+
+	int[] data;
+	// Row r is data[starts[r]], ..., data[starts[r + 1] - 1]
+	int[] starts;
+	int[] weights;
+	int numRows;
+	int numRankings;
+	int maxLength;
+
+	// Marks the candidates of the row being added
+	final int[] seen;
+	int mark;
+
+	/**
+	 * Creates an empty profile over the given candidates.
+	 * @param sortedCandidates the candidates, in sorted order; the index of each is its id
+	 */
+	public TopKProfile(T[] sortedCandidates) {
+		this.candidates = sortedCandidates;
+		this.ids = IntPreferenceProfile.getIdMap(sortedCandidates);
+		this.m = sortedCandidates.length;
+
+		data = new int[INITIAL_ROWS];
+		starts = new int[INITIAL_ROWS + 1];
+		weights = new int[INITIAL_ROWS];
+		seen = new int[m];
+	}
+
+	/**
+	 * Truncates every ranking of a profile to its top k candidates.
+	 * @param profile
+	 * @param k
+	 * @return
+	 */
+	public static <T> TopKProfile<T> truncate(PreferenceProfile<T> profile, int k) {
+		IntPreferenceProfile<T> ip = profile.asIntProfile();
+		if( k < 1 || k > ip.m ) throw new IllegalArgumentException("Can't take the top " + k + " of " + ip.m);
+
+		TopKProfile<T> result = new TopKProfile<T>(ip.candidates);
+		int[] ranking = new int[k];
+		for( int r = 0; r < ip.getNumRows(); r++ ) {
+			for( int i = 0; i < k; i++ ) ranking[i] = ip.candidateAt(r, i);
+			result.add(ranking, k, ip.getWeight(r));
+		}
+		return result;
+	}
+
+	/**
+	 * Adds a partial ranking.
+	 * @param ranking the top candidates, most preferred first
+	 */
+	public void add(T[] ranking) {
+		int[] ranked = new int[ranking.length];
+		for( int i = 0; i < ranking.length; i++ ) {
+			Integer id = ids.get(ranking[i]);
+			if( id == null )
+				throw new IllegalArgumentException("Unknown candidate " + ranking[i] + " in " + Arrays.toString(ranking));
+			ranked[i] = id;
+		}
+		add(ranked, ranked.length, 1);
+	}
+
+	/**
+	 * Adds count copies of a partial ranking.
+	 * @param ranking candidate ids, most preferred first
+	 * @param length the number of ranked candidates, from 1 to m
+	 * @param count
+	 */
+	public void add(int[] ranking, int length, int count) {
+		if( length < 1 || length > m )
+			throw new IllegalArgumentException("Ranking has " + length + " of " + m + " candidates");
+		if( count < 0 ) throw new IllegalArgumentException("Negative count " + count);
+
+		mark++;
+		for( int i = 0; i < length; i++ ) {
+			int id = ranking[i];
+			if( id < 0 || id >= m ) throw new IllegalArgumentException("Unknown candidate id " + id);
+			if( seen[id] == mark ) throw new IllegalArgumentException("Candidate id " + id + " ranked twice");
+			seen[id] = mark;
+		}
+
+		if( numRows == weights.length ) {
+			int size = 2 * numRows;
+			starts = Arrays.copyOf(starts, size + 1);
+			weights = Arrays.copyOf(weights, size);
+		}
+		int off = starts[numRows];
+		if( off + length > data.length )
+			data = Arrays.copyOf(data, Math.max(2 * data.length, off + length));
+
+		System.arraycopy(ranking, 0, data, off, length);
+		starts[numRows + 1] = off + length;
+		weights[numRows++] = count;
+		numRankings += count;
+		maxLength = Math.max(maxLength, length);
+	}
+
+	/**
+	 * @return the candidates, in sorted order; the index of each is its id
+	 */
+	public T[] getSortedCandidates() {
+		return candidates.clone();
+	}
+
+	public T getCandidate(int id) {
+		return candidates[id];
+	}
+
+	/**
+	 * @param item
+	 * @return the id of the candidate, or -1 if it is not in this profile
+	 */
+	public int getId(T item) {
+		Integer id = ids.get(item);
+		return id == null ? -1 : id;
+	}
+
+	public int getNumCandidates() {
+		return m;
+	}
+
+	/**
+	 * @return the number of rankings, counting each row as many times as its weight
+	 */
+	public int getNumRankings() {
+		return numRankings;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getWeight(int row) {
+		return weights[row];
+	}
+
+	/**
+	 * @param row
+	 * @return the number of candidates ranked in a row
+	 */
+	public int getLength(int row) {
+		return starts[row + 1] - starts[row];
+	}
+
+	/**
+	 * @return the length of the longest ranking
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * @param row
+	 * @param position less than {@link #getLength(int)}
+	 * @return the id of the candidate at the given position of a ranking
+	 */
+	public int candidateAt(int row, int position) {
+		return data[starts[row] + position];
+	}
+
+	/**
+	 * @param row
+	 * @return a copy of the ranked candidate ids, most preferred first
+	 */
+	public int[] getRanking(int row) {
+		return Arrays.copyOfRange(data, starts[row], starts[row + 1]);
+	}
+
+	/**
+	 * @param row
+	 * @return the ranked candidates as 1-based indices into the sorted candidates, the format used by the estimators
+	 */
+	public int[] getIndices(int row) {
+		int[] ranking = getRanking(row);
+		for( int i = 0; i < ranking.length; i++ ) ranking[i]++;
+		return ranking;
+	}
+
+	/**
+	 * @return whether every ranking orders all the candidates, possibly leaving out the last one
+	 */
+	public boolean isComplete() {
+		for( int r = 0; r < numRows; r++ )
+			if( getLength(r) < m - 1 ) return false;
+		return true;
+	}
+
+	/**
+	 * Fills in the last candidate of rankings of length m - 1.
+	 * @return the rankings as a profile of total orders
+	 * @throws IllegalArgumentException if some ranking leaves out more than one candidate
+	 */
+	public IntPreferenceProfile<T> toProfile() {
+		if( !isComplete() ) throw new IllegalArgumentException("Rankings leave out more than one candidate");
+
+		int stride = 2 * m;
+		int[] data = new int[numRows * stride];
+		for( int r = 0; r < numRows; r++ ) {
+			int off = r * stride;
+			int length = getLength(r);
+			// Sum of all ids, minus the ranked ones, is the missing one
+			int last = m * (m - 1) / 2;
+			for( int i = 0; i < length; i++ ) {
+				int id = candidateAt(r, i);
+				data[off + i] = id;
+				data[off + m + id] = i;
+				last -= id;
+			}
+			if( length < m ) {
+				data[off + m - 1] = last;
+				data[off + m + last] = m - 1;
+			}
+		}
+		return new IntPreferenceProfile<T>(candidates, ids, data, null, Arrays.copyOf(weights, numRows), numRows);
+	}
+
+	/**
+	 * Counts the statistics implied by the partial rankings: positions and adjacent pairs of
+	 * the ranked candidates, and a pairwise win for each ranked candidate over those below it,
+	 * ranked or not. Pairs of unranked candidates are not counted, so wins[a][b] + wins[b][a]
+	 * is less than the number of rankings when neither is ranked.
+	 *
+	 * Positional and pairwise rules rank from these with {@link PositionalVotingRule#getScoredRanking(ProfileStatistics)}
+	 * and {@link PairwiseVotingRule#getScoredRanking(ProfileStatistics)}. Unranked candidates get the score
+	 * of no position, so Borda gives them 0, as if tied below the ranked ones.
+	 *
+	 * Takes O(k^2) per ranking, plus O(m^2) once.
+	 * @return
+	 */
+	public ProfileStatistics<T> getStatistics() {
+		ProfileStatistics<T> stats = new ProfileStatistics<T>(candidates, numRankings);
+		// Number of rankings in which each candidate is ranked
+		int[] ranked = new int[m];
+		// above[a][b] is the number of rankings where b is ranked above a
+		int[][] above = new int[m][m];
+
+		for( int r = 0; r < numRows; r++ ) {
+			int w = weights[r];
+			if( w == 0 ) continue;
+			int off = starts[r];
+			int length = starts[r + 1] - off;
+
+			for( int i = 0; i < length; i++ ) {
+				int a = data[off + i];
+				ranked[a] += w;
+				stats.positions[a][i] += w;
+				if( i > 0 ) stats.adjacent[data[off + i - 1]][a] += w;
+				for( int j = 0; j < i; j++ ) above[a][data[off + j]] += w;
+			}
+			// The candidate left out of a ranking of length m - 1 is in the last position
+			if( length == m - 1 ) {
+				int last = m * (m - 1) / 2;
+				for( int i = 0; i < length; i++ ) last -= data[off + i];
+				stats.positions[last][m - 1] += w;
+				stats.adjacent[data[off + length - 1]][last] += w;
+			}
+		}
+
+		// a beats b whenever a is ranked, except when b is ranked above it
+		for( int a = 0; a < m; a++ ) {
+			for( int b = 0; b < m; b++ )
+				if( a != b ) stats.pairwise[a][b] = ranked[a] - above[a][b];
+		}
+		return stats;
+	}
+
+}
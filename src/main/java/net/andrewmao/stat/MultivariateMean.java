@@ -1,42 +1,88 @@
 package net.andrewmao.stat;
 
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
+import java.io.Serializable;
 
-public class MultivariateMean { 
+/**
+ * A weighted mean of vectors. Means of separate sets of values can be merged,
+ * and are serializable, so that they can be computed in parts.
+ * 
+ * @author mao
+ *
+ */
+public class MultivariateMean implements Serializable { 
 	
-	private Mean[] meanImpl;
+	private static final long serialVersionUID = 1L;
+	
+	private final double[] mean;
+	private double weight;
 	private final int k;
 	
 	public MultivariateMean(int dimension) {
 		k = dimension;
 		
-		meanImpl    = new Mean[k];
-
-        for (int i = 0; i < k; ++i) meanImpl[i] = new Mean();	        
+		mean = new double[k];
 	}
 
 	public void clear() {
-		for( Mean m : meanImpl ) m.clear();
+		for (int i = 0; i < k; ++i) mean[i] = 0;
+		weight = 0;
 	}
 
 	public void addValue(int[] value) {
-		for (int i = 0; i < k; ++i) meanImpl[i].increment(value[i]);
+		addValue(value, 1);
 	}
 	
     public void addValue(double[] value) {	    	        
-    	for (int i = 0; i < k; ++i) meanImpl[i].increment(value[i]);	    	
+    	addValue(value, 1);	    	
+    }
+    
+    public void addValue(int[] value, double w) {
+    	if( w == 0 ) return;
+    	weight += w;
+    	double f = w / weight;
+    	for (int i = 0; i < k; ++i) mean[i] += (value[i] - mean[i]) * f;
+    }
+    
+    /**
+     * Adds a value that occurs a number of times, equivalent to calling addValue w times.
+     * @param value
+     * @param w
+     */
+    public void addValue(double[] value, double w) {
+    	if( w == 0 ) return;
+    	weight += w;
+    	double f = w / weight;
+    	for (int i = 0; i < k; ++i) mean[i] += (value[i] - mean[i]) * f;
+    }
+    	
+    /**
+     * Adds all the values of another mean, as if they had been added to this one.
+     * @param other
+     */
+    public void merge(MultivariateMean other) {
+    	if( other.k != k )
+    		throw new IllegalArgumentException("Dimension " + other.k + " does not match " + k);
+    	double w = other.getWeight();
+    	if( w == 0 ) return;
+    	addValue(other.getMean(), w);
     }
     	
 	public int getDimension() {
 		return k;
 	}
 	
+	public double getWeight() {
+		return weight;
+	}
+	
 	public double[] getMean() {
-        double[] results = new double[meanImpl.length];
-        for (int i = 0; i < results.length; ++i) {
-            results[i] = meanImpl[i].getResult();
-        }
-        return results;
+		// No values gives NaN, the same as an empty Mean
+		if( weight == 0 ) {
+			double[] results = new double[k];
+			for (int i = 0; i < k; ++i) results[i] = Double.NaN;
+			return results;
+		}
+		return mean.clone();
 	}
 
 }
@@ -2,6 +2,8 @@ package net.andrewmao.stat;
 
 public class SynchronizedMultivariateMean extends MultivariateMean {
 
+	private static final long serialVersionUID = 1L;
+
 	public SynchronizedMultivariateMean(int dimension) {
 		super(dimension);		
 	}
@@ -21,6 +23,26 @@ public class SynchronizedMultivariateMean extends MultivariateMean {
 		super.addValue(value);
 	}
 	
+	@Override
+	public synchronized void addValue(int[] value, double w) {
+		super.addValue(value, w);
+	}
+	
+	@Override
+	public synchronized void addValue(double[] value, double w) {
+		super.addValue(value, w);
+	}
+	
+	@Override
+	public synchronized void merge(MultivariateMean other) {
+		super.merge(other);
+	}
+	
+	@Override
+	public synchronized double getWeight() {
+		return super.getWeight();
+	}
+	
 	@Override
 	public synchronized double[] getMean() {		
 		return super.getMean();
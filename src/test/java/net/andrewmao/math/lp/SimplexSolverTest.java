@@ -0,0 +1,207 @@
+package net.andrewmao.math.lp;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import net.andrewmao.math.lp.LinearSolver.Relation;
+
+import org.junit.Test;
+
+public class SimplexSolverTest {
+
+	static final double TOL = 1e-7;
+
+	static LinearExpression var(int v) {
+		return LinearExpression.variable(v);
+	}
+
+	@Test
+	public void testLP() {
+		// max 3x + 2y, x + y <= 4, x + 3y <= 6, x <= 3
+		SimplexSolver solver = new SimplexSolver();
+		int x = solver.addVariable(0, 3);
+		int y = solver.addVariable(0, Double.POSITIVE_INFINITY);
+
+		solver.addConstraint(var(x).plus(var(y)), Relation.LE, 4);
+		solver.addConstraint(var(x).plus(var(y).times(3)), Relation.LE, 6);
+		solver.setObjective(var(x).times(3).plus(var(y).times(2)), true);
+
+		assertEquals(11, solver.solve(), TOL);
+		assertEquals(3, solver.getValue(x), TOL);
+		assertEquals(1, solver.getValue(y), TOL);
+	}
+
+	@Test
+	public void testEqualityAndFree() {
+		// min x - y, x + y = 2, x - y >= -4, y free, x >= -10
+		SimplexSolver solver = new SimplexSolver();
+		int x = solver.addVariable(-10, Double.POSITIVE_INFINITY);
+		int y = solver.addVariable(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+		solver.addConstraint(var(x).plus(var(y)), Relation.EQ, 2);
+		solver.addConstraint(var(x).minus(var(y)), Relation.GE, -4);
+		solver.setObjective(var(x).minus(var(y)), false);
+
+		assertEquals(-4, solver.solve(), TOL);
+		assertEquals(-1, solver.getValue(x), TOL);
+		assertEquals(3, solver.getValue(y), TOL);
+	}
+
+	@Test
+	public void testNegativeUpperBound() {
+		// min x, x <= -2 with no lower bound, x >= -5 as a constraint
+		SimplexSolver solver = new SimplexSolver();
+		int x = solver.addVariable(Double.NEGATIVE_INFINITY, -2);
+		solver.addConstraint(var(x), Relation.GE, -5);
+		solver.setObjective(var(x), false);
+
+		assertEquals(-5, solver.solve(), TOL);
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testInfeasible() {
+		SimplexSolver solver = new SimplexSolver();
+		int x = solver.addVariable(0, 1);
+		solver.addConstraint(var(x), Relation.GE, 2);
+		solver.setObjective(var(x), false);
+		solver.solve();
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testUnbounded() {
+		SimplexSolver solver = new SimplexSolver();
+		int x = solver.addVariable(0, Double.POSITIVE_INFINITY);
+		solver.setObjective(var(x), true);
+		solver.solve();
+	}
+
+	@Test
+	public void testKnapsack() {
+		// 0-1 knapsack, checked against all subsets
+		Random rnd = new Random(1);
+		for( int trial = 0; trial < 20; trial++ ) {
+			int n = 10;
+			int[] weight = new int[n];
+			int[] value = new int[n];
+			for( int i = 0; i < n; i++ ) {
+				weight[i] = 1 + rnd.nextInt(20);
+				value[i] = 1 + rnd.nextInt(20);
+			}
+			int capacity = 40;
+
+			SimplexSolver solver = new SimplexSolver();
+			int[] vars = new int[n];
+			for( int i = 0; i < n; i++ ) vars[i] = solver.addBinaryVariable();
+			solver.addConstraint(LinearExpression.scalarProduct(weight, vars), Relation.LE, capacity);
+			solver.setObjective(LinearExpression.scalarProduct(value, vars), true);
+
+			int best = 0;
+			for( int s = 0; s < 1 << n; s++ ) {
+				int w = 0, v = 0;
+				for( int i = 0; i < n; i++ ) if( (s >> i & 1) != 0 ) { w += weight[i]; v += value[i]; }
+				if( w <= capacity ) best = Math.max(best, v);
+			}
+
+			assertEquals(best, solver.solve(), TOL);
+		}
+	}
+
+	@Test
+	public void testIndicator() {
+		// Pay 1 to have x below 2, otherwise x >= 2 is forced; minimize z + (3 - x)
+		SimplexSolver solver = new SimplexSolver();
+		int x = solver.addVariable(0, 3);
+		int z = solver.addBinaryVariable();
+		solver.addIndicator(z, 0, var(x), Relation.GE, 2);
+		solver.addConstraint(var(x), Relation.LE, 1.5);
+		solver.setObjective(var(z).plus(LinearExpression.constant(3)).minus(var(x)), false);
+
+		assertEquals(2.5, solver.solve(), TOL);
+		assertEquals(1, solver.getValue(z), TOL);
+		assertEquals(1.5, solver.getValue(x), TOL);
+
+		solver.clear();
+		x = solver.addVariable(0, 3);
+		z = solver.addBinaryVariable();
+		solver.addIndicator(z, 1, var(x), Relation.LE, 1);
+		solver.setObjective(var(x).plus(var(z).times(5)), true);
+
+		// z = 1 forces x <= 1, worth it for 5
+		assertEquals(6, solver.solve(), TOL);
+		assertEquals(1, solver.getValue(x), TOL);
+	}
+
+	@Test
+	public void testRemoveAndStart() {
+		Random rnd = new Random(2);
+		int n = 20;
+		int[] weight = new int[n];
+		int[] value = new int[n];
+		for( int i = 0; i < n; i++ ) {
+			weight[i] = 1 + rnd.nextInt(20);
+			value[i] = 1 + rnd.nextInt(20);
+		}
+
+		SimplexSolver solver = new SimplexSolver();
+		int[] vars = new int[n];
+		for( int i = 0; i < n; i++ ) vars[i] = solver.addBinaryVariable();
+		int tight = solver.addConstraint(LinearExpression.scalarProduct(weight, vars), Relation.LE, 10);
+		solver.addConstraint(LinearExpression.scalarProduct(weight, vars), Relation.LE, 75);
+		solver.setObjective(LinearExpression.scalarProduct(value, vars), true);
+		double small = solver.solve();
+
+		solver.removeConstraint(tight);
+		double large = solver.solve();
+		assertTrue(large > small);
+
+		// Starting from the optimum prunes more than searching without it
+		double[] x = new double[n];
+		for( int i = 0; i < n; i++ ) x[i] = solver.getValue(vars[i]);
+		solver.setStart(vars, x);
+		assertEquals(large, solver.solve(), TOL);
+		int warm = solver.getNodes();
+		assertEquals(large, solver.solve(), TOL);
+		assertTrue(warm < solver.getNodes());
+
+		// Without an item that was taken, the optimum can only drop
+		int taken = 0;
+		while( x[taken] < 0.5 ) taken++;
+		solver.removeVariable(vars[taken]);
+		assertTrue(solver.solve() <= large + TOL);
+		assertEquals(0, solver.getValue(vars[taken]), TOL);
+
+		// An infeasible start is ignored
+		solver.setStart(new int[] { vars[0] }, new double[] { 2 });
+		assertTrue(solver.solve() <= large + TOL);
+	}
+
+	@Test
+	public void testNodeLimit() {
+		Random rnd = new Random(3);
+		int n = 30;
+		int[] weight = new int[n];
+		int[] value = new int[n];
+		for( int i = 0; i < n; i++ ) {
+			weight[i] = 10 + rnd.nextInt(20);
+			value[i] = weight[i] + rnd.nextInt(5);
+		}
+
+		SimplexSolver solver = new SimplexSolver();
+		int[] vars = new int[n];
+		for( int i = 0; i < n; i++ ) vars[i] = solver.addBinaryVariable();
+		solver.addConstraint(LinearExpression.scalarProduct(weight, vars), Relation.LE, 200);
+		solver.setObjective(LinearExpression.scalarProduct(value, vars), true);
+
+		double best = solver.solve();
+		assertTrue(solver.isOptimal());
+
+		// The first solution found is returned, but not as optimal
+		solver.setMaxNodes(40);
+		double limited = solver.solve();
+		assertFalse(solver.isOptimal());
+		assertEquals(40, solver.getNodes());
+		assertTrue(limited <= best + TOL);
+	}
+
+}
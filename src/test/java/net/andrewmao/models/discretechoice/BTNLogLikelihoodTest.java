@@ -4,6 +4,9 @@ import static org.junit.Assert.*;
 
 import java.util.Random;
 
+import net.andrewmao.socialchoice.rules.IntPreferenceProfile;
+import net.andrewmao.socialchoice.rules.PairwiseSketch;
+
 import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.analysis.MultivariateVectorFunction;
 import org.junit.After;
@@ -132,4 +135,33 @@ public class BTNLogLikelihoodTest {
 		}
 	}
 
+	@Test
+	public void testSketch() {
+		Random rnd = new Random();
+		int n = 6;
+		
+		int[][] rankings = new int[200][];
+		for( int r = 0; r < rankings.length; r++ ) {
+			rankings[r] = new int[] {0, 1, 2, 3, 4, 5};
+			int j = rnd.nextInt(n - 1);
+			rankings[r][j] = j + 1;
+			rankings[r][j + 1] = j;
+		}
+		
+		PairwiseSketch sketch = new PairwiseSketch(n, 3, rnd);
+		sketch.addAll(IntPreferenceProfile.fromIds(new Integer[] {0, 1, 2, 3, 4, 5}, rankings));
+		
+		// The sparse and dense forms of the same counts have the same likelihood
+		BTNLogLikelihood sparse = new BTNLogLikelihood(sketch);
+		BTNLogLikelihood dense = new BTNLogLikelihood(sketch.getWinMatrix());
+		
+		for( int i = 0; i < trials; i++ ) {
+			double[] point = new double[n - 1];
+			for( int j = 0; j < point.length; j++ ) point[j] = 2 * rnd.nextDouble() - 1;
+			
+			assertEquals(dense.value(point), sparse.value(point), 1e-9);
+			assertArrayEquals(dense.gradient().value(point), sparse.gradient().value(point), 1e-9);
+		}
+	}
+
 }
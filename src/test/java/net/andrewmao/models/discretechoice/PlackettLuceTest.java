@@ -2,7 +2,14 @@ package net.andrewmao.models.discretechoice;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.Random;
+
+import net.andrewmao.models.noise.GumbelNoiseModel;
+import net.andrewmao.models.noise.MeanParams;
 import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMultiset;
+import net.andrewmao.socialchoice.rules.TopKProfile;
 
 import org.junit.After;
 import org.junit.Before;
@@ -39,4 +46,26 @@ public class PlackettLuceTest {
 		plmm.fitModelOrdinal(mmFailPrefs);	
 	}
 
+	@Test
+	public void testTopK() {
+		Random rnd = new Random(1);
+		double[] strengths = {0, 0.5, 1, 1.5, 2};
+		PreferenceProfile<Integer> prefs = new GumbelNoiseModel<Integer>(
+				Arrays.asList(0, 1, 2, 3, 4), strengths).sampleProfile(2000, rnd);
+		
+		PlackettLuceModel plmm = new PlackettLuceModel(false);
+		double[] full = plmm.getParameters(RankingMultiset.of(prefs)).mean;
+		
+		// Total orders, with or without the last place, give the same fit as the full rankings
+		for( int k = strengths.length - 1; k <= strengths.length; k++ ) {
+			MeanParams topK = plmm.getParameters(TopKProfile.truncate(prefs, k));
+			assertArrayEquals(full, topK.mean, 1e-4);
+		}
+		
+		// The top 2 still recovers the order of the strengths
+		double[] top2 = plmm.getParameters(TopKProfile.truncate(prefs, 2)).mean;
+		for( int i = 1; i < top2.length; i++ )
+			assertTrue(top2[i] > top2[i-1]);
+	}
+
 }
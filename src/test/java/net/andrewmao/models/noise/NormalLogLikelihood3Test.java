@@ -51,4 +51,17 @@ public class NormalLogLikelihood3Test {
 		assertEquals(bivariateLL, multivariateLL, tol);				
 	}
 
+	@Test
+	public void test3xTopKGrid() {
+		double tol = 1e-5;
+		
+		NormalLogLikelihood ll = new NormalLogLikelihood(mean, var);
+		
+		// The top 2 of 3 is a total order, integrated on the grid instead
+		double bivariate = Math.exp(ll.bivariateLL(ranking));
+		double grid = ll.new TopKGrid().prob(ranking, 2);
+		
+		assertEquals(bivariate, grid, tol);
+	}
+
 }
@@ -0,0 +1,134 @@
+package net.andrewmao.models.noise;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import net.andrewmao.socialchoice.rules.PreferenceProfile;
+import net.andrewmao.socialchoice.rules.RankingMetric;
+import net.andrewmao.socialchoice.rules.StatisticsAccumulator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RankingSamplerTest {
+
+	static final int SIZE = 200000;
+
+	List<Integer> candidates = Arrays.asList(3, 1, 4, 2);
+	double[] strengths = {1, 0.5, 0, -0.5};
+
+	Random rnd;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+	}
+
+	/**
+	 * Checks the pairwise frequencies of a stream against the marginals of the model.
+	 */
+	void checkMarginals(NoiseModel<Integer> model) {
+		StatisticsAccumulator<Integer> stats = model.sampleStatistics(SIZE, rnd);
+		assertEquals(SIZE, stats.getNumRankings());
+
+		long[][] wins = stats.getPairwiseMatrix();
+		Integer[] sorted = stats.getSortedCandidates();
+		for( int a = 0; a < sorted.length; a++ ) {
+			for( int b = 0; b < sorted.length; b++ ) {
+				if( a == b ) continue;
+				double expected = model.marginalProbability(sorted[a], sorted[b]);
+				assertEquals(expected, (double) wins[a][b] / SIZE, 0.01);
+			}
+		}
+	}
+
+	@Test
+	public void testNormal() {
+		checkMarginals(new NormalNoiseModel<Integer>(candidates, strengths, 1));
+	}
+
+	@Test
+	public void testGumbel() {
+		checkMarginals(new GumbelNoiseModel<Integer>(candidates, strengths));
+	}
+
+	@Test
+	public void testCondorcet() {
+		checkMarginals(new CondorcetModel<Integer>(candidates, 0.7));
+	}
+
+	@Test
+	public void testNotComparable() {
+		List<Object> cands = Arrays.asList(new Object(), new Object(), new Object());
+		StatisticsAccumulator<Object> stats = new CondorcetModel<Object>(cands, 0.7).sampleStatistics(1000, rnd);
+
+		// Ids follow the order of the model
+		assertEquals(cands, Arrays.asList(stats.getSortedCandidates()));
+		assertEquals(1000, stats.getNumRankings());
+	}
+
+	@Test
+	public void testProfileFallback() {
+		final NoiseModel<Integer> normal = new NormalNoiseModel<Integer>(candidates, strengths, 1);
+
+		// Only samples whole profiles, so the stream is drawn from profiles of one ranking
+		checkMarginals(new NoiseModel<Integer>(candidates) {
+			public PreferenceProfile<Integer> sampleProfile(int size, Random rnd) {
+				return normal.sampleProfile(size, rnd);
+			}
+
+			public double marginalProbability(Integer winner, Integer loser) {
+				return normal.marginalProbability(winner, loser);
+			}
+
+			public double computeMLMetric(RankingMetric<Integer> metric) {
+				return normal.computeMLMetric(metric);
+			}
+
+			public double logLikelihood(PreferenceProfile<Integer> profile) {
+				return normal.logLikelihood(profile);
+			}
+
+			public String toParamString() {
+				return normal.toParamString();
+			}
+		});
+	}
+
+	@Test
+	public void testFlips() {
+		FlipNoiseModel<Integer> model = new FlipNoiseModel<Integer>(candidates, 0.3);
+		RankingSampler sampler = model.getSampler(1000, rnd);
+
+		// Every flip swaps an adjacent pair, so the Kendall distance of each ranking is at most its flips
+		int[] ranking = new int[candidates.size()];
+		int distance = 0;
+		for( int i = 0; i < 1000; i++ ) {
+			sampler.next(ranking);
+			for( int a = 0; a < ranking.length; a++ )
+				for( int b = a + 1; b < ranking.length; b++ )
+					if( ranking[a] > ranking[b] ) distance++;
+		}
+		assertTrue(distance <= 300);
+		assertTrue(distance > 150);
+	}
+
+	@Test
+	public void testParallelDeterministic() {
+		NoiseModel<Integer> model = new NormalNoiseModel<Integer>(candidates, strengths, 1);
+		long size = 3 * NoiseModel.SAMPLE_CHUNK + 17;
+
+		StatisticsAccumulator<Integer> one = model.sampleStatistics(size, 42, new ForkJoinPool(1));
+		StatisticsAccumulator<Integer> many = model.sampleStatistics(size, 42, new ForkJoinPool(4));
+
+		assertEquals(size, one.getNumRankings());
+		assertArrayEquals(one.getPairwiseMatrix(), many.getPairwiseMatrix());
+		assertArrayEquals(one.getPositionMatrix(), many.getPositionMatrix());
+		assertArrayEquals(one.getStatistics().getAdjacentMatrix(), many.getStatistics().getAdjacentMatrix());
+	}
+
+}
@@ -0,0 +1,106 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ApproximateKemenyTest {
+
+	@Test
+	public void testKwikSort() {
+		// Every voter agrees on 0 > 1 > ... > 9
+		int m = 10;
+		long[][] margin = new long[m][m];
+		for( int a = 0; a < m; a++ )
+			for( int b = 0; b < m; b++ )
+				margin[a][b] = a < b ? 3 : a > b ? -3 : 0;
+
+		int[] order = new int[] {5, 3, 9, 0, 1, 8, 2, 7, 6, 4};
+		ApproximateKemeny.kwikSort(margin, order, new int[m], 0, m, new Random(1));
+
+		assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, order);
+	}
+
+	@Test
+	public void testBordaOrder() {
+		// Scores past 2^31, as with many candidates and millions of voters
+		int n = 2000000000;
+		long[][] w = {
+			{0, n / 2, n / 2, n / 2},
+			{n / 2, 0, n, n},
+			{n / 2, 0, 0, n},
+			{n / 2, 0, 0, 0},
+		};
+
+		assertArrayEquals(new int[] {1, 0, 2, 3}, ApproximateKemeny.bordaOrder(w));
+	}
+
+	@Test
+	public void testCondorcetOrder() {
+		PreferenceProfile<Integer> prefs = new PreferenceProfile<Integer>(new Integer[][] {
+			{4, 3, 2, 1, 5},
+			{3, 4, 2, 1, 5},
+			{4, 2, 3, 5, 1},
+		});
+
+		assertEquals(Arrays.asList(4, 3, 2, 1, 5), new ApproximateKemeny().getRanking(prefs));
+	}
+
+	@Test
+	public void testSmall() {
+		Random rnd = new Random(2);
+		ApproximateKemeny approximate = new ApproximateKemeny();
+
+		for( int i = 0; i < 50; i++ ) {
+			PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(1 + 2 * rnd.nextInt(5), 3 + rnd.nextInt(6), rnd);
+			long[][] wins = prefs.asIntProfile().getPairwiseMatrix();
+
+			KemenyBranchAndBound.Solution<Integer> solution = approximate.solve(prefs);
+			KemenyBranchAndBound.Solution<Integer> exact = new KemenyBranchAndBound().solve(prefs);
+
+			assertTrue(solution.getDisagreements() >= exact.getDisagreements());
+			assertTrue(solution.getLowerBound() <= exact.getDisagreements());
+
+			List<Integer> ranking = solution.getRanking();
+			int[] order = new int[ranking.size()];
+			for( int j = 0; j < order.length; j++ ) order[j] = ranking.get(j);
+			assertEquals(solution.getDisagreements(), Kemeny.disagreements(wins, order));
+			// No single move improves it
+			assertEquals(solution.getDisagreements(), Kemeny.localSearch(wins, order));
+		}
+	}
+
+	@Test
+	public void testThousand() {
+		int m = 1000;
+		Random rnd = new Random(3);
+
+		// Pairwise wins of 15 voters with noisy utilities
+		long[][] wins = new long[m][m];
+		double[] u = new double[m];
+		for( int v = 0; v < 15; v++ ) {
+			for( int a = 0; a < m; a++ ) u[a] = -0.05 * a + 3 * rnd.nextGaussian();
+			for( int a = 0; a < m; a++ )
+				for( int b = 0; b < m; b++ )
+					if( u[a] > u[b] ) wins[a][b]++;
+		}
+
+		ApproximateKemeny approximate = new ApproximateKemeny();
+		long start = System.nanoTime();
+		int[] order = approximate.getOrder(wins);
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		System.out.println(m + " candidates: " + Kemeny.disagreements(wins, order) + " disagreements in " + elapsed + " ms");
+
+		boolean[] seen = new boolean[m];
+		for( int c : order ) seen[c] = true;
+		for( boolean b : seen ) assertTrue(b);
+
+		// Same seed, same order
+		assertArrayEquals(order, approximate.getOrder(wins));
+	}
+
+}
@@ -0,0 +1,90 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class InstantRunoffTest {
+
+	/**
+	 * Counts every ballot again in each round.
+	 */
+	static List<Integer> rescan(Integer[][] rankings, int m) {
+		boolean[] eliminated = new boolean[m];
+		LinkedList<Integer> order = new LinkedList<Integer>();
+
+		for( int round = 0; round < m; round++ ) {
+			int[] tally = new int[m];
+			for( Integer[] ranking : rankings )
+				for( Integer c : ranking )
+					if( !eliminated[c] ) {
+						tally[c]++;
+						break;
+					}
+
+			int worst = -1;
+			for( int c = 0; c < m; c++ )
+				if( !eliminated[c] && (worst < 0 || tally[c] <= tally[worst]) ) worst = c;
+			eliminated[worst] = true;
+			order.addFirst(worst);
+		}
+		return order;
+	}
+
+	@Test
+	public void testTennessee() {
+		PreferenceProfile<Character> profile = PairwiseVotingRuleTest.TENNESSEE;
+
+		// Chattanooga, then Nashville are eliminated, and Knoxville wins with 58
+		assertEquals(Arrays.asList('K', 'M', 'N', 'C'), new InstantRunoff().getRanking(profile));
+	}
+
+	@Test
+	public void testRescan() {
+		Random rnd = new Random(1);
+
+		for( int trial = 0; trial < 20; trial++ ) {
+			int m = 2 + rnd.nextInt(6);
+
+			// A few ballots repeated many times, as in a large election
+			List<Integer[]> kinds = new ArrayList<Integer[]>();
+			for( int k = 0; k < 10; k++ ) {
+				Integer[] ranking = new Integer[m];
+				for( int i = 0; i < m; i++ ) ranking[i] = i;
+				Collections.shuffle(Arrays.asList(ranking), rnd);
+				kinds.add(ranking);
+			}
+			Integer[][] rankings = new Integer[300][];
+			for( int i = 0; i < rankings.length; i++ ) rankings[i] = kinds.get(rnd.nextInt(kinds.size()));
+
+			List<Integer> ranking = new InstantRunoff().getRanking(new PreferenceProfile<Integer>(rankings));
+			assertEquals(rescan(rankings, m), ranking);
+		}
+	}
+
+	@Test
+	public void testSingleSeat() {
+		Random rnd = new Random(2);
+
+		// With one seat the quota is a majority, and the single transferable vote elects the same winner
+		for( int trial = 0; trial < 20; trial++ ) {
+			Integer[][] rankings = new Integer[101][6];
+			for( Integer[] ranking : rankings ) {
+				for( int i = 0; i < ranking.length; i++ ) ranking[i] = i;
+				Collections.shuffle(Arrays.asList(ranking), rnd);
+			}
+			PreferenceProfile<Integer> profile = new PreferenceProfile<Integer>(rankings);
+
+			assertEquals(new InstantRunoff().getRanking(profile).get(0),
+					new SingleTransferableVote(1).getWinners(profile).get(0));
+		}
+	}
+
+}
@@ -0,0 +1,209 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.andrewmao.math.RandomSelection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IntPreferenceProfileTest {
+
+	Character[][] rankings = {
+			{'b', 'a', 'c', 'd'},
+			{'a', 'b', 'd', 'c'},
+			{'d', 'c', 'b', 'a'},
+	};
+
+	PreferenceProfile<Character> prefs;
+	IntPreferenceProfile<Character> ip;
+
+	@Before
+	public void setUp() throws Exception {
+		prefs = new PreferenceProfile<Character>(rankings);
+		ip = prefs.asIntProfile();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	@Test
+	public void testInterning() {
+		assertSame(ip, prefs.asIntProfile());
+		assertSame(ip, ip.asIntProfile());
+
+		assertEquals(4, ip.getNumCandidates());
+		assertEquals(3, ip.getNumRankings());
+		assertArrayEquals(new Character[] {'a', 'b', 'c', 'd'}, ip.getSortedCandidates());
+
+		assertEquals(2, ip.getId('c'));
+		assertEquals(-1, ip.getId('z'));
+
+		assertArrayEquals(new int[] {1, 0, 2, 3}, ip.getRanking(0));
+		assertArrayEquals(new int[] {3, 2, 1, 0}, ip.getRanking(2));
+
+		for( int r = 0; r < rankings.length; r++ ) {
+			for( int i = 0; i < 4; i++ ) {
+				int c = ip.candidateAt(r, i);
+				assertEquals(rankings[r][i], ip.getCandidate(c));
+				assertEquals(i, ip.positionOf(r, c));
+			}
+		}
+
+		assertArrayEquals(rankings, ip.getProfile());
+	}
+
+	@Test
+	public void testFromIds() {
+		IntPreferenceProfile<Character> built = IntPreferenceProfile.fromIds(
+				new Character[] {'a', 'b', 'c', 'd'},
+				new int[][] { {1, 0, 2, 3}, {0, 1, 3, 2}, {3, 2, 1, 0} });
+
+		assertArrayEquals(rankings, built.getProfile());
+		assertEquals(prefs.toString(), built.toString());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMismatchedCandidates() {
+		new PreferenceProfile<Character>(new Character[][] {
+				{'a', 'b', 'c'},
+				{'a', 'b', 'd'},
+		}).asIntProfile();
+	}
+
+	@Test
+	public void testMixedCandidates() {
+		PreferenceProfile<Character> mixed = new PreferenceProfile<Character>(new Character[][] {
+				{'a', 'b', 'c'},
+				{'b', 'd', 'a'},
+				{'c', 'a'},
+		});
+
+		assertArrayEquals(new Character[] {'a', 'b', 'c', 'd'}, mixed.getSortedCandidates());
+
+		// Rankings without one of the pair don't count
+		Comparator<Character> natural = new Comparator<Character>() {
+			public int compare(Character a, Character b) { return a.compareTo(b); }
+		};
+		assertEquals(1, mixed.getNumCorrect('a', 'b', natural));
+		assertEquals(1, mixed.getNumCorrect('a', 'c', natural));
+		assertEquals(0, mixed.getNumCorrect('c', 'd', natural));
+
+		assertEquals(1, mixed.getPairwiseCounts().get('b', 'd').intValue());
+		assertEquals(0, mixed.getPairwiseCounts().get('d', 'b').intValue());
+		assertEquals(2, mixed.getPairwiseCounts().get('a', 'b').intValue() + mixed.getPairwiseCounts().get('b', 'a').intValue());
+
+		Map<Character, int[]> positions = mixed.getPositionCounts();
+		assertArrayEquals(new int[] {1, 1, 1}, positions.get('a'));
+		assertArrayEquals(new int[] {0, 1, 0}, positions.get('d'));
+
+		List<int[]> indices = mixed.getIndices(Arrays.asList('a', 'b', 'c', 'd'));
+		assertArrayEquals(new int[] {2, 4, 1}, indices.get(1));
+		assertArrayEquals(new int[] {3, 1}, indices.get(2));
+
+		assertEquals(2, mixed.copyRandomSubset(2, new Random(1)).getNumRankings());
+	}
+
+	@Test
+	public void testMatrices() {
+		assertArrayEquals(new long[][] {
+				{0, 1, 2, 2},
+				{2, 0, 2, 2},
+				{1, 1, 0, 1},
+				{1, 1, 2, 0},
+		}, ip.getPairwiseMatrix());
+
+		assertArrayEquals(new long[][] {
+				{0, 1, 1, 0},
+				{2, 0, 0, 1},
+				{0, 1, 0, 1},
+				{0, 0, 2, 0},
+		}, ip.getAdjacentMatrix());
+
+		assertArrayEquals(new long[][] {
+				{1, 1, 0, 1},
+				{1, 1, 1, 0},
+				{0, 1, 1, 1},
+				{1, 0, 1, 1},
+		}, ip.getPositionMatrix());
+
+		Map<Character, int[]> counts = prefs.getPositionCounts();
+		assertArrayEquals(new int[] {1, 0, 1, 1}, counts.get('d'));
+
+		assertEquals(2, prefs.getPairwiseCounts().get('b', 'd').intValue());
+		assertEquals(1, prefs.getPairwiseCounts().get('d', 'b').intValue());
+	}
+
+	@Test
+	public void testStatistics() {
+		ProfileStatistics<Character> stats = prefs.getStatistics();
+		assertSame(stats, ip.getStatistics());
+		assertEquals(3, stats.getNumRankings());
+		assertArrayEquals(ip.getPairwiseMatrix(), stats.getPairwiseMatrix());
+		assertArrayEquals(ip.getAdjacentMatrix(), stats.getAdjacentMatrix());
+		assertArrayEquals(ip.getPositionMatrix(), stats.getPositionMatrix());
+
+		// Callers get their own copies of the matrices
+		ip.getPairwiseMatrix()[0][1] = 100;
+		assertEquals(1, stats.getPairwiseMatrix()[0][1]);
+
+		// Adding to a multiset recomputes them
+		RankingMultiset<Character> counts = RankingMultiset.of(prefs);
+		assertEquals(1, counts.getStatistics().getPairwiseMatrix()[0][1]);
+		counts.add(new int[] {0, 1, 2, 3}, 2);
+		assertEquals(3, counts.getStatistics().getPairwiseMatrix()[0][1]);
+		assertEquals(5, counts.getStatistics().getNumRankings());
+	}
+
+	@Test
+	public void testIndices() {
+		List<Character> ordering = Arrays.asList('d', 'c', 'b', 'a');
+		List<int[]> indices = prefs.getIndices(ordering);
+
+		assertEquals(3, indices.size());
+		assertArrayEquals(new int[] {3, 4, 2, 1}, indices.get(0));
+		assertArrayEquals(new int[] {4, 3, 1, 2}, indices.get(1));
+		assertArrayEquals(new int[] {1, 2, 3, 4}, indices.get(2));
+	}
+
+	@Test
+	public void testNumCorrect() {
+		Comparator<Character> comp = new Comparator<Character>() {
+			@Override
+			public int compare(Character o1, Character o2) {
+				return o1.compareTo(o2);
+			}
+		};
+
+		assertEquals(1, prefs.getNumCorrect('a', 'b', comp));
+		assertEquals(1, prefs.getNumCorrect('b', 'a', comp));
+		assertEquals(2, prefs.getNumCorrect('b', 'd', comp));
+		assertEquals(3, prefs.getNumCorrect('c', 'c', comp));
+		assertEquals(0, prefs.getNumCorrect('a', 'z', comp));
+	}
+
+	@Test
+	public void testRandomSubset() {
+		int n = 100;
+		Integer[][] profile = new Integer[n][];
+		for( int i = 0; i < n; i++ )
+			profile[i] = RandomSelection.shuffle(new Integer[] {1, 2, 3, 4, 5}, null);
+
+		PreferenceProfile<Integer> big = new PreferenceProfile<Integer>(profile);
+
+		PreferenceProfile<Integer> sub1 = big.copyRandomSubset(10, new Random(1));
+		PreferenceProfile<Integer> sub2 = big.asIntProfile().copyRandomSubset(10, new Random(1));
+
+		assertEquals(10, sub2.getNumRankings());
+		assertArrayEquals(sub1.getProfile(), sub2.getProfile());
+	}
+
+}
@@ -0,0 +1,68 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class KemenyBranchAndBoundTest {
+
+	@Test
+	public void testSameAsKemeny() {
+		Random rnd = new Random(1);
+		Kemeny kemeny = new Kemeny();
+		KemenyBranchAndBound bnb = new KemenyBranchAndBound();
+
+		for( int i = 0; i < 50; i++ ) {
+			PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(1 + 2 * rnd.nextInt(5), 3 + rnd.nextInt(8), rnd);
+
+			KemenyBranchAndBound.Solution<Integer> solution = bnb.solve(prefs);
+			List<List<Integer>> rankings = kemeny.getAllRankings(prefs);
+
+			assertTrue(solution.isOptimal());
+			assertEquals(0, solution.getGap());
+			assertTrue(rankings.contains(solution.getRanking()));
+		}
+	}
+
+	@Test
+	public void testTwenty() {
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(15, 20, new Random(2));
+		long[][] wins = prefs.asIntProfile().getPairwiseMatrix();
+
+		KemenyBranchAndBound.Solution<Integer> solution = new KemenyBranchAndBound().solve(prefs);
+		List<Integer> ranking = new Kemeny().getRanking(prefs);
+
+		int[] order = new int[ranking.size()];
+		for( int i = 0; i < order.length; i++ ) order[i] = ranking.get(i);
+
+		assertTrue(solution.isOptimal());
+		assertEquals(Kemeny.disagreements(wins, order), solution.getDisagreements());
+	}
+
+	@Test
+	public void testDeadline() {
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(15, 60, new Random(3));
+		long[][] wins = prefs.asIntProfile().getPairwiseMatrix();
+
+		long start = System.nanoTime();
+		KemenyBranchAndBound.Solution<Integer> solution = new KemenyBranchAndBound(200, TimeUnit.MILLISECONDS).solve(prefs);
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		System.out.println(solution + " in " + elapsed + " ms");
+
+		assertTrue(elapsed < 2000);
+		assertEquals(60, solution.getRanking().size());
+		assertTrue(solution.getLowerBound() <= solution.getDisagreements());
+
+		// The bound is at least the losing side of every pair
+		long pairwiseMin = 0;
+		for( int a = 0; a < wins.length; a++ )
+			for( int b = a + 1; b < wins.length; b++ )
+				pairwiseMin += Math.min(wins[a][b], wins[b][a]);
+		assertTrue(solution.getLowerBound() >= pairwiseMin);
+	}
+
+}
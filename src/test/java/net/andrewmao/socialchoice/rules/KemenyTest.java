@@ -3,8 +3,10 @@ package net.andrewmao.socialchoice.rules;
 import static org.junit.Assert.*;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import net.andrewmao.models.discretechoice.ThurstoneMostellerModel;
 import net.andrewmao.models.noise.CondorcetEstimator;
@@ -16,7 +18,6 @@ import net.andrewmao.socialchoice.rules.PreferenceProfile;
 
 import org.junit.After;
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 
 
@@ -166,7 +167,7 @@ public class KemenyTest {
 		}		
 	}
 	
-	@Ignore
+	@Test
 	public void testRankingsTen() {
 		
 		PreferenceProfile<Integer> prefs = new PreferenceProfile<Integer>(new Integer[][] {
@@ -181,7 +182,7 @@ public class KemenyTest {
 		assertTrue(rankings.contains(Arrays.asList(new Integer[] {2, 1, 3, 4, 5, 6, 7, 8, 9, 10})));
 	}
 
-	@Ignore
+	@Test
 	public void testRankingsTenTwo() {
 		
 		PreferenceProfile<Integer> prefs = new PreferenceProfile<Integer>(new Integer[][] {
@@ -196,4 +197,116 @@ public class KemenyTest {
 		assertTrue(rankings.contains(Arrays.asList(new Integer[] {2, 3, 1, 4, 5, 6, 7, 8, 9, 10})));
 		assertTrue(rankings.contains(Arrays.asList(new Integer[] {2, 1, 3, 4, 5, 6, 7, 8, 9, 10})));
 	}
+
+	@Test
+	public void testRankingsTwenty() {
+		Integer[] ranking = new Integer[20];
+		for( int i = 0; i < ranking.length; i++ ) ranking[i] = ranking.length - i;
+		Integer[] swapped = ranking.clone();
+		swapped[0] = ranking[1];
+		swapped[1] = ranking[0];
+		
+		PreferenceProfile<Integer> prefs = new PreferenceProfile<Integer>(new Integer[][] {
+			ranking, ranking, swapped
+				});
+		
+		List<List<Integer>> rankings = kemeny.getAllRankings(prefs);
+		
+		assertEquals(1, rankings.size());
+		assertEquals(Arrays.asList(ranking), rankings.get(0));
+		assertEquals(1, Kemeny.disagreements(prefs.asIntProfile().getPairwiseMatrix(), 
+				new int[] {19, 18, 17, 16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1, 0}));
+	}
+
+	@Test
+	public void testComponents() {
+		// 0 > 1 > 2 > 0 is a cycle, 3 is tied with 4, and both lose to the cycle
+		long[][] wins = new long[][] {
+			{0, 2, 1, 3, 3},
+			{1, 0, 2, 3, 3},
+			{2, 1, 0, 3, 3},
+			{0, 0, 0, 0, 1},
+			{0, 0, 0, 1, 0},
+		};
+		
+		int[][] components = Kemeny.getComponents(wins);
+		
+		assertEquals(2, components.length);
+		assertArrayEquals(new int[] {0, 1, 2}, components[0]);
+		assertArrayEquals(new int[] {3, 4}, components[1]);
+		
+		List<int[]> orders = Kemeny.getOptimalOrders(wins, SharedPool.get());
+		assertEquals(6, orders.size());
+		for( int[] order : orders ) assertEquals(5, Kemeny.disagreements(wins, order));
+	}
+
+	@Test
+	public void testLocalSearch() {
+		long[][] wins = new long[][] {
+			{0, 3, 2},
+			{0, 0, 1},
+			{1, 2, 0},
+		};
+
+		// Moving 0 from the bottom to the top
+		int[] order = new int[] {1, 2, 0};
+
+		assertEquals(2, Kemeny.localSearch(wins, order));
+		assertArrayEquals(new int[] {0, 2, 1}, order);
+	}
+
+	@Test
+	public void testRankingsHundred() {
+		// Too many candidates for one table, but every group of five beats the next
+		Integer[] ranking = new Integer[100];
+		for( int i = 0; i < ranking.length; i++ ) ranking[i] = i + 1;
+		Integer[] rotated = ranking.clone();
+		Integer[] rotatedAgain = ranking.clone();
+		for( int i = 0; i < ranking.length; i += 5 ) {
+			for( int j = 0; j < 5; j++ ) {
+				rotated[i + j] = ranking[i + (j + 1) % 5];
+				rotatedAgain[i + j] = ranking[i + (j + 2) % 5];
+			}
+		}
+		
+		PreferenceProfile<Integer> prefs = new PreferenceProfile<Integer>(new Integer[][] {
+			ranking, ranking, rotated, rotatedAgain
+				});
+		
+		List<List<Integer>> rankings = kemeny.getAllRankings(prefs);
+		
+		assertEquals(1, rankings.size());
+		assertEquals(Arrays.asList(ranking), rankings.get(0));
+	}
+
+	@Test
+	public void testOneOfManyTies() {
+		// A ranking and its reverse tie every pair, so all 18! orders are optimal
+		int m = 18;
+		Integer[] forward = new Integer[m], backward = new Integer[m];
+		for( int i = 0; i < m; i++ ) {
+			forward[i] = i;
+			backward[i] = m - 1 - i;
+		}
+		PreferenceProfile<Integer> prefs = new PreferenceProfile<Integer>(new Integer[][] { forward, backward });
+
+		List<Integer> ranking = kemeny.getRanking(prefs);
+		assertEquals(m, new HashSet<Integer>(ranking).size());
+
+		// Every ranking returned is one of the optimal ones, and each of them can be returned
+		PreferenceProfile<Integer> small = new PreferenceProfile<Integer>(new Integer[][] {
+			{3, 2, 1, 4},
+			{2, 1, 3, 4},
+			{1, 3, 2, 4},
+		});
+		List<List<Integer>> all = kemeny.getAllRankings(small);
+		Set<List<Integer>> seen = new HashSet<List<Integer>>();
+		for( int i = 0; i < 200; i++ ) {
+			List<Integer> one = kemeny.getRanking(small);
+			assertTrue(all.contains(one));
+			seen.add(one);
+		}
+		assertEquals(all.size(), seen.size());
+	}
+
 }
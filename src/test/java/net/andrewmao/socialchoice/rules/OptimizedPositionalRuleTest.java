@@ -0,0 +1,262 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.andrewmao.math.lp.SimplexSolver;
+
+import org.junit.Test;
+
+public class OptimizedPositionalRuleTest {
+
+	static final double TOL = 1e-6;
+
+	/**
+	 * Profiles of noisy copies of 0 > 1 > ... > m - 1.
+	 */
+	static PreferenceProfileList<Integer> noisyProfiles(int m, int profiles, int voters, Random rnd) {
+		List<PreferenceProfile<Integer>> list = new ArrayList<PreferenceProfile<Integer>>();
+		for( int p = 0; p < profiles; p++ ) {
+			Integer[][] rankings = new Integer[voters][m];
+			for( int v = 0; v < voters; v++ ) {
+				for( int i = 0; i < m; i++ ) rankings[v][i] = i;
+				for( int i = 0; i < m - 1; i++ )
+					if( rnd.nextDouble() < 0.4 ) Collections.swap(Arrays.asList(rankings[v]), i, i + 1);
+			}
+			list.add(new PreferenceProfile<Integer>(rankings));
+		}
+		return new PreferenceProfileList<Integer>(list);
+	}
+
+	static void checkScores(double[] scores, double normalization) {
+		double sum = 0;
+		for( int i = 0; i < scores.length; i++ ) {
+			sum += scores[i];
+			assertTrue(scores[i] >= -TOL);
+			if( i > 0 ) assertTrue(scores[i - 1] >= scores[i] - TOL);
+		}
+		assertEquals(normalization, sum, TOL);
+	}
+
+	/**
+	 * @return the number of pairs that are tied or out of order in the totals of each profile
+	 */
+	static int countFlips(PreferenceProfileList<Integer> profiles, double[] scores, double separation) {
+		int flips = 0;
+		for( PreferenceProfile<Integer> profile : profiles ) {
+			long[][] counts = profile.getStatistics().getPositionMatrix();
+			double[] totals = new double[counts.length];
+			for( int c = 0; c < counts.length; c++ )
+				for( int i = 0; i < counts.length; i++ ) totals[c] += counts[c][i] * scores[i];
+
+			for( int a = 0; a < totals.length; a++ )
+				for( int b = a + 1; b < totals.length; b++ )
+					if( totals[a] - totals[b] < separation ) flips++;
+		}
+		return flips;
+	}
+
+	@Test
+	public void testVanillaFlips() {
+		Random rnd = new Random(1);
+		int m = 4;
+		double normalization = 1;
+
+		for( int trial = 0; trial < 5; trial++ ) {
+			PreferenceProfileList<Integer> profiles = noisyProfiles(m, 3, 5, rnd);
+
+			MinFlipMistakesRule.Vanilla<Integer> rule = new MinFlipMistakesRule.Vanilla<Integer>();
+			rule.optimize(profiles, normalization);
+			checkScores(rule.scores, normalization);
+
+			int flips = countFlips(profiles, rule.scores, MinFlipMistakesRule.SEPARATION * normalization * 0.99);
+
+			// No scores on a grid do better
+			assertTrue(flips <= fewestGridFlips(profiles));
+		}
+	}
+
+	/**
+	 * @return the fewest flips of four scores on a grid
+	 */
+	static int fewestGridFlips(PreferenceProfileList<Integer> profiles) {
+		int fewest = Integer.MAX_VALUE;
+		int step = 40;
+		for( int a = 0; a <= step; a++ )
+			for( int b = 0; b <= a; b++ )
+				for( int c = 0; c <= b; c++ ) {
+					int d = step - a - b - c;
+					if( d < 0 || d > c ) continue;
+					double[] grid = { 1.0 * a / step, 1.0 * b / step, 1.0 * c / step, 1.0 * d / step };
+					fewest = Math.min(fewest, countFlips(profiles, grid, MinFlipMistakesRule.SEPARATION));
+				}
+		return fewest;
+	}
+
+	@Test
+	public void testMergedProfiles() {
+		Random rnd = new Random(4);
+		PreferenceProfileList<Integer> distinct = noisyProfiles(4, 3, 5, rnd);
+
+		// Repeats, and a unanimous profile whose pairs are all decided
+		Integer[][] same = new Integer[5][];
+		for( int v = 0; v < same.length; v++ ) same[v] = new Integer[] {0, 1, 2, 3};
+		List<PreferenceProfile<Integer>> list = new ArrayList<PreferenceProfile<Integer>>();
+		for( PreferenceProfile<Integer> profile : distinct ) {
+			list.add(profile);
+			list.add(profile);
+		}
+		list.add(new PreferenceProfile<Integer>(same));
+		list.add(new PreferenceProfile<Integer>(same.clone()));
+		PreferenceProfileList<Integer> profiles = new PreferenceProfileList<Integer>(list);
+
+		MinFlipMistakesRule.Vanilla<Integer> rule = new MinFlipMistakesRule.Vanilla<Integer>();
+		rule.optimize(profiles, 1);
+		assertEquals(4, rule.blocks.size());
+		assertEquals(profiles.size(), rule.getTotalScores().length);
+
+		int flips = countFlips(profiles, rule.scores, MinFlipMistakesRule.SEPARATION * 0.99);
+		assertEquals(fewestGridFlips(profiles), flips);
+	}
+
+	@Test
+	public void testMinMargins() {
+		Random rnd = new Random(2);
+		PreferenceProfileList<Integer> profiles = noisyProfiles(4, 2, 6, rnd);
+
+		List<OptimizedPositionalRule<Integer>> rules = new ArrayList<OptimizedPositionalRule<Integer>>();
+		rules.add(new MinFlipMistakesRule.MaxOverallMinMargin<Integer>());
+		rules.add(new MinFlipMistakesRule.MaxSumMinMargin<Integer>());
+		rules.add(new MinFlipMistakesRule.MaxMinFirstLastMargin<Integer>());
+		rules.add(new MinFlipMistakesRule.MaxSumMinEachMargin<Integer>());
+		rules.add(new MinFirstMistakesRule<Integer>());
+
+		MinFlipMistakesRule.Vanilla<Integer> vanilla = new MinFlipMistakesRule.Vanilla<Integer>();
+		vanilla.optimize(profiles, 1);
+		int fewest = countFlips(profiles, vanilla.scores, MinFlipMistakesRule.SEPARATION * 0.99);
+
+		for( OptimizedPositionalRule<Integer> rule : rules ) {
+			rule.optimize(profiles, 1);
+			checkScores(rule.scores, 1);
+
+			// The margins only break ties among the fewest flips
+			if( rule instanceof MinFlipMistakesRule )
+				assertEquals(rule.toString(), fewest, countFlips(profiles, rule.scores, MinFlipMistakesRule.SEPARATION * 0.99));
+		}
+	}
+
+	@Test
+	public void testMarginLPs() {
+		PreferenceProfile<Integer> profile = new PreferenceProfile<Integer>(new Integer[][] {
+			{0, 1, 2},
+			{0, 2, 1},
+			{1, 0, 2},
+		});
+		PreferenceProfileList<Integer> profiles = PreferenceProfileList.singleton(profile);
+
+		// Totals are (2a + b, a + b + c, b + 2c); the 1-2 margin a - c is largest at plurality
+		MaxOneTwoMarginRule<Integer> oneTwo = new MaxOneTwoMarginRule<Integer>();
+		oneTwo.optimize(profiles, 1);
+		assertArrayEquals(new double[] {1, 0, 0}, oneTwo.scores, TOL);
+		assertArrayEquals(new double[] {2, 1, 0}, oneTwo.getTotalScores()[0], TOL);
+
+		// The first-last margin 2a - 2c is also largest at plurality
+		MaxSumMarginRule<Integer> sum = new MaxSumMarginRule<Integer>();
+		sum.optimize(profiles, 1);
+		assertArrayEquals(new double[] {1, 0, 0}, sum.scores, TOL);
+
+		// The smaller of a - c and a - c is the same
+		MaximinMarginRule<Integer> maximin = new MaximinMarginRule<Integer>();
+		maximin.optimize(profiles, 1);
+		assertArrayEquals(new double[] {1, 0, 0}, maximin.scores, TOL);
+
+		MaxWeightedMarginRule<Integer> weighted = new MaxWeightedMarginRule<Integer>();
+		weighted.optimize(profiles, 1);
+		checkScores(weighted.scores, 1);
+	}
+
+	@Test
+	public void testIncremental() {
+		Random rnd = new Random(3);
+		PreferenceProfileList<Integer> profiles = noisyProfiles(4, 6, 5, rnd);
+
+		MinFlipMistakesRule.MaxSumMinMargin<Integer> incremental = new MinFlipMistakesRule.MaxSumMinMargin<Integer>();
+		incremental.setIncremental(true);
+
+		// Leave out each profile in turn, as in cross-validation
+		for( int fold = 0; fold < profiles.size(); fold++ ) {
+			List<PreferenceProfile<Integer>> train = new ArrayList<PreferenceProfile<Integer>>(profiles);
+			train.remove(fold);
+			PreferenceProfileList<Integer> list = new PreferenceProfileList<Integer>(train);
+
+			MinFlipMistakesRule.MaxSumMinMargin<Integer> fresh = new MinFlipMistakesRule.MaxSumMinMargin<Integer>();
+			fresh.optimize(list, 1);
+			incremental.optimize(list, 1 + fold);
+
+			checkScores(incremental.scores, 1 + fold);
+			assertEquals(list.size(), incremental.getTotalScores().length);
+			assertEquals(countFlips(list, fresh.scores, MinFlipMistakesRule.SEPARATION * 0.99),
+					countFlips(list, incremental.scores, MinFlipMistakesRule.SEPARATION * (1 + fold) * 0.99));
+		}
+	}
+
+	@Test
+	public void testVertices() {
+		Random rnd = new Random(5);
+		int m = 5;
+
+		for( int trial = 0; trial < 10; trial++ ) {
+			// Uniformly random rankings, so that any vertex can be best
+			List<PreferenceProfile<Integer>> list = new ArrayList<PreferenceProfile<Integer>>();
+			for( int p = 0; p < 10; p++ ) {
+				Integer[][] rankings = new Integer[3][m];
+				for( int v = 0; v < rankings.length; v++ ) {
+					for( int i = 0; i < m; i++ ) rankings[v][i] = i;
+					Collections.shuffle(Arrays.asList(rankings[v]), rnd);
+				}
+				list.add(new PreferenceProfile<Integer>(rankings));
+			}
+			PreferenceProfileList<Integer> profiles = new PreferenceProfileList<Integer>(list);
+
+			List<OptimizedPositionalRule<Integer>> vertices = new ArrayList<OptimizedPositionalRule<Integer>>();
+			List<OptimizedPositionalRule<Integer>> lps = new ArrayList<OptimizedPositionalRule<Integer>>();
+			vertices.add(new MaxWeightedMarginRule<Integer>());
+			lps.add(new MaxWeightedMarginRule<Integer>());
+			vertices.add(new MaxOneTwoMarginRule<Integer>());
+			lps.add(new MaxOneTwoMarginRule<Integer>());
+			vertices.add(new MaxSumMarginRule<Integer>());
+			lps.add(new MaxSumMarginRule<Integer>());
+
+			for( int r = 0; r < vertices.size(); r++ ) {
+				OptimizedPositionalRule<Integer> vertex = vertices.get(r);
+				OptimizedPositionalRule<Integer> lp = lps.get(r);
+				lp.setSolver(new SimplexSolver());
+
+				vertex.optimize(profiles, 2);
+				lp.optimize(profiles, 2);
+				checkScores(vertex.scores, 2);
+				assertTrue(vertex.isOptimal());
+				assertTrue(lp.isOptimal());
+
+				// Same objective as the linear program
+				double[] weights = new double[m];
+				for( PreferenceProfile<Integer> profile : profiles ) {
+					double[] w = vertex.getPositionWeights(profile.getPositionCounts().values().toArray(new int[m][]));
+					for( int k = 0; k < m; k++ ) weights[k] += w[k];
+				}
+				double vertexValue = 0, lpValue = 0;
+				for( int k = 0; k < m; k++ ) {
+					vertexValue += weights[k] * vertex.scores[k];
+					lpValue += weights[k] * lp.scores[k];
+				}
+				assertEquals(lpValue, vertexValue, TOL);
+			}
+		}
+	}
+
+}
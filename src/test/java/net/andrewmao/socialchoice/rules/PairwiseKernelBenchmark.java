@@ -0,0 +1,75 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import net.andrewmao.math.RandomSelection;
+
+/**
+ * Times the pairwise kernel with increasing numbers of threads, against the single-threaded loop.
+ * Arguments: number of rankings and number of candidates.
+ *
+ * @author mao
+ *
+ */
+public class PairwiseKernelBenchmark {
+
+	static final int TRIALS = 5;
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int m = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+		Random rnd = new Random(1);
+		Integer[] cands = new Integer[m];
+		for( int i = 0; i < m; i++ ) cands[i] = i;
+
+		int[][] rankings = new int[n][m];
+		for( int i = 0; i < n; i++ ) {
+			Integer[] ranking = RandomSelection.shuffle(cands.clone(), rnd);
+			for( int j = 0; j < m; j++ ) rankings[i][j] = ranking[j];
+		}
+		IntPreferenceProfile<Integer> ip = IntPreferenceProfile.fromIds(cands, rankings);
+
+		System.out.printf("%d rankings of %d candidates\n", n, m);
+
+		long best = Long.MAX_VALUE;
+		for( int t = 0; t < TRIALS; t++ ) {
+			long start = System.nanoTime();
+			simpleCount(ip);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		double baseline = best / 1e6;
+		System.out.printf("simple loop: %.1f ms\n", baseline);
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		for( int threads = 1; threads <= cores; threads *= 2 ) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+
+			best = Long.MAX_VALUE;
+			for( int t = 0; t < TRIALS; t++ ) {
+				long start = System.nanoTime();
+				PairwiseKernel.count(ip, pool);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			pool.shutdown();
+
+			double ms = best / 1e6;
+			System.out.printf("kernel, %d threads: %.1f ms (%.1fx)\n", threads, ms, baseline / ms);
+		}
+	}
+
+	static int[][] simpleCount(IntPreferenceProfile<?> ip) {
+		int m = ip.getNumCandidates();
+		int[][] wins = new int[m][m];
+		for( int r = 0; r < ip.getNumRows(); r++ ) {
+			for( int a = 0; a < m; a++ ) {
+				int pa = ip.positionOf(r, a);
+				for( int b = a + 1; b < m; b++ )
+					if( pa < ip.positionOf(r, b) ) wins[a][b]++;
+			}
+		}
+		return wins;
+	}
+
+}
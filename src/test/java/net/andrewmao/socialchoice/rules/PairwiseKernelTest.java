@@ -0,0 +1,71 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PairwiseKernelTest {
+
+	Random rnd;
+	ForkJoinPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+		pool = new ForkJoinPool(3);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.shutdown();
+	}
+
+	IntPreferenceProfile<Integer> randomProfile(int n, int m) {
+		return IntPreferenceProfile.intern(TestProfiles.randomRankings(n, m, rnd));
+	}
+
+	static long[][] naiveCount(IntPreferenceProfile<?> ip) {
+		int m = ip.getNumCandidates();
+		long[][] wins = new long[m][m];
+		for( int r = 0; r < ip.getNumRows(); r++ )
+			for( int a = 0; a < m; a++ )
+				for( int b = 0; b < m; b++ )
+					if( ip.positionOf(r, a) < ip.positionOf(r, b) ) wins[a][b] += ip.getWeight(r);
+		return wins;
+	}
+
+	@Test
+	public void testTileSizes() {
+		// Candidates that fill the tiles exactly, and ones that leave partial tiles
+		for( int m : new int[] {2, 5, PairwiseKernel.TILE, PairwiseKernel.TILE + 1, 150} ) {
+			IntPreferenceProfile<Integer> ip = randomProfile(37, m);
+			assertArrayEquals(naiveCount(ip), PairwiseKernel.count(ip, pool));
+		}
+	}
+
+	@Test
+	public void testWeightedAndViews() {
+		IntPreferenceProfile<Integer> ip = randomProfile(500, 3);
+		RankingMultiset<Integer> counts = RankingMultiset.of(ip);
+		assertArrayEquals(naiveCount(ip), PairwiseKernel.count(counts, pool));
+
+		IntPreferenceProfile<Integer> big = randomProfile(200, 70);
+		IntPreferenceProfile<Integer> sub = big.resample(333, rnd);
+		assertArrayEquals(naiveCount(sub), PairwiseKernel.count(sub, pool));
+	}
+
+	@Test
+	public void testStatistics() {
+		// Large enough that the profile uses the kernel for its statistics
+		IntPreferenceProfile<Integer> ip = randomProfile(300, 130);
+		assertTrue(ip.usePairwiseKernel());
+		assertArrayEquals(naiveCount(ip), ip.getPairwiseMatrix());
+		assertArrayEquals(naiveCount(ip.subset(new int[] {4, 4, 8})), ip.subset(new int[] {4, 4, 8}).getPairwiseMatrix());
+	}
+
+}
@@ -0,0 +1,130 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import net.andrewmao.math.RandomSelection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PairwiseSketchTest {
+
+	Random rnd;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Rankings that put lower ids higher more often than not.
+	 */
+	IntPreferenceProfile<Integer> biasedProfile(int n, int m) {
+		Integer[] cands = new Integer[m];
+		for( int i = 0; i < m; i++ ) cands[i] = i;
+
+		Integer[][] profile = new Integer[n][];
+		for( int i = 0; i < n; i++ ) {
+			profile[i] = cands.clone();
+			// A few random swaps of neighbors
+			for( int k = 0; k < m; k++ ) {
+				int j = rnd.nextInt(m - 1);
+				Integer tmp = profile[i][j];
+				profile[i][j] = profile[i][j + 1];
+				profile[i][j + 1] = tmp;
+			}
+		}
+
+		return IntPreferenceProfile.intern(profile);
+	}
+
+	@Test
+	public void testEstimates() {
+		int n = 2000, m = 20;
+		IntPreferenceProfile<Integer> ip = biasedProfile(n, m);
+		long[][] exact = ip.getPairwiseMatrix();
+
+		PairwiseSketch sketch = new PairwiseSketch(m, 50, rnd);
+		sketch.addAll(ip);
+		assertEquals(n, sketch.getNumRankings());
+
+		int outside = 0;
+		for( int a = 0; a < m; a++ ) {
+			for( int b = 0; b < m; b++ ) {
+				if( a == b ) continue;
+				double margin = exact[a][b] - exact[b][a];
+				if( Math.abs(sketch.getMargin(a, b) - margin) > 3 * sketch.getStandardError(a, b) ) outside++;
+			}
+		}
+		// About 0.3% of the margins should be more than 3 standard errors off
+		assertTrue(outside < 10);
+
+		// Far apart candidates are clearly ordered
+		assertTrue(sketch.isMajority(0, m - 1, 3));
+		assertFalse(sketch.isMajority(m - 1, 0, 3));
+
+		double[][] wins = sketch.getWinMatrix();
+		assertEquals(sketch.getWins(3, 7), wins[3][7], 0);
+	}
+
+	@Test
+	public void testBudget() {
+		int n = 500, m = 1000;
+		Integer[] cands = TestProfiles.candidates(m);
+
+		PairwiseSketch sketch = PairwiseSketch.forBudget(m, 10000, rnd);
+		int[] ranking = new int[m];
+		for( int i = 0; i < n; i++ ) {
+			Integer[] shuffled = RandomSelection.shuffle(cands.clone(), rnd);
+			for( int j = 0; j < m; j++ ) ranking[j] = shuffled[j];
+			sketch.add(ranking);
+			assertTrue(sketch.getNumEntries() <= 10000);
+		}
+
+		assertTrue(sketch.getNumEntries() > 2500);
+		assertTrue(sketch.getPairsPerRanking() < 10000.0 / n * 2);
+
+		// Every stored pair is a real pair
+		for( int e = 0; e < sketch.getNumEntries(); e++ ) {
+			assertTrue(sketch.getWinner(e) != sketch.getLoser(e));
+			assertEquals(sketch.getEstimate(e), sketch.getWins(sketch.getWinner(e), sketch.getLoser(e)), 0);
+		}
+	}
+
+	@Test
+	public void testBudgetEstimates() {
+		int n = 5000, m = 20;
+		IntPreferenceProfile<Integer> ip = biasedProfile(n, m);
+		long[][] exact = ip.getPairwiseMatrix();
+
+		// Fewer entries than pairs, so the sketch thins out as the rankings come in
+		PairwiseSketch sketch = PairwiseSketch.forBudget(m, 150, rnd);
+		sketch.addAll(ip);
+		assertEquals(n, sketch.getNumRankings());
+		assertTrue(sketch.getNumEntries() <= 150);
+		assertTrue(sketch.getPairsPerRanking() < 1);
+
+		// Each ranking has m(m-1)/2 pairs, and the estimates add up to about that many per ranking
+		double total = 0;
+		for( int e = 0; e < sketch.getNumEntries(); e++ ) total += sketch.getEstimate(e);
+		double pairs = m * (m - 1) / 2;
+		assertEquals(n * pairs, total, 0.3 * n * pairs);
+
+		// Far apart candidates are still clearly ordered
+		assertTrue(exact[0][m - 1] > exact[m - 1][0]);
+		assertTrue(sketch.getWins(0, m - 1) >= sketch.getWins(m - 1, 0));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testWrongSize() {
+		new PairwiseSketch(5, 2, rnd).add(new int[] {0, 1, 2});
+	}
+
+}
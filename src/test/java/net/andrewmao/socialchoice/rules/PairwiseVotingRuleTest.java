@@ -0,0 +1,125 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class PairwiseVotingRuleTest {
+
+	static PreferenceProfile<Character> profile(int[] counts, String[] orders) {
+		List<Character[]> rankings = new ArrayList<Character[]>();
+		for( int i = 0; i < counts.length; i++ ) {
+			Character[] ranking = new Character[orders[i].length()];
+			for( int j = 0; j < ranking.length; j++ ) ranking[j] = orders[i].charAt(j);
+			for( int c = 0; c < counts[i]; c++ ) rankings.add(ranking);
+		}
+		return new PreferenceProfile<Character>(rankings.toArray(new Character[rankings.size()][]));
+	}
+
+	/*
+	 * The capitals example: M = Memphis, N = Nashville, C = Chattanooga, K = Knoxville.
+	 * Nashville is the Condorcet winner, and the majorities are all transitive.
+	 */
+	static final PreferenceProfile<Character> TENNESSEE = profile(
+			new int[] { 42, 26, 15, 17 },
+			new String[] { "MNCK", "NCKM", "CKNM", "KCNM" });
+
+	/*
+	 * A profile whose majorities are cyclic, from the description of the Schulze method.
+	 */
+	static final PreferenceProfile<Character> CYCLIC = profile(
+			new int[] { 5, 5, 8, 3, 7, 2, 7, 8 },
+			new String[] { "ACBED", "ADECB", "BEDAC", "CABED", "CAEBD", "CBADE", "DCEBA", "EBADC" });
+
+	@Test
+	public void testCondorcetWinner() {
+		List<Character> expected = Arrays.asList('N', 'C', 'K', 'M');
+
+		assertEquals(expected, new Copeland().getRanking(TENNESSEE));
+		assertEquals(expected, new Schulze().getRanking(TENNESSEE));
+		assertEquals(expected, new RankedPairs().getRanking(TENNESSEE));
+		assertArrayEquals(new double[] { 2, 1, 0, 3 }, new Copeland().getScoredRanking(TENNESSEE).toArray(), 0);
+	}
+
+	@Test
+	public void testCycle() {
+		assertEquals(Arrays.asList('E', 'A', 'C', 'B', 'D'), new Schulze().getRanking(CYCLIC));
+
+		// Strongest paths from the worked example
+		long[][] paths = Schulze.getStrongestPaths(CYCLIC.getStatistics().getPairwiseMatrix());
+		assertArrayEquals(new long[] { 0, 28, 28, 30, 24 }, zeroDiagonal(paths)[0]);
+		assertArrayEquals(new long[] { 25, 28, 28, 31, 0 }, zeroDiagonal(paths)[4]);
+
+		// Locks B > D, E > D, A > D, C > B, E > B, A > C, C > E, skipping D > C, B > A and E > A
+		assertEquals(Arrays.asList('A', 'C', 'E', 'B', 'D'), new RankedPairs().getRanking(CYCLIC));
+	}
+
+	static long[][] zeroDiagonal(long[][] paths) {
+		for( int a = 0; a < paths.length; a++ ) paths[a][a] = 0;
+		return paths;
+	}
+
+	@Test
+	public void testBlockedPaths() {
+		Random rnd = new Random(1);
+		int m = 3 * Schulze.BLOCK + 5;
+
+		long[][] wins = TestProfiles.randomProfile(51, m, rnd).getStatistics().getPairwiseMatrix();
+
+		long[][] expected = new long[m][m];
+		for( int a = 0; a < m; a++ )
+			for( int b = 0; b < m; b++ )
+				if( a != b && wins[a][b] > wins[b][a] ) expected[a][b] = wins[a][b];
+		for( int k = 0; k < m; k++ )
+			for( int a = 0; a < m; a++ )
+				for( int b = 0; b < m; b++ )
+					if( a != b && a != k && b != k )
+						expected[a][b] = Math.max(expected[a][b], Math.min(expected[a][k], expected[k][b]));
+
+		long[][] paths = zeroDiagonal(Schulze.getStrongestPaths(wins));
+		for( int a = 0; a < m; a++ ) assertArrayEquals(expected[a], paths[a]);
+
+		paths = zeroDiagonal(Schulze.getStrongestPaths(wins, new ForkJoinPool(2)));
+		for( int a = 0; a < m; a++ ) assertArrayEquals(expected[a], paths[a]);
+	}
+
+	@Test
+	public void testLockedOrder() {
+		Random rnd = new Random(2);
+		int m = 70;
+
+		PreferenceProfile<Integer> profile = TestProfiles.randomProfile(31, m, rnd);
+		long[][] wins = profile.getStatistics().getPairwiseMatrix();
+
+		// With an odd number of voters there are no ties, so the locked majorities order everyone
+		double[] scores = new RankedPairs().getScoredRanking(profile).toArray();
+		double[] sorted = scores.clone();
+		Arrays.sort(sorted);
+		for( int i = 0; i < m; i++ ) assertEquals(i, sorted[i], 0);
+
+		// The largest majority is never overturned
+		int bestA = 0, bestB = 1;
+		for( int a = 0; a < m; a++ )
+			for( int b = 0; b < m; b++ )
+				if( wins[a][b] - wins[b][a] > wins[bestA][bestB] - wins[bestB][bestA] ) {
+					bestA = a;
+					bestB = b;
+				}
+		assertTrue(scores[bestA] > scores[bestB]);
+	}
+
+	@Test
+	public void testBatch() {
+		List<RuleBatch.Result<Character>> results =
+				new RuleBatch(new Maximin(), new Copeland(), new Schulze(), new RankedPairs()).run(CYCLIC);
+		for( RuleBatch.Result<Character> result : results )
+			assertEquals(result.getRule().getRanking(CYCLIC), result.getRanking());
+	}
+
+}
@@ -0,0 +1,188 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrefLibTest {
+
+	static final String SOC =
+			"# FILE NAME: 00004-00000001.soc\n" +
+			"# DATA TYPE: soc\n" +
+			"# NUMBER ALTERNATIVES: 3\n" +
+			"# NUMBER VOTERS: 5\n" +
+			"# NUMBER UNIQUE ORDERS: 3\n" +
+			"# ALTERNATIVE NAME 1: Alice\n" +
+			"# ALTERNATIVE NAME 2: Bob\n" +
+			"# ALTERNATIVE NAME 3: Carol\n" +
+			"3: 2,1,3\n" +
+			"1: 1,2,3\r\n" +
+			"1: 3, 2, 1";
+
+	static final String OLD_TOC =
+			"4\n" +
+			"1,a\n" +
+			"2,b\n" +
+			"3,c\n" +
+			"4,d\n" +
+			"6,6,3\n" +
+			"3,1,{2,3},4\n" +
+			"2,{4,1},3,2\n" +
+			"1,2,1,3,4\n";
+
+	static final String SOI =
+			"# DATA TYPE: soi\n" +
+			"# NUMBER ALTERNATIVES: 4\n" +
+			"# NUMBER VOTERS: 6\n" +
+			"# NUMBER UNIQUE ORDERS: 3\n" +
+			"3: 2,4\n" +
+			"2: 1\n" +
+			"1: 3,1,4,2\n";
+
+	Random rnd;
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+		file = File.createTempFile("preflib", ".soc");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	static PrefLibReader reader(String s) throws IOException {
+		return new PrefLibReader(Channels.newChannel(new ByteArrayInputStream(s.getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void testReadSoc() throws IOException {
+		PrefLibReader reader = reader(SOC);
+		assertEquals("soc", reader.getDataType());
+		assertEquals(3, reader.getNumAlternatives());
+		assertEquals(5, reader.getNumVoters());
+		assertEquals(3, reader.getNumUniqueOrders());
+		assertArrayEquals(new String[] {"Alice", "Bob", "Carol"}, reader.getAlternativeNames());
+
+		IntPreferenceProfile<Integer> prefs = reader.readProfile();
+		assertEquals(3, prefs.getNumRows());
+		assertEquals(5, prefs.getNumRankings());
+		assertEquals(3, prefs.getWeight(0));
+		assertArrayEquals(new Integer[] {3, 2, 1}, prefs.getProfile()[4]);
+
+		RankingMultiset<Integer> counts = reader(SOC).readMultiset();
+		assertEquals(3, counts.getNumUniqueRankings());
+		assertEquals(3, counts.count(new int[] {1, 0, 2}));
+		assertArrayEquals(prefs.getPairwiseMatrix(), counts.getPairwiseMatrix());
+	}
+
+	@Test
+	public void testReadTies() throws IOException {
+		PrefLibReader reader = reader(OLD_TOC);
+		assertEquals(4, reader.getNumAlternatives());
+		assertEquals(6, reader.getNumVoters());
+		assertEquals("d", reader.getAlternativeNames()[3]);
+
+		final List<String> lines = new ArrayList<String>();
+		int read = reader.read(new PrefLibReader.Handler() {
+			@Override
+			public void ranking(int[] order, int[] ties, int length, int count) {
+				lines.add(count + " " + Arrays.toString(Arrays.copyOf(order, length))
+						+ " " + Arrays.toString(Arrays.copyOf(ties, length)));
+			}
+		});
+
+		assertEquals(3, read);
+		assertEquals("3 [1, 2, 3, 4] [0, 1, 1, 3]", lines.get(0));
+		assertEquals("2 [4, 1, 3, 2] [0, 0, 2, 3]", lines.get(1));
+		assertEquals("1 [2, 1, 3, 4] [0, 1, 2, 3]", lines.get(2));
+	}
+
+	@Test(expected=IOException.class)
+	public void testTiesInProfile() throws IOException {
+		reader(OLD_TOC).readMultiset();
+	}
+
+	@Test
+	public void testReadTopK() throws IOException {
+		TopKProfile<Integer> prefs = reader(SOI).readTopKProfile();
+		assertEquals(3, prefs.getNumRows());
+		assertEquals(6, prefs.getNumRankings());
+		assertEquals(1, prefs.getLength(1));
+		assertArrayEquals(new int[] {1, 3}, prefs.getRanking(0));
+		assertArrayEquals(new int[] {3, 1, 4, 2}, prefs.getIndices(2));
+	}
+
+	@Test(expected=IOException.class)
+	public void testIncompleteProfile() throws IOException {
+		reader(SOI).readProfile();
+	}
+
+	@Test(expected=IOException.class)
+	public void testDuplicate() throws IOException {
+		reader(SOC + "\n2: 1,1,3\n").readProfile();
+	}
+
+	@Test
+	public void testBadLines() throws IOException {
+		// Blank lines are skipped anywhere
+		String soc = SOC.replace("# NUMBER VOTERS", " \t\n# NUMBER VOTERS") + "\n   \n";
+		assertEquals(5, reader(soc).readProfile().getNumRankings());
+
+		String[] bad = {"99999999999: 1,2,3", "2147483648: 1,2,3", "1: 1,4294967298,3", "1: 1,2", "1: 1,{2,3}", "1; 1,2,3"};
+		for( String line : bad ) {
+			try {
+				reader(SOC + "\n\n" + line + "\n").readProfile();
+				fail(line);
+			} catch (IOException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("line 13"));
+			}
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testWriteZeroCount() throws IOException {
+		PrefLibWriter writer = new PrefLibWriter(Channels.newChannel(new ByteArrayOutputStream()),
+				new String[] {"a", "b"}, 0, 0);
+		writer.write(new int[] {1, 2}, 2, 0);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		// Enough lines to cross several buffers
+		int m = 7;
+		Integer[] cands = new Integer[m];
+		for( int i = 0; i < m; i++ ) cands[i] = 10 * i;
+
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(30000, cands, rnd);
+
+		Integer[] alternatives = PrefLibWriter.write(file, prefs);
+		assertArrayEquals(cands, alternatives);
+
+		PrefLibReader reader = PrefLibReader.open(file);
+		assertEquals(30000, reader.getNumVoters());
+		assertEquals("60", reader.getAlternativeNames()[6]);
+		RankingMultiset<Integer> counts = reader.readMultiset();
+		reader.close();
+
+		assertEquals(RankingMultiset.of(prefs).getNumUniqueRankings(), counts.getNumUniqueRankings());
+		assertEquals(30000, counts.getNumRankings());
+		assertArrayEquals(prefs.asIntProfile().getPairwiseMatrix(), counts.getPairwiseMatrix());
+		assertArrayEquals(prefs.asIntProfile().getPositionMatrix(), PrefLibReader.readProfile(file).getPositionMatrix());
+	}
+
+}
@@ -0,0 +1,40 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PreferenceUtilsTest {
+
+	@Test
+	public void testConstantWinner() {
+		PreferenceProfile<Integer> prefs = new PreferenceProfile<Integer>(new Integer[][] {
+				{0, 1, 2},
+				{0, 2, 1},
+				{0, 1, 2},
+		});
+
+		assertEquals(Integer.valueOf(0), PreferenceUtils.getConstantWinner(prefs));
+		assertNull(PreferenceUtils.getConstantLoser(prefs));
+	}
+
+	@Test
+	public void testWeightedRows() {
+		// More rankings than rows, and a row of weight 0 that holds no rankings
+		RankingMultiset<Integer> counts = new RankingMultiset<Integer>(new Integer[] {0, 1, 2});
+		counts.add(new int[] {0, 1, 2}, 3);
+		counts.add(new int[] {1, 0, 2}, 2);
+		counts.add(new int[] {2, 1, 0}, 0);
+		assertEquals(5, counts.getNumRankings());
+		assertEquals(3, counts.getNumRows());
+
+		assertNull(PreferenceUtils.getConstantWinner(counts));
+		assertEquals(Integer.valueOf(2), PreferenceUtils.getConstantLoser(counts));
+
+		// A view of the weighted rows keeps their weights
+		IntPreferenceProfile<Integer> first = counts.selectRows(new int[] {0, 2});
+		assertEquals(Integer.valueOf(0), PreferenceUtils.getConstantWinner(first));
+		assertEquals(Integer.valueOf(2), PreferenceUtils.getConstantLoser(first));
+	}
+
+}
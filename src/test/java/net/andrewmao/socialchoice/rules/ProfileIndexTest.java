@@ -0,0 +1,131 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileIndexTest {
+
+	static final String[] REGIONS = {"east", "north", "south", "west"};
+
+	Random rnd;
+	Character[] cands = new Character[] {'A', 'B', 'C', 'D'};
+	Character[][] rankings;
+	ProfileIndex<Character> index;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+
+		rankings = TestProfiles.randomRankings(1000, cands, rnd);
+
+		index = new ProfileIndex<Character>(new PreferenceProfile<Character>(rankings));
+		for( int i = 0; i < rankings.length; i++ ) {
+			index.tag(i, "region", REGIONS[i % REGIONS.length]);
+			if( i % 3 == 0 ) index.tag(i, "device", "mobile");
+		}
+	}
+
+	/**
+	 * Copies the rankings in the given region and on mobile, or all devices.
+	 */
+	PreferenceProfile<Character> filter(String region, boolean mobile) {
+		int n = 0;
+		Character[][] selected = new Character[rankings.length][];
+		for( int i = 0; i < rankings.length; i++ ) {
+			if( !REGIONS[i % REGIONS.length].equals(region) ) continue;
+			if( mobile && i % 3 != 0 ) continue;
+			selected[n++] = rankings[i];
+		}
+		return new PreferenceProfile<Character>(Arrays.copyOf(selected, n));
+	}
+
+	@Test
+	public void testQuery() {
+		RowBitmap rows = index.get("region", "south").and(index.get("device", "mobile"));
+		PreferenceProfile<Character> expected = filter("south", true);
+
+		ProfileStatistics<Character> stats = index.getStatistics(rows);
+		assertEquals(expected.getNumRankings(), stats.getNumRankings());
+		assertArrayEquals(expected.asIntProfile().getPairwiseMatrix(), stats.getPairwiseMatrix());
+		assertArrayEquals(expected.asIntProfile().getPositionMatrix(), index.select(rows).getPositionMatrix());
+
+		// Cached
+		assertSame(stats, index.getStatistics(index.get("device", "mobile").and(index.get("region", "south"))));
+		assertEquals(0, index.get("region", "nowhere").getCardinality());
+	}
+
+	@Test
+	public void testChangedQuery() {
+		RowBitmap rows = RowBitmap.of(1, 2, 3);
+		ProfileStatistics<Character> stats = index.getStatistics(rows);
+
+		// Changing a bitmap after asking for it doesn't change what was cached
+		rows.add(4);
+		assertEquals(4, index.getStatistics(rows).getNumRankings());
+		assertSame(stats, index.getStatistics(RowBitmap.of(1, 2, 3)));
+	}
+
+	@Test
+	public void testTagAfterGet() {
+		RowBitmap south = index.get("region", "south");
+		int size = south.getCardinality();
+		ProfileStatistics<Character> stats = index.getStatistics(south);
+
+		// Neither the index nor the caller sees the other's changes
+		south.add(0);
+		assertFalse(index.get("region", "south").contains(0));
+		index.tag(1, "region", "south");
+		assertEquals(size + 1, south.getCardinality());
+
+		// Statistics are cached by rows, so the old query still has its statistics
+		assertSame(stats, index.getStatistics(south.andNot(RowBitmap.of(0))));
+		assertEquals(size + 1, index.getStatistics(index.get("region", "south")).getNumRankings());
+	}
+
+	@Test
+	public void testGroupBy() {
+		Map<String, ProfileStatistics<Character>> groups = index.groupBy("region", index.all());
+		assertEquals(REGIONS.length, groups.size());
+		for( String region : REGIONS ) {
+			assertArrayEquals(filter(region, false).asIntProfile().getPairwiseMatrix(),
+					groups.get(region).getPairwiseMatrix());
+		}
+	}
+
+	@Test
+	public void testWeighted() {
+		RankingMultiset<Character> counts = RankingMultiset.of(new PreferenceProfile<Character>(rankings));
+		ProfileIndex<Character> weighted = new ProfileIndex<Character>(counts);
+		for( int r = 0; r < counts.getNumRows(); r++ )
+			weighted.tag(r, "first", String.valueOf(counts.getCandidate(counts.candidateAt(r, 0))));
+
+		int total = 0;
+		for( String first : weighted.getValues("first") ) {
+			IntPreferenceProfile<Character> selected = weighted.select(weighted.get("first", first));
+			total += selected.getNumRankings();
+			assertEquals(selected.getNumRankings(), selected.getPositionMatrix()[selected.getId(first.charAt(0))][0]);
+		}
+		assertEquals(rankings.length, total);
+	}
+
+	@Test
+	public void testProfileList() {
+		PreferenceProfileList<Character> list = new PreferenceProfileList<Character>(2);
+		for( String region : new String[] {"north", "south"} ) {
+			PreferenceProfile<Character> part = filter(region, false);
+			part.setData(region);
+			list.add(part);
+		}
+
+		ProfileIndex<Character> byData = ProfileIndex.of(list, "region");
+		assertArrayEquals(list.get(1).asIntProfile().getPairwiseMatrix(),
+				byData.getStatistics(byData.get("region", "south")).getPairwiseMatrix());
+	}
+
+}
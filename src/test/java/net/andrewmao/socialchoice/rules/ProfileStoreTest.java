@@ -0,0 +1,132 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileStoreTest {
+
+	Random rnd;
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+		file = File.createTempFile("profile", ".store");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Character[][] rankings = {
+				{'b', 'a', 'c'},
+				{'a', 'b', 'c'},
+				{'c', 'b', 'a'},
+		};
+		PreferenceProfile<Character> prefs = new PreferenceProfile<Character>(rankings);
+		ProfileStore.write(file, prefs);
+
+		ProfileStore<Character> store = ProfileStore.open(file);
+		try {
+			assertEquals(3, store.getNumRankings());
+			assertArrayEquals(new Character[] {'a', 'b', 'c'}, store.getSortedCandidates());
+			assertEquals(2, store.candidateAt(2, 0));
+
+			PreferenceProfile<Character> view = store.getProfile();
+			assertArrayEquals(rankings, view.getProfile());
+			assertEquals(prefs.getPairwiseCounts(), store.getPairwiseCounts());
+			assertArrayEquals(rankings[1], store.getProfile(1, 2).getProfile()[0]);
+		} finally {
+			store.close();
+		}
+	}
+
+	void checkStatistics(int n, int m) throws Exception {
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(n, m, rnd);
+		IntPreferenceProfile<Integer> ip = prefs.asIntProfile();
+
+		ProfileStore.write(file, prefs);
+		ProfileStore<Integer> store = ProfileStore.open(file);
+
+		try {
+			assertArrayEquals(ip.getPositionMatrix(), store.getPositionMatrix());
+			assertArrayEquals(ip.getPairwiseMatrix(), store.getPairwiseMatrix());
+			assertArrayEquals(ip.getAdjacentMatrix(), store.getAdjacentMatrix());
+
+			RankingMultiset<Integer> counts = store.countRankings();
+			assertEquals(n, counts.getNumRankings());
+			assertArrayEquals(ip.getPairwiseMatrix(), counts.getPairwiseMatrix());
+
+			IntPreferenceProfile<Integer> view = store.getProfile(n / 3, n);
+			IntPreferenceProfile<Integer> sub = ip.subset(range(n / 3, n));
+			assertArrayEquals(sub.getPairwiseMatrix(), view.getPairwiseMatrix());
+			assertArrayEquals(sub.getPositionMatrix(), view.getPositionMatrix());
+			assertEquals(sub.getPairwiseCounts(), view.getPairwiseCounts());
+		} finally {
+			store.close();
+		}
+	}
+
+	static int[] range(int from, int to) {
+		int[] rows = new int[to - from];
+		for( int i = 0; i < rows.length; i++ ) rows[i] = from + i;
+		return rows;
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		checkStatistics(200000, 5);
+	}
+
+	@Test
+	public void testWideIds() throws Exception {
+		// More than 256 candidates need two bytes per id
+		checkStatistics(50, 300);
+	}
+
+	@Test
+	public void testCursor() throws Exception {
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(300000, 4, rnd);
+		ProfileStore.write(file, prefs);
+		ProfileStore<Integer> store = ProfileStore.open(file);
+
+		try {
+			ProfileStore<Integer>.Cursor second = store.cursor();
+			ProfileStore<Integer>.Cursor first = second.trySplit();
+
+			assertNotNull(first);
+			assertEquals(300000, first.remaining() + second.remaining());
+
+			int[] ranking = new int[4];
+			int n = 0;
+			while( first.next(ranking) ) {
+				assertArrayEquals(prefs.asIntProfile().getRanking(n), ranking);
+				n++;
+			}
+			while( second.next(ranking) ) n++;
+			assertEquals(300000, n);
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadRanking() throws Exception {
+		ProfileStore.Writer<Integer> writer = ProfileStore.create(file, new Integer[] {1, 2, 3});
+		try {
+			writer.add(new int[] {0, 1, 1});
+		} finally {
+			writer.close();
+		}
+	}
+
+}
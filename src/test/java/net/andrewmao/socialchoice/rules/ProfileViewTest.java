@@ -0,0 +1,163 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.andrewmao.math.RandomSelection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfileViewTest {
+
+	Random rnd;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	/**
+	 * Checks that a view computes the same statistics as a copy of its rankings.
+	 */
+	void assertSameAsCopy(PreferenceProfile<Integer> view) {
+		IntPreferenceProfile<Integer> ip = view.asIntProfile();
+		IntPreferenceProfile<Integer> copy = IntPreferenceProfile.intern(view.getProfile().clone());
+
+		assertEquals(copy.getNumRankings(), ip.getNumRankings());
+		assertArrayEquals(copy.getSortedCandidates(), ip.getSortedCandidates());
+		assertArrayEquals(copy.getPairwiseMatrix(), ip.getPairwiseMatrix());
+		assertArrayEquals(copy.getAdjacentMatrix(), ip.getAdjacentMatrix());
+		assertArrayEquals(copy.getPositionMatrix(), ip.getPositionMatrix());
+		assertEquals(copy.toString(), ip.toString());
+	}
+
+	@Test
+	public void testSubset() {
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(100, 5, rnd);
+
+		IntPreferenceProfile<Integer> sub = prefs.asIntProfile().subset(new int[] {3, 3, 50, 99});
+		assertEquals(4, sub.getNumRankings());
+		assertArrayEquals(prefs.getProfile()[3], sub.getProfile()[1]);
+		assertArrayEquals(prefs.getProfile()[99], sub.getProfile()[3]);
+		assertSameAsCopy(sub);
+
+		// Subsets of subsets still refer to the original rows
+		IntPreferenceProfile<Integer> subsub = sub.subset(new int[] {3, 0});
+		assertArrayEquals(prefs.getProfile()[99], subsub.getProfile()[0]);
+		assertSameAsCopy(subsub);
+	}
+
+	@Test
+	public void testResample() {
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(100, 4, rnd);
+
+		PreferenceProfile<Integer> boot = prefs.resample(300, rnd);
+		assertEquals(300, boot.getNumRankings());
+		assertSameAsCopy(boot);
+
+		// Resampling a multiset picks rows in proportion to their counts
+		PreferenceProfile<Integer> bootCounts = RankingMultiset.of(prefs).resample(300, rnd);
+		assertEquals(300, bootCounts.getNumRankings());
+		assertSameAsCopy(bootCounts);
+	}
+
+	@Test
+	public void testSlice() {
+		Character[][] rankings = {
+				{'b', 'a', 'c', 'd'},
+				{'a', 'b', 'd', 'c'},
+				{'a', 'b', 'c', 'd'},
+		};
+		PreferenceProfile<Character> prefs = new PreferenceProfile<Character>(rankings);
+
+		PreferenceProfile<Character> top = prefs.slice(0, 2);
+		PreferenceProfile<Character> bottom = prefs.slice(2, 4);
+
+		assertArrayEquals(new Character[][] { {'b', 'a'}, {'a', 'b'}, {'a', 'b'} }, top.getProfile());
+		assertArrayEquals(new Character[][] { {'c', 'd'}, {'d', 'c'}, {'c', 'd'} }, bottom.getProfile());
+		assertArrayEquals(new Character[] {'c', 'd'}, bottom.getSortedCandidates());
+		assertArrayEquals(new int[] {1, 2}, bottom.getPositionCounts().get('d'));
+
+		IntPreferenceProfile<Character> ip = bottom.asIntProfile();
+		assertArrayEquals(new long[][] { {0, 2}, {1, 0} }, ip.getPairwiseMatrix());
+		assertEquals(1, ip.positionOf(1, ip.getId('c')));
+
+		// Top two and bottom four candidates are always the same
+		Integer[][] split = new Integer[50][];
+		for( int i = 0; i < split.length; i++ ) {
+			Integer[] top2 = RandomSelection.shuffle(new Integer[] {4, 5}, rnd);
+			Integer[] bottom4 = RandomSelection.shuffle(new Integer[] {0, 1, 2, 3}, rnd);
+			split[i] = new Integer[] {top2[0], top2[1], bottom4[0], bottom4[1], bottom4[2], bottom4[3]};
+		}
+		PreferenceProfile<Integer> big = new PreferenceProfile<Integer>(split);
+		assertSameAsCopy(big.slice(2, 6));
+		assertSameAsCopy(big.slice(0, 6).slice(2, 6).slice(0, 4));
+		assertSameAsCopy(big.resample(20, rnd).slice(0, 2));
+	}
+
+	@Test
+	public void testMixedSlice() {
+		Character[][] rankings = {
+				{'b', 'a', 'c'},
+				{'a', 'c', 'b'},
+		};
+
+		// Different candidates in the same positions are copied as they are
+		PreferenceProfile<Character> top = new PreferenceProfile<Character>(rankings).slice(0, 2);
+		assertFalse(top instanceof ProfileView);
+		assertArrayEquals(new Character[][] { {'b', 'a'}, {'a', 'c'} }, top.getProfile());
+
+		// Each slice counts the candidates it has
+		ProfileStatistics<Character> stats = top.getStatistics();
+		assertArrayEquals(new Character[] {'a', 'b', 'c'}, stats.getSortedCandidates());
+		assertEquals(2, stats.getNumRankings());
+		assertArrayEquals(new long[][] { {1, 1, 0}, {1, 0, 0}, {0, 1, 0} }, stats.getPositionMatrix());
+		assertArrayEquals(new long[][] { {0, 0, 1}, {1, 0, 0}, {0, 0, 0} }, stats.getPairwiseMatrix());
+		assertArrayEquals(new long[][] { {0, 0, 1}, {1, 0, 0}, {0, 0, 0} }, stats.getAdjacentMatrix());
+		assertEquals(Arrays.asList('a', 'b', 'c'), new Borda().getRanking(top));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadSlice() {
+		new PreferenceProfile<Character>(new Character[][] { {'b', 'a', 'c'} }).slice(2, 4);
+	}
+
+	@Test
+	public void testConcatenate() {
+		PreferenceProfileList<Integer> list = new PreferenceProfileList<Integer>(3);
+		list.add(TestProfiles.randomProfile(10, 4, rnd));
+		list.add(RankingMultiset.of(TestProfiles.randomProfile(200, 4, rnd)));
+		list.add(TestProfiles.randomProfile(7, 4, rnd).resample(5, rnd));
+
+		PreferenceProfile<Integer> all = list.concatenate();
+		assertEquals(215, all.getNumRankings());
+		assertSameAsCopy(all);
+
+		assertArrayEquals(list.get(0).getProfile()[9], all.getProfile()[9]);
+		assertArrayEquals(list.get(2).getProfile()[4], all.getProfile()[214]);
+
+		// Subsets and slices of a concatenation
+		assertSameAsCopy(all.copyRandomSubset(20, rnd));
+		assertSameAsCopy(all.resample(20, rnd).slice(0, 4));
+	}
+
+	@Test
+	public void testRules() {
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(300, 4, rnd);
+		PreferenceProfile<Integer> sub = prefs.copyRandomSubset(31, rnd);
+		PreferenceProfile<Integer> copy = new PreferenceProfile<Integer>(sub.getProfile().clone());
+
+		assertEquals(new Borda().getScoredRanking(copy).toString(), new Borda().getScoredRanking(sub).toString());
+		assertEquals(new Maximin().getScoredRanking(copy).toString(), new Maximin().getScoredRanking(sub).toString());
+		assertEquals(new Kemeny().getAllRankings(copy), new Kemeny().getAllRankings(sub));
+	}
+
+}
@@ -0,0 +1,152 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RankingMultisetTest {
+
+	Random rnd;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+	}
+
+	@Test
+	public void testCounting() {
+		Character[][] rankings = {
+				{'b', 'a', 'c'},
+				{'a', 'b', 'c'},
+				{'b', 'a', 'c'},
+				{'c', 'b', 'a'},
+				{'b', 'a', 'c'},
+		};
+
+		RankingMultiset<Character> counts = RankingMultiset.of(new PreferenceProfile<Character>(rankings));
+
+		assertSame(counts, RankingMultiset.of(counts));
+		assertSame(counts, counts.asIntProfile());
+
+		assertEquals(3, counts.getNumUniqueRankings());
+		assertEquals(5, counts.getNumRankings());
+		assertEquals(3, counts.count(new int[] {1, 0, 2}));
+		assertEquals(1, counts.count(new int[] {2, 1, 0}));
+		assertEquals(0, counts.count(new int[] {2, 0, 1}));
+		assertEquals(0, counts.count(new int[] {0, 0, 1}));
+
+		// Expanded profile has the same rankings, grouped together
+		assertEquals(5, counts.getProfile().length);
+		assertEquals(5, counts.getIndices(Arrays.asList('a', 'b', 'c')).size());
+	}
+
+	@Test
+	public void testCopy() {
+		RankingMultiset<Integer> counts = RankingMultiset.of(TestProfiles.randomProfile(300, 4, rnd));
+		RankingMultiset<Integer> copy = counts.copy();
+
+		assertEquals(counts.getNumRankings(), copy.getNumRankings());
+		assertEquals(counts.getNumUniqueRankings(), copy.getNumUniqueRankings());
+		for( int r = 0; r < counts.getNumRows(); r++ )
+			assertEquals(counts.getWeight(r), copy.count(counts.getRanking(r)));
+
+		// Rankings added to the copy are found there, and the original is unchanged
+		int[] ranking = counts.getRanking(0);
+		int before = counts.count(ranking);
+		copy.add(ranking, 5);
+		assertEquals(before + 5, copy.count(ranking));
+		assertEquals(before, counts.count(ranking));
+		assertEquals(counts.getNumRankings() + 5, copy.getStatistics().getNumRankings());
+	}
+
+	@Test
+	public void testSameStatistics() {
+		for( int m : new int[] {3, 5, 21, 25} ) {
+			PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(m > 20 ? 50 : 500, m, rnd);
+			IntPreferenceProfile<Integer> ip = prefs.asIntProfile();
+			RankingMultiset<Integer> counts = RankingMultiset.of(prefs);
+
+			assertEquals(prefs.getNumRankings(), counts.getNumRankings());
+			assertTrue(counts.getNumUniqueRankings() <= prefs.getNumRankings());
+
+			assertArrayEquals(ip.getPairwiseMatrix(), counts.getPairwiseMatrix());
+			assertArrayEquals(ip.getAdjacentMatrix(), counts.getAdjacentMatrix());
+			assertArrayEquals(ip.getPositionMatrix(), counts.getPositionMatrix());
+
+			for( int r = 0; r < ip.getNumRows(); r++ )
+				assertTrue(counts.count(ip.getRanking(r)) > 0);
+		}
+	}
+
+	@Test
+	public void testAllPermutations() {
+		// Lehmer codes are distinct for every permutation
+		int m = 5;
+		RankingMultiset<Integer> counts = RankingMultiset.of(TestProfiles.randomProfile(5000, m, rnd));
+
+		assertEquals(120, counts.getNumUniqueRankings());
+		assertEquals(5000, counts.getNumRankings());
+
+		int total = 0;
+		for( int r = 0; r < counts.getNumRows(); r++ ) {
+			assertEquals(counts.getWeight(r), counts.count(counts.getRanking(r)));
+			total += counts.getWeight(r);
+		}
+		assertEquals(5000, total);
+	}
+
+	@Test
+	public void testFromIndices() {
+		List<int[]> indices = new ArrayList<int[]>();
+		indices.add(new int[] {2, 1, 3});
+		indices.add(new int[] {2, 1, 3});
+		indices.add(new int[] {3, 1, 2});
+
+		RankingMultiset<Integer> counts = RankingMultiset.fromIndices(indices, 3);
+
+		assertArrayEquals(new Integer[] {1, 2, 3}, counts.getSortedCandidates());
+		assertEquals(2, counts.getNumUniqueRankings());
+		assertEquals(2, counts.count(new int[] {1, 0, 2}));
+		assertArrayEquals(new int[] {3, 1, 2}, counts.getIndices(1));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNotARanking() {
+		new RankingMultiset<Integer>(new Integer[] {1, 2, 3}).add(new int[] {0, 0, 1}, 1);
+	}
+
+	@Test
+	public void testRandomSubset() {
+		RankingMultiset<Integer> counts = RankingMultiset.of(TestProfiles.randomProfile(200, 4, rnd));
+
+		PreferenceProfile<Integer> sub = counts.copyRandomSubset(50, rnd);
+		assertEquals(50, sub.getNumRankings());
+
+		// Every sampled ranking should come from the multiset
+		IntPreferenceProfile<Integer> ip = sub.asIntProfile();
+		for( int r = 0; r < ip.getNumRows(); r++ )
+			assertTrue(counts.count(ip.getRanking(r)) > 0);
+	}
+
+	@Test
+	public void testRules() {
+		PreferenceProfile<Integer> prefs = TestProfiles.randomProfile(101, 4, rnd);
+		RankingMultiset<Integer> counts = RankingMultiset.of(prefs);
+
+		assertEquals(new Borda().getScoredRanking(prefs).toString(), new Borda().getScoredRanking(counts).toString());
+		assertEquals(new Maximin().getScoredRanking(prefs).toString(), new Maximin().getScoredRanking(counts).toString());
+		assertEquals(new Kemeny().getAllRankings(prefs), new Kemeny().getAllRankings(counts));
+	}
+
+}
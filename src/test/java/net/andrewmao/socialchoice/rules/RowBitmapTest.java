@@ -0,0 +1,100 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RowBitmapTest {
+
+	Random rnd;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+	}
+
+	static int[] toArray(TreeSet<Integer> set) {
+		int[] rows = new int[set.size()];
+		int i = 0;
+		for( int row : set ) rows[i++] = row;
+		return rows;
+	}
+
+	/**
+	 * Random rows over a few chunks, dense enough in some to be stored as bitmaps.
+	 */
+	RowBitmap random(TreeSet<Integer> set, double density) {
+		RowBitmap bitmap = new RowBitmap();
+		for( int row = 0; row < 3 << 16; row++ ) {
+			// Second chunk is sparse
+			double p = (row >>> 16) == 1 ? density / 100 : density;
+			if( rnd.nextDouble() < p ) {
+				set.add(row);
+				bitmap.add(row);
+			}
+		}
+		return bitmap;
+	}
+
+	@Test
+	public void testAdd() {
+		RowBitmap bitmap = RowBitmap.of(70000, 5, 3, 5, 1 << 20);
+		assertEquals(4, bitmap.getCardinality());
+		assertArrayEquals(new int[] {3, 5, 70000, 1 << 20}, bitmap.toArray());
+		assertTrue(bitmap.contains(70000));
+		assertFalse(bitmap.contains(4));
+
+		TreeSet<Integer> set = new TreeSet<Integer>();
+		RowBitmap dense = random(set, 0.3);
+		assertEquals(set.size(), dense.getCardinality());
+		assertArrayEquals(toArray(set), dense.toArray());
+	}
+
+	@Test
+	public void testAddUnordered() {
+		TreeSet<Integer> set = new TreeSet<Integer>();
+		RowBitmap bitmap = new RowBitmap();
+		for( int i = 0; i < 20000; i++ ) {
+			int row = rnd.nextInt(1 << 17);
+			set.add(row);
+			bitmap.add(row);
+		}
+		assertArrayEquals(toArray(set), bitmap.toArray());
+	}
+
+	@Test
+	public void testOperations() {
+		for( double density : new double[] {0.01, 0.3} ) {
+			TreeSet<Integer> a = new TreeSet<Integer>(), b = new TreeSet<Integer>();
+			RowBitmap ba = random(a, density), bb = random(b, 0.1);
+
+			TreeSet<Integer> and = new TreeSet<Integer>(a);
+			and.retainAll(b);
+			assertArrayEquals(toArray(and), ba.and(bb).toArray());
+			assertArrayEquals(toArray(and), bb.and(ba).toArray());
+
+			TreeSet<Integer> or = new TreeSet<Integer>(a);
+			or.addAll(b);
+			assertArrayEquals(toArray(or), ba.or(bb).toArray());
+
+			TreeSet<Integer> andNot = new TreeSet<Integer>(a);
+			andNot.removeAll(b);
+			assertArrayEquals(toArray(andNot), ba.andNot(bb).toArray());
+			assertArrayEquals(toArray(a), ba.toArray());
+		}
+	}
+
+	@Test
+	public void testEquals() {
+		RowBitmap a = RowBitmap.range(10, 5000);
+		RowBitmap b = RowBitmap.range(0, 6000).and(RowBitmap.range(10, 5000));
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertFalse(a.equals(RowBitmap.range(10, 4999)));
+	}
+
+}
@@ -0,0 +1,105 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class RuleBatchTest {
+
+	static int[] order(List<Integer> ranking) {
+		int[] order = new int[ranking.size()];
+		for( int i = 0; i < order.length; i++ ) order[i] = ranking.get(i);
+		return order;
+	}
+
+	@Test
+	public void testSameRankings() {
+		Random rnd = new Random(1);
+		RuleBatch batch = new RuleBatch(new Borda(), new Plurality(1), new Maximin(),
+				new Kemeny(), new ApproximateKemeny());
+
+		for( int trial = 0; trial < 5; trial++ ) {
+			Integer[][] rankings = TestProfiles.randomRankings(200, 6, rnd);
+			PreferenceProfile<Integer> profile = new PreferenceProfile<Integer>(rankings);
+
+			List<RuleBatch.Result<Integer>> results = batch.run(profile);
+			assertEquals(batch.getRules().size(), results.size());
+
+			for( RuleBatch.Result<Integer> result : results ) {
+				VotingRule rule = result.getRule();
+				PreferenceProfile<Integer> fresh = new PreferenceProfile<Integer>(rankings);
+				if( rule instanceof Kemeny ) {
+					// Any of several optimal rankings may be returned
+					long[][] wins = fresh.getStatistics().getPairwiseMatrix();
+					assertEquals(Kemeny.disagreements(wins, order(rule.getRanking(fresh))),
+							Kemeny.disagreements(wins, order(result.getRanking())));
+				}
+				else {
+					assertEquals(rule.toString(), rule.getRanking(fresh), result.getRanking());
+				}
+				assertTrue(result.getNanos() >= 0);
+				assertEquals(rule instanceof ScoredVotingRule, result.getScores() != null);
+			}
+		}
+	}
+
+	@Test
+	public void testSharedScan() {
+		Random rnd = new Random(2);
+		Integer[][] rankings = TestProfiles.randomRankings(500, 5, rnd);
+		PreferenceProfile<Integer> profile = new PreferenceProfile<Integer>(rankings);
+
+		new RuleBatch(new Borda()).run(profile);
+
+		// The distinct rankings are counted once and kept
+		RankingMultiset<Integer> shared = profile.asIntProfile().getMultiset();
+		assertSame(shared, profile.asIntProfile().getMultiset());
+		assertEquals(500, shared.getNumRankings());
+
+		// Callers get copies, which they can change without affecting the profile
+		RankingMultiset<Integer> counts = RankingMultiset.of(profile);
+		assertNotSame(shared, counts);
+		assertEquals(shared.getNumUniqueRankings(), counts.getNumUniqueRankings());
+		counts.add(new int[] {0, 1, 2, 3, 4}, 10);
+		assertEquals(510, counts.getNumRankings());
+		assertEquals(500, RankingMultiset.of(profile).getNumRankings());
+		assertEquals(500, profile.getStatistics().getNumRankings());
+
+		// Statistics taken from the counts are those of the rankings
+		ProfileStatistics<Integer> fresh = new PreferenceProfile<Integer>(rankings).getStatistics();
+		ProfileStatistics<Integer> stats = profile.getStatistics();
+		assertArrayEquals(fresh.getPairwiseMatrix(), stats.getPairwiseMatrix());
+		assertArrayEquals(fresh.getPositionMatrix(), stats.getPositionMatrix());
+		assertEquals(fresh.getNumRankings(), stats.getNumRankings());
+	}
+
+	@Test
+	public void testNestedParallelRules() {
+		Random rnd = new Random(3);
+		PreferenceProfile<Integer> profile = TestProfiles.randomProfile(100, 40, rnd);
+		ForkJoinPool pool = new ForkJoinPool(1);
+
+		try {
+			List<RuleBatch.Result<Integer>> results = new RuleBatch(new Schulze(pool),
+					new ApproximateKemeny(4, 1, pool)).run(profile, pool);
+
+			assertEquals(new Schulze().getRanking(profile), results.get(0).getRanking());
+			assertEquals(40, results.get(1).getRanking().size());
+			// The rules' own tasks ran on the batch's worker, which never blocked for them
+			assertEquals(1, pool.getPoolSize());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNoRules() {
+		new RuleBatch();
+	}
+
+}
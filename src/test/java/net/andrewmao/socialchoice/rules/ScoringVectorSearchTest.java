@@ -0,0 +1,99 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import net.andrewmao.socialchoice.rules.ScoringVectorSearch.Evaluation;
+import net.andrewmao.socialchoice.rules.ScoringVectorSearch.Objective;
+
+import org.junit.Test;
+
+public class ScoringVectorSearchTest {
+
+	static final double TOL = 1e-9;
+
+	@Test
+	public void testEvaluate() {
+		PreferenceProfile<Integer> profile = new PreferenceProfile<Integer>(new Integer[][] {
+			{0, 1, 2},
+			{0, 2, 1},
+			{1, 0, 2},
+		});
+		PreferenceProfileList<Integer> profiles = PreferenceProfileList.singleton(profile);
+
+		// Totals are (2a + b, a + b + c, b + 2c)
+		Evaluation plurality = new ScoringVectorSearch<Integer>(profiles, Objective.SUM_MIN_MARGIN).evaluate(new double[] {1, 0, 0});
+		assertEquals(0, plurality.getFlips());
+		// Smallest margin 1, out of 3 rankings over 2 gaps
+		assertEquals(-2.0 / 3, plurality.getMarginTerm(), TOL);
+
+		Evaluation half = new ScoringVectorSearch<Integer>(profiles, Objective.SUM_MIN_MARGIN).evaluate(new double[] {0.5, 0.5, 0});
+		assertEquals(-1.0 / 3, half.getMarginTerm(), TOL);
+
+		Evaluation first = new ScoringVectorSearch<Integer>(profiles, Objective.FIRST_FLIPS).evaluate(new double[] {1, 0, 0});
+		assertEquals(0, first.getFlips());
+		assertEquals(-1.0 / 3, first.getMarginTerm(), TOL);
+
+		// Ties are flips
+		Evaluation even = new ScoringVectorSearch<Integer>(profiles, Objective.FLIPS).evaluate(new double[] {1.0 / 3, 1.0 / 3, 1.0 / 3});
+		assertEquals(3, even.getFlips());
+		assertEquals(3, even.getValue(), TOL);
+	}
+
+	@Test
+	public void testMatchesRules() {
+		Random rnd = new Random(1);
+		PreferenceProfileList<Integer> profiles = OptimizedPositionalRuleTest.noisyProfiles(4, 4, 5, rnd);
+
+		Objective[] objectives = { Objective.FLIPS, Objective.SUM_MIN_MARGIN, Objective.OVERALL_MIN_MARGIN,
+				Objective.MIN_FIRST_LAST_MARGIN, Objective.FIRST_FLIPS };
+		OptimizedPositionalRule<?>[] rules = { new MinFlipMistakesRule.Vanilla<Integer>(),
+				new MinFlipMistakesRule.MaxSumMinMargin<Integer>(), new MinFlipMistakesRule.MaxOverallMinMargin<Integer>(),
+				new MinFlipMistakesRule.MaxMinFirstLastMargin<Integer>(), new MinFirstMistakesRule<Integer>() };
+
+		for( int r = 0; r < rules.length; r++ ) {
+			@SuppressWarnings("unchecked")
+			OptimizedPositionalRule<Integer> rule = (OptimizedPositionalRule<Integer>) rules[r];
+			rule.optimize(profiles, 1);
+
+			ScoringVectorSearch<Integer> search = new ScoringVectorSearch<Integer>(profiles, objectives[r]);
+			Evaluation grid = search.grid(40);
+			OptimizedPositionalRuleTest.checkScores(grid.getScores(), 1);
+
+			// Nothing on the grid beats the solver, up to its tolerance
+			ScoringVectorSearch<Integer> tolerant = new ScoringVectorSearch<Integer>(profiles, objectives[r]);
+			tolerant.setSeparation(MinFlipMistakesRule.SEPARATION * 0.99);
+			Evaluation solved = tolerant.evaluate(rule.scores);
+			assertTrue(objectives[r].toString(), solved.getValue() <= grid.getValue() + 1e-6);
+
+			// The search does no worse than where it starts
+			Evaluation found = search.search(200, 1);
+			assertTrue(found.getValue() <= search.vertices().getValue());
+			OptimizedPositionalRuleTest.checkScores(found.getScores(), 1);
+		}
+
+		// Flips are counted as the tests of the rules count them
+		ScoringVectorSearch<Integer> flips = new ScoringVectorSearch<Integer>(profiles, Objective.FLIPS);
+		Evaluation grid = flips.grid(20);
+		assertEquals(OptimizedPositionalRuleTest.countFlips(profiles, grid.getScores(), MinFlipMistakesRule.SEPARATION),
+				grid.getFlips());
+	}
+
+	@Test
+	public void testManyProfiles() {
+		Random rnd = new Random(2);
+		int m = 7;
+		PreferenceProfileList<Integer> profiles = OptimizedPositionalRuleTest.noisyProfiles(m, 2000, 9, rnd);
+
+		ScoringVectorSearch<Integer> search = new ScoringVectorSearch<Integer>(profiles, Objective.SUM_MIN_MARGIN);
+		Evaluation random = search.randomSearch(1000, 3);
+		Evaluation found = search.coordinateSearch(random, 0.25);
+
+		assertTrue(found.getValue() <= random.getValue());
+		OptimizedPositionalRuleTest.checkScores(found.getScores(), 1);
+		assertEquals(OptimizedPositionalRuleTest.countFlips(profiles, found.getScores(), MinFlipMistakesRule.SEPARATION),
+				found.getFlips());
+	}
+
+}
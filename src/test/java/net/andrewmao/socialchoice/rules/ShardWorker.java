@@ -0,0 +1,69 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import net.andrewmao.stat.MultivariateMean;
+
+/**
+ * Counts one shard of a PrefLib file and writes the partial statistics to disk,
+ * for {@link ShardedStatisticsTest}. Arguments: input file, shard, number of shards, output file.
+ *
+ * @author mao
+ *
+ */
+public class ShardWorker {
+
+	public static void main(String[] args) throws IOException {
+		File input = new File(args[0]);
+		final int shard = Integer.parseInt(args[1]);
+		final int numShards = Integer.parseInt(args[2]);
+		File output = new File(args[3]);
+
+		PrefLibReader reader = PrefLibReader.open(input);
+		final int m = reader.getNumAlternatives();
+
+		Integer[] candidates = new Integer[m];
+		for( int i = 0; i < m; i++ ) candidates[i] = i + 1;
+		final RankingMultiset<Integer> counts = new RankingMultiset<Integer>(candidates);
+
+		// Mean position of each alternative, and its square
+		final MultivariateMean m1 = new MultivariateMean(m);
+		final MultivariateMean m2 = new MultivariateMean(m);
+
+		reader.read(new PrefLibReader.Handler() {
+			int line = 0;
+			int[] ranking = new int[m];
+			double[] pos = new double[m];
+			double[] posSq = new double[m];
+
+			@Override
+			public void ranking(int[] order, int[] ties, int length, int count) {
+				if( line++ % numShards != shard ) return;
+
+				for( int i = 0; i < m; i++ ) {
+					ranking[i] = order[i] - 1;
+					pos[ranking[i]] = i;
+					posSq[ranking[i]] = i * i;
+				}
+				counts.add(ranking, count);
+				m1.addValue(pos, count);
+				m2.addValue(posSq, count);
+			}
+		});
+		reader.close();
+
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(output));
+		try {
+			out.writeObject(counts.getStatistics());
+			out.writeObject(counts);
+			out.writeObject(m1);
+			out.writeObject(m2);
+		} finally {
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import net.andrewmao.stat.MultivariateMean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedStatisticsTest {
+
+	static final int NUM_SHARDS = 3;
+
+	Random rnd;
+	File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+		dir = File.createTempFile("shards", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for( File f : dir.listFiles() ) f.delete();
+		dir.delete();
+	}
+
+	// Candidates from 1, as numbered in PrefLib files
+	PreferenceProfile<Integer> randomProfile(int n, int m) {
+		Integer[] cands = new Integer[m];
+		for( int i = 0; i < m; i++ ) cands[i] = i + 1;
+		return TestProfiles.randomProfile(n, cands, rnd);
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T roundTrip(T obj) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(obj);
+		out.close();
+		return (T) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	}
+
+	@Test
+	public void testLargeMerge() {
+		ProfileStatistics<Integer> shard = randomProfile(7, 5).asIntProfile().getStatistics();
+
+		// Doubling until there are more rankings than an int can count
+		ProfileStatistics<Integer> sum = shard;
+		for( int i = 0; i < 31; i++ ) sum = sum.merge(sum);
+
+		assertEquals(7L << 31, sum.getNumRankings());
+		for( int a = 0; a < 5; a++ )
+			for( int b = 0; b < 5; b++ )
+				assertEquals(shard.getPairwiseMatrix()[a][b] << 31, sum.getPairwiseMatrix()[a][b]);
+
+		PairwiseVotingRule[] pairwise = { new Maximin(), new Schulze(), new RankedPairs() };
+		for( PairwiseVotingRule rule : pairwise )
+			assertEquals(rule.getScoredRanking(shard).getRanking(), rule.getScoredRanking(sum).getRanking());
+		Borda borda = new Borda();
+		assertEquals(borda.getScoredRanking(shard).getRanking(), borda.getScoredRanking(sum).getRanking());
+	}
+
+	@Test
+	public void testMerge() throws Exception {
+		PreferenceProfile<Integer> prefs = randomProfile(300, 4);
+		IntPreferenceProfile<Integer> ip = prefs.asIntProfile();
+
+		IntPreferenceProfile<Integer> a = ip.subset(range(0, 100));
+		IntPreferenceProfile<Integer> b = ip.subset(range(100, 220));
+		IntPreferenceProfile<Integer> c = ip.subset(range(220, 300));
+
+		ProfileStatistics<Integer> left = a.getStatistics().merge(b.getStatistics()).merge(c.getStatistics());
+		ProfileStatistics<Integer> right = a.getStatistics().merge(b.getStatistics().merge(c.getStatistics()));
+		ProfileStatistics<Integer> all = roundTrip(left);
+
+		assertEquals(300, all.getNumRankings());
+		assertArrayEquals(ip.getPairwiseMatrix(), all.getPairwiseMatrix());
+		assertArrayEquals(ip.getPairwiseMatrix(), right.getPairwiseMatrix());
+		assertArrayEquals(ip.getPositionMatrix(), all.getPositionMatrix());
+		assertArrayEquals(ip.getAdjacentMatrix(), all.getAdjacentMatrix());
+
+		RankingMultiset<Integer> counts = roundTrip(RankingMultiset.of(a).merge(RankingMultiset.of(b)).merge(RankingMultiset.of(c)));
+		RankingMultiset<Integer> expected = RankingMultiset.of(prefs);
+		assertEquals(expected.getNumUniqueRankings(), counts.getNumUniqueRankings());
+		for( int r = 0; r < expected.getNumRows(); r++ )
+			assertEquals(expected.getWeight(r), counts.count(expected.getRanking(r)));
+
+		// Rules can be computed from the merged statistics alone
+		assertEquals(new Borda().getScoredRanking(prefs).toString(), new Borda().getScoredRanking(all).toString());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testDifferentCandidates() {
+		randomProfile(10, 3).getStatistics().merge(randomProfile(10, 4).getStatistics());
+	}
+
+	@Test
+	public void testMeans() throws Exception {
+		MultivariateMean a = new MultivariateMean(2);
+		MultivariateMean b = new MultivariateMean(2);
+		MultivariateMean all = new MultivariateMean(2);
+
+		for( int i = 0; i < 50; i++ ) {
+			double[] x = {rnd.nextGaussian(), rnd.nextDouble()};
+			(i % 3 == 0 ? a : b).addValue(x);
+			all.addValue(x);
+		}
+
+		a.merge(new MultivariateMean(2));
+		a.merge(roundTrip(b));
+		assertEquals(all.getWeight(), a.getWeight(), 0);
+		assertArrayEquals(all.getMean(), a.getMean(), 1e-12);
+	}
+
+	@Test
+	public void testWorkerProcesses() throws Exception {
+		PreferenceProfile<Integer> prefs = randomProfile(5000, 5);
+		File input = new File(dir, "votes.soc");
+		PrefLibWriter.write(input, prefs);
+
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+		Process[] workers = new Process[NUM_SHARDS];
+		for( int s = 0; s < NUM_SHARDS; s++ ) {
+			workers[s] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					ShardWorker.class.getName(), input.getPath(), String.valueOf(s), String.valueOf(NUM_SHARDS),
+					new File(dir, "part" + s).getPath()).inheritIO().start();
+		}
+		for( Process p : workers ) assertEquals(0, p.waitFor());
+
+		// The coordinator only sees the partial statistics
+		ProfileStatistics<Integer> stats = null;
+		RankingMultiset<Integer> counts = null;
+		MultivariateMean m1 = null, m2 = null;
+
+		for( int s = 0; s < NUM_SHARDS; s++ ) {
+			ObjectInputStream in = new ObjectInputStream(new FileInputStream(new File(dir, "part" + s)));
+			@SuppressWarnings("unchecked")
+			ProfileStatistics<Integer> partStats = (ProfileStatistics<Integer>) in.readObject();
+			@SuppressWarnings("unchecked")
+			RankingMultiset<Integer> partCounts = (RankingMultiset<Integer>) in.readObject();
+			MultivariateMean partM1 = (MultivariateMean) in.readObject();
+			MultivariateMean partM2 = (MultivariateMean) in.readObject();
+			in.close();
+
+			if( s == 0 ) {
+				stats = partStats;
+				counts = partCounts;
+				m1 = partM1;
+				m2 = partM2;
+			}
+			else {
+				stats = stats.merge(partStats);
+				counts = counts.merge(partCounts);
+				m1.merge(partM1);
+				m2.merge(partM2);
+			}
+		}
+
+		IntPreferenceProfile<Integer> ip = prefs.asIntProfile();
+		assertEquals(5000, stats.getNumRankings());
+		assertArrayEquals(ip.getPairwiseMatrix(), stats.getPairwiseMatrix());
+		assertArrayEquals(ip.getPositionMatrix(), counts.getPositionMatrix());
+		assertEquals(RankingMultiset.of(prefs).getNumUniqueRankings(), counts.getNumUniqueRankings());
+
+		// Mean and variance of positions from the merged moments
+		long[][] positions = ip.getPositionMatrix();
+		for( int c = 0; c < 5; c++ ) {
+			double mean = 0, meanSq = 0;
+			for( int i = 0; i < 5; i++ ) {
+				mean += i * positions[c][i] / 5000.0;
+				meanSq += i * i * positions[c][i] / 5000.0;
+			}
+			assertEquals(mean, m1.getMean()[c], 1e-9);
+			assertEquals(meanSq, m2.getMean()[c], 1e-9);
+		}
+
+		assertEquals(new Borda().getScoredRanking(prefs).toString(), new Borda().getScoredRanking(stats).toString());
+	}
+
+	static int[] range(int from, int to) {
+		int[] indices = new int[to - from];
+		for( int i = from; i < to; i++ ) indices[i - from] = i;
+		return indices;
+	}
+
+}
@@ -0,0 +1,43 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class SingleTransferableVoteTest {
+
+	@Test
+	public void testSurplus() {
+		/*
+		 * 20 ballots for 3 seats, so the quota is 6.
+		 * A is elected with 12, and half of each of its ballots goes on: 4 to B and 2 to C.
+		 * B is then elected with 6, leaving C on 2, D on 3 and E on 3.
+		 * C is eliminated and its ballots go to D, then E is eliminated and D is elected with 8.
+		 */
+		PreferenceProfile<Character> profile = PairwiseVotingRuleTest.profile(
+				new int[] { 8, 4, 2, 3, 3 },
+				new String[] { "ABCDE", "ACDBE", "BACDE", "DEABC", "EDABC" });
+
+		SingleTransferableVote rule = new SingleTransferableVote(3);
+		assertEquals(Arrays.asList('A', 'B', 'D'), rule.getWinners(profile));
+		assertEquals(Arrays.asList('A', 'B', 'D', 'E', 'C'), rule.getRanking(profile));
+	}
+
+	@Test
+	public void testAllSeats() {
+		PreferenceProfile<Character> profile = PairwiseVotingRuleTest.CYCLIC;
+
+		// As many seats as candidates elects everyone
+		assertEquals(new HashSet<Character>(Arrays.asList('A', 'B', 'C', 'D', 'E')),
+				new HashSet<Character>(new SingleTransferableVote(5).getWinners(profile)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNoSeats() {
+		new SingleTransferableVote(0);
+	}
+
+}
@@ -0,0 +1,143 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.andrewmao.math.RandomSelection;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+public class SlidingWindowTest {
+
+	static final Integer[] CANDIDATES = { 0, 1, 2, 3, 4 };
+
+	static class ManualTicker extends Ticker {
+		long nanos;
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+	}
+
+	static void assertSameStatistics(ProfileStatistics<Integer> expected, ProfileStatistics<Integer> actual) {
+		assertEquals(expected.getNumRankings(), actual.getNumRankings());
+		assertArrayEquals(expected.getPositionMatrix(), actual.getPositionMatrix());
+		assertArrayEquals(expected.getPairwiseMatrix(), actual.getPairwiseMatrix());
+		assertArrayEquals(expected.getAdjacentMatrix(), actual.getAdjacentMatrix());
+	}
+
+	@Test
+	public void testLastRankings() {
+		Random rnd = new Random(1);
+		int window = 50;
+		SlidingWindow<Integer> stream = new SlidingWindow<Integer>(CANDIDATES, window);
+
+		List<Integer[]> added = new ArrayList<Integer[]>();
+		for( int i = 0; i < 3000; i++ ) {
+			Integer[] ranking = RandomSelection.shuffle(CANDIDATES.clone(), rnd);
+			stream.add(ranking);
+			added.add(ranking);
+
+			// The ring buffer grows past its initial size, and wraps around
+			if( i % 97 != 0 ) continue;
+
+			List<Integer[]> last = added.subList(Math.max(0, added.size() - window), added.size());
+			PreferenceProfile<Integer> profile = new PreferenceProfile<Integer>(last.toArray(new Integer[last.size()][]));
+
+			assertEquals(last.size(), stream.getNumRankings());
+			assertSameStatistics(profile.getStatistics(), stream.getStatistics());
+			assertEquals(new Borda().getRanking(profile), stream.getScoredRanking(new Borda()).getRanking());
+			assertEquals(new Plurality(1).getRanking(profile), stream.getScoredRanking(new Plurality(1)).getRanking());
+			assertEquals(new Maximin().getRanking(profile), stream.getScoredRanking(new Maximin()).getRanking());
+		}
+	}
+
+	@Test
+	public void testLastMinutes() {
+		Random rnd = new Random(2);
+		ManualTicker ticker = new ManualTicker();
+		long minute = 60000000000L;
+		SlidingWindow<Integer> stream = new SlidingWindow<Integer>(CANDIDATES, Integer.MAX_VALUE, 5 * minute, ticker);
+
+		List<Integer[]> added = new ArrayList<Integer[]>();
+		List<Long> times = new ArrayList<Long>();
+		for( int i = 0; i < 2000; i++ ) {
+			ticker.nanos += rnd.nextInt(1000) * 1000000L;
+			Integer[] ranking = RandomSelection.shuffle(CANDIDATES.clone(), rnd);
+			stream.add(Arrays.asList(ranking));
+			added.add(ranking);
+			times.add(ticker.nanos);
+		}
+
+		// Reading later expires the rankings that have aged out since
+		ticker.nanos += minute;
+
+		List<Integer[]> recent = new ArrayList<Integer[]>();
+		for( int i = 0; i < added.size(); i++ )
+			if( ticker.nanos - times.get(i) <= 5 * minute ) recent.add(added.get(i));
+		assertTrue(recent.size() < added.size());
+
+		PreferenceProfile<Integer> profile = new PreferenceProfile<Integer>(recent.toArray(new Integer[recent.size()][]));
+		assertSameStatistics(profile.getStatistics(), stream.getStatistics());
+
+		ticker.nanos += 10 * minute;
+		assertEquals(0, stream.getNumRankings());
+		assertEquals(0, stream.getStatistics().getPairwiseMatrix()[0][1]);
+	}
+
+	@Test
+	public void testConcurrentWriters() throws InterruptedException {
+		final int window = 1000;
+		final SlidingWindow<Integer> stream = new SlidingWindow<Integer>(CANDIDATES, window);
+
+		// Every thread adds the same ranking, so the window always holds copies of it
+		final int[] ranking = { 3, 1, 4, 0, 2 };
+		List<Thread> threads = new ArrayList<Thread>();
+		for( int t = 0; t < 4; t++ ) {
+			Thread thread = new Thread() {
+				public void run() {
+					for( int i = 0; i < 20000; i++ ) {
+						stream.add(ranking);
+						if( i % 1000 == 0 ) stream.getScoredRanking(new Borda());
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for( Thread thread : threads ) thread.join();
+
+		ProfileStatistics<Integer> stats = stream.getStatistics();
+		assertEquals(window, stats.getNumRankings());
+		for( int i = 0; i < ranking.length; i++ )
+			assertEquals(window, stats.getPositionMatrix()[ranking[i]][i]);
+		assertEquals(window, stats.getPairwiseMatrix()[3][2]);
+	}
+
+	@Test
+	public void testBufferLimit() {
+		// A window of only time holds as many rankings as fit in the buffer
+		SlidingWindow<Integer> stream = new SlidingWindow<Integer>(CANDIDATES, 1, TimeUnit.HOURS);
+		assertEquals(SlidingWindow.MAX_BUFFER / CANDIDATES.length, stream.getMaxRankings());
+
+		try {
+			new SlidingWindow<Integer>(CANDIDATES, Integer.MAX_VALUE / 2);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNotRanking() {
+		new SlidingWindow<Integer>(CANDIDATES, 10).add(new int[] { 0, 1, 1, 2, 3 });
+	}
+
+}
@@ -0,0 +1,52 @@
+package net.andrewmao.socialchoice.rules;
+
+import java.lang.reflect.Array;
+import java.util.Random;
+
+import net.andrewmao.math.RandomSelection;
+
+/**
+ * Uniformly random rankings for the tests of this package.
+ *
+ * @author mao
+ *
+ */
+class TestProfiles {
+
+	/**
+	 * @param m
+	 * @return the candidates 0, ..., m - 1
+	 */
+	static Integer[] candidates(int m) {
+		Integer[] cands = new Integer[m];
+		for( int i = 0; i < m; i++ ) cands[i] = i;
+		return cands;
+	}
+
+	/**
+	 * @param n
+	 * @param cands
+	 * @param rnd
+	 * @return n shuffles of the candidates
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T[][] randomRankings(int n, T[] cands, Random rnd) {
+		T[][] rankings = (T[][]) Array.newInstance(cands.getClass(), n);
+		for( int i = 0; i < n; i++ )
+			rankings[i] = RandomSelection.shuffle(cands.clone(), rnd);
+		return rankings;
+	}
+
+	static Integer[][] randomRankings(int n, int m, Random rnd) {
+		return randomRankings(n, candidates(m), rnd);
+	}
+
+	static <T> PreferenceProfile<T> randomProfile(int n, T[] cands, Random rnd) {
+		return new PreferenceProfile<T>(randomRankings(n, cands, rnd));
+	}
+
+	static PreferenceProfile<Integer> randomProfile(int n, int m, Random rnd) {
+		return randomProfile(n, candidates(m), rnd);
+	}
+
+}
@@ -0,0 +1,99 @@
+package net.andrewmao.socialchoice.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import net.andrewmao.models.discretechoice.ScoredItems;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TopKProfileTest {
+
+	Random rnd;
+	Character[] cands = new Character[] {'A', 'B', 'C', 'D', 'E', 'F'};
+	PreferenceProfile<Character> prefs;
+
+	@Before
+	public void setUp() throws Exception {
+		rnd = new Random(1);
+
+		prefs = TestProfiles.randomProfile(200, cands, rnd);
+	}
+
+	@Test
+	public void testAdd() {
+		TopKProfile<Character> topK = new TopKProfile<Character>(cands);
+		topK.add(new Character[] {'C', 'A'});
+		topK.add(new int[] {4, 5, 0}, 3, 2);
+
+		assertEquals(2, topK.getNumRows());
+		assertEquals(3, topK.getNumRankings());
+		assertEquals(3, topK.getMaxLength());
+		assertEquals(2, topK.getLength(0));
+		assertEquals(0, topK.candidateAt(0, 1));
+		assertArrayEquals(new int[] {5, 6, 1}, topK.getIndices(1));
+		assertFalse(topK.isComplete());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testDuplicate() {
+		new TopKProfile<Character>(cands).add(new Character[] {'C', 'A', 'C'});
+	}
+
+	@Test
+	public void testComplete() {
+		// Dropping the last place loses nothing
+		TopKProfile<Character> topK = TopKProfile.truncate(prefs, cands.length - 1);
+		assertTrue(topK.isComplete());
+
+		IntPreferenceProfile<Character> full = prefs.asIntProfile();
+		assertArrayEquals(full.getPositionMatrix(), topK.toProfile().getPositionMatrix());
+
+		ProfileStatistics<Character> stats = topK.getStatistics();
+		assertArrayEquals(full.getPositionMatrix(), stats.getPositionMatrix());
+		assertArrayEquals(full.getPairwiseMatrix(), stats.getPairwiseMatrix());
+		assertArrayEquals(full.getAdjacentMatrix(), stats.getAdjacentMatrix());
+	}
+
+	@Test
+	public void testStatistics() {
+		int k = 3;
+		TopKProfile<Character> topK = TopKProfile.truncate(prefs, k);
+		ProfileStatistics<Character> stats = topK.getStatistics();
+		IntPreferenceProfile<Character> full = prefs.asIntProfile();
+
+		int m = cands.length;
+		long[][] wins = new long[m][m];
+		for( int r = 0; r < full.getNumRows(); r++ ) {
+			for( int a = 0; a < m; a++ )
+				for( int b = 0; b < m; b++ ) {
+					int pa = full.positionOf(r, a), pb = full.positionOf(r, b);
+					if( pa < k && pa < pb ) wins[a][b]++;
+				}
+		}
+		assertArrayEquals(wins, stats.getPairwiseMatrix());
+
+		long[][] positions = full.getPositionMatrix();
+		for( int c = 0; c < m; c++ )
+			for( int i = k; i < m; i++ ) positions[c][i] = 0;
+		assertArrayEquals(positions, stats.getPositionMatrix());
+	}
+
+	@Test
+	public void testRules() {
+		// Only the top of each ranking counts for plurality
+		ProfileStatistics<Character> top = TopKProfile.truncate(prefs, 1).getStatistics();
+		assertEquals(new Plurality(1).getRanking(prefs), new Plurality(1).getScoredRanking(top).getRanking());
+
+		// Dropping the last place loses nothing
+		ProfileStatistics<Character> all = TopKProfile.truncate(prefs, cands.length - 1).getStatistics();
+		for( ScoredVotingRule rule : new ScoredVotingRule[] {new Borda(), new Copeland(), new Maximin(), new Schulze(), new RankedPairs()} ) {
+			ScoredItems<Character> scores = rule instanceof PairwiseVotingRule ?
+					((PairwiseVotingRule) rule).getScoredRanking(all) : ((PositionalVotingRule) rule).getScoredRanking(all);
+			assertEquals(rule.toString(), rule.getRanking(prefs), scores.getRanking());
+		}
+	}
+
+}